@@ -0,0 +1,89 @@
+package com.bobgettys.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every {@code MatrixMathPack} operation on square {@code size x size} matrices.
+ * Subclasses pick the packs, so the ones that need extra JVM options get their own forks.
+ *
+ * @author rgettys
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public abstract class AbstractMathPackBenchmark {
+
+    @Param({"16", "128", "512"})
+    public int size;
+
+    private Object mathPack;
+    private Object activation;
+    private Object[] left;
+    private Object[] right;
+    private Object[] scratch;
+
+    @Setup
+    public void setUp() throws Throwable {
+        mathPack = Bridge.createPack(pack());
+        activation = Bridge.activation(pack());
+        left = (Object[]) Bridge.INIT_RANDOM.invokeExact(mathPack, size, size);
+        right = (Object[]) Bridge.INIT_RANDOM.invokeExact(mathPack, size, size);
+        scratch = (Object[]) Bridge.INIT_RANDOM.invokeExact(mathPack, size, size);
+    }
+
+    /**
+     * The short name of the pack to benchmark, as {@link Bridge#createPack} takes it.
+     */
+    protected abstract String pack();
+
+    @Benchmark
+    public Object[] dotProduct() throws Throwable {
+        return (Object[]) Bridge.DOT_PRODUCT.invokeExact(mathPack, left, right);
+    }
+
+    @Benchmark
+    public Object[] transpose() throws Throwable {
+        return (Object[]) Bridge.TRANSPOSE.invokeExact(mathPack, left);
+    }
+
+    @Benchmark
+    public Object[] hadamardProduct() throws Throwable {
+        return (Object[]) Bridge.HADAMARD_PRODUCT.invokeExact(mathPack, left, right);
+    }
+
+    @Benchmark
+    public Object[] subtract() throws Throwable {
+        return (Object[]) Bridge.SUBTRACT.invokeExact(mathPack, left, right);
+    }
+
+    @Benchmark
+    public Object squaredError() throws Throwable {
+        return (Object) Bridge.SQUARED_ERROR.invokeExact(mathPack, left, right);
+    }
+
+    @Benchmark
+    public Object[] transform() throws Throwable {
+        return (Object[]) Bridge.TRANSFORM.invokeExact(mathPack, left, activation);
+    }
+
+    @Benchmark
+    public Object[] mutate() throws Throwable {
+        // Repeated sigmoids settle on a fixed point, so the data stays well inside normal range.
+        Bridge.MUTATE.invokeExact(mathPack, scratch, activation);
+        return scratch;
+    }
+
+}
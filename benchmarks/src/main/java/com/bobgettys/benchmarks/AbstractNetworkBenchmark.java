@@ -0,0 +1,76 @@
+package com.bobgettys.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end {@code Network.forward} and {@code Network.train} over a few topologies
+ * and batch sizes.  The network is rebuilt every iteration so long runs don't
+ * drift into saturated (and denormal-heavy) weights.  Subclasses pick the packs.
+ *
+ * @author rgettys
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public abstract class AbstractNetworkBenchmark {
+
+    /**
+     * Layer sizes, input first and output last.
+     */
+    @Param({"2-3-1", "64-32-10", "784-256-10", "256-128-64-10"})
+    public String topology;
+
+    @Param({"1", "32", "256"})
+    public int batchSize;
+
+    private Object mathPack;
+    private Object network;
+    private Object[] input;
+    private Object[] expected;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws Throwable {
+        String[] sizes = topology.split("-");
+        int inputSize = Integer.parseInt(sizes[0]);
+        int outputSize = Integer.parseInt(sizes[sizes.length - 1]);
+        int[] hiddenLayerSizes = new int[sizes.length - 2];
+        for (int i = 0; i < hiddenLayerSizes.length; ++i) {
+            hiddenLayerSizes[i] = Integer.parseInt(sizes[i + 1]);
+        }
+        mathPack = Bridge.createPack(pack());
+        network = (Object) Bridge.NEW_NETWORK.invokeExact(inputSize, hiddenLayerSizes, outputSize, mathPack,
+                Bridge.learningRateScaler(pack(), 0.01));
+        input = (Object[]) Bridge.INIT_RANDOM.invokeExact(mathPack, inputSize, batchSize);
+        expected = (Object[]) Bridge.INIT_RANDOM.invokeExact(mathPack, outputSize, batchSize);
+    }
+
+    /**
+     * The short name of the pack to benchmark, as {@link Bridge#createPack} takes it.
+     */
+    protected abstract String pack();
+
+    @Benchmark
+    public Object[] forward() throws Throwable {
+        return (Object[]) Bridge.FORWARD.invokeExact(network, input);
+    }
+
+    @Benchmark
+    public void train() throws Throwable {
+        Bridge.TRAIN.invokeExact(network, input, expected);
+    }
+
+}
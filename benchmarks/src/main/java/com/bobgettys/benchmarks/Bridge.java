@@ -0,0 +1,165 @@
+package com.bobgettys.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Access to the neural-networks classes, which all live in the unnamed package.
+ * JMH refuses to generate code for benchmarks in the unnamed package, and code
+ * in a named package cannot refer to those classes by name, so the benchmarks
+ * go through the method handles below.  They are {@code static final}, which
+ * lets the JIT inline straight through them into the real implementations.
+ * <p>
+ * <p>Every handle is adapted to take its receiver as {@code Object} and the
+ * erased generic types of {@code MatrixMathPack<T, U>}: {@code T[]} is
+ * {@code Object[]}, {@code T} and {@code U} are {@code Object}.
+ *
+ * @author rgettys
+ */
+final class Bridge {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+    private static final Class<?> MATH_PACK = type("MatrixMathPack");
+    private static final Class<?> NETWORK = type("Network");
+
+    static final MethodHandle DOT_PRODUCT = packMethod("dotProduct", Object[].class, Object[].class, Object[].class);
+    static final MethodHandle TRANSPOSE = packMethod("transpose", Object[].class, Object[].class);
+    static final MethodHandle HADAMARD_PRODUCT = packMethod("hadamardProduct", Object[].class, Object[].class, Object[].class);
+    static final MethodHandle SUBTRACT = packMethod("subtract", Object[].class, Object[].class, Object[].class);
+    static final MethodHandle SQUARED_ERROR = packMethod("squaredError", Object.class, Object[].class, Object[].class);
+    static final MethodHandle TRANSFORM = packMethod("transform", Object[].class, Object[].class, Object.class);
+    static final MethodHandle MUTATE = packMethod("mutate", void.class, Object[].class, Object.class);
+    static final MethodHandle INIT_RANDOM = packMethod("initRandom", Object[].class, int.class, int.class);
+
+    static final MethodHandle NEW_NETWORK;
+    static final MethodHandle FORWARD;
+    static final MethodHandle TRAIN;
+
+    static {
+        try {
+            MethodHandle constructor = LOOKUP.findConstructor(NETWORK,
+                    MethodType.methodType(void.class, int.class, int[].class, int.class, MATH_PACK, Object.class));
+            NEW_NETWORK = constructor.asType(MethodType.methodType(Object.class, int.class, int[].class, int.class, Object.class, Object.class));
+            FORWARD = virtual(NETWORK, "forward", Object[].class, Object[].class);
+            // train returns the batch cost, which the benchmarks drop.
+            MethodHandle train = virtual(NETWORK, "train", double.class, Object[].class, Object[].class);
+            TRAIN = train.asType(train.type().changeReturnType(void.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Bridge() {
+    }
+
+    /**
+     * Builds one of the math packs by short name, all using a sigmoid activation.
+     */
+    static Object createPack(String name) {
+        try {
+            switch (name) {
+                case "float":
+                    return newInstance("JavaFloatMatrixMathPack", floatSigmoid(), false);
+                case "float-blocked":
+                    return newInstance("JavaFloatMatrixMathPack", floatSigmoid(), true);
+                case "float-parallel":
+                    return newInstance("ParallelFloatMatrixMathPack", floatSigmoid());
+                case "float-vector":
+                    return newInstance("VectorFloatMatrixMathPack", floatSigmoid());
+                case "flat":
+                    return newInstance("FlatFloatMatrixMathPack", floatSigmoid(), false);
+                case "flat-blocked":
+                    return newInstance("FlatFloatMatrixMathPack", floatSigmoid(), true);
+                case "double":
+                    return newInstance("JavaDoubleMatrixMathPack", doubleSigmoid(), false);
+                case "double-blocked":
+                    return newInstance("JavaDoubleMatrixMathPack", doubleSigmoid(), true);
+                case "double-parallel":
+                    return newInstance("ParallelDoubleMatrixMathPack", doubleSigmoid());
+                case "double-vector":
+                    return newInstance("VectorDoubleMatrixMathPack", doubleSigmoid());
+                default:
+                    throw new IllegalArgumentException("Unknown math pack " + name + ".");
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The pack's activation function, usable as the {@code U} operator of {@code transform}/{@code mutate}.
+     */
+    static Object activation(String packName) {
+        return packName.startsWith("double") ? doubleSigmoid() : floatSigmoid();
+    }
+
+    /**
+     * A learning rate scaler of the right operator type for the named pack.
+     */
+    static Object learningRateScaler(String packName, double learningRate) {
+        if (packName.startsWith("double")) {
+            return (DoubleUnaryOperator) input -> input * learningRate;
+        }
+        try {
+            return type("FloatUnaryOperator").getMethod("scaling", float.class).invoke(null, (float) learningRate);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Object floatSigmoid() {
+        return enumConstant("FloatActivations", "SIGMOID");
+    }
+
+    private static Object doubleSigmoid() {
+        return enumConstant("DoubleActivations", "SIGMOID");
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object enumConstant(String className, String constant) {
+        return Enum.valueOf((Class) type(className), constant);
+    }
+
+    private static Object newInstance(String className, Object... arguments) throws ReflectiveOperationException {
+        for (java.lang.reflect.Constructor<?> constructor : type(className).getConstructors()) {
+            Class<?>[] parameterTypes = constructor.getParameterTypes();
+            if (parameterTypes.length != arguments.length) {
+                continue;
+            }
+            boolean matches = true;
+            for (int i = 0; i < arguments.length && matches; ++i) {
+                Class<?> parameterType = parameterTypes[i] == boolean.class ? Boolean.class : parameterTypes[i];
+                matches = parameterType.isInstance(arguments[i]);
+            }
+            if (matches) {
+                return constructor.newInstance(arguments);
+            }
+        }
+        throw new NoSuchMethodException(className + " has no constructor for the given arguments.");
+    }
+
+    private static MethodHandle packMethod(String name, Class<?> returnType, Class<?>... parameterTypes) {
+        try {
+            return virtual(MATH_PACK, name, returnType, parameterTypes);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle virtual(Class<?> owner, String name, Class<?> returnType, Class<?>... parameterTypes)
+            throws ReflectiveOperationException {
+        MethodHandle handle = LOOKUP.findVirtual(owner, name, MethodType.methodType(returnType, parameterTypes));
+        return handle.asType(handle.type().changeParameterType(0, Object.class));
+    }
+
+    private static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.bobgettys.benchmarks;
+
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link AbstractMathPackBenchmark} over the scalar packs, which run on any JDK.
+ *
+ * @author rgettys
+ */
+@Fork(1)
+@State(Scope.Thread)
+public class MathPackBenchmark extends AbstractMathPackBenchmark {
+
+    @Param({"float", "double", "float-blocked", "double-blocked", "flat", "flat-blocked", "float-parallel", "double-parallel"})
+    public String pack;
+
+    @Override
+    protected String pack() {
+        return pack;
+    }
+
+}
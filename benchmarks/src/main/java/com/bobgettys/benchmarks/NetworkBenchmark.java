@@ -0,0 +1,25 @@
+package com.bobgettys.benchmarks;
+
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link AbstractNetworkBenchmark} over the scalar packs, which run on any JDK.
+ *
+ * @author rgettys
+ */
+@Fork(1)
+@State(Scope.Thread)
+public class NetworkBenchmark extends AbstractNetworkBenchmark {
+
+    @Param({"float", "double", "float-blocked", "flat", "flat-blocked", "float-parallel"})
+    public String pack;
+
+    @Override
+    protected String pack() {
+        return pack;
+    }
+
+}
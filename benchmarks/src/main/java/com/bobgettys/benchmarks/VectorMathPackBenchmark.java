@@ -0,0 +1,26 @@
+package com.bobgettys.benchmarks;
+
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link AbstractMathPackBenchmark} over the Vector API packs.  Needs JDK 16 or later.
+ *
+ * @author rgettys
+ */
+// The incubator module only exists on JDK 16 and up, so only these forks ask for it.
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class VectorMathPackBenchmark extends AbstractMathPackBenchmark {
+
+    @Param({"float-vector", "double-vector"})
+    public String pack;
+
+    @Override
+    protected String pack() {
+        return pack;
+    }
+
+}
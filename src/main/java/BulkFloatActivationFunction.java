@@ -0,0 +1,30 @@
+/**
+ * A {@link FloatActivationFunction} that can also activate a whole run of
+ * values in one call.  The {@code float} math packs look for this: instead of
+ * calling {@link #applyAsFloat} once per element through whatever function the
+ * pack was given, which the JIT can't inline at a call site shared by every
+ * activation, they make one call per row, and the loop inside is compiled
+ * separately for each implementation with its function inlined (and, where
+ * the function allows, vectorized).
+ * <p>
+ * <p>Implementations must give the same results as their element-wise methods.
+ *
+ * @author rgettys
+ * @see FastFloatActivations
+ * @see FloatLookupActivation
+ */
+public interface BulkFloatActivationFunction extends FloatActivationFunction {
+
+    /**
+     * Sets {@code output[outputOffset + i]} to {@code f(input[inputOffset + i])} for each
+     * {@code i} below {@code length}.  The two ranges may be the same.
+     */
+    void apply(float[] input, int inputOffset, float[] output, int outputOffset, int length);
+
+    /**
+     * Activates {@code length} values starting at {@code values[offset]} in place and
+     * writes {@link #derivativeFromOutput} of each result to {@code derivatives}.
+     */
+    void applyWithDerivative(float[] values, int offset, float[] derivatives, int derivativeOffset, int length);
+
+}
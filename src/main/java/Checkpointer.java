@@ -0,0 +1,296 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Periodically saves a training {@link Network} to a directory of
+ * {@link ModelFile}s so a long run can pick up where it left off after the JVM
+ * dies.  The training loop calls {@link #update()} once per weight update; every
+ * {@code interval} updates that publishes a {@link WeightSnapshot}, which costs
+ * the loop no more than the copy-on-write clone of the weights at its next
+ * update, along with a copy of the {@link Optimizer}'s moments if the network
+ * has one, and a background thread writes them out.  If the previous
+ * checkpoint is still being written when the next falls due, {@code update}
+ * leaves it for a later update rather than queueing it or waiting.
+ * <p>
+ * <p>Each checkpoint is written to a temporary file, forced to disk and then
+ * renamed to {@code checkpoint-<update>.nnmf}, so a crash never leaves a torn
+ * file under a checkpoint name; only the newest {@code retained} are kept.  If
+ * a checkpoint can't be written, its temporary file is deleted and the next call
+ * to {@link #update}, {@link #checkpoint} or {@link #close} throws the first such
+ * failure, so a run doesn't go on training with nothing being saved.
+ * <p>
+ * <p>To resume, open {@link #latest} with {@link ModelFile#open}, build the
+ * network from its layers, give it the file's {@link ModelFile#getCostFunction()
+ * cost function}, {@link ModelFile#restoreOptimizer restore its optimizer} if it
+ * {@link ModelFile#hasOptimizerState() has one} and hand {@link #stepOf} of it
+ * to {@link #setStep}.
+ *
+ * @author rgettys
+ */
+public final class Checkpointer<T> implements AutoCloseable {
+
+    public static final int DEFAULT_RETAINED = 2;
+
+    private static final String PREFIX = "checkpoint-";
+    private static final String SUFFIX = ".nnmf";
+
+    private final Network<T, ?> network;
+    private final Path directory;
+    private final Enum<?> activation;
+    private final long interval;
+    private final int retained;
+    private final ExecutorService writer;
+    private final AtomicLong step = new AtomicLong();
+    // The update the most recent checkpoint was taken at; checkpoints fall due interval updates later.
+    private volatile long checkpointStep;
+    private CompletableFuture<Path> pending = CompletableFuture.completedFuture(null);
+    private volatile Path lastCheckpoint;
+    // The first write failure not yet thrown to a caller.
+    private volatile IOException failure;
+    private boolean closed;
+
+    public Checkpointer(Network<T, ?> network, Path directory, Enum<?> activation, long interval) throws IOException {
+        this(network, directory, activation, interval, DEFAULT_RETAINED);
+    }
+
+    /**
+     * @param activation as for {@link ModelFile#write}
+     * @param interval   the number of updates between checkpoints
+     * @param retained   how many of the newest checkpoints to keep in {@code directory}
+     */
+    public Checkpointer(Network<T, ?> network, Path directory, Enum<?> activation, long interval, int retained) throws IOException {
+        ArgUtil.checkNull(network, "network");
+        ArgUtil.checkNull(directory, "directory");
+        if (interval < 1 || retained < 1) {
+            throw new IllegalArgumentException("interval and retained arguments must be positive.");
+        }
+        this.network = network;
+        this.directory = Files.createDirectories(directory);
+        this.activation = activation;
+        this.interval = interval;
+        this.retained = retained;
+        writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpoint-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Counts one weight update and starts a checkpoint if one is due.  Cheap enough to
+     * call from the innermost training loop.  Like {@link Network#publish()}, call it from
+     * the thread that applies the updates, between steps, and not while a
+     * {@link HogwildTrainer} runs, as the network can't publish then.
+     *
+     * @throws UncheckedIOException  if an earlier checkpoint could not be written
+     * @throws IllegalStateException if a checkpoint falls due while a {@link HogwildTrainer}
+     *                               is training the network
+     */
+    public void update() {
+        long current = step.incrementAndGet();
+        if (current - checkpointStep >= interval || failure != null) {
+            synchronized (this) {
+                throwFailure();
+                if (!closed && pending.isDone()) {
+                    start();
+                }
+            }
+        }
+    }
+
+    /**
+     * Publishes the network's weights and starts writing them out, first waiting for
+     * any checkpoint still being written.  Call it from the thread that applies the
+     * updates, between steps, as for {@link #update()}.
+     *
+     * @return a future completed with the checkpoint's path once it is on disk
+     * @throws UncheckedIOException  if an earlier checkpoint, including the one waited
+     *                               for, could not be written
+     * @throws IllegalStateException if the checkpointer has been closed, or a
+     *                               {@link HogwildTrainer} is training the network
+     */
+    public synchronized CompletableFuture<Path> checkpoint() {
+        if (closed) {
+            throw new IllegalStateException("Checkpointer is closed.");
+        }
+        try {
+            pending.join();
+        } catch (RuntimeException e) {
+            // write recorded the failure; throwFailure reports it.
+        }
+        throwFailure();
+        return start();
+    }
+
+    public long getStep() {
+        return step.get();
+    }
+
+    /**
+     * Sets the update count, usually to {@link #stepOf} the checkpoint being resumed from.
+     */
+    public void setStep(long updates) {
+        step.set(updates);
+        checkpointStep = updates;
+    }
+
+    /**
+     * @return the most recent checkpoint written by this checkpointer, or null
+     */
+    public Path getLastCheckpoint() {
+        return lastCheckpoint;
+    }
+
+    /**
+     * Waits for the pending checkpoint to be written and stops the writer thread.  If the
+     * calling thread is interrupted while it waits, this returns early with the thread's
+     * interrupt flag set, and the writer still finishes the pending checkpoint.
+     *
+     * @throws IOException if a checkpoint could not be written and no earlier call has
+     *                     thrown that failure
+     */
+    @Override
+    public void close() throws IOException {
+        CompletableFuture<Path> last;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            last = pending;
+        }
+        try {
+            last.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // write recorded the failure; it is thrown below.
+        } finally {
+            writer.shutdown();
+            try {
+                writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        IOException unreported;
+        synchronized (this) {
+            unreported = failure;
+            failure = null;
+        }
+        if (unreported != null) {
+            throw unreported;
+        }
+    }
+
+    /**
+     * @return the checkpoint in {@code directory} with the highest update count, or null
+     * if there are none
+     */
+    public static Path latest(Path directory) throws IOException {
+        List<Path> checkpoints = list(directory);
+        return checkpoints.isEmpty() ? null : checkpoints.get(checkpoints.size() - 1);
+    }
+
+    /**
+     * @return the update count the checkpoint at {@code checkpoint} was taken at
+     */
+    public static long stepOf(Path checkpoint) {
+        String name = checkpoint.getFileName().toString();
+        if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) {
+            throw new IllegalArgumentException(checkpoint + " is not a checkpoint.");
+        }
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private CompletableFuture<Path> start() {
+        long current = step.get();
+        WeightSnapshot<T> snapshot = network.publishAndAcquire();
+        MatrixMathPack.CostFunction<T, ?> costFunction = network.getCostFunction();
+        OptimizerState<T> optimizerState = network.copyOptimizerState();
+        checkpointStep = current;
+        pending = CompletableFuture.supplyAsync(() -> write(snapshot, costFunction, optimizerState, current), writer);
+        return pending;
+    }
+
+    private Path write(WeightSnapshot<T> snapshot, MatrixMathPack.CostFunction<T, ?> costFunction,
+                       OptimizerState<T> optimizerState, long updates) {
+        Path target = directory.resolve(PREFIX + updates + SUFFIX);
+        Path temporary = directory.resolve(PREFIX + updates + SUFFIX + ".tmp");
+        try {
+            ModelFile.write(temporary, snapshot, activation, costFunction, optimizerState);
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            lastCheckpoint = target;
+            List<Path> checkpoints = list(directory);
+            for (int i = 0; i < checkpoints.size() - retained; ++i) {
+                Files.deleteIfExists(checkpoints.get(i));
+            }
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            synchronized (this) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+            throw new UncheckedIOException(e);
+        } finally {
+            snapshot.release();
+            if (optimizerState != null) {
+                optimizerState.release();
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Throws the first unreported write failure, if there is one, and forgets it so a
+     * caller that deals with it can carry on.
+     */
+    private void throwFailure() {
+        IOException unreported = failure;
+        if (unreported != null) {
+            failure = null;
+            throw new UncheckedIOException(unreported);
+        }
+    }
+
+    /**
+     * The checkpoints in {@code directory}, oldest first.
+     */
+    private static List<Path> list(Path directory) throws IOException {
+        List<Path> checkpoints = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (name.substring(PREFIX.length(), name.length() - SUFFIX.length()).matches("[0-9]+")) {
+                    checkpoints.add(path);
+                }
+            }
+        }
+        Collections.sort(checkpoints, (left, right) -> Long.compare(stepOf(left), stepOf(right)));
+        return checkpoints;
+    }
+
+}
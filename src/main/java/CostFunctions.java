@@ -0,0 +1,141 @@
+/**
+ * The built-in {@link MatrixMathPack.CostFunction}s, each of which computes its
+ * output delta and its cost together in one pass of the math pack.
+ * <p>
+ * <p>{@link #squaredError()} is the default, and the only one that needs f'(z) of
+ * the output layer.  The cross-entropy costs pair with an output whose derivative
+ * cancels against the cost's, so their delta is simply {@code output - target}
+ * and the forward pass skips recording the output layer's derivatives.
+ *
+ * @author rgettys
+ */
+public final class CostFunctions {
+
+    @SuppressWarnings("rawtypes")
+    private static final MatrixMathPack.CostFunction SQUARED_ERROR = new SquaredError();
+    @SuppressWarnings("rawtypes")
+    private static final MatrixMathPack.CostFunction BINARY_CROSS_ENTROPY = new BinaryCrossEntropy();
+    @SuppressWarnings("rawtypes")
+    private static final MatrixMathPack.CostFunction SOFTMAX_CROSS_ENTROPY = new SoftmaxCrossEntropy();
+
+    private CostFunctions() {
+    }
+
+    /**
+     * Half the squared error summed over the batch, on an output layer with the math pack's
+     * activation; for regression.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T, U> MatrixMathPack.CostFunction<T, U> squaredError() {
+        return SQUARED_ERROR;
+    }
+
+    /**
+     * Binary cross-entropy for independent yes/no outputs with targets in [0, 1].  The output
+     * layer keeps the math pack's activation, which must be the logistic sigmoid: the delta is
+     * taken to be {@code output - target}, as it only is for a sigmoid.  A pack can be built from
+     * any function, so this isn't checked, and any other activation trains on a wrong gradient.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T, U> MatrixMathPack.CostFunction<T, U> binaryCrossEntropy() {
+        return BINARY_CROSS_ENTROPY;
+    }
+
+    /**
+     * Cross-entropy over a softmax output layer, which replaces the math pack's activation
+     * there, for picking one of several classes; every target row should sum to one, as a
+     * one-hot row does.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T, U> MatrixMathPack.CostFunction<T, U> softmaxCrossEntropy() {
+        return SOFTMAX_CROSS_ENTROPY;
+    }
+
+    /**
+     * @return whether {@code costFunction}'s output layer is the math pack's activation, as every
+     * hidden layer is, so that any of the pack's activating multiplies can compute it
+     */
+    static boolean usesPackActivation(MatrixMathPack.CostFunction<?, ?> costFunction) {
+        return costFunction == SQUARED_ERROR || costFunction == BINARY_CROSS_ENTROPY;
+    }
+
+    /**
+     * @return whether {@code costFunction}'s output layer is a softmax over the layer's weighted
+     * input and bias
+     */
+    static boolean usesSoftmaxOutput(MatrixMathPack.CostFunction<?, ?> costFunction) {
+        return costFunction == SOFTMAX_CROSS_ENTROPY;
+    }
+
+    /**
+     * The output layer through the math pack's activation, as every hidden layer goes.
+     */
+    private static <T, U> void activate(MatrixMathPack<T, U> mathPack, T[] input, T[] weights, T bias, T[] output,
+                                        T[] activationDerivatives) {
+        if (bias == null) {
+            mathPack.dotProductActivateInto(input, weights, output, activationDerivatives);
+        } else {
+            mathPack.dotProductAddActivateInto(input, weights, bias, output, activationDerivatives);
+        }
+    }
+
+    private static final class SquaredError<T, U> implements MatrixMathPack.CostFunction<T, U> {
+
+        @Override
+        public void activateOutput(MatrixMathPack<T, U> mathPack, T[] input, T[] weights, T bias, T[] output, T[] activationDerivatives) {
+            activate(mathPack, input, weights, bias, output, activationDerivatives);
+        }
+
+        @Override
+        public double outputDeltaInto(MatrixMathPack<T, U> mathPack, T[] output, T[] activationDerivatives, T[] target, T[] delta) {
+            return mathPack.squaredErrorDeltaInto(output, target, activationDerivatives, delta);
+        }
+
+        @Override
+        public String toString() {
+            return "squared error";
+        }
+
+    }
+
+    private static final class BinaryCrossEntropy<T, U> implements MatrixMathPack.CostFunction<T, U> {
+
+        @Override
+        public void activateOutput(MatrixMathPack<T, U> mathPack, T[] input, T[] weights, T bias, T[] output, T[] activationDerivatives) {
+            activate(mathPack, input, weights, bias, output, null);
+        }
+
+        @Override
+        public double outputDeltaInto(MatrixMathPack<T, U> mathPack, T[] output, T[] activationDerivatives, T[] target, T[] delta) {
+            return mathPack.binaryCrossEntropyDeltaInto(output, target, delta);
+        }
+
+        @Override
+        public String toString() {
+            return "binary cross-entropy";
+        }
+
+    }
+
+    private static final class SoftmaxCrossEntropy<T, U> implements MatrixMathPack.CostFunction<T, U> {
+
+        @Override
+        public void activateOutput(MatrixMathPack<T, U> mathPack, T[] input, T[] weights, T bias, T[] output, T[] activationDerivatives) {
+            mathPack.dotProductInto(input, weights, output);
+            // Training keeps the log-softmax where the derivatives would go, for the cost.
+            mathPack.softmaxInPlace(output, bias, activationDerivatives);
+        }
+
+        @Override
+        public double outputDeltaInto(MatrixMathPack<T, U> mathPack, T[] output, T[] activationDerivatives, T[] target, T[] delta) {
+            return mathPack.softmaxCrossEntropyDeltaInto(output, activationDerivatives, target, delta);
+        }
+
+        @Override
+        public String toString() {
+            return "softmax cross-entropy";
+        }
+
+    }
+
+}
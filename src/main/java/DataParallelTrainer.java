@@ -0,0 +1,150 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Synchronous data-parallel training for a {@link Network}: each batch is cut
+ * into contiguous shards of rows, every shard's gradient is computed on a
+ * {@link ForkJoinPool} worker in a workspace of its own, and the shard gradients
+ * are summed pairwise up the same fork/join tree that computed them, so the
+ * reduction takes log2(shards) rounds with no locks or shared accumulators.
+ * The weights are then updated once, exactly as {@link Network#train} would with
+ * the whole batch; only the order of the floating point sums differs.
+ * <p>
+ * <p>All buffers are sized once for a fixed batch size, so steps allocate nothing
+ * beyond the fork/join tasks.  A trainer is not thread-safe; it uses its pool
+ * for itself.
+ *
+ * @author rgettys
+ */
+public class DataParallelTrainer<T, U> {
+
+    private final Network<T, U> network;
+    private final MatrixMathPack<T, U> mathPack;
+    private final ForkJoinPool pool;
+    private final int batchSize;
+    private final Shard<T>[] shards;
+
+    public DataParallelTrainer(Network<T, U> network, int batchSize) {
+        this(network, batchSize, ForkJoinPool.commonPool().getParallelism(), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param shardCount how many pieces to cut each batch into, usually the parallelism
+     *                   of {@code pool}; capped at {@code batchSize}
+     */
+    @SuppressWarnings("unchecked")
+    public DataParallelTrainer(Network<T, U> network, int batchSize, int shardCount, ForkJoinPool pool) {
+        ArgUtil.checkNull(network, "network");
+        ArgUtil.checkNull(pool, "pool");
+        if (batchSize < 1 || shardCount < 1) {
+            throw new IllegalArgumentException("batchSize and shardCount arguments must be positive.");
+        }
+        this.network = network;
+        this.mathPack = network.getMathPack();
+        this.pool = pool;
+        this.batchSize = batchSize;
+        shardCount = Math.min(shardCount, batchSize);
+        @SuppressWarnings("unchecked")
+        Shard<T>[] shards = (Shard<T>[]) new Shard<?>[shardCount];
+        int rowFrom = 0;
+        for (int i = 0; i < shardCount; ++i) {
+            // Spread the remainder one row each over the first shards.
+            int rows = batchSize / shardCount + (i < batchSize % shardCount ? 1 : 0);
+            shards[i] = new Shard<>(network, rowFrom, rows);
+            rowFrom += rows;
+        }
+        this.shards = shards;
+    }
+
+    /**
+     * Runs one gradient descent step over the whole batch.
+     *
+     * @return the cost of the whole batch before the step, the sum of the shards' costs
+     */
+    public double train(T[] input, T[] exampleResult) {
+        ArgUtil.checkNull(input, "input");
+        ArgUtil.checkNull(exampleResult, "exampleResult");
+        if (input.length != batchSize || exampleResult.length != batchSize) {
+            throw new IllegalArgumentException("Trainer is sized for batches of " + batchSize + ", got " + input.length + ".");
+        }
+        if (shards.length == 1) {
+            network.computeGradient(input, exampleResult, shards[0].workspace);
+        } else {
+            pool.invoke(new ShardTask(input, exampleResult, 0, shards.length));
+        }
+        TrainingWorkspace<T> sum = shards[0].workspace;
+        network.applyGradient(sum);
+        return sum.cost;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Computes the gradients and costs of shards {@code [shardFrom, shardTo)} and leaves their
+     * sums in the first of them.
+     */
+    private final class ShardTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final T[] input;
+        private final T[] exampleResult;
+        private final int shardFrom, shardTo;
+
+        ShardTask(T[] input, T[] exampleResult, int shardFrom, int shardTo) {
+            this.input = input;
+            this.exampleResult = exampleResult;
+            this.shardFrom = shardFrom;
+            this.shardTo = shardTo;
+        }
+
+        @Override
+        protected void compute() {
+            if (shardTo - shardFrom == 1) {
+                Shard<T> shard = shards[shardFrom];
+                System.arraycopy(input, shard.rowFrom, shard.input, 0, shard.input.length);
+                System.arraycopy(exampleResult, shard.rowFrom, shard.exampleResult, 0, shard.exampleResult.length);
+                network.computeGradient(shard.input, shard.exampleResult, shard.workspace);
+                return;
+            }
+            int middle = (shardFrom + shardTo) >>> 1;
+            invokeAll(new ShardTask(input, exampleResult, shardFrom, middle), new ShardTask(input, exampleResult, middle, shardTo));
+            TrainingWorkspace<T> sum = shards[shardFrom].workspace;
+            TrainingWorkspace<T> addend = shards[middle].workspace;
+            mathPack.addInPlace(sum.djdw, addend.djdw);
+            if (sum.djdb != null) {
+                mathPack.addInPlace(sum.djdb, addend.djdb);
+            }
+            sum.cost += addend.cost;
+        }
+
+    }
+
+    private static final class Shard<T> {
+
+        final int rowFrom;
+        // This shard's rows of the current batch; the row objects are shared, not copied.
+        final T[] input;
+        final T[] exampleResult;
+        final TrainingWorkspace<T> workspace;
+
+        <U> Shard(Network<T, U> network, int rowFrom, int rows) {
+            MatrixMathPack<T, U> mathPack = network.getMathPack();
+            this.rowFrom = rowFrom;
+            // Only used for its runtime row type; the slots are refilled every step.
+            T[] template = mathPack.allocate(1, 1);
+            input = Arrays.copyOf(template, rows);
+            exampleResult = Arrays.copyOf(template, rows);
+            workspace = network.createWorkspace(rows);
+        }
+
+    }
+
+}
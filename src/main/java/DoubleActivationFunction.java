@@ -0,0 +1,26 @@
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * A {@code double} activation function that knows its own derivative.  Besides
+ * the usual {@code f'(z)}, it can compute the derivative from the activation
+ * {@code a = f(z)} the forward pass already produced, which for the common
+ * functions is a multiply or two instead of another {@link Math#exp}.
+ *
+ * @author rgettys
+ * @see DoubleActivations
+ */
+public interface DoubleActivationFunction extends DoubleUnaryOperator {
+
+    /**
+     * @param input the pre-activation {@code z}
+     * @return {@code f'(z)}
+     */
+    double derivative(double input);
+
+    /**
+     * @param output the activation {@code f(z)}
+     * @return {@code f'(z)}
+     */
+    double derivativeFromOutput(double output);
+
+}
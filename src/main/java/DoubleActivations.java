@@ -0,0 +1,81 @@
+/**
+ * The stock {@link DoubleActivationFunction}s.
+ *
+ * @author rgettys
+ */
+public enum DoubleActivations implements DoubleActivationFunction {
+
+    IDENTITY {
+        @Override
+        public double applyAsDouble(double input) {
+            return input;
+        }
+
+        @Override
+        public double derivative(double input) {
+            return 1.0;
+        }
+
+        @Override
+        public double derivativeFromOutput(double output) {
+            return 1.0;
+        }
+    },
+
+    SIGMOID {
+        @Override
+        public double applyAsDouble(double input) {
+            if (input >= 0.0) {
+                return 1.0 / (1.0 + Math.exp(-input));
+            } else {
+                double epowx = Math.exp(input);
+                return epowx / (1.0 + epowx);
+            }
+        }
+
+        @Override
+        public double derivative(double input) {
+            return derivativeFromOutput(applyAsDouble(input));
+        }
+
+        @Override
+        public double derivativeFromOutput(double output) {
+            return output * (1.0 - output);
+        }
+    },
+
+    TANH {
+        @Override
+        public double applyAsDouble(double input) {
+            return Math.tanh(input);
+        }
+
+        @Override
+        public double derivative(double input) {
+            return derivativeFromOutput(applyAsDouble(input));
+        }
+
+        @Override
+        public double derivativeFromOutput(double output) {
+            return 1.0 - output * output;
+        }
+    },
+
+    RELU {
+        @Override
+        public double applyAsDouble(double input) {
+            return input > 0.0 ? input : 0.0;
+        }
+
+        @Override
+        public double derivative(double input) {
+            return input > 0.0 ? 1.0 : 0.0;
+        }
+
+        @Override
+        public double derivativeFromOutput(double output) {
+            return output > 0.0 ? 1.0 : 0.0;
+        }
+    }
+
+}
@@ -0,0 +1,38 @@
+/**
+ * A random-access set of training examples, each an input row and the row the
+ * network should produce for it.  {@link MiniBatchTrainer} asks for examples one
+ * row at a time, in whatever order its shuffle produced, and copies them into a
+ * batch it reuses, so a source never has to hold its whole dataset in memory.
+ * {@link HogwildTrainer} reads from several threads at once, so implementations
+ * should allow concurrent calls to {@link #read}.
+ *
+ * @param <T> the row type of the {@link MatrixMathPack} being trained with
+ * @author rgettys
+ */
+public interface ExampleSource<T> {
+
+    /**
+     * @return the number of examples, which are indexed {@code 0} to {@code size() - 1}
+     */
+    int size();
+
+    /**
+     * @return the number of elements in every input row
+     */
+    int inputWidth();
+
+    /**
+     * @return the number of elements in every expected output row
+     */
+    int outputWidth();
+
+    /**
+     * Copies example {@code index} into the given rows, overwriting them.
+     *
+     * @param index    the example to read
+     * @param input    receives the input, {@link #inputWidth()} elements
+     * @param expected receives the expected output, {@link #outputWidth()} elements
+     */
+    void read(int index, T input, T expected);
+
+}
@@ -0,0 +1,239 @@
+/**
+ * Fast versions of the stock activations, and a few more, as
+ * {@link BulkFloatActivationFunction}s so the {@code float} math packs run each
+ * one as a tight loop of its own.  None of them branch or call into double
+ * precision.  The {@code exp}-based ones stay within about 1e-7 of the exact
+ * functions, as close as the {@link FloatActivations} they replace; the
+ * {@code _TABLE} ones trade accuracy (about 2e-6) for fewer multiplies.  Use
+ * {@link FloatLookupActivation} directly for a table of a different precision.
+ *
+ * @author rgettys
+ */
+public enum FastFloatActivations implements BulkFloatActivationFunction {
+
+    SIGMOID {
+        @Override
+        public float applyAsFloat(float input) {
+            return FastFloatMath.sigmoid(input);
+        }
+
+        @Override
+        public float derivativeFromOutput(float output) {
+            return output * (1.0f - output);
+        }
+
+        @Override
+        public void apply(float[] input, int inputOffset, float[] output, int outputOffset, int length) {
+            for (int i = 0; i < length; ++i) {
+                output[outputOffset + i] = FastFloatMath.sigmoid(input[inputOffset + i]);
+            }
+        }
+
+        @Override
+        public void applyWithDerivative(float[] values, int offset, float[] derivatives, int derivativeOffset, int length) {
+            for (int i = 0; i < length; ++i) {
+                float output = FastFloatMath.sigmoid(values[offset + i]);
+                values[offset + i] = output;
+                derivatives[derivativeOffset + i] = output * (1.0f - output);
+            }
+        }
+    },
+
+    TANH {
+        @Override
+        public float applyAsFloat(float input) {
+            return FastFloatMath.tanh(input);
+        }
+
+        @Override
+        public float derivativeFromOutput(float output) {
+            return 1.0f - output * output;
+        }
+
+        @Override
+        public void apply(float[] input, int inputOffset, float[] output, int outputOffset, int length) {
+            for (int i = 0; i < length; ++i) {
+                output[outputOffset + i] = FastFloatMath.tanh(input[inputOffset + i]);
+            }
+        }
+
+        @Override
+        public void applyWithDerivative(float[] values, int offset, float[] derivatives, int derivativeOffset, int length) {
+            for (int i = 0; i < length; ++i) {
+                float output = FastFloatMath.tanh(values[offset + i]);
+                values[offset + i] = output;
+                derivatives[derivativeOffset + i] = 1.0f - output * output;
+            }
+        }
+    },
+
+    /**
+     * {@link FloatLookupActivation#sigmoid} at the default resolution.
+     */
+    SIGMOID_TABLE {
+        private final FloatLookupActivation table = FloatLookupActivation.sigmoid(FloatLookupActivation.DEFAULT_POINTS_PER_UNIT);
+
+        @Override
+        public float applyAsFloat(float input) {
+            return table.applyAsFloat(input);
+        }
+
+        @Override
+        public float derivativeFromOutput(float output) {
+            return output * (1.0f - output);
+        }
+
+        @Override
+        public void apply(float[] input, int inputOffset, float[] output, int outputOffset, int length) {
+            table.apply(input, inputOffset, output, outputOffset, length);
+        }
+
+        @Override
+        public void applyWithDerivative(float[] values, int offset, float[] derivatives, int derivativeOffset, int length) {
+            table.apply(values, offset, values, offset, length);
+            for (int i = 0; i < length; ++i) {
+                float output = values[offset + i];
+                derivatives[derivativeOffset + i] = output * (1.0f - output);
+            }
+        }
+    },
+
+    /**
+     * {@link FloatLookupActivation#tanh} at the default resolution.
+     */
+    TANH_TABLE {
+        private final FloatLookupActivation table = FloatLookupActivation.tanh(FloatLookupActivation.DEFAULT_POINTS_PER_UNIT);
+
+        @Override
+        public float applyAsFloat(float input) {
+            return table.applyAsFloat(input);
+        }
+
+        @Override
+        public float derivativeFromOutput(float output) {
+            return 1.0f - output * output;
+        }
+
+        @Override
+        public void apply(float[] input, int inputOffset, float[] output, int outputOffset, int length) {
+            table.apply(input, inputOffset, output, outputOffset, length);
+        }
+
+        @Override
+        public void applyWithDerivative(float[] values, int offset, float[] derivatives, int derivativeOffset, int length) {
+            table.apply(values, offset, values, offset, length);
+            for (int i = 0; i < length; ++i) {
+                float output = values[offset + i];
+                derivatives[derivativeOffset + i] = 1.0f - output * output;
+            }
+        }
+    },
+
+    RELU {
+        @Override
+        public float applyAsFloat(float input) {
+            return Math.max(input, 0.0f);
+        }
+
+        @Override
+        public float derivativeFromOutput(float output) {
+            return output > 0.0f ? 1.0f : 0.0f;
+        }
+
+        @Override
+        public void apply(float[] input, int inputOffset, float[] output, int outputOffset, int length) {
+            for (int i = 0; i < length; ++i) {
+                output[outputOffset + i] = Math.max(input[inputOffset + i], 0.0f);
+            }
+        }
+
+        @Override
+        public void applyWithDerivative(float[] values, int offset, float[] derivatives, int derivativeOffset, int length) {
+            for (int i = 0; i < length; ++i) {
+                float output = Math.max(values[offset + i], 0.0f);
+                values[offset + i] = output;
+                derivatives[derivativeOffset + i] = output > 0.0f ? 1.0f : 0.0f;
+            }
+        }
+    },
+
+    /**
+     * x for positive x, {@value #LEAKY_RELU_SLOPE} x otherwise, so units never stop learning
+     * altogether.
+     */
+    LEAKY_RELU {
+        @Override
+        public float applyAsFloat(float input) {
+            // max(x, a x) is the leaky ReLU for any slope a below 1.
+            return Math.max(input, LEAKY_RELU_SLOPE * input);
+        }
+
+        @Override
+        public float derivativeFromOutput(float output) {
+            return output > 0.0f ? 1.0f : LEAKY_RELU_SLOPE;
+        }
+
+        @Override
+        public void apply(float[] input, int inputOffset, float[] output, int outputOffset, int length) {
+            for (int i = 0; i < length; ++i) {
+                float x = input[inputOffset + i];
+                output[outputOffset + i] = Math.max(x, LEAKY_RELU_SLOPE * x);
+            }
+        }
+
+        @Override
+        public void applyWithDerivative(float[] values, int offset, float[] derivatives, int derivativeOffset, int length) {
+            for (int i = 0; i < length; ++i) {
+                float x = values[offset + i];
+                float output = Math.max(x, LEAKY_RELU_SLOPE * x);
+                values[offset + i] = output;
+                derivatives[derivativeOffset + i] = output > 0.0f ? 1.0f : LEAKY_RELU_SLOPE;
+            }
+        }
+    },
+
+    /**
+     * log(1 + e^x), a smooth ReLU whose derivative is the sigmoid.
+     */
+    SOFTPLUS {
+        @Override
+        public float applyAsFloat(float input) {
+            return FastFloatMath.softplus(input);
+        }
+
+        @Override
+        public float derivative(float input) {
+            return FastFloatMath.sigmoid(input);
+        }
+
+        @Override
+        public float derivativeFromOutput(float output) {
+            // sigmoid(x) = 1 - e^-softplus(x).
+            return 1.0f - FastFloatMath.exp(-output);
+        }
+
+        @Override
+        public void apply(float[] input, int inputOffset, float[] output, int outputOffset, int length) {
+            for (int i = 0; i < length; ++i) {
+                output[outputOffset + i] = FastFloatMath.softplus(input[inputOffset + i]);
+            }
+        }
+
+        @Override
+        public void applyWithDerivative(float[] values, int offset, float[] derivatives, int derivativeOffset, int length) {
+            for (int i = 0; i < length; ++i) {
+                float output = FastFloatMath.softplus(values[offset + i]);
+                values[offset + i] = output;
+                derivatives[derivativeOffset + i] = 1.0f - FastFloatMath.exp(-output);
+            }
+        }
+    };
+
+    public static final float LEAKY_RELU_SLOPE = 0.01f;
+
+    @Override
+    public float derivative(float input) {
+        return derivativeFromOutput(applyAsFloat(input));
+    }
+
+}
@@ -0,0 +1,68 @@
+/**
+ * Scalar, branch-free {@code float} approximations for {@link FastFloatActivations}.
+ * {@code exp} is the same reduction as {@link VectorMath}'s: x = n ln2 + r,
+ * |r| <= ln2 / 2, Cephes' polynomial for e^r and 2^n built straight into the
+ * exponent bits, with inputs clamped to where the result is a normal number.
+ * Its relative error is within a few ulp of {@link Math#exp}, without the
+ * cost of a call into double precision.
+ *
+ * @author rgettys
+ */
+final class FastFloatMath {
+
+    private static final float EXP_MIN = -87.0f;
+    private static final float EXP_MAX = 88.0f;
+    private static final float LOG2E = 1.44269504088896341f;
+    private static final float LN2_HI = 0.693359375f;
+    private static final float LN2_LO = -2.12194440e-4f;
+    // Adding and subtracting 1.5 * 2^23 rounds to the nearest integer.
+    private static final float ROUNDING_MAGIC = 12582912.0f;
+
+    private FastFloatMath() {
+    }
+
+    static float exp(float x) {
+        x = Math.max(EXP_MIN, Math.min(EXP_MAX, x));
+        float shifted = x * LOG2E + ROUNDING_MAGIC;
+        int n = Float.floatToRawIntBits(shifted) - Float.floatToRawIntBits(ROUNDING_MAGIC);
+        float k = shifted - ROUNDING_MAGIC;
+        float r = x - k * LN2_HI - k * LN2_LO;
+        float p = 1.9875691500E-4f * r + 1.3981999507E-3f;
+        p = p * r + 8.3334519073E-3f;
+        p = p * r + 4.1665795894E-2f;
+        p = p * r + 1.6666665459E-1f;
+        p = p * r + 5.0000001201E-1f;
+        p = p * (r * r) + r + 1.0f;
+        return p * Float.intBitsToFloat((n + 127) << 23);
+    }
+
+    static float sigmoid(float x) {
+        return 1.0f / (1.0f + exp(-x));
+    }
+
+    static float tanh(float x) {
+        // Odd, so work on -|x| where e^-2|x| can't overflow, and put the sign back.
+        float e = exp(-2.0f * Math.abs(x));
+        return Math.copySign((1.0f - e) / (1.0f + e), x);
+    }
+
+    /**
+     * log(1 + t) for t in [0, 1], as 2 atanh(s) with s = t / (2 + t) <= 1/3, whose
+     * series converges fast enough that terms to s^11 leave an error under 1e-7.
+     */
+    static float log1pUnit(float t) {
+        float s = t / (2.0f + t);
+        float s2 = s * s;
+        float p = s2 * (1.0f / 11.0f) + 1.0f / 9.0f;
+        p = p * s2 + 1.0f / 7.0f;
+        p = p * s2 + 1.0f / 5.0f;
+        p = p * s2 + 1.0f / 3.0f;
+        return 2.0f * s * (p * s2 + 1.0f);
+    }
+
+    static float softplus(float x) {
+        // log(1 + e^x) = max(x, 0) + log(1 + e^-|x|), which never overflows.
+        return Math.max(x, 0.0f) + log1pUnit(exp(-Math.abs(x)));
+    }
+
+}
@@ -0,0 +1,133 @@
+import java.util.Arrays;
+
+/**
+ * A row-major block of {@code float}s living inside a single flat array.  The
+ * element at ({@code row}, {@code column}) is stored at
+ * {@code data[offset + row * stride + column]}.
+ * <p>
+ * <p>{@link FlatFloatMatrixMathPack} uses this as its row type: a matrix is a
+ * {@code FlatFloatMatrix[]} of single-row views which all share one backing
+ * array and carry the stride between consecutive rows, so the pack can recover
+ * the whole block from the first row and run its loops straight over
+ * {@link #getData()}.  Use {@link #allocate(int, int)}, {@link #wrap} or
+ * {@link #copyOf(float[][])} to build matrices that honour that layout.
+ *
+ * @author rgettys
+ */
+public final class FlatFloatMatrix {
+
+    final float[] data;
+    final int offset;
+    final int rows;
+    final int columns;
+    final int stride;
+
+    public FlatFloatMatrix(float[] data, int offset, int rows, int columns, int stride) {
+        ArgUtil.checkNull(data, "data");
+        if (rows < 0 || columns < 0 || stride < columns || offset < 0) {
+            throw new IllegalArgumentException("Invalid layout: offset " + offset + ", " + rows + "x" + columns + ", stride " + stride + ".");
+        }
+        if (rows > 0 && offset + (rows - 1) * stride + columns > data.length) {
+            throw new IllegalArgumentException("Layout runs past the end of the backing array of length " + data.length + ".");
+        }
+        this.data = data;
+        this.offset = offset;
+        this.rows = rows;
+        this.columns = columns;
+        this.stride = stride;
+    }
+
+    /**
+     * Allocates a new zeroed, densely packed matrix.
+     *
+     * @return the single-row views of the new matrix
+     */
+    public static FlatFloatMatrix[] allocate(int rows, int columns) {
+        return wrap(new float[rows * columns], 0, rows, columns, columns);
+    }
+
+    /**
+     * Splits the given region of {@code data} into single-row views without copying it.
+     */
+    public static FlatFloatMatrix[] wrap(float[] data, int offset, int rows, int columns, int stride) {
+        return new FlatFloatMatrix(data, offset, rows, columns, stride).rowViews();
+    }
+
+    /**
+     * Copies a jagged matrix into a new densely packed one.
+     */
+    public static FlatFloatMatrix[] copyOf(float[][] input) {
+        int rows = input.length;
+        int columns = rows == 0 ? 0 : input[0].length;
+        float[] data = new float[rows * columns];
+        for (int i = 0; i < rows; ++i) {
+            System.arraycopy(input[i], 0, data, i * columns, columns);
+        }
+        return wrap(data, 0, rows, columns, columns);
+    }
+
+    /**
+     * Copies a matrix of row views back out into a jagged matrix, mostly for printing.
+     */
+    public static float[][] toArray(FlatFloatMatrix[] matrix) {
+        float[][] result = new float[matrix.length][];
+        for (int i = 0; i < matrix.length; ++i) {
+            FlatFloatMatrix row = matrix[i];
+            result[i] = Arrays.copyOfRange(row.data, row.offset, row.offset + row.columns);
+        }
+        return result;
+    }
+
+    public FlatFloatMatrix[] rowViews() {
+        FlatFloatMatrix[] result = new FlatFloatMatrix[rows];
+        for (int i = 0; i < rows; ++i) {
+            result[i] = new FlatFloatMatrix(data, offset + i * stride, 1, columns, stride);
+        }
+        return result;
+    }
+
+    public float get(int row, int column) {
+        return data[offset + row * stride + column];
+    }
+
+    public void set(int row, int column, float value) {
+        data[offset + row * stride + column] = value;
+    }
+
+    public float[] getData() {
+        return data;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    @Override
+    public String toString() {
+        if (rows == 1) {
+            return Arrays.toString(Arrays.copyOfRange(data, offset, offset + columns));
+        }
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < rows; ++i) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            int rowStart = offset + i * stride;
+            builder.append(Arrays.toString(Arrays.copyOfRange(data, rowStart, rowStart + columns)));
+        }
+        return builder.append(']').toString();
+    }
+
+}
@@ -0,0 +1,915 @@
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A {@link MatrixMathPack} over {@link FlatFloatMatrix} row views.  Every matrix
+ * lives in one row-major {@code float[]}, so the loops below walk that array
+ * linearly instead of chasing a pointer per row the way
+ * {@link JavaFloatMatrixMathPack} does.  Results are always allocated densely
+ * packed (stride == columns).
+ *
+ * @author rgettys
+ */
+public class FlatFloatMatrixMathPack implements SparseInputMathPack<FlatFloatMatrix, FloatUnaryOperator> {
+
+    private static final int TRANSPOSE_BLOCK_SIZE = 32;
+
+    // Below this many multiply-adds, packing costs more than the blocked kernel saves.
+    private static final long BLOCKED_GEMM_THRESHOLD = 32 * 32 * 32;
+
+    private final FloatUnaryOperator activationFunction, activationFunctionDerivative;
+    // f'(z) as a function of f(z), or null when the activation was given as two bare operators.
+    private final FloatUnaryOperator activationFunctionOutputDerivative;
+    private final boolean useBlockedGemm;
+
+    public FlatFloatMatrixMathPack() {
+        this(input -> input, input -> input);
+    }
+
+    public FlatFloatMatrixMathPack(FloatUnaryOperator activationFunction, FloatUnaryOperator activationFunctionDerivative) {
+        this(activationFunction, activationFunctionDerivative, false);
+    }
+
+    /**
+     * @param useBlockedGemm whether {@link #dotProduct} should go through the cache-blocked
+     *                       {@link FloatGemm} kernel instead of the plain i-k-j loop
+     */
+    public FlatFloatMatrixMathPack(FloatUnaryOperator activationFunction, FloatUnaryOperator activationFunctionDerivative, boolean useBlockedGemm) {
+        this(activationFunction, activationFunctionDerivative, null, useBlockedGemm);
+    }
+
+    public FlatFloatMatrixMathPack(FloatActivationFunction activation) {
+        this(activation, false);
+    }
+
+    /**
+     * Uses {@code activation} both ways round: {@link FloatActivationFunction#derivative} for
+     * {@link #activatePrime}, and {@link FloatActivationFunction#derivativeFromOutput} wherever the
+     * activation has just been computed anyway, as in {@link #dotProductActivateInto}.
+     */
+    public FlatFloatMatrixMathPack(FloatActivationFunction activation, boolean useBlockedGemm) {
+        this(activation, activation::derivative, activation::derivativeFromOutput, useBlockedGemm);
+    }
+
+    protected FlatFloatMatrixMathPack(FloatUnaryOperator activationFunction, FloatUnaryOperator activationFunctionDerivative,
+                                      FloatUnaryOperator activationFunctionOutputDerivative, boolean useBlockedGemm) {
+        this.activationFunction = activationFunction;
+        this.activationFunctionDerivative = activationFunctionDerivative;
+        this.activationFunctionOutputDerivative = activationFunctionOutputDerivative;
+        this.useBlockedGemm = useBlockedGemm;
+    }
+
+    @Override
+    public FlatFloatMatrix autoScaleInPlace(FlatFloatMatrix[] input) {
+        FlatFloatMatrix first = input[0];
+        float[] data = first.data;
+        int stride = first.stride;
+        int width = first.columns;
+        FlatFloatMatrix maxes = FlatFloatMatrix.allocate(1, width)[0];
+        float[] maxData = maxes.data;
+        for (int i = 0, rowStart = first.offset; i < input.length; ++i, rowStart += stride) {
+            for (int j = 0; j < width; ++j) {
+                maxData[j] = Math.max(maxData[j], data[rowStart + j]);
+            }
+        }
+        for (int i = 0, rowStart = first.offset; i < input.length; ++i, rowStart += stride) {
+            for (int j = 0; j < width; ++j) {
+                data[rowStart + j] /= maxData[j];
+            }
+        }
+        return maxes;
+    }
+
+    @Override
+    public void rescaleInPlace(FlatFloatMatrix[] input, FlatFloatMatrix scaleFactors) {
+        FlatFloatMatrix first = input[0];
+        float[] data = first.data;
+        int stride = first.stride;
+        float[] scaleData = scaleFactors.data;
+        int scaleOffset = scaleFactors.offset;
+        int width = scaleFactors.columns;
+        for (int i = 0, rowStart = first.offset; i < input.length; ++i, rowStart += stride) {
+            for (int j = 0; j < width; ++j) {
+                data[rowStart + j] *= scaleData[scaleOffset + j];
+            }
+        }
+    }
+
+    @Override
+    public FlatFloatMatrix[] rescale(FlatFloatMatrix[] input, FlatFloatMatrix scaleFactors) {
+        FlatFloatMatrix[] output = clone(input);
+        rescaleInPlace(output, scaleFactors);
+        return output;
+    }
+
+    @Override
+    public FlatFloatMatrix[] clone(FlatFloatMatrix[] input) {
+        FlatFloatMatrix first = input[0];
+        int height = input.length;
+        int width = first.columns;
+        float[] data = first.data;
+        int stride = first.stride;
+        float[] result = new float[height * width];
+        if (stride == width) {
+            System.arraycopy(data, first.offset, result, 0, height * width);
+        } else {
+            for (int i = 0, rowStart = first.offset; i < height; ++i, rowStart += stride) {
+                System.arraycopy(data, rowStart, result, i * width, width);
+            }
+        }
+        return FlatFloatMatrix.wrap(result, 0, height, width, width);
+    }
+
+    @Override
+    public void copyInto(FlatFloatMatrix[] source, FlatFloatMatrix[] destination) {
+        for (int i = 0; i < source.length; ++i) {
+            FlatFloatMatrix sourceRow = source[i];
+            FlatFloatMatrix destinationRow = destination[i];
+            System.arraycopy(sourceRow.data, sourceRow.offset, destinationRow.data, destinationRow.offset, sourceRow.columns);
+        }
+    }
+
+    @Override
+    public int copyIntoVector(FlatFloatMatrix[] matrix, double[] vector, int offset) {
+        for (FlatFloatMatrix row : matrix) {
+            for (int j = 0; j < row.columns; ++j) {
+                vector[offset++] = row.data[row.offset + j];
+            }
+        }
+        return offset;
+    }
+
+    @Override
+    public int copyFromVector(double[] vector, int offset, FlatFloatMatrix[] matrix) {
+        for (FlatFloatMatrix row : matrix) {
+            for (int j = 0; j < row.columns; ++j) {
+                row.data[row.offset + j] = (float) vector[offset++];
+            }
+        }
+        return offset;
+    }
+
+    @Override
+    public FlatFloatMatrix[] dotProduct(FlatFloatMatrix[] multiplicand, FlatFloatMatrix[] multiplier) {
+        FlatFloatMatrix[] product = allocate(multiplier[0].columns, multiplicand.length);
+        dotProductInto(multiplicand, multiplier, product);
+        return product;
+    }
+
+    @Override
+    public void dotProductInto(FlatFloatMatrix[] multiplicand, FlatFloatMatrix[] multiplier, FlatFloatMatrix[] product) {
+        FlatFloatMatrix left = multiplicand[0];
+        FlatFloatMatrix right = multiplier[0];
+        FlatFloatMatrix out = product[0];
+        int height = multiplicand.length;
+        int width = right.columns;
+        int dotProductSize = left.columns;
+        float[] leftData = left.data;
+        float[] rightData = right.data;
+        float[] productData = out.data;
+        int leftStride = left.stride;
+        int rightStride = right.stride;
+        int productStride = out.stride;
+        if (useBlockedGemm && (long) height * width * dotProductSize >= BLOCKED_GEMM_THRESHOLD) {
+            FloatGemm.forCurrentThread().multiply(height, width, dotProductSize,
+                    leftData, left.offset, leftStride, 1,
+                    rightData, right.offset, rightStride, 1,
+                    productData, out.offset, productStride, false);
+            return;
+        }
+        // i-k-j order: the innermost loop is a straight axpy over one row of the
+        // multiplier into one row of the product, which C2 will happily vectorize.
+        for (int i = 0; i < height; ++i) {
+            int leftRowStart = left.offset + i * leftStride;
+            int productRowStart = out.offset + i * productStride;
+            Arrays.fill(productData, productRowStart, productRowStart + width, 0.0f);
+            for (int j = 0, rightRowStart = right.offset; j < dotProductSize; ++j, rightRowStart += rightStride) {
+                float scalar = leftData[leftRowStart + j];
+                for (int k = 0; k < width; ++k) {
+                    productData[productRowStart + k] += scalar * rightData[rightRowStart + k];
+                }
+            }
+        }
+    }
+
+    @Override
+    public FlatFloatMatrix[] dotProductActivate(FlatFloatMatrix[] multiplicand, FlatFloatMatrix[] multiplier) {
+        FlatFloatMatrix[] output = allocate(multiplier[0].columns, multiplicand.length);
+        dotProductActivateInto(multiplicand, multiplier, output, null);
+        return output;
+    }
+
+    @Override
+    public void dotProductActivateInto(FlatFloatMatrix[] multiplicand, FlatFloatMatrix[] multiplier, FlatFloatMatrix[] output,
+                                       FlatFloatMatrix[] activationDerivatives) {
+        dotProductAddActivateInto(multiplicand, multiplier, null, output, activationDerivatives);
+    }
+
+    @Override
+    public void dotProductAddActivateInto(FlatFloatMatrix[] multiplicand, FlatFloatMatrix[] multiplier, FlatFloatMatrix bias,
+                                          FlatFloatMatrix[] output, FlatFloatMatrix[] activationDerivatives) {
+        FlatFloatMatrix left = multiplicand[0];
+        FlatFloatMatrix right = multiplier[0];
+        FlatFloatMatrix out = output[0];
+        FlatFloatMatrix derivatives = activationDerivatives == null ? null : activationDerivatives[0];
+        int height = multiplicand.length;
+        int width = right.columns;
+        int dotProductSize = left.columns;
+        float[] leftData = left.data;
+        float[] rightData = right.data;
+        float[] outputData = out.data;
+        if (useBlockedGemm && (long) height * width * dotProductSize >= BLOCKED_GEMM_THRESHOLD) {
+            FloatGemm.forCurrentThread().multiplyActivate(height, width, dotProductSize,
+                    leftData, left.offset, left.stride, 1,
+                    rightData, right.offset, right.stride, 1,
+                    outputData, out.offset, out.stride,
+                    derivatives == null ? null : derivatives.data,
+                    derivatives == null ? 0 : derivatives.offset,
+                    derivatives == null ? 0 : derivatives.stride,
+                    bias == null ? null : bias.data,
+                    bias == null ? 0 : bias.offset,
+                    activationFunction, epilogueDerivative(), activationFunctionOutputDerivative != null);
+            return;
+        }
+        for (int i = 0; i < height; ++i) {
+            int leftRowStart = left.offset + i * left.stride;
+            int outputRowStart = out.offset + i * out.stride;
+            clearRow(outputData, outputRowStart, bias, width);
+            for (int j = 0, rightRowStart = right.offset; j < dotProductSize; ++j, rightRowStart += right.stride) {
+                float scalar = leftData[leftRowStart + j];
+                for (int k = 0; k < width; ++k) {
+                    outputData[outputRowStart + k] += scalar * rightData[rightRowStart + k];
+                }
+            }
+            activateRow(outputData, outputRowStart, derivatives == null ? null : derivatives.data,
+                    derivatives == null ? 0 : derivatives.offset + i * derivatives.stride, width);
+        }
+    }
+
+    /**
+     * Starts a row of a product off at {@code bias}, or at zero when there is none, so the
+     * bias costs nothing beyond the copy that clearing the row would have cost anyway.
+     */
+    private static void clearRow(float[] outputData, int outputRowStart, FlatFloatMatrix bias, int width) {
+        if (bias == null) {
+            Arrays.fill(outputData, outputRowStart, outputRowStart + width, 0.0f);
+        } else {
+            System.arraycopy(bias.data, bias.offset, outputData, outputRowStart, width);
+        }
+    }
+
+    @Override
+    public void sumRowsInto(FlatFloatMatrix[] input, FlatFloatMatrix sums) {
+        FlatFloatMatrix in = input[0];
+        int width = sums.columns;
+        float[] inputData = in.data;
+        float[] sumData = sums.data;
+        Arrays.fill(sumData, sums.offset, sums.offset + width, 0.0f);
+        for (int i = 0; i < input.length; ++i) {
+            for (int k = 0, inputIndex = in.offset + i * in.stride; k < width; ++k) {
+                sumData[sums.offset + k] += inputData[inputIndex + k];
+            }
+        }
+    }
+
+    /**
+     * The epilogue of the fused multiplies: activates {@code width} entries of
+     * {@code outputData} in place, recording the derivative unless {@code derivativeData} is null.
+     */
+    private void activateRow(float[] outputData, int outputRowStart, float[] derivativeData, int derivativeRowStart, int width) {
+        if (activationFunction instanceof BulkFloatActivationFunction
+                && (derivativeData == null || activationFunctionOutputDerivative != null)) {
+            BulkFloatActivationFunction bulk = (BulkFloatActivationFunction) activationFunction;
+            if (derivativeData == null) {
+                bulk.apply(outputData, outputRowStart, outputData, outputRowStart, width);
+            } else {
+                bulk.applyWithDerivative(outputData, outputRowStart, derivativeData, derivativeRowStart, width);
+            }
+            return;
+        }
+        if (derivativeData != null && activationFunctionOutputDerivative == null) {
+            for (int k = 0; k < width; ++k) {
+                derivativeData[derivativeRowStart + k] = activationFunctionDerivative.applyAsFloat(outputData[outputRowStart + k]);
+            }
+        }
+        for (int k = outputRowStart, end = outputRowStart + width; k < end; ++k) {
+            outputData[k] = activationFunction.applyAsFloat(outputData[k]);
+        }
+        if (derivativeData != null && activationFunctionOutputDerivative != null) {
+            for (int k = 0; k < width; ++k) {
+                derivativeData[derivativeRowStart + k] = activationFunctionOutputDerivative.applyAsFloat(outputData[outputRowStart + k]);
+            }
+        }
+    }
+
+    @Override
+    public void sparseDotProductActivateInto(SparseFloatMatrix multiplicand, FlatFloatMatrix[] multiplier, FlatFloatMatrix bias,
+                                             FlatFloatMatrix[] output, FlatFloatMatrix[] activationDerivatives) {
+        FlatFloatMatrix right = multiplier[0];
+        FlatFloatMatrix out = output[0];
+        FlatFloatMatrix derivatives = activationDerivatives == null ? null : activationDerivatives[0];
+        int width = right.columns;
+        float[] rightData = right.data;
+        float[] outputData = out.data;
+        int[] columnIndices = multiplicand.columnIndices;
+        float[] values = multiplicand.values;
+        for (int i = 0; i < multiplicand.rows; ++i) {
+            int outputRowStart = out.offset + i * out.stride;
+            clearRow(outputData, outputRowStart, bias, width);
+            for (int entry = multiplicand.rowStarts[i]; entry < multiplicand.rowStarts[i + 1]; ++entry) {
+                float scalar = values[entry];
+                int rightRowStart = right.offset + columnIndices[entry] * right.stride;
+                for (int k = 0; k < width; ++k) {
+                    outputData[outputRowStart + k] += scalar * rightData[rightRowStart + k];
+                }
+            }
+            activateRow(outputData, outputRowStart, derivatives == null ? null : derivatives.data,
+                    derivatives == null ? 0 : derivatives.offset + i * derivatives.stride, width);
+        }
+    }
+
+    @Override
+    public void subtractSparseTransposeDotProduct(SparseFloatMatrix multiplicand, FlatFloatMatrix[] deltas, FloatUnaryOperator learningRateScaler,
+                                                  FlatFloatMatrix[] weights, SparseGradientBuffer buffer) {
+        FlatFloatMatrix delta = deltas[0];
+        FlatFloatMatrix weight = weights[0];
+        int width = delta.columns;
+        float[] deltaData = delta.data;
+        float[] weightData = weight.data;
+        buffer.load(multiplicand, width);
+        long[] entries = buffer.entriesByColumn;
+        int[] entryRows = buffer.entryRows;
+        int entryCount = buffer.entryCount;
+        float[] values = multiplicand.values;
+        float[] gradientRow = buffer.gradientRow;
+        for (int start = 0; start < entryCount; ) {
+            int column = (int) (entries[start] >>> 32);
+            Arrays.fill(gradientRow, 0, width, 0.0f);
+            int end = start;
+            for (; end < entryCount && (int) (entries[end] >>> 32) == column; ++end) {
+                int entry = (int) entries[end];
+                float scalar = values[entry];
+                int deltaRowStart = delta.offset + entryRows[entry] * delta.stride;
+                for (int k = 0; k < width; ++k) {
+                    gradientRow[k] += scalar * deltaData[deltaRowStart + k];
+                }
+            }
+            int weightRowStart = weight.offset + column * weight.stride;
+            for (int k = 0; k < width; ++k) {
+                weightData[weightRowStart + k] -= learningRateScaler.applyAsFloat(gradientRow[k]);
+            }
+            start = end;
+        }
+    }
+
+    @Override
+    public void sparseTransposeDotProductInto(SparseFloatMatrix multiplicand, FlatFloatMatrix[] deltas, FlatFloatMatrix[] product) {
+        FlatFloatMatrix delta = deltas[0];
+        FlatFloatMatrix out = product[0];
+        int width = delta.columns;
+        float[] deltaData = delta.data;
+        float[] productData = out.data;
+        for (int i = 0; i < product.length; ++i) {
+            int productRowStart = out.offset + i * out.stride;
+            Arrays.fill(productData, productRowStart, productRowStart + width, 0.0f);
+        }
+        int[] columnIndices = multiplicand.columnIndices;
+        float[] values = multiplicand.values;
+        for (int i = 0; i < multiplicand.rows; ++i) {
+            int deltaRowStart = delta.offset + i * delta.stride;
+            for (int entry = multiplicand.rowStarts[i]; entry < multiplicand.rowStarts[i + 1]; ++entry) {
+                float scalar = values[entry];
+                int productRowStart = out.offset + columnIndices[entry] * out.stride;
+                for (int k = 0; k < width; ++k) {
+                    productData[productRowStart + k] += scalar * deltaData[deltaRowStart + k];
+                }
+            }
+        }
+    }
+
+    private FloatUnaryOperator epilogueDerivative() {
+        return activationFunctionOutputDerivative != null ? activationFunctionOutputDerivative : activationFunctionDerivative;
+    }
+
+    @Override
+    public FlatFloatMatrix[] transposeDotProduct(FlatFloatMatrix[] multiplicand, FlatFloatMatrix[] multiplier) {
+        FlatFloatMatrix[] product = allocate(multiplier[0].columns, multiplicand[0].columns);
+        transposeDotProductInto(multiplicand, multiplier, product);
+        return product;
+    }
+
+    @Override
+    public void transposeDotProductInto(FlatFloatMatrix[] multiplicand, FlatFloatMatrix[] multiplier, FlatFloatMatrix[] product) {
+        FlatFloatMatrix left = multiplicand[0];
+        FlatFloatMatrix right = multiplier[0];
+        FlatFloatMatrix out = product[0];
+        int height = left.columns;
+        int width = right.columns;
+        int dotProductSize = multiplicand.length;
+        float[] leftData = left.data;
+        float[] rightData = right.data;
+        float[] productData = out.data;
+        if (useBlockedGemm && (long) height * width * dotProductSize >= BLOCKED_GEMM_THRESHOLD) {
+            FloatGemm.forCurrentThread().multiply(height, width, dotProductSize,
+                    leftData, left.offset, 1, left.stride,
+                    rightData, right.offset, right.stride, 1,
+                    productData, out.offset, out.stride, false);
+            return;
+        }
+        for (int i = 0; i < height; ++i) {
+            int productRowStart = out.offset + i * out.stride;
+            Arrays.fill(productData, productRowStart, productRowStart + width, 0.0f);
+        }
+        // Each row of the multiplicand contributes one rank-1 update, so both operands
+        // are still read row by row.
+        for (int j = 0; j < dotProductSize; ++j) {
+            int leftRowStart = left.offset + j * left.stride;
+            int rightRowStart = right.offset + j * right.stride;
+            for (int i = 0; i < height; ++i) {
+                float scalar = leftData[leftRowStart + i];
+                int productRowStart = out.offset + i * out.stride;
+                for (int k = 0; k < width; ++k) {
+                    productData[productRowStart + k] += scalar * rightData[rightRowStart + k];
+                }
+            }
+        }
+    }
+
+    @Override
+    public FlatFloatMatrix[] dotProductTranspose(FlatFloatMatrix[] multiplicand, FlatFloatMatrix[] multiplier) {
+        FlatFloatMatrix[] product = allocate(multiplier.length, multiplicand.length);
+        dotProductTransposeInto(multiplicand, multiplier, product);
+        return product;
+    }
+
+    @Override
+    public void dotProductTransposeInto(FlatFloatMatrix[] multiplicand, FlatFloatMatrix[] multiplier, FlatFloatMatrix[] product) {
+        FlatFloatMatrix left = multiplicand[0];
+        FlatFloatMatrix right = multiplier[0];
+        FlatFloatMatrix out = product[0];
+        int height = multiplicand.length;
+        int width = multiplier.length;
+        int dotProductSize = left.columns;
+        float[] leftData = left.data;
+        float[] rightData = right.data;
+        float[] productData = out.data;
+        if (useBlockedGemm && (long) height * width * dotProductSize >= BLOCKED_GEMM_THRESHOLD) {
+            FloatGemm.forCurrentThread().multiply(height, width, dotProductSize,
+                    leftData, left.offset, left.stride, 1,
+                    rightData, right.offset, 1, right.stride,
+                    productData, out.offset, out.stride, false);
+            return;
+        }
+        for (int i = 0; i < height; ++i) {
+            int leftRowStart = left.offset + i * left.stride;
+            int productRowStart = out.offset + i * out.stride;
+            for (int k = 0; k < width; ++k) {
+                int rightRowStart = right.offset + k * right.stride;
+                float sum = 0.0f;
+                for (int j = 0; j < dotProductSize; ++j) {
+                    sum += leftData[leftRowStart + j] * rightData[rightRowStart + j];
+                }
+                productData[productRowStart + k] = sum;
+            }
+        }
+    }
+
+    @Override
+    public FlatFloatMatrix[] hadamardProduct(FlatFloatMatrix[] multiplicand, FlatFloatMatrix[] multiplier) {
+        FlatFloatMatrix[] product = allocate(multiplicand[0].columns, multiplicand.length);
+        hadamardProductInto(multiplicand, multiplier, product);
+        return product;
+    }
+
+    @Override
+    public void hadamardProductInto(FlatFloatMatrix[] multiplicand, FlatFloatMatrix[] multiplier, FlatFloatMatrix[] product) {
+        FlatFloatMatrix left = multiplicand[0];
+        FlatFloatMatrix right = multiplier[0];
+        FlatFloatMatrix out = product[0];
+        int height = multiplicand.length;
+        int width = left.columns;
+        float[] leftData = left.data;
+        float[] rightData = right.data;
+        float[] productData = out.data;
+        for (int i = 0; i < height; ++i) {
+            int leftRowStart = left.offset + i * left.stride;
+            int rightRowStart = right.offset + i * right.stride;
+            int productRowStart = out.offset + i * out.stride;
+            for (int j = 0; j < width; ++j) {
+                productData[productRowStart + j] = leftData[leftRowStart + j] * rightData[rightRowStart + j];
+            }
+        }
+    }
+
+    @Override
+    public void optimizerStep(Optimizer optimizer, double stepSize, FlatFloatMatrix[] weights, FlatFloatMatrix[] gradient, FlatFloatMatrix[] firstMoment,
+                              FlatFloatMatrix[] secondMoment) {
+        FlatFloatMatrix w = weights[0];
+        FlatFloatMatrix g = gradient[0];
+        FlatFloatMatrix m = firstMoment == null ? null : firstMoment[0];
+        FlatFloatMatrix s = secondMoment == null ? null : secondMoment[0];
+        for (int i = 0; i < weights.length; ++i) {
+            OptimizerKernels.update(optimizer, (float) stepSize, w.data, w.offset + i * w.stride, g.data, g.offset + i * g.stride,
+                    m == null ? null : m.data, m == null ? 0 : m.offset + i * m.stride,
+                    s == null ? null : s.data, s == null ? 0 : s.offset + i * s.stride, w.columns);
+        }
+    }
+
+    @Override
+    public void scaledSubtractInPlace(FlatFloatMatrix[] weights, FlatFloatMatrix[] gradient, FloatUnaryOperator scaler) {
+        FlatFloatMatrix w = weights[0];
+        FlatFloatMatrix g = gradient[0];
+        float[] weightData = w.data;
+        float[] gradientData = g.data;
+        for (int i = 0; i < weights.length; ++i) {
+            int weightRowStart = w.offset + i * w.stride;
+            int gradientRowStart = g.offset + i * g.stride;
+            for (int j = 0; j < w.columns; ++j) {
+                weightData[weightRowStart + j] -= scaler.applyAsFloat(gradientData[gradientRowStart + j]);
+            }
+        }
+    }
+
+    @Override
+    public void subtractInPlace(FlatFloatMatrix[][] left, FlatFloatMatrix[][] right) {
+        for (int i = 0; i < left.length; ++i) {
+            FlatFloatMatrix leftFirst = left[i][0];
+            FlatFloatMatrix rightFirst = right[i][0];
+            float[] leftData = leftFirst.data;
+            float[] rightData = rightFirst.data;
+            int height = left[i].length;
+            int width = leftFirst.columns;
+            for (int j = 0; j < height; ++j) {
+                int leftRowStart = leftFirst.offset + j * leftFirst.stride;
+                int rightRowStart = rightFirst.offset + j * rightFirst.stride;
+                for (int k = 0; k < width; ++k) {
+                    leftData[leftRowStart + k] -= rightData[rightRowStart + k];
+                }
+            }
+        }
+    }
+
+    @Override
+    public void addInPlace(FlatFloatMatrix[][] left, FlatFloatMatrix[][] right) {
+        for (int i = 0; i < left.length; ++i) {
+            FlatFloatMatrix leftFirst = left[i][0];
+            FlatFloatMatrix rightFirst = right[i][0];
+            float[] leftData = leftFirst.data;
+            float[] rightData = rightFirst.data;
+            int height = left[i].length;
+            int width = leftFirst.columns;
+            for (int j = 0; j < height; ++j) {
+                int leftRowStart = leftFirst.offset + j * leftFirst.stride;
+                int rightRowStart = rightFirst.offset + j * rightFirst.stride;
+                for (int k = 0; k < width; ++k) {
+                    leftData[leftRowStart + k] += rightData[rightRowStart + k];
+                }
+            }
+        }
+    }
+
+    @Override
+    public FlatFloatMatrix[][] generateHigherDim(int size) {
+        return new FlatFloatMatrix[size][];
+    }
+
+    @Override
+    public FlatFloatMatrix[] allocate(int width, int height) {
+        return FlatFloatMatrix.allocate(height, width);
+    }
+
+    @Override
+    public int width(FlatFloatMatrix[] matrix) {
+        return matrix[0].columns;
+    }
+
+    @Override
+    public void activateInPlace(FlatFloatMatrix[] input) {
+        mutate(input, activationFunction);
+    }
+
+    @Override
+    public FlatFloatMatrix[] activate(FlatFloatMatrix[] input) {
+        return transform(input, activationFunction);
+    }
+
+    @Override
+    public void activateInto(FlatFloatMatrix[] input, FlatFloatMatrix[] output) {
+        transformInto(input, activationFunction, output);
+    }
+
+    @Override
+    public void activatePrimeInPlace(FlatFloatMatrix[] input) {
+        mutate(input, activationFunctionDerivative);
+    }
+
+    @Override
+    public FlatFloatMatrix[] activatePrime(FlatFloatMatrix[] input) {
+        return transform(input, activationFunctionDerivative);
+    }
+
+    @Override
+    public FlatFloatMatrix[] initRandom(int width, int height) {
+        float[] result = new float[height * width];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = ThreadLocalRandom.current().nextFloat();
+        }
+        return FlatFloatMatrix.wrap(result, 0, height, width, width);
+    }
+
+    @Override
+    public FlatFloatMatrix[] subtract(FlatFloatMatrix[] minuend, FlatFloatMatrix[] subtrahend) {
+        FlatFloatMatrix[] result = allocate(minuend[0].columns, minuend.length);
+        subtractInto(minuend, subtrahend, result);
+        return result;
+    }
+
+    @Override
+    public void subtractInto(FlatFloatMatrix[] minuend, FlatFloatMatrix[] subtrahend, FlatFloatMatrix[] result) {
+        FlatFloatMatrix left = minuend[0];
+        FlatFloatMatrix right = subtrahend[0];
+        FlatFloatMatrix out = result[0];
+        int height = minuend.length;
+        int width = left.columns;
+        float[] leftData = left.data;
+        float[] rightData = right.data;
+        float[] resultData = out.data;
+        for (int i = 0; i < height; ++i) {
+            int leftRowStart = left.offset + i * left.stride;
+            int rightRowStart = right.offset + i * right.stride;
+            int resultRowStart = out.offset + i * out.stride;
+            for (int j = 0; j < width; ++j) {
+                resultData[resultRowStart + j] = leftData[leftRowStart + j] - rightData[rightRowStart + j];
+            }
+        }
+    }
+
+    @Override
+    public FlatFloatMatrix[] transpose(FlatFloatMatrix[] input) {
+        FlatFloatMatrix[] result = allocate(input.length, input[0].columns);
+        transposeInto(input, result);
+        return result;
+    }
+
+    @Override
+    public void transposeInto(FlatFloatMatrix[] input, FlatFloatMatrix[] result) {
+        FlatFloatMatrix first = input[0];
+        FlatFloatMatrix out = result[0];
+        int width = input.length;
+        int height = first.columns;
+        float[] data = first.data;
+        float[] resultData = out.data;
+        int stride = first.stride;
+        int resultStride = out.stride;
+        // Walk the input in square tiles so both the reads and the strided writes
+        // stay within a handful of cache lines.
+        for (int ii = 0; ii < width; ii += TRANSPOSE_BLOCK_SIZE) {
+            int iEnd = Math.min(ii + TRANSPOSE_BLOCK_SIZE, width);
+            for (int jj = 0; jj < height; jj += TRANSPOSE_BLOCK_SIZE) {
+                int jEnd = Math.min(jj + TRANSPOSE_BLOCK_SIZE, height);
+                for (int i = ii; i < iEnd; ++i) {
+                    int rowStart = first.offset + i * stride;
+                    for (int j = jj; j < jEnd; ++j) {
+                        resultData[out.offset + j * resultStride + i] = data[rowStart + j];
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public FlatFloatMatrix squaredError(FlatFloatMatrix[] target, FlatFloatMatrix[] output) {
+        int height = target.length;
+        FlatFloatMatrix result = FlatFloatMatrix.allocate(1, height)[0];
+        float[] resultData = result.data;
+        for (int i = 0; i < height; ++i) {
+            FlatFloatMatrix targetRow = target[i];
+            FlatFloatMatrix outputRow = output[i];
+            float[] targetData = targetRow.data;
+            float[] outputData = outputRow.data;
+            int width = targetRow.columns;
+            float sum = 0.0f;
+            for (int j = 0; j < width; ++j) {
+                float diff = targetData[targetRow.offset + j] - outputData[outputRow.offset + j];
+                sum += 0.5f * diff * diff;
+            }
+            resultData[i] = sum;
+        }
+        return result;
+    }
+
+    @Override
+    public double totalSquaredError(FlatFloatMatrix[] target, FlatFloatMatrix[] output) {
+        double sum = 0.0;
+        for (int i = 0; i < target.length; ++i) {
+            FlatFloatMatrix targetRow = target[i];
+            FlatFloatMatrix outputRow = output[i];
+            float[] targetData = targetRow.data;
+            float[] outputData = outputRow.data;
+            for (int j = 0; j < targetRow.columns; ++j) {
+                double diff = targetData[targetRow.offset + j] - outputData[outputRow.offset + j];
+                sum += diff * diff;
+            }
+        }
+        return 0.5 * sum;
+    }
+
+    @Override
+    public double squaredErrorDeltaInto(FlatFloatMatrix[] output, FlatFloatMatrix[] target, FlatFloatMatrix[] activationDerivatives,
+                                        FlatFloatMatrix[] delta) {
+        double sum = 0.0;
+        for (int i = 0; i < output.length; ++i) {
+            FlatFloatMatrix outputRow = output[i];
+            FlatFloatMatrix targetRow = target[i];
+            FlatFloatMatrix derivativeRow = activationDerivatives[i];
+            FlatFloatMatrix deltaRow = delta[i];
+            for (int j = 0; j < outputRow.columns; ++j) {
+                float diff = outputRow.data[outputRow.offset + j] - targetRow.data[targetRow.offset + j];
+                deltaRow.data[deltaRow.offset + j] = diff * derivativeRow.data[derivativeRow.offset + j];
+                sum += (double) diff * diff;
+            }
+        }
+        return 0.5 * sum;
+    }
+
+    @Override
+    public double binaryCrossEntropyDeltaInto(FlatFloatMatrix[] output, FlatFloatMatrix[] target, FlatFloatMatrix[] delta) {
+        double sum = 0.0;
+        for (int i = 0; i < output.length; ++i) {
+            FlatFloatMatrix outputRow = output[i];
+            FlatFloatMatrix targetRow = target[i];
+            FlatFloatMatrix deltaRow = delta[i];
+            for (int j = 0; j < outputRow.columns; ++j) {
+                float a = outputRow.data[outputRow.offset + j];
+                float y = targetRow.data[targetRow.offset + j];
+                deltaRow.data[deltaRow.offset + j] = a - y;
+                if (y != 0.0f) {
+                    sum -= y * Math.log(Math.max(a, Float.MIN_NORMAL));
+                }
+                if (y != 1.0f) {
+                    sum -= (1.0f - y) * Math.log(Math.max(1.0f - a, Float.MIN_NORMAL));
+                }
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public void softmaxInPlace(FlatFloatMatrix[] logits, FlatFloatMatrix bias, FlatFloatMatrix[] logProbabilities) {
+        for (int i = 0; i < logits.length; ++i) {
+            FlatFloatMatrix row = logits[i];
+            FlatFloatMatrix logRow = logProbabilities == null ? null : logProbabilities[i];
+            float[] data = row.data;
+            int start = row.offset;
+            float max = Float.NEGATIVE_INFINITY;
+            for (int j = 0; j < row.columns; ++j) {
+                float z = bias == null ? data[start + j] : data[start + j] + bias.data[bias.offset + j];
+                data[start + j] = z;
+                max = Math.max(max, z);
+            }
+            float sum = 0.0f;
+            for (int j = 0; j < row.columns; ++j) {
+                float shifted = data[start + j] - max;
+                if (logRow != null) {
+                    logRow.data[logRow.offset + j] = shifted;
+                }
+                float e = (float) Math.exp(shifted);
+                data[start + j] = e;
+                sum += e;
+            }
+            float scale = 1.0f / sum;
+            float logSum = (float) Math.log(sum);
+            for (int j = 0; j < row.columns; ++j) {
+                data[start + j] *= scale;
+                if (logRow != null) {
+                    logRow.data[logRow.offset + j] -= logSum;
+                }
+            }
+        }
+    }
+
+    @Override
+    public double softmaxCrossEntropyDeltaInto(FlatFloatMatrix[] output, FlatFloatMatrix[] logProbabilities, FlatFloatMatrix[] target,
+                                               FlatFloatMatrix[] delta) {
+        double sum = 0.0;
+        for (int i = 0; i < output.length; ++i) {
+            FlatFloatMatrix outputRow = output[i];
+            FlatFloatMatrix logRow = logProbabilities[i];
+            FlatFloatMatrix targetRow = target[i];
+            FlatFloatMatrix deltaRow = delta[i];
+            for (int j = 0; j < outputRow.columns; ++j) {
+                float p = outputRow.data[outputRow.offset + j];
+                float y = targetRow.data[targetRow.offset + j];
+                deltaRow.data[deltaRow.offset + j] = p - y;
+                if (y != 0.0f) {
+                    sum -= (double) y * logRow.data[logRow.offset + j];
+                }
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public FlatFloatMatrix transform(FlatFloatMatrix input, FloatUnaryOperator f) {
+        int width = input.columns;
+        FlatFloatMatrix output = FlatFloatMatrix.allocate(1, width)[0];
+        float[] inputData = input.data;
+        float[] outputData = output.data;
+        if (f instanceof BulkFloatActivationFunction) {
+            ((BulkFloatActivationFunction) f).apply(inputData, input.offset, outputData, output.offset, width);
+            return output;
+        }
+        for (int j = 0; j < width; ++j) {
+            outputData[j] = f.applyAsFloat(inputData[input.offset + j]);
+        }
+        return output;
+    }
+
+    @Override
+    public void mutate(FlatFloatMatrix input, FloatUnaryOperator f) {
+        float[] data = input.data;
+        if (f instanceof BulkFloatActivationFunction) {
+            ((BulkFloatActivationFunction) f).apply(data, input.offset, data, input.offset, input.columns);
+            return;
+        }
+        for (int j = input.offset, end = input.offset + input.columns; j < end; ++j) {
+            data[j] = f.applyAsFloat(data[j]);
+        }
+    }
+
+    @Override
+    public FlatFloatMatrix[] transform(FlatFloatMatrix[] input, FloatUnaryOperator f) {
+        FlatFloatMatrix[] output = allocate(input[0].columns, input.length);
+        transformInto(input, f, output);
+        return output;
+    }
+
+    @Override
+    public void transformInto(FlatFloatMatrix[] input, FloatUnaryOperator f, FlatFloatMatrix[] output) {
+        FlatFloatMatrix first = input[0];
+        FlatFloatMatrix out = output[0];
+        float[] data = first.data;
+        float[] outputData = out.data;
+        int width = first.columns;
+        BulkFloatActivationFunction bulk = f instanceof BulkFloatActivationFunction ? (BulkFloatActivationFunction) f : null;
+        for (int i = 0; i < input.length; ++i) {
+            int rowStart = first.offset + i * first.stride;
+            int outputRowStart = out.offset + i * out.stride;
+            if (bulk != null) {
+                bulk.apply(data, rowStart, outputData, outputRowStart, width);
+                continue;
+            }
+            for (int j = 0; j < width; ++j) {
+                outputData[outputRowStart + j] = f.applyAsFloat(data[rowStart + j]);
+            }
+        }
+    }
+
+    @Override
+    public void mutate(FlatFloatMatrix[] input, FloatUnaryOperator f) {
+        FlatFloatMatrix first = input[0];
+        float[] data = first.data;
+        int width = first.columns;
+        int stride = first.stride;
+        if (f instanceof BulkFloatActivationFunction) {
+            BulkFloatActivationFunction bulk = (BulkFloatActivationFunction) f;
+            if (stride == width) {
+                bulk.apply(data, first.offset, data, first.offset, input.length * width);
+                return;
+            }
+            for (int i = 0, rowStart = first.offset; i < input.length; ++i, rowStart += stride) {
+                bulk.apply(data, rowStart, data, rowStart, width);
+            }
+            return;
+        }
+        if (stride == width) {
+            for (int j = first.offset, end = first.offset + input.length * width; j < end; ++j) {
+                data[j] = f.applyAsFloat(data[j]);
+            }
+            return;
+        }
+        for (int i = 0, rowStart = first.offset; i < input.length; ++i, rowStart += stride) {
+            for (int j = rowStart, end = rowStart + width; j < end; ++j) {
+                data[j] = f.applyAsFloat(data[j]);
+            }
+        }
+    }
+
+    @Override
+    public FlatFloatMatrix[][] transform(FlatFloatMatrix[][] input, FloatUnaryOperator f) {
+        int size = input.length;
+        FlatFloatMatrix[][] output = new FlatFloatMatrix[size][];
+        for (int i = 0; i < size; ++i) {
+            output[i] = transform(input[i], f);
+        }
+        return output;
+    }
+
+    @Override
+    public void mutate(FlatFloatMatrix[][] input, FloatUnaryOperator f) {
+        for (FlatFloatMatrix[] matrix : input) {
+            mutate(matrix, f);
+        }
+    }
+
+}
@@ -0,0 +1,24 @@
+/**
+ * A {@code float} activation function that knows its own derivative.  Besides
+ * the usual {@code f'(z)}, it can compute the derivative from the activation
+ * {@code a = f(z)} the forward pass already produced, which for the common
+ * functions is a multiply or two instead of another {@link Math#exp}.
+ *
+ * @author rgettys
+ * @see FloatActivations
+ */
+public interface FloatActivationFunction extends FloatUnaryOperator {
+
+    /**
+     * @param input the pre-activation {@code z}
+     * @return {@code f'(z)}
+     */
+    float derivative(float input);
+
+    /**
+     * @param output the activation {@code f(z)}
+     * @return {@code f'(z)}
+     */
+    float derivativeFromOutput(float output);
+
+}
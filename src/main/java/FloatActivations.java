@@ -0,0 +1,81 @@
+/**
+ * The stock {@link FloatActivationFunction}s.
+ *
+ * @author rgettys
+ */
+public enum FloatActivations implements FloatActivationFunction {
+
+    IDENTITY {
+        @Override
+        public float applyAsFloat(float input) {
+            return input;
+        }
+
+        @Override
+        public float derivative(float input) {
+            return 1.0f;
+        }
+
+        @Override
+        public float derivativeFromOutput(float output) {
+            return 1.0f;
+        }
+    },
+
+    SIGMOID {
+        @Override
+        public float applyAsFloat(float input) {
+            if (input >= 0.0f) {
+                return 1.0f / (1.0f + (float) Math.exp(-input));
+            } else {
+                float epowx = (float) Math.exp(input);
+                return epowx / (1.0f + epowx);
+            }
+        }
+
+        @Override
+        public float derivative(float input) {
+            return derivativeFromOutput(applyAsFloat(input));
+        }
+
+        @Override
+        public float derivativeFromOutput(float output) {
+            return output * (1.0f - output);
+        }
+    },
+
+    TANH {
+        @Override
+        public float applyAsFloat(float input) {
+            return (float) Math.tanh(input);
+        }
+
+        @Override
+        public float derivative(float input) {
+            return derivativeFromOutput(applyAsFloat(input));
+        }
+
+        @Override
+        public float derivativeFromOutput(float output) {
+            return 1.0f - output * output;
+        }
+    },
+
+    RELU {
+        @Override
+        public float applyAsFloat(float input) {
+            return input > 0.0f ? input : 0.0f;
+        }
+
+        @Override
+        public float derivative(float input) {
+            return input > 0.0f ? 1.0f : 0.0f;
+        }
+
+        @Override
+        public float derivativeFromOutput(float output) {
+            return output > 0.0f ? 1.0f : 0.0f;
+        }
+    }
+
+}
@@ -0,0 +1,44 @@
+/**
+ * An {@link ExampleSource} over a dataset that already sits in memory as a pair
+ * of jagged matrices.
+ *
+ * @author rgettys
+ */
+public class FloatArrayExampleSource implements ExampleSource<float[]> {
+
+    private final float[][] inputs;
+    private final float[][] expected;
+
+    public FloatArrayExampleSource(float[][] inputs, float[][] expected) {
+        ArgUtil.checkNull(inputs, "inputs");
+        ArgUtil.checkNull(expected, "expected");
+        if (inputs.length != expected.length || inputs.length == 0) {
+            throw new IllegalArgumentException("Need the same, non-zero number of inputs and expected outputs, got "
+                    + inputs.length + " and " + expected.length + ".");
+        }
+        this.inputs = inputs;
+        this.expected = expected;
+    }
+
+    @Override
+    public int size() {
+        return inputs.length;
+    }
+
+    @Override
+    public int inputWidth() {
+        return inputs[0].length;
+    }
+
+    @Override
+    public int outputWidth() {
+        return expected[0].length;
+    }
+
+    @Override
+    public void read(int index, float[] input, float[] expected) {
+        System.arraycopy(inputs[index], 0, input, 0, input.length);
+        System.arraycopy(this.expected[index], 0, expected, 0, expected.length);
+    }
+
+}
@@ -0,0 +1,126 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An {@link ExampleSource} that streams examples from a file instead of holding
+ * them in the heap.  The file is a plain sequence of fixed-size little-endian
+ * records, each {@code inputWidth} input floats followed by {@code outputWidth}
+ * expected floats; {@link #write} produces one.  Each reading thread gets a
+ * reused buffer of its own, so concurrent reads are safe.
+ *
+ * @author rgettys
+ */
+public class FloatFileExampleSource implements ExampleSource<float[]>, Closeable {
+
+    private final FileChannel channel;
+    private final int inputWidth;
+    private final int outputWidth;
+    private final int size;
+    private final ThreadLocal<ByteBuffer> records;
+
+    public FloatFileExampleSource(Path file, int inputWidth, int outputWidth) throws IOException {
+        ArgUtil.checkNull(file, "file");
+        if (inputWidth < 1 || outputWidth < 1) {
+            throw new IllegalArgumentException("inputWidth and outputWidth arguments must be positive.");
+        }
+        int recordBytes = (inputWidth + outputWidth) * Float.BYTES;
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        long fileSize = channel.size();
+        if (fileSize % recordBytes != 0 || fileSize / recordBytes > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IllegalArgumentException("File " + file + " of " + fileSize + " bytes is not a whole number of "
+                    + recordBytes + " byte records.");
+        }
+        this.inputWidth = inputWidth;
+        this.outputWidth = outputWidth;
+        this.size = (int) (fileSize / recordBytes);
+        this.records = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(recordBytes).order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    /**
+     * Writes {@code inputs} and {@code expected} in the format this class reads.  Every input row
+     * must be as wide as the first, and likewise every expected row.
+     */
+    public static void write(Path file, float[][] inputs, float[][] expected) throws IOException {
+        ArgUtil.checkNull(inputs, "inputs");
+        ArgUtil.checkNull(expected, "expected");
+        if (inputs.length != expected.length) {
+            throw new IllegalArgumentException("Got " + inputs.length + " inputs but " + expected.length + " expected outputs.");
+        }
+        // Records are fixed width, so a ragged row would shift every record after it.
+        for (int i = 1; i < inputs.length; ++i) {
+            if (inputs[i].length != inputs[0].length) {
+                throw new IllegalArgumentException("Input " + i + " has " + inputs[i].length + " values but input 0 has "
+                        + inputs[0].length + ".");
+            }
+            if (expected[i].length != expected[0].length) {
+                throw new IllegalArgumentException("Expected output " + i + " has " + expected[i].length
+                        + " values but expected output 0 has " + expected[0].length + ".");
+            }
+        }
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int i = 0; i < inputs.length; ++i) {
+                ByteBuffer buffer = ByteBuffer.allocate((inputs[i].length + expected[i].length) * Float.BYTES)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                buffer.asFloatBuffer().put(inputs[i]).put(expected[i]);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int inputWidth() {
+        return inputWidth;
+    }
+
+    @Override
+    public int outputWidth() {
+        return outputWidth;
+    }
+
+    @Override
+    public void read(int index, float[] input, float[] expected) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Example " + index + " of " + size + ".");
+        }
+        ByteBuffer record = records.get();
+        record.clear();
+        long position = (long) index * record.capacity();
+        try {
+            while (record.hasRemaining()) {
+                if (channel.read(record, position + record.position()) < 0) {
+                    throw new IOException("Unexpected end of file reading example " + index + ".");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        record.flip();
+        for (int i = 0; i < inputWidth; ++i) {
+            input[i] = record.getFloat();
+        }
+        for (int i = 0; i < outputWidth; ++i) {
+            expected[i] = record.getFloat();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
@@ -0,0 +1,410 @@
+import java.util.Arrays;
+
+/**
+ * Cache-blocked {@code float} matrix multiply, C = A*B (or C += A*B).
+ * <p>
+ * <p>The classic Goto/BLIS layering: the k dimension is cut into {@link #KC}
+ * deep slabs, B is packed one {@link #KC}x{@link #NC} panel at a time so it
+ * stays resident in L2/L3, A is packed one {@link #MC}x{@link #KC} block at a
+ * time so it stays resident in L2, and a {@link #MR}x{@link #NR} micro-kernel
+ * runs over the packed buffers keeping its accumulator tile in registers.
+ * Packing also takes care of transposed and jagged operands, so the kernels
+ * below only ever see unit-stride data.
+ * <p>
+ * <p>The {@code multiplyActivate} entry points add an epilogue: once the last
+ * k slab of a tile has been accumulated, an optional bias row is added and the
+ * activation (and optionally its derivative) is applied while the tile is
+ * still in registers/L1, instead of in separate passes over C.
+ * <p>
+ * <p>Instances own their packing buffers and are not thread-safe; use
+ * {@link #forCurrentThread()}.
+ *
+ * @author rgettys
+ */
+public final class FloatGemm {
+
+    static final int MR = 4;
+    static final int NR = 4;
+    static final int KC = 256;
+    static final int MC = 128;
+    static final int NC = 2048;
+
+    private static final ThreadLocal<FloatGemm> INSTANCES = ThreadLocal.withInitial(FloatGemm::new);
+
+    private final float[] packedA = new float[MC * KC];
+    private final float[] packedB = new float[KC * NC];
+    private final float[] tile = new float[MR * NR];
+
+    // Operands of the multiply in flight.  Either the jagged fields or the
+    // strided fields are in use, depending on which entry point was called.
+    private boolean jagged;
+    private float[][] jaggedA, jaggedB, jaggedC;
+    private boolean transposeA, transposeB;
+    private float[] flatA, flatB, flatC;
+    private int aOffset, aRowStride, aColumnStride;
+    private int bOffset, bRowStride, bColumnStride;
+    private int cOffset, cRowStride;
+    private int rowBase;
+    // Epilogue of the multiply in flight; activation == null means plain C = A*B.
+    private FloatUnaryOperator activation, activationDerivative;
+    private boolean derivativeFromOutput;
+    private float[] bias;
+    private int biasOffset;
+    private float[][] jaggedDerivatives;
+    private float[] flatDerivatives;
+    private int dOffset, dRowStride;
+
+    private FloatGemm() {
+    }
+
+    public static FloatGemm forCurrentThread() {
+        return INSTANCES.get();
+    }
+
+    /**
+     * Multiplies jagged matrices.  {@code op(A)} is {@code a} or its transpose and
+     * likewise for B; C must already be allocated to {@code op(A).rows x op(B).columns}.
+     */
+    public void multiply(float[][] a, boolean transposeA, float[][] b, boolean transposeB, float[][] c, boolean accumulate) {
+        multiply(a, transposeA, b, transposeB, c, accumulate, 0, c.length);
+    }
+
+    /**
+     * As {@link #multiply(float[][], boolean, float[][], boolean, float[][], boolean)}, but only
+     * produces rows {@code [rowFrom, rowTo)} of C.
+     */
+    public void multiply(float[][] a, boolean transposeA, float[][] b, boolean transposeB, float[][] c, boolean accumulate,
+                         int rowFrom, int rowTo) {
+        runJagged(a, transposeA, b, transposeB, c, accumulate, rowFrom, rowTo, null, null, null, null, false);
+    }
+
+    /**
+     * Overwrites rows {@code [rowFrom, rowTo)} of {@code c} with {@code activation(a . b + bias)} and,
+     * when {@code derivatives} is not null, the same rows of {@code derivatives} with the activation
+     * derivative, which is applied to the activation itself when {@code derivativeFromOutput} and to
+     * {@code a . b + bias} otherwise.  {@code bias}, a single row added to every row of the product,
+     * may be null.
+     */
+    public void multiplyActivate(float[][] a, float[][] b, float[] bias, float[][] c, float[][] derivatives,
+                                 FloatUnaryOperator activation, FloatUnaryOperator activationDerivative, boolean derivativeFromOutput,
+                                 int rowFrom, int rowTo) {
+        runJagged(a, false, b, false, c, false, rowFrom, rowTo, derivatives, bias, activation, activationDerivative, derivativeFromOutput);
+    }
+
+    private void runJagged(float[][] a, boolean transposeA, float[][] b, boolean transposeB, float[][] c, boolean accumulate,
+                           int rowFrom, int rowTo, float[][] derivatives, float[] bias,
+                           FloatUnaryOperator activation, FloatUnaryOperator activationDerivative, boolean derivativeFromOutput) {
+        int k = transposeA ? a.length : a[0].length;
+        int n = transposeB ? b.length : b[0].length;
+        this.jagged = true;
+        this.jaggedA = a;
+        this.jaggedB = b;
+        this.jaggedC = c;
+        this.jaggedDerivatives = derivatives;
+        this.transposeA = transposeA;
+        this.transposeB = transposeB;
+        this.rowBase = rowFrom;
+        this.bias = bias;
+        this.biasOffset = 0;
+        this.activation = activation;
+        this.activationDerivative = activationDerivative;
+        this.derivativeFromOutput = derivativeFromOutput;
+        try {
+            run(rowTo - rowFrom, n, k, accumulate);
+        } finally {
+            jaggedA = jaggedB = jaggedC = jaggedDerivatives = null;
+            this.bias = null;
+            this.activation = this.activationDerivative = null;
+        }
+    }
+
+    /**
+     * Multiplies strided matrices.  Element (i, j) of A is
+     * {@code a[aOffset + i * aRowStride + j * aColumnStride]}; swapping the two strides
+     * reads the transpose.  C is row-major with unit column stride.
+     */
+    public void multiply(int m, int n, int k,
+                         float[] a, int aOffset, int aRowStride, int aColumnStride,
+                         float[] b, int bOffset, int bRowStride, int bColumnStride,
+                         float[] c, int cOffset, int cRowStride, boolean accumulate) {
+        runFlat(m, n, k, a, aOffset, aRowStride, aColumnStride, b, bOffset, bRowStride, bColumnStride,
+                c, cOffset, cRowStride, accumulate, null, 0, 0, null, 0, null, null, false);
+    }
+
+    /**
+     * The strided counterpart of {@link #multiplyActivate(float[][], float[][], float[], float[][], float[][],
+     * FloatUnaryOperator, FloatUnaryOperator, boolean, int, int)}; {@code derivatives} and {@code bias}
+     * may be null.
+     */
+    public void multiplyActivate(int m, int n, int k,
+                                 float[] a, int aOffset, int aRowStride, int aColumnStride,
+                                 float[] b, int bOffset, int bRowStride, int bColumnStride,
+                                 float[] c, int cOffset, int cRowStride,
+                                 float[] derivatives, int dOffset, int dRowStride,
+                                 float[] bias, int biasOffset,
+                                 FloatUnaryOperator activation, FloatUnaryOperator activationDerivative, boolean derivativeFromOutput) {
+        runFlat(m, n, k, a, aOffset, aRowStride, aColumnStride, b, bOffset, bRowStride, bColumnStride,
+                c, cOffset, cRowStride, false, derivatives, dOffset, dRowStride, bias, biasOffset,
+                activation, activationDerivative, derivativeFromOutput);
+    }
+
+    private void runFlat(int m, int n, int k,
+                         float[] a, int aOffset, int aRowStride, int aColumnStride,
+                         float[] b, int bOffset, int bRowStride, int bColumnStride,
+                         float[] c, int cOffset, int cRowStride, boolean accumulate,
+                         float[] derivatives, int dOffset, int dRowStride, float[] bias, int biasOffset,
+                         FloatUnaryOperator activation, FloatUnaryOperator activationDerivative, boolean derivativeFromOutput) {
+        this.jagged = false;
+        this.flatA = a;
+        this.flatB = b;
+        this.flatC = c;
+        this.flatDerivatives = derivatives;
+        this.aOffset = aOffset;
+        this.aRowStride = aRowStride;
+        this.aColumnStride = aColumnStride;
+        this.bOffset = bOffset;
+        this.bRowStride = bRowStride;
+        this.bColumnStride = bColumnStride;
+        this.cOffset = cOffset;
+        this.cRowStride = cRowStride;
+        this.dOffset = dOffset;
+        this.dRowStride = dRowStride;
+        this.rowBase = 0;
+        this.bias = bias;
+        this.biasOffset = biasOffset;
+        this.activation = activation;
+        this.activationDerivative = activationDerivative;
+        this.derivativeFromOutput = derivativeFromOutput;
+        try {
+            run(m, n, k, accumulate);
+        } finally {
+            flatA = flatB = flatC = flatDerivatives = null;
+            this.bias = null;
+            this.activation = this.activationDerivative = null;
+        }
+    }
+
+    private void run(int m, int n, int k, boolean accumulate) {
+        if (k == 0) {
+            // Nothing to multiply, but C still needs clearing and the epilogue still applies.
+            // storeTile adds into the tile in place, so each one starts from a fresh zero.
+            for (int i = 0; i < m; i += MR) {
+                for (int j = 0; j < n; j += NR) {
+                    Arrays.fill(tile, 0.0f);
+                    storeTile(i, j, Math.min(MR, m - i), Math.min(NR, n - j), accumulate, true);
+                }
+            }
+            return;
+        }
+        for (int jc = 0; jc < n; jc += NC) {
+            int nc = Math.min(NC, n - jc);
+            for (int pc = 0; pc < k; pc += KC) {
+                int kc = Math.min(KC, k - pc);
+                packB(pc, jc, kc, nc);
+                boolean add = accumulate || pc > 0;
+                boolean last = pc + kc == k;
+                for (int ic = 0; ic < m; ic += MC) {
+                    int mc = Math.min(MC, m - ic);
+                    packA(ic, pc, mc, kc);
+                    macroKernel(ic, jc, mc, nc, kc, add, last);
+                }
+            }
+        }
+    }
+
+    private void macroKernel(int ic, int jc, int mc, int nc, int kc, boolean add, boolean last) {
+        for (int jr = 0; jr < nc; jr += NR) {
+            int nr = Math.min(NR, nc - jr);
+            int bPanel = jr * kc;
+            for (int ir = 0; ir < mc; ir += MR) {
+                int mr = Math.min(MR, mc - ir);
+                microKernel(ir * kc, bPanel, kc);
+                storeTile(ic + ir, jc + jr, mr, nr, add, last);
+            }
+        }
+    }
+
+    /**
+     * Multiplies an MR-row panel of packed A by an NR-column panel of packed B.
+     * The sixteen accumulators are plain locals so C2 can keep them in registers
+     * for the whole k loop.
+     */
+    private void microKernel(int aStart, int bStart, int kc) {
+        float[] pa = packedA;
+        float[] pb = packedB;
+        float c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+        float c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+        float c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+        float c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+        for (int p = 0, ai = aStart, bi = bStart; p < kc; ++p, ai += MR, bi += NR) {
+            float a0 = pa[ai], a1 = pa[ai + 1], a2 = pa[ai + 2], a3 = pa[ai + 3];
+            float b0 = pb[bi], b1 = pb[bi + 1], b2 = pb[bi + 2], b3 = pb[bi + 3];
+            c00 += a0 * b0;
+            c01 += a0 * b1;
+            c02 += a0 * b2;
+            c03 += a0 * b3;
+            c10 += a1 * b0;
+            c11 += a1 * b1;
+            c12 += a1 * b2;
+            c13 += a1 * b3;
+            c20 += a2 * b0;
+            c21 += a2 * b1;
+            c22 += a2 * b2;
+            c23 += a2 * b3;
+            c30 += a3 * b0;
+            c31 += a3 * b1;
+            c32 += a3 * b2;
+            c33 += a3 * b3;
+        }
+        float[] t = tile;
+        t[0] = c00;
+        t[1] = c01;
+        t[2] = c02;
+        t[3] = c03;
+        t[4] = c10;
+        t[5] = c11;
+        t[6] = c12;
+        t[7] = c13;
+        t[8] = c20;
+        t[9] = c21;
+        t[10] = c22;
+        t[11] = c23;
+        t[12] = c30;
+        t[13] = c31;
+        t[14] = c32;
+        t[15] = c33;
+    }
+
+    /**
+     * Writes the finished micro-tile to C, adding what is already there when {@code add}, and
+     * running the epilogue, bias first, when this was the {@code last} k slab.
+     */
+    private void storeTile(int row, int column, int mr, int nr, boolean add, boolean last) {
+        float[] t = tile;
+        boolean epilogue = last && activation != null;
+        for (int r = 0; r < mr; ++r) {
+            int tileRow = r * NR;
+            float[] cData;
+            int cStart;
+            float[] dData = null;
+            int dStart = column;
+            if (jagged) {
+                cData = jaggedC[rowBase + row + r];
+                cStart = column;
+                if (jaggedDerivatives != null) {
+                    dData = jaggedDerivatives[rowBase + row + r];
+                }
+            } else {
+                cData = flatC;
+                cStart = cOffset + (row + r) * cRowStride + column;
+                if (flatDerivatives != null) {
+                    dData = flatDerivatives;
+                    dStart = dOffset + (row + r) * dRowStride + column;
+                }
+            }
+            if (add) {
+                for (int j = 0; j < nr; ++j) {
+                    t[tileRow + j] += cData[cStart + j];
+                }
+            }
+            if (!epilogue) {
+                System.arraycopy(t, tileRow, cData, cStart, nr);
+                continue;
+            }
+            if (bias != null) {
+                for (int j = 0, b = biasOffset + column; j < nr; ++j) {
+                    t[tileRow + j] += bias[b + j];
+                }
+            }
+            if (activation instanceof BulkFloatActivationFunction && (dData == null || derivativeFromOutput)) {
+                System.arraycopy(t, tileRow, cData, cStart, nr);
+                BulkFloatActivationFunction bulk = (BulkFloatActivationFunction) activation;
+                if (dData == null) {
+                    bulk.apply(cData, cStart, cData, cStart, nr);
+                } else {
+                    bulk.applyWithDerivative(cData, cStart, dData, dStart, nr);
+                }
+                continue;
+            }
+            for (int j = 0; j < nr; ++j) {
+                float z = t[tileRow + j];
+                float activated = activation.applyAsFloat(z);
+                if (dData != null) {
+                    dData[dStart + j] = activationDerivative.applyAsFloat(derivativeFromOutput ? activated : z);
+                }
+                cData[cStart + j] = activated;
+            }
+        }
+    }
+
+    /**
+     * Packs rows {@code [ic, ic + mc)}, columns {@code [pc, pc + kc)} of op(A) into
+     * MR-row panels, k-major within each panel, zero-padding the ragged last panel.
+     */
+    private void packA(int ic, int pc, int mc, int kc) {
+        float[] packed = packedA;
+        for (int ir = 0; ir < mc; ir += MR) {
+            int panel = ir * kc;
+            for (int r = 0; r < MR; ++r) {
+                int row = ic + ir + r;
+                int index = panel + r;
+                if (ir + r >= mc) {
+                    for (int p = 0; p < kc; ++p, index += MR) {
+                        packed[index] = 0.0f;
+                    }
+                } else if (jagged && !transposeA) {
+                    float[] aRow = jaggedA[rowBase + row];
+                    for (int p = 0; p < kc; ++p, index += MR) {
+                        packed[index] = aRow[pc + p];
+                    }
+                } else if (jagged) {
+                    int column = rowBase + row;
+                    for (int p = 0; p < kc; ++p, index += MR) {
+                        packed[index] = jaggedA[pc + p][column];
+                    }
+                } else {
+                    int source = aOffset + row * aRowStride + pc * aColumnStride;
+                    for (int p = 0; p < kc; ++p, index += MR, source += aColumnStride) {
+                        packed[index] = flatA[source];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Packs rows {@code [pc, pc + kc)}, columns {@code [jc, jc + nc)} of op(B) into
+     * NR-column panels, k-major within each panel, zero-padding the ragged last panel.
+     */
+    private void packB(int pc, int jc, int kc, int nc) {
+        float[] packed = packedB;
+        for (int jr = 0; jr < nc; jr += NR) {
+            int panel = jr * kc;
+            int width = Math.min(NR, nc - jr);
+            for (int p = 0; p < kc; ++p) {
+                int index = panel + p * NR;
+                int row = pc + p;
+                int column = jc + jr;
+                if (jagged && !transposeB) {
+                    float[] bRow = jaggedB[row];
+                    for (int j = 0; j < width; ++j) {
+                        packed[index + j] = bRow[column + j];
+                    }
+                } else if (jagged) {
+                    for (int j = 0; j < width; ++j) {
+                        packed[index + j] = jaggedB[column + j][row];
+                    }
+                } else {
+                    int source = bOffset + row * bRowStride + column * bColumnStride;
+                    for (int j = 0; j < width; ++j, source += bColumnStride) {
+                        packed[index + j] = flatB[source];
+                    }
+                }
+                for (int j = width; j < NR; ++j) {
+                    packed[index + j] = 0.0f;
+                }
+            }
+        }
+    }
+
+}
@@ -68,4 +68,15 @@ public interface FloatUnaryOperator {
         return t -> t;
     }
 
+    /**
+     * Returns a unary operator that multiplies its input by {@code factor}, as used
+     * for the learning rate scaler of a {@link Network}.
+     *
+     * @param factor the factor to scale by
+     * @return a unary operator that multiplies its input by {@code factor}
+     */
+    static FloatUnaryOperator scaling(float factor) {
+        return t -> t * factor;
+    }
+
 }
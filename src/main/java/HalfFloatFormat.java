@@ -0,0 +1,114 @@
+/**
+ * The 16-bit floating point formats {@link HalfFloatNetwork} can store weights
+ * in.  Both convert with bit manipulation and round to nearest, ties to even.
+ *
+ * @author rgettys
+ */
+public enum HalfFloatFormat {
+
+    /**
+     * IEEE 754 binary16: 5 exponent bits and 10 fraction bits.  Three more decimal
+     * digits of precision than bfloat16, but anything past 65504 becomes infinite and
+     * anything under about 6e-8 becomes zero.
+     */
+    FLOAT16 {
+        @Override
+        public short encode(float value) {
+            int bits = Float.floatToRawIntBits(value);
+            int sign = (bits >>> 16) & 0x8000;
+            float magnitude = Math.abs(value);
+            if (magnitude != magnitude) {
+                return (short) (sign | 0x7e00);
+            }
+            if (magnitude >= 65520.0f) {
+                return (short) (sign | 0x7c00);
+            }
+            if (magnitude <= 0x1.0p-25f) {
+                return (short) sign;
+            }
+            int exponent = Math.getExponent(magnitude);
+            // Below the smallest normal half the implicit bit joins the fraction and is shifted out further.
+            int shift = 13;
+            int significand = bits & 0x007fffff;
+            if (exponent < -14) {
+                shift += -14 - exponent;
+                exponent = -15;
+                significand |= 0x00800000;
+            }
+            int half = significand >> shift;
+            int remainder = significand & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+            if (remainder > halfway || (remainder == halfway && (half & 1) != 0)) {
+                // A carry out of the fraction correctly bumps the exponent.
+                ++half;
+            }
+            return (short) (sign | (((exponent + 15) << 10) + half));
+        }
+
+        @Override
+        public float decode(short value) {
+            int sign = (value & 0x8000) << 16;
+            int magnitude = value & 0x7fff;
+            if (magnitude >= 0x7c00) {
+                return Float.intBitsToFloat(sign | 0x7f800000 | (magnitude & 0x03ff) << 13);
+            }
+            // Reading the bits as a float leaves the exponent 112 short of float's bias, which
+            // the multiply restores; half subnormals come out as float subnormals and scale exactly.
+            return Float.intBitsToFloat(sign | magnitude << 13) * 0x1.0p112f;
+        }
+
+        @Override
+        public void decode(short[] source, int offset, float[] destination, int length) {
+            for (int i = 0; i < length; ++i) {
+                destination[i] = decode(source[offset + i]);
+            }
+        }
+    },
+
+    /**
+     * The top half of an IEEE 754 binary32: the same range as {@code float} with 7
+     * fraction bits.
+     */
+    BFLOAT16 {
+        @Override
+        public short encode(float value) {
+            int bits = Float.floatToRawIntBits(value);
+            if (value != value) {
+                return (short) ((bits >>> 16) | 0x0040);
+            }
+            bits += 0x7fff + ((bits >>> 16) & 1);
+            return (short) (bits >>> 16);
+        }
+
+        @Override
+        public float decode(short value) {
+            return Float.intBitsToFloat(value << 16);
+        }
+
+        @Override
+        public void decode(short[] source, int offset, float[] destination, int length) {
+            for (int i = 0; i < length; ++i) {
+                destination[i] = Float.intBitsToFloat(source[offset + i] << 16);
+            }
+        }
+    };
+
+    public abstract short encode(float value);
+
+    public abstract float decode(short value);
+
+    /**
+     * Widens {@code length} values starting at {@code source[offset]} into the start of
+     * {@code destination}.
+     */
+    public abstract void decode(short[] source, int offset, float[] destination, int length);
+
+    public short[] encode(float[] values) {
+        short[] result = new short[values.length];
+        for (int i = 0; i < values.length; ++i) {
+            result[i] = encode(values[i]);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,241 @@
+/**
+ * A forward-only copy of a {@code float} network whose weights are stored in a
+ * 16-bit {@link HalfFloatFormat}, for serving a trained model in half the
+ * memory.  When the weights don't fit in cache, a batched forward pass spends
+ * most of its time streaming them from memory, so halving their size roughly
+ * halves that cost.
+ * <p>
+ * <p>Each layer is one row-major {@code short[]}.  The multiply widens one weight
+ * row at a time into a {@code float} scratch row and adds it into every output
+ * row of the batch, so each weight is read from memory and converted once per
+ * pass however large the batch is.  Activations, sums and biases stay in
+ * {@code float}, and each output is summed in the same order as
+ * {@link JavaFloatMatrixMathPack} does, starting from its bias, so the only
+ * difference from the float network is the rounding of the weights.  A network
+ * trained with {@link CostFunctions#softmaxCrossEntropy()} ends in a softmax in
+ * place of the activation, as it does in training.  Instances copy what they're
+ * built from and never change, so they're safe to share between threads.
+ *
+ * @author rgettys
+ */
+public final class HalfFloatNetwork {
+
+    private final HalfFloatFormat format;
+    private final FloatUnaryOperator activationFunction;
+    // Whether the output layer is a softmax rather than the activation.
+    private final boolean softmaxOutput;
+    private final short[][] weights;
+    // Null for a network without biases.
+    private final float[][] biases;
+    private final int[] rows;
+    private final int[] columns;
+    private final int maxColumns;
+
+    /**
+     * Converts the weights of {@code snapshot}, which must come from a network on a
+     * jagged {@code float[]} pack such as {@link JavaFloatMatrixMathPack}.
+     *
+     * @param activationFunction the activation the network was trained with
+     */
+    public HalfFloatNetwork(WeightSnapshot<float[]> snapshot, FloatUnaryOperator activationFunction, HalfFloatFormat format) {
+        this(snapshot, activationFunction, CostFunctions.squaredError(), format);
+    }
+
+    /**
+     * @param costFunction the cost function the network was trained with, which decides its
+     *                     output layer
+     */
+    public HalfFloatNetwork(WeightSnapshot<float[]> snapshot, FloatUnaryOperator activationFunction,
+                            MatrixMathPack.CostFunction<?, ?> costFunction, HalfFloatFormat format) {
+        this(checkSnapshot(snapshot).weights, snapshot.biasRows(), activationFunction, costFunction, format);
+    }
+
+    /**
+     * @param layers the weights of each layer, rows of inputs by columns of outputs, as
+     *               {@link ModelFile#readFloatLayers()} returns them
+     */
+    public HalfFloatNetwork(float[][][] layers, FloatUnaryOperator activationFunction, HalfFloatFormat format) {
+        this(layers, null, activationFunction, format);
+    }
+
+    /**
+     * @param biases each layer's bias row, as {@link ModelFile#readFloatBiases()} returns them,
+     *               or null for none
+     */
+    public HalfFloatNetwork(float[][][] layers, float[][] biases, FloatUnaryOperator activationFunction, HalfFloatFormat format) {
+        this(layers, biases, activationFunction, CostFunctions.squaredError(), format);
+    }
+
+    /**
+     * @param costFunction the cost function the network was trained with, as
+     *                     {@link ModelFile#getCostFunction()} returns it
+     */
+    public HalfFloatNetwork(float[][][] layers, float[][] biases, FloatUnaryOperator activationFunction,
+                            MatrixMathPack.CostFunction<?, ?> costFunction, HalfFloatFormat format) {
+        ArgUtil.checkNull(layers, "layers");
+        ArgUtil.checkNull(activationFunction, "activationFunction");
+        ArgUtil.checkNull(format, "format");
+        checkBiases(layers, biases);
+        this.format = format;
+        this.activationFunction = activationFunction;
+        this.softmaxOutput = isSoftmaxOutput(costFunction);
+        this.biases = copyBiases(biases);
+        weights = new short[layers.length][];
+        rows = new int[layers.length];
+        columns = new int[layers.length];
+        int widest = 0;
+        for (int l = 0; l < layers.length; ++l) {
+            float[][] layer = layers[l];
+            int layerColumns = layer[0].length;
+            short[] encoded = weights[l] = new short[layer.length * layerColumns];
+            for (int j = 0; j < layer.length; ++j) {
+                for (int k = 0; k < layerColumns; ++k) {
+                    encoded[j * layerColumns + k] = format.encode(layer[j][k]);
+                }
+            }
+            rows[l] = layer.length;
+            columns[l] = layerColumns;
+            widest = Math.max(widest, layerColumns);
+        }
+        maxColumns = widest;
+    }
+
+    private static WeightSnapshot<float[]> checkSnapshot(WeightSnapshot<float[]> snapshot) {
+        ArgUtil.checkNull(snapshot, "snapshot");
+        return snapshot;
+    }
+
+    /**
+     * @return whether a copy of a network trained with {@code costFunction} ends in a softmax
+     * @throws IllegalArgumentException if its output layer is neither a softmax nor the activation
+     */
+    static boolean isSoftmaxOutput(MatrixMathPack.CostFunction<?, ?> costFunction) {
+        ArgUtil.checkNull(costFunction, "costFunction");
+        if (CostFunctions.usesSoftmaxOutput(costFunction)) {
+            return true;
+        } else if (!CostFunctions.usesPackActivation(costFunction)) {
+            throw new IllegalArgumentException("Can't copy the output layer of a network trained with " + costFunction + ".");
+        }
+        return false;
+    }
+
+    /**
+     * @return a copy of each bias row, or null for none
+     */
+    static float[][] copyBiases(float[][] biases) {
+        if (biases == null) {
+            return null;
+        }
+        float[][] copy = new float[biases.length][];
+        for (int l = 0; l < biases.length; ++l) {
+            copy[l] = biases[l].clone();
+        }
+        return copy;
+    }
+
+    static void checkBiases(float[][][] layers, float[][] biases) {
+        if (biases == null) {
+            return;
+        }
+        if (biases.length != layers.length) {
+            throw new IllegalArgumentException("Got " + biases.length + " bias rows for " + layers.length + " layers.");
+        }
+        for (int l = 0; l < layers.length; ++l) {
+            if (biases[l].length != layers[l][0].length) {
+                throw new IllegalArgumentException("Layer " + l + " has " + layers[l][0].length + " outputs but "
+                        + biases[l].length + " biases.");
+            }
+        }
+    }
+
+    /**
+     * Runs a batch of input rows through the network.
+     *
+     * @return a new matrix holding one output row per input row
+     */
+    public float[][] forward(float[][] input) {
+        ArgUtil.checkNull(input, "input");
+        for (float[] row : input) {
+            if (row.length != rows[0]) {
+                throw new IllegalArgumentException("Input rows must have " + rows[0] + " columns, not " + row.length + ".");
+            }
+        }
+        float[] weightRow = new float[maxColumns];
+        float[][] activation = input;
+        for (int l = 0; l < weights.length; ++l) {
+            short[] layer = weights[l];
+            int layerColumns = columns[l];
+            float[][] output = new float[activation.length][layerColumns];
+            if (biases != null) {
+                for (float[] outputRow : output) {
+                    System.arraycopy(biases[l], 0, outputRow, 0, layerColumns);
+                }
+            }
+            for (int j = 0; j < rows[l]; ++j) {
+                format.decode(layer, j * layerColumns, weightRow, layerColumns);
+                for (int i = 0; i < activation.length; ++i) {
+                    float scalar = activation[i][j];
+                    float[] outputRow = output[i];
+                    for (int k = 0; k < layerColumns; ++k) {
+                        outputRow[k] += scalar * weightRow[k];
+                    }
+                }
+            }
+            boolean softmax = softmaxOutput && l == weights.length - 1;
+            for (float[] outputRow : output) {
+                if (softmax) {
+                    JavaFloatMatrixMathPack.softmaxRowInPlace(outputRow, null, null);
+                    continue;
+                }
+                for (int k = 0; k < layerColumns; ++k) {
+                    outputRow[k] = activationFunction.applyAsFloat(outputRow[k]);
+                }
+            }
+            activation = output;
+        }
+        return activation;
+    }
+
+    /**
+     * @return the weights of every layer widened back to {@code float}, as the network
+     * actually sees them
+     */
+    public float[][][] toFloatLayers() {
+        float[][][] result = new float[weights.length][][];
+        for (int l = 0; l < weights.length; ++l) {
+            float[][] layer = result[l] = new float[rows[l]][columns[l]];
+            for (int j = 0; j < rows[l]; ++j) {
+                format.decode(weights[l], j * columns[l], layer[j], columns[l]);
+            }
+        }
+        return result;
+    }
+
+    public HalfFloatFormat getFormat() {
+        return format;
+    }
+
+    public int getInputWidth() {
+        return rows[0];
+    }
+
+    public int getLayerCount() {
+        return weights.length;
+    }
+
+    public boolean hasBiases() {
+        return biases != null;
+    }
+
+    /**
+     * @return the memory the stored weights take up
+     */
+    public long getWeightBytes() {
+        long elements = 0;
+        for (short[] layer : weights) {
+            elements += layer.length;
+        }
+        return elements * Short.BYTES;
+    }
+
+}
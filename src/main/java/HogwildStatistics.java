@@ -0,0 +1,67 @@
+/**
+ * A snapshot of how a {@link HogwildTrainer} run is going.
+ * <p>
+ * <p>Staleness is counted in updates: an update whose gradient was computed
+ * while {@code s} other updates landed on the weights has staleness {@code s}.
+ * The loss is the network's cost function per example, taken from each worker's
+ * forward passes just before its own updates and smoothed over its recent batches.
+ *
+ * @author rgettys
+ */
+public final class HogwildStatistics {
+
+    private final long updates;
+    private final long examples;
+    private final double meanStaleness;
+    private final long maxStaleness;
+    private final double loss;
+    private final long elapsedNanos;
+
+    HogwildStatistics(long updates, long examples, double meanStaleness, long maxStaleness, double loss, long elapsedNanos) {
+        this.updates = updates;
+        this.examples = examples;
+        this.meanStaleness = meanStaleness;
+        this.maxStaleness = maxStaleness;
+        this.loss = loss;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getUpdates() {
+        return updates;
+    }
+
+    public long getExamples() {
+        return examples;
+    }
+
+    public double getMeanStaleness() {
+        return meanStaleness;
+    }
+
+    public long getMaxStaleness() {
+        return maxStaleness;
+    }
+
+    /**
+     * @return the recent training loss, averaged over the workers, or {@code NaN} before
+     * any update has landed
+     */
+    public double getLoss() {
+        return loss;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getUpdatesPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : updates * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d updates (%d examples, %.0f/s), staleness mean %.2f max %d, loss %.6g",
+                updates, examples, getUpdatesPerSecond(), meanStaleness, maxStaleness, loss);
+    }
+
+}
@@ -0,0 +1,198 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Asynchronous, lock-free stochastic gradient descent in the style of Hogwild!:
+ * several threads each sample their own mini-batches from an {@link ExampleSource},
+ * run the forward and backward passes against the shared weights of a
+ * {@link Network} and subtract their updates straight from them, with no locks
+ * and no coordination between threads.  Updates race, so a gradient may be
+ * computed from weights that other threads are halfway through changing and an
+ * occasional write may be lost; for large, sparse problems that noise costs far
+ * less than synchronizing every step would.  {@link Network#train} and
+ * {@link DataParallelTrainer} remain the deterministic, synchronous options.
+ * <p>
+ * <p>Progress is reported through {@link HogwildStatistics}, which can be polled
+ * from another thread while {@link #train} runs.  Nothing else may use the
+ * network while a run is in progress.
+ * <p>
+ * <p>A snapshot taken mid-run would share matrices that workers are still
+ * writing, so the network refuses to {@link Network#publish()} until
+ * {@link #train} returns, and a run refuses to start on a network with a
+ * {@link Network#setPublishInterval publish interval}.  Publish, or call
+ * {@link Checkpointer#checkpoint()}, between runs instead, for instance after
+ * each of a series of shorter {@link #train} calls.
+ *
+ * @author rgettys
+ */
+public class HogwildTrainer<T, U> {
+
+    // How much of each new batch loss goes into a worker's running loss.
+    private static final double LOSS_SMOOTHING = 0.05;
+
+    private final Network<T, U> network;
+    private final MatrixMathPack<T, U> mathPack;
+    private final ExampleSource<T> source;
+    private final Worker[] workers;
+
+    // Doubles as the weights' version number for measuring staleness.
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong maxStaleness = new AtomicLong();
+    private final LongAdder stalenessSum = new LongAdder();
+    private final LongAdder examples = new LongAdder();
+    private final AtomicLong tickets = new AtomicLong();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private volatile long startNanos;
+    private volatile long endNanos;
+    private volatile boolean running;
+
+    public HogwildTrainer(Network<T, U> network, ExampleSource<T> source, int batchSize) {
+        this(network, source, batchSize, Runtime.getRuntime().availableProcessors(), System.nanoTime());
+    }
+
+    /**
+     * @param batchSize the number of examples each worker samples per update
+     * @param threads   the number of worker threads
+     * @param seed      the seed the workers' example samplers are split from
+     */
+    public HogwildTrainer(Network<T, U> network, ExampleSource<T> source, int batchSize, int threads, long seed) {
+        ArgUtil.checkNull(network, "network");
+        ArgUtil.checkNull(source, "source");
+        if (batchSize < 1 || threads < 1) {
+            throw new IllegalArgumentException("batchSize and threads arguments must be positive.");
+        }
+        if (source.size() < 1) {
+            throw new IllegalArgumentException("source has no examples.");
+        }
+        this.network = network;
+        this.mathPack = network.getMathPack();
+        this.source = source;
+        SplittableRandom seeds = new SplittableRandom(seed);
+        @SuppressWarnings("unchecked")
+        Worker[] workers = (Worker[]) new HogwildTrainer<?, ?>.Worker[threads];
+        for (int i = 0; i < threads; ++i) {
+            workers[i] = new Worker(batchSize, seeds.split());
+        }
+        this.workers = workers;
+    }
+
+    /**
+     * Runs the workers until {@code updateCount} updates have been applied between them,
+     * and blocks until they have all stopped.
+     *
+     * @return the statistics of the finished run
+     * @throws IllegalStateException if the network has a publish interval or another Hogwild
+     *                               run is training it
+     */
+    public synchronized HogwildStatistics train(long updateCount) throws InterruptedException {
+        if (updateCount < 0) {
+            throw new IllegalArgumentException("updateCount argument must not be negative.");
+        }
+        updates.set(0);
+        maxStaleness.set(0);
+        stalenessSum.reset();
+        examples.reset();
+        tickets.set(0);
+        failure.set(null);
+        Thread[] threads = new Thread[workers.length];
+        for (int i = 0; i < workers.length; ++i) {
+            workers[i].loss = Double.NaN;
+            workers[i].updateCount = updateCount;
+            threads[i] = new Thread(workers[i], "hogwild-worker-" + i);
+        }
+        network.beginUnsynchronizedTraining();
+        startNanos = System.nanoTime();
+        running = true;
+        try {
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            // Makes the remaining workers stop after their current update.
+            failure.compareAndSet(null, e);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            throw e;
+        } finally {
+            endNanos = System.nanoTime();
+            running = false;
+            network.endUnsynchronizedTraining();
+        }
+        Throwable thrown = failure.get();
+        if (thrown instanceof RuntimeException) {
+            throw (RuntimeException) thrown;
+        } else if (thrown instanceof Error) {
+            throw (Error) thrown;
+        }
+        return getStatistics();
+    }
+
+    /**
+     * @return the statistics of the current run, or of the last one if none is running
+     */
+    public HogwildStatistics getStatistics() {
+        long applied = updates.get();
+        double lossSum = 0.0;
+        int reporting = 0;
+        for (Worker worker : workers) {
+            double loss = worker.loss;
+            if (!Double.isNaN(loss)) {
+                lossSum += loss;
+                ++reporting;
+            }
+        }
+        long elapsed = (running ? System.nanoTime() : endNanos) - startNanos;
+        return new HogwildStatistics(applied, examples.sum(), applied == 0 ? 0.0 : (double) stalenessSum.sum() / applied,
+                maxStaleness.get(), reporting == 0 ? Double.NaN : lossSum / reporting, Math.max(0, elapsed));
+    }
+
+    private final class Worker implements Runnable {
+
+        private final T[] inputs;
+        private final T[] expected;
+        private final TrainingWorkspace<T> workspace;
+        private final SplittableRandom random;
+        private long updateCount;
+        // Written only by this worker's thread, read by getStatistics().
+        volatile double loss = Double.NaN;
+
+        Worker(int batchSize, SplittableRandom random) {
+            this.inputs = mathPack.allocate(source.inputWidth(), batchSize);
+            this.expected = mathPack.allocate(source.outputWidth(), batchSize);
+            this.workspace = network.createWorkspace(batchSize);
+            this.random = random;
+        }
+
+        @Override
+        public void run() {
+            try {
+                int size = source.size();
+                while (failure.get() == null && tickets.getAndIncrement() < updateCount) {
+                    for (int row = 0; row < inputs.length; ++row) {
+                        source.read(random.nextInt(size), inputs[row], expected[row]);
+                    }
+                    long version = updates.get();
+                    network.computeGradient(inputs, expected, workspace);
+                    double batchLoss = workspace.getCost() / inputs.length;
+                    network.applyGradient(workspace);
+                    long staleness = updates.getAndIncrement() - version;
+                    stalenessSum.add(staleness);
+                    maxStaleness.accumulateAndGet(staleness, Math::max);
+                    examples.add(inputs.length);
+                    double previous = loss;
+                    loss = Double.isNaN(previous) ? batchLoss : previous + LOSS_SMOOTHING * (batchLoss - previous);
+                }
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,248 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves single-example {@link Network#forward} requests from any number of
+ * threads by coalescing them into micro-batches.  A dispatcher thread takes the
+ * oldest waiting request, keeps collecting until it has {@code maxBatchSize} of
+ * them or {@code maxWait} has passed since the first, copies their inputs into
+ * one batch matrix and runs a single batched forward pass, so a burst of tiny
+ * requests costs one multiply per layer instead of one each.
+ * <p>
+ * <p>Results come back as futures holding one output row each.  The batch is run
+ * into an output buffer the service keeps and each request's row copied out of it,
+ * into a row the caller passed to {@link #submit(Object, Object)} or else one
+ * allocated for the request, so a forward pass allocates nothing that outlives it.
+ * Every batch runs against the network's latest {@link WeightSnapshot}, held until
+ * the rows are copied out, so the network can keep training in the same process;
+ * use {@link Network#setPublishInterval} or {@link Network#publish()} to control how
+ * soon requests see new weights.
+ *
+ * @author rgettys
+ */
+public class InferenceService<T, U> implements AutoCloseable {
+
+    private final Network<T, U> network;
+    private final MatrixMathPack<T, U> mathPack;
+    private final int inputWidth;
+    private final int outputWidth;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final BlockingQueue<Request<T>> queue = new LinkedBlockingQueue<>();
+    // Queued by close() to stop the dispatcher once everything ahead of it has been served.
+    private final Request<T> shutdown = new Request<>(null, null);
+    private final Thread dispatcher;
+    // batches[n] holds the first n rows of a batch buffer, built on first use; outputs[n] likewise.
+    private final T[][] batches;
+    private final T[][] outputs;
+    // One-row wrappers so single requests can go through the matrix operations.
+    private final T[] requestScratch;
+    private final T[] rowScratch;
+    // Held while checking closed and queueing, so no request can land behind the shutdown marker.
+    private final Object queueLock = new Object();
+    private boolean closed;
+    private volatile long requestCount;
+    private volatile long batchCount;
+
+    /**
+     * @param maxBatchSize the most requests to run in one forward pass
+     * @param maxWait      how long the first request of a batch may wait for others to join it
+     */
+    public InferenceService(Network<T, U> network, int maxBatchSize, long maxWait, TimeUnit unit) {
+        ArgUtil.checkNull(network, "network");
+        ArgUtil.checkNull(unit, "unit");
+        if (maxBatchSize < 1 || maxWait < 0) {
+            throw new IllegalArgumentException("maxBatchSize argument must be positive and maxWait must not be negative.");
+        }
+        this.network = network;
+        this.mathPack = network.getMathPack();
+        this.inputWidth = network.getInputWidth();
+        this.outputWidth = network.getOutputWidth();
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+        T[] buffer = mathPack.allocate(inputWidth, maxBatchSize);
+        batches = mathPack.generateHigherDim(maxBatchSize + 1);
+        batches[maxBatchSize] = buffer;
+        outputs = mathPack.generateHigherDim(maxBatchSize + 1);
+        outputs[maxBatchSize] = mathPack.allocate(outputWidth, maxBatchSize);
+        requestScratch = Arrays.copyOf(buffer, 1);
+        rowScratch = Arrays.copyOf(buffer, 1);
+        dispatcher = new Thread(this::dispatch, "inference-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Queues one input row for the next batch, with a newly allocated output row.
+     *
+     * @return a future completed with the network's output row for {@code input}, or
+     * exceptionally if the input has the wrong width or the forward pass fails
+     * @throws IllegalStateException if the service has been closed
+     */
+    public CompletableFuture<T> submit(T input) {
+        return submit(input, null);
+    }
+
+    /**
+     * As {@link #submit(Object)}, writing the result into {@code output}, a row the caller owns
+     * and must leave alone until the future completes; null allocates one.
+     *
+     * @return a future completed with {@code output}, or exceptionally as for {@link #submit(Object)}
+     * or if {@code output} has the wrong width
+     */
+    public CompletableFuture<T> submit(T input, T output) {
+        ArgUtil.checkNull(input, "input");
+        Request<T> request = new Request<>(input, output);
+        synchronized (queueLock) {
+            if (closed) {
+                throw new IllegalStateException("InferenceService is closed.");
+            }
+            queue.add(request);
+        }
+        return request.result;
+    }
+
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    public long getBatchCount() {
+        return batchCount;
+    }
+
+    /**
+     * Stops accepting requests, serves the ones already queued and waits for the
+     * dispatcher to finish.  If the calling thread is interrupted while it waits, this
+     * returns early with the thread's interrupt flag set, and the dispatcher still serves
+     * what was queued.
+     */
+    @Override
+    public void close() {
+        synchronized (queueLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(shutdown);
+        }
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        // Anything the dispatcher left behind when it was interrupted.
+        for (Request<T> request; (request = queue.poll()) != null; ) {
+            request.result.completeExceptionally(new IllegalStateException("InferenceService is closed."));
+        }
+    }
+
+    private void dispatch() {
+        List<Request<T>> batch = new ArrayList<>(maxBatchSize);
+        boolean stopping = false;
+        try {
+            while (!stopping) {
+                Request<T> first = queue.take();
+                if (first == shutdown) {
+                    break;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    Request<T> next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    } else if (next == shutdown) {
+                        stopping = true;
+                        break;
+                    }
+                    batch.add(next);
+                }
+                run(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            for (Request<T> request : batch) {
+                request.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void run(List<Request<T>> batch) {
+        T[] buffer = batches[maxBatchSize];
+        int rows = 0;
+        for (Request<T> request : batch) {
+            requestScratch[0] = request.input;
+            if (mathPack.width(requestScratch) != inputWidth) {
+                request.result.completeExceptionally(new IllegalArgumentException("Expected an input of width " + inputWidth
+                        + ", got " + mathPack.width(requestScratch) + "."));
+                continue;
+            }
+            if (request.output != null) {
+                requestScratch[0] = request.output;
+                if (mathPack.width(requestScratch) != outputWidth) {
+                    request.result.completeExceptionally(new IllegalArgumentException("Expected an output of width " + outputWidth
+                            + ", got " + mathPack.width(requestScratch) + "."));
+                    continue;
+                }
+            }
+            rowScratch[0] = buffer[rows];
+            requestScratch[0] = request.input;
+            mathPack.copyInto(requestScratch, rowScratch);
+            batch.set(rows++, request);
+        }
+        requestScratch[0] = null;
+        if (rows == 0) {
+            return;
+        }
+        if (batches[rows] == null) {
+            batches[rows] = Arrays.copyOf(buffer, rows);
+            outputs[rows] = Arrays.copyOf(outputs[maxBatchSize], rows);
+        }
+        T[] batchOutput = outputs[rows];
+        try {
+            WeightSnapshot<T> snapshot = network.acquireSnapshot();
+            try {
+                network.forwardInto(batches[rows], snapshot, batchOutput);
+            } finally {
+                snapshot.release();
+            }
+            for (int i = 0; i < rows; ++i) {
+                Request<T> request = batch.get(i);
+                rowScratch[0] = batchOutput[i];
+                requestScratch[0] = request.output == null ? mathPack.allocateDetached(outputWidth, 1)[0] : request.output;
+                mathPack.copyInto(rowScratch, requestScratch);
+                request.result.complete(requestScratch[0]);
+            }
+        } catch (RuntimeException e) {
+            for (int i = 0; i < rows; ++i) {
+                batch.get(i).result.completeExceptionally(e);
+            }
+        } finally {
+            requestScratch[0] = null;
+            rowScratch[0] = null;
+        }
+        requestCount += rows;
+        ++batchCount;
+    }
+
+    private static final class Request<T> {
+
+        final T input;
+        // Null to allocate one.
+        final T output;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        Request(T input, T output) {
+            this.input = input;
+            this.output = output;
+        }
+
+    }
+
+}
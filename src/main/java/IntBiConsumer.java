@@ -0,0 +1,25 @@
+import java.util.function.BiConsumer;
+
+/**
+ * Represents an operation that accepts two {@code int}-valued arguments and
+ * returns no result.  This is the primitive type specialization of
+ * {@link BiConsumer} for {@code int}.
+ * <p>
+ * <p>This is a <a href="package-summary.html">functional interface</a>
+ * whose functional method is {@link #accept(int, int)}.
+ *
+ * @author rgettys
+ * @see BiConsumer
+ * @since 1.8
+ */
+@FunctionalInterface
+public interface IntBiConsumer {
+
+    /**
+     * Performs this operation on the given arguments.
+     *
+     * @param left  the first input argument
+     * @param right the second input argument
+     */
+    void accept(int left, int right);
+}
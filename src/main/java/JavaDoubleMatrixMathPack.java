@@ -1,3 +1,4 @@
+import java.util.Arrays;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.DoubleUnaryOperator;
 
@@ -6,15 +7,49 @@ import java.util.function.DoubleUnaryOperator;
  */
 public class JavaDoubleMatrixMathPack implements MatrixMathPack<double[], DoubleUnaryOperator> {
 
+    // Below this many multiply-adds, packing costs more than the blocked kernel saves.
+    private static final long BLOCKED_GEMM_THRESHOLD = 32 * 32 * 32;
+
     private final DoubleUnaryOperator activationFunction, activationFunctionDerivative;
+    // f'(z) as a function of f(z), or null when the activation was given as two bare operators.
+    private final DoubleUnaryOperator activationFunctionOutputDerivative;
+    private final boolean useBlockedGemm;
 
     public JavaDoubleMatrixMathPack() {
         this(input -> input, input -> input);
     }
 
     public JavaDoubleMatrixMathPack(DoubleUnaryOperator activationFunction, DoubleUnaryOperator activationFunctionDerivative) {
+        this(activationFunction, activationFunctionDerivative, false);
+    }
+
+    /**
+     * @param useBlockedGemm whether {@link #dotProduct} should go through the cache-blocked
+     *                       {@link DoubleGemm} kernel instead of the plain triple loop
+     */
+    public JavaDoubleMatrixMathPack(DoubleUnaryOperator activationFunction, DoubleUnaryOperator activationFunctionDerivative, boolean useBlockedGemm) {
+        this(activationFunction, activationFunctionDerivative, null, useBlockedGemm);
+    }
+
+    public JavaDoubleMatrixMathPack(DoubleActivationFunction activation) {
+        this(activation, false);
+    }
+
+    /**
+     * Uses {@code activation} both ways round: {@link DoubleActivationFunction#derivative} for
+     * {@link #activatePrime}, and {@link DoubleActivationFunction#derivativeFromOutput} wherever the
+     * activation has just been computed anyway, as in {@link #dotProductActivateInto}.
+     */
+    public JavaDoubleMatrixMathPack(DoubleActivationFunction activation, boolean useBlockedGemm) {
+        this(activation, activation::derivative, activation::derivativeFromOutput, useBlockedGemm);
+    }
+
+    protected JavaDoubleMatrixMathPack(DoubleUnaryOperator activationFunction, DoubleUnaryOperator activationFunctionDerivative,
+                                       DoubleUnaryOperator activationFunctionOutputDerivative, boolean useBlockedGemm) {
         this.activationFunction = activationFunction;
         this.activationFunctionDerivative = activationFunctionDerivative;
+        this.activationFunctionOutputDerivative = activationFunctionOutputDerivative;
+        this.useBlockedGemm = useBlockedGemm;
     }
 
     @Override
@@ -52,41 +87,242 @@ public class JavaDoubleMatrixMathPack implements MatrixMathPack<double[], Double
         return clone;
     }
 
+    @Override
+    public void copyInto(double[][] source, double[][] destination) {
+        for (int i = 0; i < source.length; ++i) {
+            System.arraycopy(source[i], 0, destination[i], 0, source[i].length);
+        }
+    }
+
+    @Override
+    public int copyIntoVector(double[][] matrix, double[] vector, int offset) {
+        for (double[] row : matrix) {
+            System.arraycopy(row, 0, vector, offset, row.length);
+            offset += row.length;
+        }
+        return offset;
+    }
+
+    @Override
+    public int copyFromVector(double[] vector, int offset, double[][] matrix) {
+        for (double[] row : matrix) {
+            System.arraycopy(vector, offset, row, 0, row.length);
+            offset += row.length;
+        }
+        return offset;
+    }
+
     @Override
     public double[][] dotProduct(double[][] multiplicand, double[][] multiplier) {
         // No null checks because SERIOUSLY?
         int height = multiplicand.length;
         // If you provide a multiplier without a single row in it, then you deserve the
         // ArrayIndexOutOfBoundsException and I feel no remorse about throwing it here.
+        int width = multiplier[0].length;
+        double[][] product = new double[height][width];
+        dotProductInto(multiplicand, multiplier, product);
+        return product;
+    }
+
+    @Override
+    public void dotProductInto(double[][] multiplicand, double[][] multiplier, double[][] product) {
+        dotProductRows(multiplicand, multiplier, product, 0, product.length);
+    }
+
+    /**
+     * Overwrites rows {@code [rowFrom, rowTo)} of {@code product} with the matching rows of
+     * {@code multiplicand . multiplier}.
+     */
+    protected void dotProductRows(double[][] multiplicand, double[][] multiplier, double[][] product, int rowFrom, int rowTo) {
         int width = multiplier[0].length;
         int dotProductSize = multiplicand[0].length;
-        double[][] product = new double[height][];
-        for (int i = 0; i < height; ++i) {
+        if (useBlockedGemm && (long) (rowTo - rowFrom) * width * dotProductSize >= BLOCKED_GEMM_THRESHOLD) {
+            DoubleGemm.forCurrentThread().multiply(multiplicand, false, multiplier, false, product, false, rowFrom, rowTo);
+            return;
+        }
+        for (int i = rowFrom; i < rowTo; ++i) {
             double[] multiplicandRow = multiplicand[i];
-            double[] productRow = product[i] = new double[width];
+            double[] productRow = product[i];
+            Arrays.fill(productRow, 0, width, 0);
             for (int j = 0; j < dotProductSize; ++j) {
                 for (int k = 0; k < width; ++k) {
                     productRow[k] += multiplicandRow[j] * multiplier[j][k];
                 }
             }
         }
+    }
+
+    @Override
+    public double[][] dotProductActivate(double[][] multiplicand, double[][] multiplier) {
+        double[][] output = new double[multiplicand.length][multiplier[0].length];
+        dotProductActivateInto(multiplicand, multiplier, output, null);
+        return output;
+    }
+
+    @Override
+    public void dotProductActivateInto(double[][] multiplicand, double[][] multiplier, double[][] output, double[][] activationDerivatives) {
+        dotProductActivateRows(multiplicand, multiplier, null, output, activationDerivatives, 0, output.length);
+    }
+
+    @Override
+    public void dotProductAddActivateInto(double[][] multiplicand, double[][] multiplier, double[] bias, double[][] output,
+                                          double[][] activationDerivatives) {
+        dotProductActivateRows(multiplicand, multiplier, bias, output, activationDerivatives, 0, output.length);
+    }
+
+    /**
+     * As {@link #dotProductRows}, but adds {@code bias} to each row of the product unless it is
+     * null, and activates the row (and records the derivative when {@code activationDerivatives}
+     * is not null) while it is still hot.
+     */
+    protected void dotProductActivateRows(double[][] multiplicand, double[][] multiplier, double[] bias, double[][] output,
+                                          double[][] activationDerivatives, int rowFrom, int rowTo) {
+        int width = multiplier[0].length;
+        int dotProductSize = multiplicand[0].length;
+        if (useBlockedGemm && (long) (rowTo - rowFrom) * width * dotProductSize >= BLOCKED_GEMM_THRESHOLD) {
+            DoubleGemm.forCurrentThread().multiplyActivate(multiplicand, multiplier, bias, output, activationDerivatives,
+                    activationFunction, epilogueDerivative(), activationFunctionOutputDerivative != null, rowFrom, rowTo);
+            return;
+        }
+        for (int i = rowFrom; i < rowTo; ++i) {
+            double[] multiplicandRow = multiplicand[i];
+            double[] outputRow = output[i];
+            // Starting the row at the bias rather than at zero adds it for free.
+            if (bias == null) {
+                Arrays.fill(outputRow, 0, width, 0);
+            } else {
+                System.arraycopy(bias, 0, outputRow, 0, width);
+            }
+            for (int j = 0; j < dotProductSize; ++j) {
+                for (int k = 0; k < width; ++k) {
+                    outputRow[k] += multiplicandRow[j] * multiplier[j][k];
+                }
+            }
+            double[] derivativeRow = activationDerivatives == null ? null : activationDerivatives[i];
+            for (int k = 0; k < width; ++k) {
+                double z = outputRow[k];
+                double activated = activationFunction.applyAsDouble(z);
+                if (derivativeRow != null) {
+                    derivativeRow[k] = activationFunctionOutputDerivative != null
+                            ? activationFunctionOutputDerivative.applyAsDouble(activated)
+                            : activationFunctionDerivative.applyAsDouble(z);
+                }
+                outputRow[k] = activated;
+            }
+        }
+    }
+
+    @Override
+    public void sumRowsInto(double[][] input, double[] sums) {
+        int width = sums.length;
+        Arrays.fill(sums, 0.0);
+        for (double[] row : input) {
+            for (int k = 0; k < width; ++k) {
+                sums[k] += row[k];
+            }
+        }
+    }
+
+    private DoubleUnaryOperator epilogueDerivative() {
+        return activationFunctionOutputDerivative != null ? activationFunctionOutputDerivative : activationFunctionDerivative;
+    }
+
+    @Override
+    public double[][] transposeDotProduct(double[][] multiplicand, double[][] multiplier) {
+        double[][] product = new double[multiplicand[0].length][multiplier[0].length];
+        transposeDotProductInto(multiplicand, multiplier, product);
+        return product;
+    }
+
+    @Override
+    public void transposeDotProductInto(double[][] multiplicand, double[][] multiplier, double[][] product) {
+        transposeDotProductRows(multiplicand, multiplier, product, 0, product.length);
+    }
+
+    /**
+     * Overwrites rows {@code [rowFrom, rowTo)} of {@code product} with the matching rows of
+     * {@code transpose(multiplicand) . multiplier}, reading the multiplicand column-wise in place.
+     */
+    protected void transposeDotProductRows(double[][] multiplicand, double[][] multiplier, double[][] product, int rowFrom, int rowTo) {
+        int width = multiplier[0].length;
+        int dotProductSize = multiplicand.length;
+        if (useBlockedGemm && (long) (rowTo - rowFrom) * width * dotProductSize >= BLOCKED_GEMM_THRESHOLD) {
+            DoubleGemm.forCurrentThread().multiply(multiplicand, true, multiplier, false, product, false, rowFrom, rowTo);
+            return;
+        }
+        for (int i = rowFrom; i < rowTo; ++i) {
+            double[] productRow = product[i];
+            Arrays.fill(productRow, 0, width, 0);
+            for (int j = 0; j < dotProductSize; ++j) {
+                double scalar = multiplicand[j][i];
+                double[] multiplierRow = multiplier[j];
+                for (int k = 0; k < width; ++k) {
+                    productRow[k] += scalar * multiplierRow[k];
+                }
+            }
+        }
+    }
+
+    @Override
+    public double[][] dotProductTranspose(double[][] multiplicand, double[][] multiplier) {
+        double[][] product = new double[multiplicand.length][multiplier.length];
+        dotProductTransposeInto(multiplicand, multiplier, product);
         return product;
     }
 
+    @Override
+    public void dotProductTransposeInto(double[][] multiplicand, double[][] multiplier, double[][] product) {
+        dotProductTransposeRows(multiplicand, multiplier, product, 0, product.length);
+    }
+
+    /**
+     * Overwrites rows {@code [rowFrom, rowTo)} of {@code product} with the matching rows of
+     * {@code multiplicand . transpose(multiplier)}; every element is a dot product of two rows.
+     */
+    protected void dotProductTransposeRows(double[][] multiplicand, double[][] multiplier, double[][] product, int rowFrom, int rowTo) {
+        int width = multiplier.length;
+        int dotProductSize = multiplicand[0].length;
+        if (useBlockedGemm && (long) (rowTo - rowFrom) * width * dotProductSize >= BLOCKED_GEMM_THRESHOLD) {
+            DoubleGemm.forCurrentThread().multiply(multiplicand, false, multiplier, true, product, false, rowFrom, rowTo);
+            return;
+        }
+        for (int i = rowFrom; i < rowTo; ++i) {
+            double[] multiplicandRow = multiplicand[i];
+            double[] productRow = product[i];
+            for (int k = 0; k < width; ++k) {
+                double[] multiplierRow = multiplier[k];
+                double sum = 0;
+                for (int j = 0; j < dotProductSize; ++j) {
+                    sum += multiplicandRow[j] * multiplierRow[j];
+                }
+                productRow[k] = sum;
+            }
+        }
+    }
+
     @Override
     public double[][] hadamardProduct(double[][] multiplicand, double[][] multiplier) {
         int height = multiplicand.length;
         int width = multiplicand[0].length;
-        double[][] product = new double[height][];
-        for (int i = 0; i < height; ++i) {
-            double[] productRow = product[i] = new double[width];
+        double[][] product = new double[height][width];
+        hadamardProductInto(multiplicand, multiplier, product);
+        return product;
+    }
+
+    @Override
+    public void hadamardProductInto(double[][] multiplicand, double[][] multiplier, double[][] product) {
+        hadamardProductRows(multiplicand, multiplier, product, 0, product.length);
+    }
+
+    protected void hadamardProductRows(double[][] multiplicand, double[][] multiplier, double[][] product, int rowFrom, int rowTo) {
+        for (int i = rowFrom; i < rowTo; ++i) {
+            double[] productRow = product[i];
             double[] multiplicandRow = multiplicand[i];
             double[] multiplierRow = multiplier[i];
-            for (int j = 0; j < width; ++j) {
+            for (int j = 0; j < productRow.length; ++j) {
                 productRow[j] = multiplicandRow[j] * multiplierRow[j];
             }
         }
-        return product;
     }
 
     @Override
@@ -109,13 +345,64 @@ public class JavaDoubleMatrixMathPack implements MatrixMathPack<double[], Double
     @Override
     public void subtractInPlace(double[][][] left, double[][][] right) {
         for (int i = 0; i < left.length; ++i) {
-            for (int j = 0; j < left[i].length; ++j) {
-                for (int k = 0; k < left[i][j].length; ++k) {
-                    left[i][j][k] -= right[i][j][k];
-                }
+            subtractInPlaceRows(left[i], right[i], 0, left[i].length);
+        }
+    }
+
+    @Override
+    public void optimizerStep(Optimizer optimizer, double stepSize, double[][] weights, double[][] gradient, double[][] firstMoment,
+                              double[][] secondMoment) {
+        optimizerStepRows(optimizer, stepSize, weights, gradient, firstMoment, secondMoment, 0, weights.length);
+    }
+
+    protected void optimizerStepRows(Optimizer optimizer, double stepSize, double[][] weights, double[][] gradient, double[][] firstMoment,
+                                     double[][] secondMoment, int rowFrom, int rowTo) {
+        for (int j = rowFrom; j < rowTo; ++j) {
+            OptimizerKernels.update(optimizer, stepSize, weights[j], 0, gradient[j], 0,
+                    firstMoment == null ? null : firstMoment[j], 0, secondMoment == null ? null : secondMoment[j], 0, weights[j].length);
+        }
+    }
+
+    @Override
+    public void scaledSubtractInPlace(double[][] weights, double[][] gradient, DoubleUnaryOperator scaler) {
+        scaledSubtractInPlaceRows(weights, gradient, scaler, 0, weights.length);
+    }
+
+    protected void scaledSubtractInPlaceRows(double[][] weights, double[][] gradient, DoubleUnaryOperator scaler, int rowFrom, int rowTo) {
+        for (int j = rowFrom; j < rowTo; ++j) {
+            double[] weightRow = weights[j];
+            double[] gradientRow = gradient[j];
+            for (int k = 0; k < weightRow.length; ++k) {
+                weightRow[k] -= scaler.applyAsDouble(gradientRow[k]);
             }
         }
+    }
 
+    protected void subtractInPlaceRows(double[][] left, double[][] right, int rowFrom, int rowTo) {
+        for (int j = rowFrom; j < rowTo; ++j) {
+            double[] leftRow = left[j];
+            double[] rightRow = right[j];
+            for (int k = 0; k < leftRow.length; ++k) {
+                leftRow[k] -= rightRow[k];
+            }
+        }
+    }
+
+    @Override
+    public void addInPlace(double[][][] left, double[][][] right) {
+        for (int i = 0; i < left.length; ++i) {
+            addInPlaceRows(left[i], right[i], 0, left[i].length);
+        }
+    }
+
+    protected void addInPlaceRows(double[][] left, double[][] right, int rowFrom, int rowTo) {
+        for (int j = rowFrom; j < rowTo; ++j) {
+            double[] leftRow = left[j];
+            double[] rightRow = right[j];
+            for (int k = 0; k < leftRow.length; ++k) {
+                leftRow[k] += rightRow[k];
+            }
+        }
     }
 
     @Override
@@ -123,6 +410,16 @@ public class JavaDoubleMatrixMathPack implements MatrixMathPack<double[], Double
         return new double[size][][];
     }
 
+    @Override
+    public double[][] allocate(int width, int height) {
+        return new double[height][width];
+    }
+
+    @Override
+    public int width(double[][] matrix) {
+        return matrix[0].length;
+    }
+
     @Override
     public void activateInPlace(double[][] input) {
         mutate(input, activationFunction);
@@ -133,6 +430,11 @@ public class JavaDoubleMatrixMathPack implements MatrixMathPack<double[], Double
         return transform(input, activationFunction);
     }
 
+    @Override
+    public void activateInto(double[][] input, double[][] output) {
+        transformInto(input, activationFunction, output);
+    }
+
     @Override
     public void activatePrimeInPlace(double[][] input) {
         mutate(input, activationFunctionDerivative);
@@ -152,8 +454,12 @@ public class JavaDoubleMatrixMathPack implements MatrixMathPack<double[], Double
 
     @Override
     public void mutate(double[][] input, DoubleUnaryOperator f) {
-        for (double[] vector : input) {
-            mutate(vector, f);
+        mutateRows(input, f, 0, input.length);
+    }
+
+    protected void mutateRows(double[][] input, DoubleUnaryOperator f, int rowFrom, int rowTo) {
+        for (int i = rowFrom; i < rowTo; ++i) {
+            mutate(input[i], f);
         }
     }
 
@@ -176,14 +482,26 @@ public class JavaDoubleMatrixMathPack implements MatrixMathPack<double[], Double
 
     @Override
     public double[][] transform(double[][] input, DoubleUnaryOperator f) {
-        int height = input.length;
-        double[][] output = new double[height][];
-        for (int i = 0; i < height; ++i) {
-            output[i] = transform(input[i], f);
-        }
+        double[][] output = new double[input.length][input[0].length];
+        transformInto(input, f, output);
         return output;
     }
 
+    @Override
+    public void transformInto(double[][] input, DoubleUnaryOperator f, double[][] output) {
+        transformRows(input, output, f, 0, input.length);
+    }
+
+    protected void transformRows(double[][] input, double[][] output, DoubleUnaryOperator f, int rowFrom, int rowTo) {
+        for (int i = rowFrom; i < rowTo; ++i) {
+            double[] inputRow = input[i];
+            double[] outputRow = output[i];
+            for (int j = 0; j < inputRow.length; ++j) {
+                outputRow[j] = f.applyAsDouble(inputRow[j]);
+            }
+        }
+    }
+
     @Override
     public double[][][] transform(double[][][] input, DoubleUnaryOperator f) {
         int height = input.length;
@@ -210,30 +528,43 @@ public class JavaDoubleMatrixMathPack implements MatrixMathPack<double[], Double
     public double[][] subtract(double[][] minuend, double[][] subtrahend) {
         int height = minuend.length;
         int width = minuend[0].length;
-        double[][] result = new double[height][];
-        for (int i = 0; i < height; ++i) {
-            double[] resultRow = result[i] = new double[width];
-            for (int j = 0; j < width; ++j) {
-                resultRow[j] = minuend[i][j] - subtrahend[i][j];
+        double[][] result = new double[height][width];
+        subtractInto(minuend, subtrahend, result);
+        return result;
+    }
+
+    @Override
+    public void subtractInto(double[][] minuend, double[][] subtrahend, double[][] result) {
+        subtractRows(minuend, subtrahend, result, 0, result.length);
+    }
+
+    protected void subtractRows(double[][] minuend, double[][] subtrahend, double[][] result, int rowFrom, int rowTo) {
+        for (int i = rowFrom; i < rowTo; ++i) {
+            double[] resultRow = result[i];
+            double[] minuendRow = minuend[i];
+            double[] subtrahendRow = subtrahend[i];
+            for (int j = 0; j < resultRow.length; ++j) {
+                resultRow[j] = minuendRow[j] - subtrahendRow[j];
             }
         }
-        return result;
     }
 
     @Override
     public double[][] transpose(double[][] input) {
+        double[][] result = new double[input[0].length][input.length];
+        transposeInto(input, result);
+        return result;
+    }
+
+    @Override
+    public void transposeInto(double[][] input, double[][] result) {
         int width = input.length;
         int height = input[0].length;
-        double[][] result = new double[height][];
-        for (int i = 0; i < height; ++i) {
-            result[i] = new double[width];
-        }
         for (int i = 0; i < width; ++i) {
             for (int j = 0; j < height; ++j) {
                 result[j][i] = input[i][j];
             }
         }
-        return result;
     }
 
     @Override
@@ -252,4 +583,110 @@ public class JavaDoubleMatrixMathPack implements MatrixMathPack<double[], Double
         return result;
     }
 
+    @Override
+    public double totalSquaredError(double[][] target, double[][] output) {
+        double sum = 0.0;
+        for (int i = 0; i < target.length; ++i) {
+            double[] targetRow = target[i];
+            double[] outputRow = output[i];
+            for (int j = 0; j < targetRow.length; ++j) {
+                double diff = targetRow[j] - outputRow[j];
+                sum += diff * diff;
+            }
+        }
+        return 0.5 * sum;
+    }
+
+    @Override
+    public double squaredErrorDeltaInto(double[][] output, double[][] target, double[][] activationDerivatives, double[][] delta) {
+        double sum = 0.0;
+        for (int i = 0; i < output.length; ++i) {
+            double[] outputRow = output[i];
+            double[] targetRow = target[i];
+            double[] derivativeRow = activationDerivatives[i];
+            double[] deltaRow = delta[i];
+            for (int j = 0; j < outputRow.length; ++j) {
+                double diff = outputRow[j] - targetRow[j];
+                deltaRow[j] = diff * derivativeRow[j];
+                sum += diff * diff;
+            }
+        }
+        return 0.5 * sum;
+    }
+
+    @Override
+    public double binaryCrossEntropyDeltaInto(double[][] output, double[][] target, double[][] delta) {
+        double sum = 0.0;
+        for (int i = 0; i < output.length; ++i) {
+            double[] outputRow = output[i];
+            double[] targetRow = target[i];
+            double[] deltaRow = delta[i];
+            for (int j = 0; j < outputRow.length; ++j) {
+                double a = outputRow[j];
+                double y = targetRow[j];
+                deltaRow[j] = a - y;
+                // Targets are usually exactly 0 or 1, which leaves a single logarithm.
+                if (y != 0.0) {
+                    sum -= y * Math.log(Math.max(a, Double.MIN_NORMAL));
+                }
+                if (y != 1.0) {
+                    sum -= (1.0 - y) * Math.log(Math.max(1.0 - a, Double.MIN_NORMAL));
+                }
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public void softmaxInPlace(double[][] logits, double[] bias, double[][] logProbabilities) {
+        for (int i = 0; i < logits.length; ++i) {
+            double[] row = logits[i];
+            double[] logRow = logProbabilities == null ? null : logProbabilities[i];
+            double max = Double.NEGATIVE_INFINITY;
+            for (int j = 0; j < row.length; ++j) {
+                double z = bias == null ? row[j] : row[j] + bias[j];
+                row[j] = z;
+                max = Math.max(max, z);
+            }
+            double sum = 0.0;
+            for (int j = 0; j < row.length; ++j) {
+                double shifted = row[j] - max;
+                if (logRow != null) {
+                    logRow[j] = shifted;
+                }
+                double e = Math.exp(shifted);
+                row[j] = e;
+                sum += e;
+            }
+            double scale = 1.0 / sum;
+            double logSum = Math.log(sum);
+            for (int j = 0; j < row.length; ++j) {
+                row[j] *= scale;
+                if (logRow != null) {
+                    logRow[j] -= logSum;
+                }
+            }
+        }
+    }
+
+    @Override
+    public double softmaxCrossEntropyDeltaInto(double[][] output, double[][] logProbabilities, double[][] target, double[][] delta) {
+        double sum = 0.0;
+        for (int i = 0; i < output.length; ++i) {
+            double[] outputRow = output[i];
+            double[] logRow = logProbabilities[i];
+            double[] targetRow = target[i];
+            double[] deltaRow = delta[i];
+            for (int j = 0; j < outputRow.length; ++j) {
+                double p = outputRow[j];
+                double y = targetRow[j];
+                deltaRow[j] = p - y;
+                if (y != 0.0) {
+                    sum -= y * logRow[j];
+                }
+            }
+        }
+        return sum;
+    }
+
 }
@@ -1,19 +1,54 @@
+import java.util.Arrays;
 import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * @author rgettys
  */
-public class JavaFloatMatrixMathPack implements MatrixMathPack<float[], FloatUnaryOperator> {
+public class JavaFloatMatrixMathPack implements SparseInputMathPack<float[], FloatUnaryOperator> {
+
+    // Below this many multiply-adds, packing costs more than the blocked kernel saves.
+    private static final long BLOCKED_GEMM_THRESHOLD = 32 * 32 * 32;
 
     private final FloatUnaryOperator activationFunction, activationFunctionDerivative;
+    // f'(z) as a function of f(z), or null when the activation was given as two bare operators.
+    private final FloatUnaryOperator activationFunctionOutputDerivative;
+    private final boolean useBlockedGemm;
 
     public JavaFloatMatrixMathPack() {
         this(input -> input, input -> input);
     }
 
     public JavaFloatMatrixMathPack(FloatUnaryOperator activationFunction, FloatUnaryOperator activationFunctionDerivative) {
+        this(activationFunction, activationFunctionDerivative, false);
+    }
+
+    /**
+     * @param useBlockedGemm whether {@link #dotProduct} should go through the cache-blocked
+     *                       {@link FloatGemm} kernel instead of the plain triple loop
+     */
+    public JavaFloatMatrixMathPack(FloatUnaryOperator activationFunction, FloatUnaryOperator activationFunctionDerivative, boolean useBlockedGemm) {
+        this(activationFunction, activationFunctionDerivative, null, useBlockedGemm);
+    }
+
+    public JavaFloatMatrixMathPack(FloatActivationFunction activation) {
+        this(activation, false);
+    }
+
+    /**
+     * Uses {@code activation} both ways round: {@link FloatActivationFunction#derivative} for
+     * {@link #activatePrime}, and {@link FloatActivationFunction#derivativeFromOutput} wherever the
+     * activation has just been computed anyway, as in {@link #dotProductActivateInto}.
+     */
+    public JavaFloatMatrixMathPack(FloatActivationFunction activation, boolean useBlockedGemm) {
+        this(activation, activation::derivative, activation::derivativeFromOutput, useBlockedGemm);
+    }
+
+    protected JavaFloatMatrixMathPack(FloatUnaryOperator activationFunction, FloatUnaryOperator activationFunctionDerivative,
+                                      FloatUnaryOperator activationFunctionOutputDerivative, boolean useBlockedGemm) {
         this.activationFunction = activationFunction;
         this.activationFunctionDerivative = activationFunctionDerivative;
+        this.activationFunctionOutputDerivative = activationFunctionOutputDerivative;
+        this.useBlockedGemm = useBlockedGemm;
     }
 
     @Override
@@ -51,41 +86,338 @@ public class JavaFloatMatrixMathPack implements MatrixMathPack<float[], FloatUna
         return clone;
     }
 
+    @Override
+    public void copyInto(float[][] source, float[][] destination) {
+        for (int i = 0; i < source.length; ++i) {
+            System.arraycopy(source[i], 0, destination[i], 0, source[i].length);
+        }
+    }
+
+    @Override
+    public int copyIntoVector(float[][] matrix, double[] vector, int offset) {
+        for (float[] row : matrix) {
+            for (float value : row) {
+                vector[offset++] = value;
+            }
+        }
+        return offset;
+    }
+
+    @Override
+    public int copyFromVector(double[] vector, int offset, float[][] matrix) {
+        for (float[] row : matrix) {
+            for (int j = 0; j < row.length; ++j) {
+                row[j] = (float) vector[offset++];
+            }
+        }
+        return offset;
+    }
+
     @Override
     public float[][] dotProduct(float[][] multiplicand, float[][] multiplier) {
         // No null checks because SERIOUSLY?
         int height = multiplicand.length;
         // If you provide a multiplier without a single row in it, then you deserve the
         // ArrayIndexOutOfBoundsException and I feel no remorse about throwing it here.
+        int width = multiplier[0].length;
+        float[][] product = new float[height][width];
+        dotProductInto(multiplicand, multiplier, product);
+        return product;
+    }
+
+    @Override
+    public void dotProductInto(float[][] multiplicand, float[][] multiplier, float[][] product) {
+        dotProductRows(multiplicand, multiplier, product, 0, product.length);
+    }
+
+    /**
+     * Overwrites rows {@code [rowFrom, rowTo)} of {@code product} with the matching rows of
+     * {@code multiplicand . multiplier}.
+     */
+    protected void dotProductRows(float[][] multiplicand, float[][] multiplier, float[][] product, int rowFrom, int rowTo) {
         int width = multiplier[0].length;
         int dotProductSize = multiplicand[0].length;
-        float[][] product = new float[height][];
-        for (int i = 0; i < height; ++i) {
+        if (useBlockedGemm && (long) (rowTo - rowFrom) * width * dotProductSize >= BLOCKED_GEMM_THRESHOLD) {
+            FloatGemm.forCurrentThread().multiply(multiplicand, false, multiplier, false, product, false, rowFrom, rowTo);
+            return;
+        }
+        for (int i = rowFrom; i < rowTo; ++i) {
             float[] multiplicandRow = multiplicand[i];
-            float[] productRow = product[i] = new float[width];
+            float[] productRow = product[i];
+            Arrays.fill(productRow, 0, width, 0);
             for (int j = 0; j < dotProductSize; ++j) {
                 for (int k = 0; k < width; ++k) {
                     productRow[k] += multiplicandRow[j] * multiplier[j][k];
                 }
             }
         }
+    }
+
+    @Override
+    public float[][] dotProductActivate(float[][] multiplicand, float[][] multiplier) {
+        float[][] output = new float[multiplicand.length][multiplier[0].length];
+        dotProductActivateInto(multiplicand, multiplier, output, null);
+        return output;
+    }
+
+    @Override
+    public void dotProductActivateInto(float[][] multiplicand, float[][] multiplier, float[][] output, float[][] activationDerivatives) {
+        dotProductActivateRows(multiplicand, multiplier, null, output, activationDerivatives, 0, output.length);
+    }
+
+    @Override
+    public void dotProductAddActivateInto(float[][] multiplicand, float[][] multiplier, float[] bias, float[][] output,
+                                          float[][] activationDerivatives) {
+        dotProductActivateRows(multiplicand, multiplier, bias, output, activationDerivatives, 0, output.length);
+    }
+
+    /**
+     * As {@link #dotProductRows}, but adds {@code bias} to each row of the product unless it is
+     * null, and activates the row (and records the derivative when {@code activationDerivatives}
+     * is not null) while it is still hot.
+     */
+    protected void dotProductActivateRows(float[][] multiplicand, float[][] multiplier, float[] bias, float[][] output,
+                                          float[][] activationDerivatives, int rowFrom, int rowTo) {
+        int width = multiplier[0].length;
+        int dotProductSize = multiplicand[0].length;
+        if (useBlockedGemm && (long) (rowTo - rowFrom) * width * dotProductSize >= BLOCKED_GEMM_THRESHOLD) {
+            FloatGemm.forCurrentThread().multiplyActivate(multiplicand, multiplier, bias, output, activationDerivatives,
+                    activationFunction, epilogueDerivative(), activationFunctionOutputDerivative != null, rowFrom, rowTo);
+            return;
+        }
+        for (int i = rowFrom; i < rowTo; ++i) {
+            float[] multiplicandRow = multiplicand[i];
+            float[] outputRow = output[i];
+            clearRow(outputRow, bias, width);
+            for (int j = 0; j < dotProductSize; ++j) {
+                for (int k = 0; k < width; ++k) {
+                    outputRow[k] += multiplicandRow[j] * multiplier[j][k];
+                }
+            }
+            activateRow(outputRow, activationDerivatives == null ? null : activationDerivatives[i], width);
+        }
+    }
+
+    /**
+     * The epilogue of the fused multiplies: activates the first {@code width} entries of
+     * {@code outputRow} in place, recording the derivative unless {@code derivativeRow} is null.
+     */
+    private void activateRow(float[] outputRow, float[] derivativeRow, int width) {
+        if (activationFunction instanceof BulkFloatActivationFunction
+                && (derivativeRow == null || activationFunctionOutputDerivative != null)) {
+            BulkFloatActivationFunction bulk = (BulkFloatActivationFunction) activationFunction;
+            if (derivativeRow == null) {
+                bulk.apply(outputRow, 0, outputRow, 0, width);
+            } else {
+                bulk.applyWithDerivative(outputRow, 0, derivativeRow, 0, width);
+            }
+            return;
+        }
+        for (int k = 0; k < width; ++k) {
+            float z = outputRow[k];
+            float activated = activationFunction.applyAsFloat(z);
+            if (derivativeRow != null) {
+                derivativeRow[k] = activationFunctionOutputDerivative != null
+                        ? activationFunctionOutputDerivative.applyAsFloat(activated)
+                        : activationFunctionDerivative.applyAsFloat(z);
+            }
+            outputRow[k] = activated;
+        }
+    }
+
+    /**
+     * Starts a row of a product off at {@code bias}, or at zero when there is none, so the
+     * bias costs nothing beyond the copy that clearing the row would have cost anyway.
+     */
+    private static void clearRow(float[] outputRow, float[] bias, int width) {
+        if (bias == null) {
+            Arrays.fill(outputRow, 0, width, 0);
+        } else {
+            System.arraycopy(bias, 0, outputRow, 0, width);
+        }
+    }
+
+    @Override
+    public void sumRowsInto(float[][] input, float[] sums) {
+        int width = sums.length;
+        Arrays.fill(sums, 0.0f);
+        for (float[] row : input) {
+            for (int k = 0; k < width; ++k) {
+                sums[k] += row[k];
+            }
+        }
+    }
+
+    @Override
+    public void sparseDotProductActivateInto(SparseFloatMatrix multiplicand, float[][] multiplier, float[] bias, float[][] output,
+                                             float[][] activationDerivatives) {
+        int width = multiplier[0].length;
+        int[] columnIndices = multiplicand.columnIndices;
+        float[] values = multiplicand.values;
+        for (int i = 0; i < multiplicand.rows; ++i) {
+            float[] outputRow = output[i];
+            clearRow(outputRow, bias, width);
+            for (int entry = multiplicand.rowStarts[i]; entry < multiplicand.rowStarts[i + 1]; ++entry) {
+                float scalar = values[entry];
+                float[] multiplierRow = multiplier[columnIndices[entry]];
+                for (int k = 0; k < width; ++k) {
+                    outputRow[k] += scalar * multiplierRow[k];
+                }
+            }
+            activateRow(outputRow, activationDerivatives == null ? null : activationDerivatives[i], width);
+        }
+    }
+
+    @Override
+    public void subtractSparseTransposeDotProduct(SparseFloatMatrix multiplicand, float[][] deltas, FloatUnaryOperator learningRateScaler,
+                                                  float[][] weights, SparseGradientBuffer buffer) {
+        int width = deltas[0].length;
+        buffer.load(multiplicand, width);
+        long[] entries = buffer.entriesByColumn;
+        int[] entryRows = buffer.entryRows;
+        int entryCount = buffer.entryCount;
+        float[] values = multiplicand.values;
+        float[] gradientRow = buffer.gradientRow;
+        for (int start = 0; start < entryCount; ) {
+            int column = (int) (entries[start] >>> 32);
+            Arrays.fill(gradientRow, 0, width, 0.0f);
+            int end = start;
+            for (; end < entryCount && (int) (entries[end] >>> 32) == column; ++end) {
+                int entry = (int) entries[end];
+                float scalar = values[entry];
+                float[] deltaRow = deltas[entryRows[entry]];
+                for (int k = 0; k < width; ++k) {
+                    gradientRow[k] += scalar * deltaRow[k];
+                }
+            }
+            float[] weightRow = weights[column];
+            for (int k = 0; k < width; ++k) {
+                weightRow[k] -= learningRateScaler.applyAsFloat(gradientRow[k]);
+            }
+            start = end;
+        }
+    }
+
+    @Override
+    public void sparseTransposeDotProductInto(SparseFloatMatrix multiplicand, float[][] deltas, float[][] product) {
+        int width = deltas[0].length;
+        for (float[] productRow : product) {
+            Arrays.fill(productRow, 0, width, 0.0f);
+        }
+        int[] columnIndices = multiplicand.columnIndices;
+        float[] values = multiplicand.values;
+        for (int i = 0; i < multiplicand.rows; ++i) {
+            float[] deltaRow = deltas[i];
+            for (int entry = multiplicand.rowStarts[i]; entry < multiplicand.rowStarts[i + 1]; ++entry) {
+                float scalar = values[entry];
+                float[] productRow = product[columnIndices[entry]];
+                for (int k = 0; k < width; ++k) {
+                    productRow[k] += scalar * deltaRow[k];
+                }
+            }
+        }
+    }
+
+    private FloatUnaryOperator epilogueDerivative() {
+        return activationFunctionOutputDerivative != null ? activationFunctionOutputDerivative : activationFunctionDerivative;
+    }
+
+    @Override
+    public float[][] transposeDotProduct(float[][] multiplicand, float[][] multiplier) {
+        float[][] product = new float[multiplicand[0].length][multiplier[0].length];
+        transposeDotProductInto(multiplicand, multiplier, product);
         return product;
     }
 
+    @Override
+    public void transposeDotProductInto(float[][] multiplicand, float[][] multiplier, float[][] product) {
+        transposeDotProductRows(multiplicand, multiplier, product, 0, product.length);
+    }
+
+    /**
+     * Overwrites rows {@code [rowFrom, rowTo)} of {@code product} with the matching rows of
+     * {@code transpose(multiplicand) . multiplier}, reading the multiplicand column-wise in place.
+     */
+    protected void transposeDotProductRows(float[][] multiplicand, float[][] multiplier, float[][] product, int rowFrom, int rowTo) {
+        int width = multiplier[0].length;
+        int dotProductSize = multiplicand.length;
+        if (useBlockedGemm && (long) (rowTo - rowFrom) * width * dotProductSize >= BLOCKED_GEMM_THRESHOLD) {
+            FloatGemm.forCurrentThread().multiply(multiplicand, true, multiplier, false, product, false, rowFrom, rowTo);
+            return;
+        }
+        for (int i = rowFrom; i < rowTo; ++i) {
+            float[] productRow = product[i];
+            Arrays.fill(productRow, 0, width, 0);
+            for (int j = 0; j < dotProductSize; ++j) {
+                float scalar = multiplicand[j][i];
+                float[] multiplierRow = multiplier[j];
+                for (int k = 0; k < width; ++k) {
+                    productRow[k] += scalar * multiplierRow[k];
+                }
+            }
+        }
+    }
+
+    @Override
+    public float[][] dotProductTranspose(float[][] multiplicand, float[][] multiplier) {
+        float[][] product = new float[multiplicand.length][multiplier.length];
+        dotProductTransposeInto(multiplicand, multiplier, product);
+        return product;
+    }
+
+    @Override
+    public void dotProductTransposeInto(float[][] multiplicand, float[][] multiplier, float[][] product) {
+        dotProductTransposeRows(multiplicand, multiplier, product, 0, product.length);
+    }
+
+    /**
+     * Overwrites rows {@code [rowFrom, rowTo)} of {@code product} with the matching rows of
+     * {@code multiplicand . transpose(multiplier)}; every element is a dot product of two rows.
+     */
+    protected void dotProductTransposeRows(float[][] multiplicand, float[][] multiplier, float[][] product, int rowFrom, int rowTo) {
+        int width = multiplier.length;
+        int dotProductSize = multiplicand[0].length;
+        if (useBlockedGemm && (long) (rowTo - rowFrom) * width * dotProductSize >= BLOCKED_GEMM_THRESHOLD) {
+            FloatGemm.forCurrentThread().multiply(multiplicand, false, multiplier, true, product, false, rowFrom, rowTo);
+            return;
+        }
+        for (int i = rowFrom; i < rowTo; ++i) {
+            float[] multiplicandRow = multiplicand[i];
+            float[] productRow = product[i];
+            for (int k = 0; k < width; ++k) {
+                float[] multiplierRow = multiplier[k];
+                float sum = 0;
+                for (int j = 0; j < dotProductSize; ++j) {
+                    sum += multiplicandRow[j] * multiplierRow[j];
+                }
+                productRow[k] = sum;
+            }
+        }
+    }
+
     @Override
     public float[][] hadamardProduct(float[][] multiplicand, float[][] multiplier) {
         int height = multiplicand.length;
         int width = multiplicand[0].length;
-        float[][] product = new float[height][];
-        for (int i = 0; i < height; ++i) {
-            float[] productRow = product[i] = new float[width];
+        float[][] product = new float[height][width];
+        hadamardProductInto(multiplicand, multiplier, product);
+        return product;
+    }
+
+    @Override
+    public void hadamardProductInto(float[][] multiplicand, float[][] multiplier, float[][] product) {
+        hadamardProductRows(multiplicand, multiplier, product, 0, product.length);
+    }
+
+    protected void hadamardProductRows(float[][] multiplicand, float[][] multiplier, float[][] product, int rowFrom, int rowTo) {
+        for (int i = rowFrom; i < rowTo; ++i) {
+            float[] productRow = product[i];
             float[] multiplicandRow = multiplicand[i];
             float[] multiplierRow = multiplier[i];
-            for (int j = 0; j < width; ++j) {
+            for (int j = 0; j < productRow.length; ++j) {
                 productRow[j] = multiplicandRow[j] * multiplierRow[j];
             }
         }
-        return product;
     }
 
     @Override
@@ -108,13 +440,64 @@ public class JavaFloatMatrixMathPack implements MatrixMathPack<float[], FloatUna
     @Override
     public void subtractInPlace(float[][][] left, float[][][] right) {
         for (int i = 0; i < left.length; ++i) {
-            for (int j = 0; j < left[i].length; ++j) {
-                for (int k = 0; k < left[i][j].length; ++k) {
-                    left[i][j][k] -= right[i][j][k];
-                }
+            subtractInPlaceRows(left[i], right[i], 0, left[i].length);
+        }
+    }
+
+    @Override
+    public void optimizerStep(Optimizer optimizer, double stepSize, float[][] weights, float[][] gradient, float[][] firstMoment,
+                              float[][] secondMoment) {
+        optimizerStepRows(optimizer, stepSize, weights, gradient, firstMoment, secondMoment, 0, weights.length);
+    }
+
+    protected void optimizerStepRows(Optimizer optimizer, double stepSize, float[][] weights, float[][] gradient, float[][] firstMoment,
+                                     float[][] secondMoment, int rowFrom, int rowTo) {
+        for (int j = rowFrom; j < rowTo; ++j) {
+            OptimizerKernels.update(optimizer, (float) stepSize, weights[j], 0, gradient[j], 0,
+                    firstMoment == null ? null : firstMoment[j], 0, secondMoment == null ? null : secondMoment[j], 0, weights[j].length);
+        }
+    }
+
+    @Override
+    public void scaledSubtractInPlace(float[][] weights, float[][] gradient, FloatUnaryOperator scaler) {
+        scaledSubtractInPlaceRows(weights, gradient, scaler, 0, weights.length);
+    }
+
+    protected void scaledSubtractInPlaceRows(float[][] weights, float[][] gradient, FloatUnaryOperator scaler, int rowFrom, int rowTo) {
+        for (int j = rowFrom; j < rowTo; ++j) {
+            float[] weightRow = weights[j];
+            float[] gradientRow = gradient[j];
+            for (int k = 0; k < weightRow.length; ++k) {
+                weightRow[k] -= scaler.applyAsFloat(gradientRow[k]);
             }
         }
+    }
 
+    protected void subtractInPlaceRows(float[][] left, float[][] right, int rowFrom, int rowTo) {
+        for (int j = rowFrom; j < rowTo; ++j) {
+            float[] leftRow = left[j];
+            float[] rightRow = right[j];
+            for (int k = 0; k < leftRow.length; ++k) {
+                leftRow[k] -= rightRow[k];
+            }
+        }
+    }
+
+    @Override
+    public void addInPlace(float[][][] left, float[][][] right) {
+        for (int i = 0; i < left.length; ++i) {
+            addInPlaceRows(left[i], right[i], 0, left[i].length);
+        }
+    }
+
+    protected void addInPlaceRows(float[][] left, float[][] right, int rowFrom, int rowTo) {
+        for (int j = rowFrom; j < rowTo; ++j) {
+            float[] leftRow = left[j];
+            float[] rightRow = right[j];
+            for (int k = 0; k < leftRow.length; ++k) {
+                leftRow[k] += rightRow[k];
+            }
+        }
     }
 
     @Override
@@ -122,6 +505,16 @@ public class JavaFloatMatrixMathPack implements MatrixMathPack<float[], FloatUna
         return new float[size][][];
     }
 
+    @Override
+    public float[][] allocate(int width, int height) {
+        return new float[height][width];
+    }
+
+    @Override
+    public int width(float[][] matrix) {
+        return matrix[0].length;
+    }
+
     @Override
     public void activateInPlace(float[][] input) {
         mutate(input, activationFunction);
@@ -132,6 +525,11 @@ public class JavaFloatMatrixMathPack implements MatrixMathPack<float[], FloatUna
         return transform(input, activationFunction);
     }
 
+    @Override
+    public void activateInto(float[][] input, float[][] output) {
+        transformInto(input, activationFunction, output);
+    }
+
     @Override
     public void activatePrimeInPlace(float[][] input) {
         mutate(input, activationFunctionDerivative);
@@ -144,6 +542,10 @@ public class JavaFloatMatrixMathPack implements MatrixMathPack<float[], FloatUna
 
     @Override
     public void mutate(float[] input, FloatUnaryOperator f) {
+        if (f instanceof BulkFloatActivationFunction) {
+            ((BulkFloatActivationFunction) f).apply(input, 0, input, 0, input.length);
+            return;
+        }
         for (int i = 0; i < input.length; ++i) {
             input[i] = f.applyAsFloat(input[i]);
         }
@@ -151,8 +553,12 @@ public class JavaFloatMatrixMathPack implements MatrixMathPack<float[], FloatUna
 
     @Override
     public void mutate(float[][] input, FloatUnaryOperator f) {
-        for (float[] vector : input) {
-            mutate(vector, f);
+        mutateRows(input, f, 0, input.length);
+    }
+
+    protected void mutateRows(float[][] input, FloatUnaryOperator f, int rowFrom, int rowTo) {
+        for (int i = rowFrom; i < rowTo; ++i) {
+            mutate(input[i], f);
         }
     }
 
@@ -167,6 +573,10 @@ public class JavaFloatMatrixMathPack implements MatrixMathPack<float[], FloatUna
     public float[] transform(float[] input, FloatUnaryOperator f) {
         int size = input.length;
         float[] output = new float[size];
+        if (f instanceof BulkFloatActivationFunction) {
+            ((BulkFloatActivationFunction) f).apply(input, 0, output, 0, size);
+            return output;
+        }
         for (int j = 0; j < size; ++j) {
             output[j] = f.applyAsFloat(input[j]);
         }
@@ -175,14 +585,33 @@ public class JavaFloatMatrixMathPack implements MatrixMathPack<float[], FloatUna
 
     @Override
     public float[][] transform(float[][] input, FloatUnaryOperator f) {
-        int height = input.length;
-        float[][] output = new float[height][];
-        for (int i = 0; i < height; ++i) {
-            output[i] = transform(input[i], f);
-        }
+        float[][] output = new float[input.length][input[0].length];
+        transformInto(input, f, output);
         return output;
     }
 
+    @Override
+    public void transformInto(float[][] input, FloatUnaryOperator f, float[][] output) {
+        transformRows(input, output, f, 0, input.length);
+    }
+
+    protected void transformRows(float[][] input, float[][] output, FloatUnaryOperator f, int rowFrom, int rowTo) {
+        if (f instanceof BulkFloatActivationFunction) {
+            BulkFloatActivationFunction bulk = (BulkFloatActivationFunction) f;
+            for (int i = rowFrom; i < rowTo; ++i) {
+                bulk.apply(input[i], 0, output[i], 0, input[i].length);
+            }
+            return;
+        }
+        for (int i = rowFrom; i < rowTo; ++i) {
+            float[] inputRow = input[i];
+            float[] outputRow = output[i];
+            for (int j = 0; j < inputRow.length; ++j) {
+                outputRow[j] = f.applyAsFloat(inputRow[j]);
+            }
+        }
+    }
+
     @Override
     public float[][][] transform(float[][][] input, FloatUnaryOperator f) {
         int size = input.length;
@@ -208,30 +637,43 @@ public class JavaFloatMatrixMathPack implements MatrixMathPack<float[], FloatUna
     public float[][] subtract(float[][] minuend, float[][] subtrahend) {
         int height = minuend.length;
         int width = minuend[0].length;
-        float[][] result = new float[height][];
-        for (int i = 0; i < height; ++i) {
-            float[] resultRow = result[i] = new float[width];
-            for (int j = 0; j < width; ++j) {
-                resultRow[j] = minuend[i][j] - subtrahend[i][j];
+        float[][] result = new float[height][width];
+        subtractInto(minuend, subtrahend, result);
+        return result;
+    }
+
+    @Override
+    public void subtractInto(float[][] minuend, float[][] subtrahend, float[][] result) {
+        subtractRows(minuend, subtrahend, result, 0, result.length);
+    }
+
+    protected void subtractRows(float[][] minuend, float[][] subtrahend, float[][] result, int rowFrom, int rowTo) {
+        for (int i = rowFrom; i < rowTo; ++i) {
+            float[] resultRow = result[i];
+            float[] minuendRow = minuend[i];
+            float[] subtrahendRow = subtrahend[i];
+            for (int j = 0; j < resultRow.length; ++j) {
+                resultRow[j] = minuendRow[j] - subtrahendRow[j];
             }
         }
-        return result;
     }
 
     @Override
     public float[][] transpose(float[][] input) {
+        float[][] result = new float[input[0].length][input.length];
+        transposeInto(input, result);
+        return result;
+    }
+
+    @Override
+    public void transposeInto(float[][] input, float[][] result) {
         int width = input.length;
         int height = input[0].length;
-        float[][] result = new float[height][];
-        for (int i = 0; i < height; ++i) {
-            result[i] = new float[width];
-        }
         for (int i = 0; i < width; ++i) {
             for (int j = 0; j < height; ++j) {
                 result[j][i] = input[i][j];
             }
         }
-        return result;
     }
 
     @Override
@@ -250,4 +692,116 @@ public class JavaFloatMatrixMathPack implements MatrixMathPack<float[], FloatUna
         return result;
     }
 
+    @Override
+    public double totalSquaredError(float[][] target, float[][] output) {
+        double sum = 0.0;
+        for (int i = 0; i < target.length; ++i) {
+            float[] targetRow = target[i];
+            float[] outputRow = output[i];
+            for (int j = 0; j < targetRow.length; ++j) {
+                double diff = targetRow[j] - outputRow[j];
+                sum += diff * diff;
+            }
+        }
+        return 0.5 * sum;
+    }
+
+    @Override
+    public double squaredErrorDeltaInto(float[][] output, float[][] target, float[][] activationDerivatives, float[][] delta) {
+        double sum = 0.0;
+        for (int i = 0; i < output.length; ++i) {
+            float[] outputRow = output[i];
+            float[] targetRow = target[i];
+            float[] derivativeRow = activationDerivatives[i];
+            float[] deltaRow = delta[i];
+            for (int j = 0; j < outputRow.length; ++j) {
+                float diff = outputRow[j] - targetRow[j];
+                deltaRow[j] = diff * derivativeRow[j];
+                sum += (double) diff * diff;
+            }
+        }
+        return 0.5 * sum;
+    }
+
+    @Override
+    public double binaryCrossEntropyDeltaInto(float[][] output, float[][] target, float[][] delta) {
+        double sum = 0.0;
+        for (int i = 0; i < output.length; ++i) {
+            float[] outputRow = output[i];
+            float[] targetRow = target[i];
+            float[] deltaRow = delta[i];
+            for (int j = 0; j < outputRow.length; ++j) {
+                float a = outputRow[j];
+                float y = targetRow[j];
+                deltaRow[j] = a - y;
+                // Targets are usually exactly 0 or 1, which leaves a single logarithm.
+                if (y != 0.0f) {
+                    sum -= y * Math.log(Math.max(a, Float.MIN_NORMAL));
+                }
+                if (y != 1.0f) {
+                    sum -= (1.0f - y) * Math.log(Math.max(1.0f - a, Float.MIN_NORMAL));
+                }
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public void softmaxInPlace(float[][] logits, float[] bias, float[][] logProbabilities) {
+        for (int i = 0; i < logits.length; ++i) {
+            softmaxRowInPlace(logits[i], bias, logProbabilities == null ? null : logProbabilities[i]);
+        }
+    }
+
+    /**
+     * One row of {@link #softmaxInPlace}, shared with the forward-only copies so their softmax
+     * outputs round the same way.  {@code logProbabilities} may be null.
+     */
+    static void softmaxRowInPlace(float[] row, float[] bias, float[] logProbabilities) {
+        float max = Float.NEGATIVE_INFINITY;
+        for (int j = 0; j < row.length; ++j) {
+            float z = bias == null ? row[j] : row[j] + bias[j];
+            row[j] = z;
+            max = Math.max(max, z);
+        }
+        float sum = 0.0f;
+        for (int j = 0; j < row.length; ++j) {
+            float shifted = row[j] - max;
+            if (logProbabilities != null) {
+                logProbabilities[j] = shifted;
+            }
+            float e = (float) Math.exp(shifted);
+            row[j] = e;
+            sum += e;
+        }
+        float scale = 1.0f / sum;
+        float logSum = (float) Math.log(sum);
+        for (int j = 0; j < row.length; ++j) {
+            row[j] *= scale;
+            if (logProbabilities != null) {
+                logProbabilities[j] -= logSum;
+            }
+        }
+    }
+
+    @Override
+    public double softmaxCrossEntropyDeltaInto(float[][] output, float[][] logProbabilities, float[][] target, float[][] delta) {
+        double sum = 0.0;
+        for (int i = 0; i < output.length; ++i) {
+            float[] outputRow = output[i];
+            float[] logRow = logProbabilities[i];
+            float[] targetRow = target[i];
+            float[] deltaRow = delta[i];
+            for (int j = 0; j < outputRow.length; ++j) {
+                float p = outputRow[j];
+                float y = targetRow[j];
+                deltaRow[j] = p - y;
+                if (y != 0.0f) {
+                    sum -= (double) y * logRow[j];
+                }
+            }
+        }
+        return sum;
+    }
+
 }
@@ -0,0 +1,71 @@
+/**
+ * How one {@link LbfgsTrainer#train} run ended.
+ * <p>
+ * <p>Runs that stop on the iteration limit or on a line search that can't make
+ * progress, which float math packs hit once the gradient is down at rounding
+ * noise, are not converged but still leave the network at the best weights found.
+ *
+ * @author rgettys
+ */
+public final class LbfgsResult {
+
+    private final String status;
+    private final boolean converged;
+    private final int iterations;
+    private final int evaluations;
+    private final double cost;
+    private final long elapsedNanos;
+
+    LbfgsResult(String status, boolean converged, int iterations, int evaluations, double cost, long elapsedNanos) {
+        this.status = status;
+        this.converged = converged;
+        this.iterations = iterations;
+        this.evaluations = evaluations;
+        this.cost = cost;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the solver's return code, such as {@code LBFGS_SUCCESS} or
+     * {@code LBFGSERR_MAXIMUMITERATION}
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    /**
+     * @return whether the gradient met the trainer's tolerance
+     */
+    public boolean isConverged() {
+        return converged;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return how many full-batch forward and backward passes the run took
+     */
+    public int getEvaluations() {
+        return evaluations;
+    }
+
+    /**
+     * @return the cost at the final weights, the network's cost function summed over the training set
+     */
+    public double getCost() {
+        return cost;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s after %d iterations (%d evaluations, %.2f s), cost %.6g",
+                status, iterations, evaluations, elapsedNanos / 1e9, cost);
+    }
+
+}
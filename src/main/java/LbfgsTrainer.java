@@ -0,0 +1,110 @@
+import com.github.lbfgs4j.liblbfgs.Lbfgs;
+import com.github.lbfgs4j.liblbfgs.LbfgsConstant;
+import com.github.lbfgs4j.liblbfgs.MutableDouble;
+
+/**
+ * Full-batch training of a {@link Network} with limited-memory BFGS, through
+ * lbfgs4j.  The solver sees the network as one vector of every weight and bias
+ * and asks for the cost and gradient at points along its search directions; each
+ * such evaluation loads the point into the live weights and runs one forward and
+ * backward pass over the whole training set inside a single {@link TrainingWorkspace},
+ * so through the network's math pack like any other step.
+ * <p>
+ * <p>Where {@link Network#train(Object[], Object[])} needs a hand-tuned learning
+ * rate and, on the small regression problems of {@code Main.main3}, about a
+ * hundred thousand steps, L-BFGS picks its own step sizes from the curvature it
+ * has seen and usually converges in a few hundred evaluations.  It suits networks
+ * and training sets small enough that a full-batch pass is cheap, and it ignores
+ * the network's learning rate scaler and {@link Optimizer}.  A trainer is not
+ * thread-safe, and nothing else should train the network while it runs.
+ *
+ * @author rgettys
+ */
+public class LbfgsTrainer<T, U> {
+
+    private final Network<T, U> network;
+    private final LbfgsConstant.LBFGS_Param parameters;
+
+    /**
+     * A trainer that stops after 1000 iterations or once the gradient's norm falls below
+     * 1e-5 of the weights'.
+     */
+    public LbfgsTrainer(Network<T, U> network) {
+        this(network, 6, 1000, 1e-5);
+    }
+
+    /**
+     * @param history       how many past steps the curvature estimate remembers; 3 to 20 is usual
+     * @param maxIterations the most iterations one {@link #train} takes, or 0 for no limit
+     * @param epsilon       training stops once the gradient's norm is under {@code epsilon} times
+     *                      the larger of 1 and the weights' norm
+     */
+    public LbfgsTrainer(Network<T, U> network, int history, int maxIterations, double epsilon) {
+        ArgUtil.checkNull(network, "network");
+        if (history < 1) {
+            throw new IllegalArgumentException("history argument must be positive.");
+        }
+        if (maxIterations < 0) {
+            throw new IllegalArgumentException("maxIterations argument must not be negative.");
+        }
+        if (!(epsilon >= 0.0)) {
+            throw new IllegalArgumentException("epsilon argument must not be negative.");
+        }
+        this.network = network;
+        parameters = Lbfgs.defaultParams();
+        parameters.m = history;
+        parameters.max_iterations = maxIterations;
+        parameters.epsilon = epsilon;
+    }
+
+    /**
+     * Minimizes the network's cost over {@code input} and {@code exampleResult}, starting from
+     * its current weights, and leaves it with the best weights found, published as a new snapshot.
+     */
+    public LbfgsResult train(T[] input, T[] exampleResult) {
+        ArgUtil.checkNull(input, "input");
+        ArgUtil.checkNull(exampleResult, "exampleResult");
+        if (input.length != exampleResult.length) {
+            throw new IllegalArgumentException("Got " + input.length + " inputs but " + exampleResult.length + " example results.");
+        }
+        TrainingWorkspace<T> workspace = network.createWorkspace(input.length);
+        double[] weights = new double[network.getParameterCount()];
+        network.copyParametersInto(weights);
+        MutableDouble cost = new MutableDouble();
+        int[] evaluations = new int[1];
+        int[] iterations = new int[1];
+        // The cost at the last accepted point, which the solver doesn't report when it fails.
+        double[] acceptedCost = new double[1];
+        long start = System.nanoTime();
+        LbfgsConstant.ReturnValue status = Lbfgs.lbfgs(weights.length, weights, cost,
+                (instance, x, gradient, n, step) -> {
+                    double fx = network.costAndGradient(x, input, exampleResult, workspace, gradient);
+                    if (evaluations[0]++ == 0) {
+                        acceptedCost[0] = fx;
+                    }
+                    return fx;
+                },
+                (instance, x, gradient, fx, xNorm, gradientNorm, step, n, k, lineSearches) -> {
+                    iterations[0] = k;
+                    acceptedCost[0] = fx;
+                    return LbfgsConstant.ReturnValue.LBFGS_SUCCESS;
+                },
+                null, parameters);
+        // The last evaluation may have been a rejected trial point; the solver hands back its best.
+        network.loadParameters(weights);
+        network.publish();
+        return new LbfgsResult(status.name(), isConverged(status), iterations[0], evaluations[0], acceptedCost[0], System.nanoTime() - start);
+    }
+
+    private static boolean isConverged(LbfgsConstant.ReturnValue status) {
+        switch (status) {
+            case LBFGS_SUCCESS:
+            case LBFGS_CONVERGENCE:
+            case LBFGS_ALREADY_MINIMIZED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+}
@@ -8,7 +8,7 @@ import java.util.Arrays;
 public class Main {
 
     public static void main2() {
-        MatrixMathPack<float[], FloatUnaryOperator> floatMathPack = new JavaFloatMatrixMathPack(Main::stableFloatSigmoid, Main::floatSigmoidPrime);
+        MatrixMathPack<float[], FloatUnaryOperator> floatMathPack = new JavaFloatMatrixMathPack(FloatActivations.SIGMOID);
         float[][][] weights = new float[][][]{
                 new float[][]{
                         new float[]{0.15f, 0.25f},
@@ -39,7 +39,7 @@ public class Main {
     }
 
     public static void main3() {
-        MatrixMathPack<float[], FloatUnaryOperator> floatMathPack = new JavaFloatMatrixMathPack(Main::stableFloatSigmoid, Main::floatSigmoidPrime);
+        MatrixMathPack<float[], FloatUnaryOperator> floatMathPack = new JavaFloatMatrixMathPack(FloatActivations.SIGMOID);
         float[][] inputs = new float[][]{
                 new float[]{0.0f},
                 new float[]{15.0f},
@@ -116,7 +116,7 @@ public class Main {
         main2();
         System.exit(0);
         
-        MatrixMathPack<float[], FloatUnaryOperator> mathPack = new JavaFloatMatrixMathPack(Main::stableFloatSigmoid, Main::floatSigmoidPrime);
+        MatrixMathPack<float[], FloatUnaryOperator> mathPack = new JavaFloatMatrixMathPack(FloatActivations.SIGMOID);
         Network<float[], FloatUnaryOperator> network = new Network<>(2, new int[]{3}, 1, mathPack, input -> input * 0.5f);
 
         float[][] input = new float[][]{
@@ -152,18 +152,4 @@ public class Main {
         System.out.println("After: " + java.util.Arrays.deepToString(newOutput));
     }
 
-    private static float stableFloatSigmoid(float input) {
-        if (input >= 0.0f) {
-            return 1.0f / (1.0f + (float) Math.exp(-input));
-        } else {
-            float epowx = (float) Math.exp(input);
-            return epowx / (1.0f + epowx);
-        }
-    }
-
-    private static float floatSigmoidPrime(float input) {
-        float sigmoid = stableFloatSigmoid(input);
-        return sigmoid * (1 - sigmoid);
-    }
-
 }
@@ -0,0 +1,67 @@
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Picks the fastest {@link MatrixMathPack} the running JVM supports.  The Vector API
+ * packs are only compiled on JDK 16 and up and only usable when the JVM was started
+ * with {@code --add-modules jdk.incubator.vector}, so they are looked up reflectively
+ * and the parallel scalar packs are returned whenever either is missing.
+ *
+ * @author rgettys
+ */
+public final class MathPacks {
+
+    private static final boolean VECTOR_API_AVAILABLE = detectVectorApi();
+
+    private MathPacks() {
+    }
+
+    /**
+     * @return whether {@link #floatPack} and {@link #doublePack} will hand out the Vector API packs
+     */
+    public static boolean isVectorApiAvailable() {
+        return VECTOR_API_AVAILABLE;
+    }
+
+    private static boolean detectVectorApi() {
+        try {
+            Class.forName("jdk.incubator.vector.FloatVector");
+            Class.forName("VectorFloatMatrixMathPack");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static MatrixMathPack<float[], FloatUnaryOperator> floatPack(FloatActivationFunction activation) {
+        ArgUtil.checkNull(activation, "activation");
+        if (VECTOR_API_AVAILABLE) {
+            MatrixMathPack<?, ?> pack = newVectorPack("VectorFloatMatrixMathPack", FloatActivationFunction.class, activation);
+            if (pack != null) {
+                return (MatrixMathPack<float[], FloatUnaryOperator>) pack;
+            }
+        }
+        return new ParallelFloatMatrixMathPack(activation);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static MatrixMathPack<double[], DoubleUnaryOperator> doublePack(DoubleActivationFunction activation) {
+        ArgUtil.checkNull(activation, "activation");
+        if (VECTOR_API_AVAILABLE) {
+            MatrixMathPack<?, ?> pack = newVectorPack("VectorDoubleMatrixMathPack", DoubleActivationFunction.class, activation);
+            if (pack != null) {
+                return (MatrixMathPack<double[], DoubleUnaryOperator>) pack;
+            }
+        }
+        return new ParallelDoubleMatrixMathPack(activation);
+    }
+
+    private static MatrixMathPack<?, ?> newVectorPack(String className, Class<?> activationType, Object activation) {
+        try {
+            return (MatrixMathPack<?, ?>) Class.forName(className).getConstructor(activationType).newInstance(activation);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+}
@@ -3,10 +3,50 @@
  */
 public interface MatrixMathPack<T, U> {
 
-    @FunctionalInterface
+    /**
+     * What a {@link Network} minimizes, and with it how the output layer turns its weighted
+     * input into the network's output; {@link CostFunctions} has the built-in ones.
+     */
     public interface CostFunction<T, U> {
 
-        T[] getCostMatrices(MatrixMathPack<T, U> mathPack, T[] input, T[] output, T[] trainingExamples, T[][] z, T[][] a, T[][] w);
+        /**
+         * The output layer's forward step: overwrites {@code output} with the network's output
+         * for {@code input}, the activations of the layer before.
+         *
+         * @param bias                  the layer's bias row, or null for none
+         * @param activationDerivatives where to record f'(z), or whatever else of the output's
+         *                              shape {@link #outputDeltaInto} needs, or null outside of
+         *                              training; a cost that never reads them may leave them
+         *                              unwritten
+         */
+        void activateOutput(MatrixMathPack<T, U> mathPack, T[] input, T[] weights, T bias, T[] output, T[] activationDerivatives);
+
+        /**
+         * Overwrites {@code delta} with dJ/dz for the output layer, from the output and
+         * derivatives {@link #activateOutput} left.
+         *
+         * @return the cost J, summed over the batch
+         */
+        double outputDeltaInto(MatrixMathPack<T, U> mathPack, T[] output, T[] activationDerivatives, T[] target, T[] delta);
+
+    }
+
+    /**
+     * Storage for a group of matrices that all stop being used at once, such as the
+     * copy-on-write copy of a network's weights, which lives until no snapshot shares it.
+     */
+    public interface Region<T> extends AutoCloseable {
+
+        /**
+         * As {@link MatrixMathPack#allocate}, valid until the region is closed.
+         */
+        T[] allocate(int width, int height);
+
+        /**
+         * Lets the pack reuse the region's memory; nothing allocated from it may be used after.
+         */
+        @Override
+        void close();
 
     }
 
@@ -18,18 +58,146 @@ public interface MatrixMathPack<T, U> {
 
     T[] clone(T[] input);
 
+    /**
+     * Copies {@code source} into {@code destination}, which must be at least as large.
+     */
+    void copyInto(T[] source, T[] destination);
+
+    /**
+     * Copies {@code matrix}, row after row, into {@code vector} from {@code offset}.
+     *
+     * @return the index just past the last element written
+     */
+    int copyIntoVector(T[] matrix, double[] vector, int offset);
+
+    /**
+     * The reverse of {@link #copyIntoVector}: overwrites {@code matrix}, row after row, with
+     * {@code vector} from {@code offset}, rounded to the pack's element type.
+     *
+     * @return the index just past the last element read
+     */
+    int copyFromVector(double[] vector, int offset, T[] matrix);
+
     T[] dotProduct(T[] multiplicand, T[] multiplier);
 
+    /**
+     * Overwrites {@code product} with {@code multiplicand . multiplier}.  {@code product}
+     * must not share storage with either operand.
+     */
+    void dotProductInto(T[] multiplicand, T[] multiplier, T[] product);
+
+    /**
+     * Computes {@code activate(multiplicand . multiplier)} with the activation applied as part of
+     * the multiply rather than as a second pass.
+     */
+    T[] dotProductActivate(T[] multiplicand, T[] multiplier);
+
+    /**
+     * Overwrites {@code output} with {@code activate(multiplicand . multiplier)} and, unless it is
+     * null, {@code activationDerivatives} with the activation derivative at the same points.
+     */
+    void dotProductActivateInto(T[] multiplicand, T[] multiplier, T[] output, T[] activationDerivatives);
+
+    /**
+     * As {@link #dotProductActivateInto}, adding the single row {@code bias} to every row of the
+     * product before the activation, as part of the same pass rather than a broadcast of its own.
+     */
+    void dotProductAddActivateInto(T[] multiplicand, T[] multiplier, T bias, T[] output, T[] activationDerivatives);
+
+    /**
+     * Computes {@code transpose(multiplicand) . multiplier} without materializing the transpose.
+     */
+    T[] transposeDotProduct(T[] multiplicand, T[] multiplier);
+
+    void transposeDotProductInto(T[] multiplicand, T[] multiplier, T[] product);
+
+    /**
+     * Computes {@code multiplicand . transpose(multiplier)} without materializing the transpose.
+     */
+    T[] dotProductTranspose(T[] multiplicand, T[] multiplier);
+
+    void dotProductTransposeInto(T[] multiplicand, T[] multiplier, T[] product);
+
     T[] hadamardProduct(T[] multiplicand, T[] multiplier);
 
+    /**
+     * Overwrites {@code product} with the elementwise product; {@code product} may be either operand.
+     */
+    void hadamardProductInto(T[] multiplicand, T[] multiplier, T[] product);
+
     void subtractInPlace(T[][] left, T[][] right);
 
+    /**
+     * Adds each matrix of {@code right} into the matching matrix of {@code left}.
+     */
+    void addInPlace(T[][] left, T[][] right);
+
+    /**
+     * Applies one step of {@code optimizer} to {@code weights} in a single elementwise pass: reads
+     * {@code gradient}, advances the optimizer's running moments in {@code firstMoment} and
+     * {@code secondMoment} (null when {@link Optimizer#usesFirstMoment()} or
+     * {@link Optimizer#usesSecondMoment()} says it keeps none), and writes the weights and moments
+     * back in place.  All four matrices have the same shape.
+     *
+     * @param stepSize the learning rate for this step, from {@link Optimizer#stepSize}
+     */
+    void optimizerStep(Optimizer optimizer, double stepSize, T[] weights, T[] gradient, T[] firstMoment, T[] secondMoment);
+
+    /**
+     * The plain learning-rate step: subtracts {@code scaler} of each element of {@code gradient}
+     * from the matching element of {@code weights} in a single pass, leaving {@code gradient} as
+     * it was.  Both matrices have the same shape.
+     */
+    void scaledSubtractInPlace(T[] weights, T[] gradient, U scaler);
+
     T[][] generateHigherDim(int size);
 
+    /**
+     * Allocates a zeroed matrix with {@code height} rows of {@code width} columns.
+     */
+    T[] allocate(int width, int height);
+
+    /**
+     * As {@link #allocate}, for a temporary the calling thread needs only until its next
+     * {@link #resetScratch()}.  Packs on the garbage-collected heap just allocate.
+     */
+    default T[] allocateScratch(int width, int height) {
+        return allocate(width, height);
+    }
+
+    /**
+     * Lets the pack hand out again everything the calling thread got from
+     * {@link #allocateScratch}; {@link Network} calls it at the start of every forward pass.
+     */
+    default void resetScratch() {
+    }
+
+    /**
+     * As {@link #allocate}, for a result handed to a caller who decides how long it lives, such
+     * as the output of {@link Network#forward(Object[])}, and so must not be tied to storage the
+     * pack keeps for longer.  Packs on the garbage-collected heap just allocate.
+     */
+    default T[] allocateDetached(int width, int height) {
+        return allocate(width, height);
+    }
+
+    /**
+     * Opens a {@link Region} for matrices whose owner closes them all together, or returns
+     * null when the pack leaves freeing its matrices to the garbage collector, as the heap
+     * packs do; callers then use {@link #allocate}.
+     */
+    default Region<T> openRegion() {
+        return null;
+    }
+
+    int width(T[] matrix);
+
     void activateInPlace(T[] input);
 
     T[] activate(T[] input);
 
+    void activateInto(T[] input, T[] output);
+
     void activatePrimeInPlace(T[] input);
 
     T[] activatePrime(T[] input);
@@ -38,16 +206,77 @@ public interface MatrixMathPack<T, U> {
 
     T[] subtract(T[] minuend, T[] subtrahend);
 
+    /**
+     * Overwrites {@code result} with {@code minuend - subtrahend}; {@code result} may be either operand.
+     */
+    void subtractInto(T[] minuend, T[] subtrahend, T[] result);
+
     T[] transpose(T[] input);
 
+    void transposeInto(T[] input, T[] result);
+
+    /**
+     * Overwrites the single row {@code sums} with the sum of every row of {@code input}; the
+     * gradient of a bias is the sum of its layer's deltas over the batch.
+     */
+    void sumRowsInto(T[] input, T sums);
+
     T squaredError(T[] target, T[] output);
 
+    /**
+     * The sum of {@link #squaredError} over every row, accumulated in {@code double} without
+     * allocating.
+     */
+    double totalSquaredError(T[] target, T[] output);
+
+    /**
+     * The output delta of the squared error cost in one pass: overwrites {@code delta} with
+     * {@code (output - target) * activationDerivatives} elementwise.
+     *
+     * @return half the squared error, summed over every row, as {@link #totalSquaredError}
+     */
+    double squaredErrorDeltaInto(T[] output, T[] target, T[] activationDerivatives, T[] delta);
+
+    /**
+     * The output delta of the binary cross-entropy cost with a sigmoid output in one pass:
+     * overwrites {@code delta} with {@code output - target}, the sigmoid's derivative having
+     * cancelled out.
+     *
+     * @return {@code -sum(target ln(output) + (1 - target) ln(1 - output))} over every row,
+     * with the logarithms kept finite at outputs of exactly 0 or 1; meaningless, like the delta,
+     * unless the pack's activation is the logistic sigmoid, which nothing checks
+     */
+    double binaryCrossEntropyDeltaInto(T[] output, T[] target, T[] delta);
+
+    /**
+     * Adds {@code bias} (when not null) to every row of {@code logits} and turns each row into
+     * its softmax, in place, subtracting the row's largest logit first so nothing overflows.
+     *
+     * @param logProbabilities null, or where to write each softmax's logarithm,
+     *                         {@code z - logSumExp(z)}, computed from the logits in the same
+     *                         passes so that it stays exact where the softmax underflows to 0
+     */
+    void softmaxInPlace(T[] logits, T bias, T[] logProbabilities);
+
+    /**
+     * The output delta of the cross-entropy cost on a softmax output in one pass: overwrites
+     * {@code delta} with {@code output - target}, which is dJ/dz when every target row sums to
+     * one.
+     *
+     * @param logProbabilities the logarithms {@link #softmaxInPlace} wrote with {@code output}
+     * @return {@code -sum(target logProbabilities)} over every row, skipping zero targets, which
+     * for a one-hot row is {@code logSumExp(z) - z[target]}
+     */
+    double softmaxCrossEntropyDeltaInto(T[] output, T[] logProbabilities, T[] target, T[] delta);
+
     T transform(T input, U operator);
 
     void mutate(T input, U operator);
 
     T[] transform(T[] input, U operator);
 
+    void transformInto(T[] input, U operator, T[] output);
+
     void mutate(T[] input, U operator);
 
     T[][] transform(T[][] input, U operator);
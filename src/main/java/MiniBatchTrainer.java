@@ -0,0 +1,131 @@
+import java.util.Random;
+
+/**
+ * Mini-batch gradient descent for a {@link Network}: every epoch shuffles the
+ * order of the examples in an {@link ExampleSource}, slices it into batches of a
+ * fixed size and takes one training step per batch.  Only a single batch of
+ * examples is ever resident, copied into buffers (and a {@link TrainingWorkspace})
+ * allocated up front and reused for the whole run, so the dataset itself can be
+ * far larger than the heap.
+ * <p>
+ * <p>The gradient of a step is summed over its batch, so the network's learning
+ * rate scaler should shrink as the batch size grows.  A trainer is not thread-safe.
+ *
+ * @author rgettys
+ */
+public class MiniBatchTrainer<T, U> {
+
+    private final Network<T, U> network;
+    private final ExampleSource<T> source;
+    private final boolean shuffle;
+    private final Random random;
+    private final int[] order;
+    private final Batch<T> fullBatch;
+    // The smaller last batch of an epoch, or null when the batch size divides the dataset.
+    private final Batch<T> lastBatch;
+    private int epochsCompleted;
+
+    public MiniBatchTrainer(Network<T, U> network, ExampleSource<T> source, int batchSize) {
+        this(network, source, batchSize, true, new Random());
+    }
+
+    /**
+     * @param batchSize the number of examples per step, capped at the size of {@code source}
+     * @param shuffle   whether to visit the examples in a new random order every epoch
+     *                  rather than in source order, which suits sources that read sequentially
+     * @param random    the source of the shuffles, seeded for reproducible runs
+     */
+    public MiniBatchTrainer(Network<T, U> network, ExampleSource<T> source, int batchSize, boolean shuffle, Random random) {
+        ArgUtil.checkNull(network, "network");
+        ArgUtil.checkNull(source, "source");
+        ArgUtil.checkNull(random, "random");
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize argument must be positive.");
+        }
+        int size = source.size();
+        if (size < 1) {
+            throw new IllegalArgumentException("source has no examples.");
+        }
+        this.network = network;
+        this.source = source;
+        this.shuffle = shuffle;
+        this.random = random;
+        order = new int[size];
+        for (int i = 0; i < size; ++i) {
+            order[i] = i;
+        }
+        batchSize = Math.min(batchSize, size);
+        fullBatch = new Batch<>(network, source, batchSize);
+        lastBatch = size % batchSize == 0 ? null : new Batch<>(network, source, size % batchSize);
+    }
+
+    /**
+     * Trains for {@code epochs} full passes over the source.
+     */
+    public void train(int epochs) {
+        for (int i = 0; i < epochs; ++i) {
+            trainEpoch();
+        }
+    }
+
+    /**
+     * Makes one pass over the source, one training step per batch.
+     */
+    public void trainEpoch() {
+        if (shuffle) {
+            shuffle();
+        }
+        int batchSize = fullBatch.inputs.length;
+        int start = 0;
+        for (; start + batchSize <= order.length; start += batchSize) {
+            step(fullBatch, start);
+        }
+        if (lastBatch != null) {
+            step(lastBatch, start);
+        }
+        ++epochsCompleted;
+    }
+
+    public int getEpochsCompleted() {
+        return epochsCompleted;
+    }
+
+    public int getBatchSize() {
+        return fullBatch.inputs.length;
+    }
+
+    private void step(Batch<T> batch, int start) {
+        for (int row = 0; row < batch.inputs.length; ++row) {
+            source.read(order[start + row], batch.inputs[row], batch.expected[row]);
+        }
+        network.train(batch.inputs, batch.expected, batch.workspace);
+    }
+
+    /**
+     * Fisher-Yates over the example indices; the examples themselves never move.
+     */
+    private void shuffle() {
+        for (int i = order.length - 1; i > 0; --i) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+    }
+
+    private static final class Batch<T> {
+
+        final T[] inputs;
+        final T[] expected;
+        final TrainingWorkspace<T> workspace;
+
+        <U> Batch(Network<T, U> network, ExampleSource<T> source, int size) {
+            MatrixMathPack<T, U> mathPack = network.getMathPack();
+            inputs = mathPack.allocate(source.inputWidth(), size);
+            expected = mathPack.allocate(source.outputWidth(), size);
+            workspace = network.createWorkspace(size);
+        }
+
+    }
+
+}
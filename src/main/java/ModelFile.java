@@ -0,0 +1,720 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A versioned binary file holding the weights and biases of a {@link Network},
+ * opened by memory-mapping each layer rather than parsing it.
+ * <p>
+ * <p>Everything is little-endian.  The header is
+ * <pre>
+ *   int  magic           "NNMF"
+ *   int  format version  currently 2; version 1 files, which have no biases, still open
+ *   int  element size    4 for float, 8 for double
+ *   int  layer count
+ *   per layer:
+ *     int  rows
+ *     int  columns
+ *     int  activation id   0 custom, 1 identity, 2 sigmoid, 3 tanh, 4 relu
+ *     int  flags           bit 0 set if the layer has a bias, bit 1 if the file
+ *                          holds optimizer state; bits 8-15 hold the cost function
+ *                          id in the output layer, 0 squared error, 1 binary
+ *                          cross-entropy, 2 softmax cross-entropy or 255 custom,
+ *                          and are clear in every other layer
+ *     long data offset     from the start of the file
+ * </pre>
+ * followed by one row-major block per layer, each starting on a
+ * {@value #ALIGNMENT}-byte boundary so it can be viewed in place.  A layer
+ * with a bias has its single row of {@code columns} elements in a block of its
+ * own on the next boundary after its weights.
+ * <p>
+ * <p>A checkpoint of a network with an {@link Optimizer} also holds its state.
+ * On the first boundary after the header comes
+ * <pre>
+ *   int    optimizer kind  0 SGD, 1 momentum, 2 Nesterov, 3 RMSProp, 4 Adam
+ *   int    reserved        0
+ *   double learning rate, momentum, decay, epsilon
+ *   long   steps taken
+ * </pre>
+ * and each layer's weights and bias are followed by its first moment and then
+ * its second, for whichever of them the optimizer keeps, laid out like the
+ * weights and bias themselves.
+ * <p>
+ * <p>{@link #open} reads only the header; each layer is mapped with
+ * {@link FileChannel#map} on first use, so opening costs the same however large
+ * the model is, and {@link #layerBuffer} hands out the mapped bytes without
+ * copying them.  The {@code read*Layers} methods copy the mapped blocks into the
+ * heap layouts of the existing math packs with one bulk transfer per row or layer.
+ *
+ * @author rgettys
+ */
+public final class ModelFile implements Closeable {
+
+    public static final int MAGIC = 0x464D4E4E;
+    public static final int FORMAT_VERSION = 2;
+    public static final int ALIGNMENT = 64;
+
+    private static final int HEADER_BYTES = 16;
+    private static final int LAYER_HEADER_BYTES = 24;
+    private static final int FLAG_BIAS = 1;
+    private static final int FLAG_OPTIMIZER = 2;
+    private static final int OPTIMIZER_BYTES = 48;
+    // Indexed by optimizer kind id.
+    private static final Optimizer.Kind[] OPTIMIZER_KINDS = {
+            Optimizer.Kind.SGD, Optimizer.Kind.MOMENTUM, Optimizer.Kind.NESTEROV, Optimizer.Kind.RMSPROP, Optimizer.Kind.ADAM};
+    private static final int COST_SHIFT = 8;
+    private static final int COST_MASK = 0xFF << COST_SHIFT;
+    private static final int COST_CUSTOM = 0xFF;
+    // Indexed by cost function id.
+    private static final MatrixMathPack.CostFunction<?, ?>[] COST_FUNCTIONS = {
+            CostFunctions.squaredError(), CostFunctions.binaryCrossEntropy(), CostFunctions.softmaxCrossEntropy()};
+    // Indexed by activation id; id 0 is anything that isn't a stock activation.
+    private static final String[] ACTIVATION_NAMES = {null, "IDENTITY", "SIGMOID", "TANH", "RELU"};
+
+    private final FileChannel channel;
+    private final int elementSize;
+    private final int[] rows;
+    private final int[] columns;
+    private final int[] activationIds;
+    private final long[] dataOffsets;
+    private final boolean biases;
+    private final int costId;
+    // Null when the file holds no optimizer state.
+    private final Optimizer optimizer;
+    private final long optimizerSteps;
+    private final ByteBuffer[] mappedLayers;
+    private final ByteBuffer[] mappedBiases;
+
+    private ModelFile(FileChannel channel, int elementSize, int[] rows, int[] columns, int[] activationIds, long[] dataOffsets,
+                      boolean biases, int costId, Optimizer optimizer, long optimizerSteps) {
+        this.channel = channel;
+        this.elementSize = elementSize;
+        this.rows = rows;
+        this.columns = columns;
+        this.activationIds = activationIds;
+        this.dataOffsets = dataOffsets;
+        this.biases = biases;
+        this.costId = costId;
+        this.optimizer = optimizer;
+        this.optimizerSteps = optimizerSteps;
+        this.mappedLayers = new ByteBuffer[rows.length];
+        this.mappedBiases = new ByteBuffer[rows.length];
+    }
+
+    /**
+     * Writes the weights and biases of {@code snapshot} to {@code file}, for a network trained
+     * with the default squared error cost.
+     *
+     * @param activation the {@link FloatActivations} or {@link DoubleActivations} constant the
+     *                   network uses, recorded for every layer, or null for a custom one
+     */
+    public static void write(Path file, WeightSnapshot<?> snapshot, Enum<?> activation) throws IOException {
+        write(file, snapshot, activation, CostFunctions.squaredError());
+    }
+
+    /**
+     * As {@link #write(Path, WeightSnapshot, Enum)}, recording {@code costFunction}, the
+     * network's {@link Network#getCostFunction()}, which decides what its output layer computes.
+     */
+    public static void write(Path file, WeightSnapshot<?> snapshot, Enum<?> activation,
+                             MatrixMathPack.CostFunction<?, ?> costFunction) throws IOException {
+        write(file, snapshot, activation, costFunction, null);
+    }
+
+    /**
+     * As {@link #write(Path, WeightSnapshot, Enum, MatrixMathPack.CostFunction)}, adding
+     * {@code optimizerState}, a copy taken along with {@code snapshot}, when it is not null.
+     */
+    static void write(Path file, WeightSnapshot<?> snapshot, Enum<?> activation, MatrixMathPack.CostFunction<?, ?> costFunction,
+                      OptimizerState<?> optimizerState) throws IOException {
+        ArgUtil.checkNull(file, "file");
+        ArgUtil.checkNull(snapshot, "snapshot");
+        ArgUtil.checkNull(costFunction, "costFunction");
+        Object[][] layers = snapshot.weights;
+        Object[][] biases = snapshot.biases;
+        // The moments the optimizer keeps, first before second, each per layer like the weights.
+        Object[][][] moments = new Object[0][][];
+        Object[][][] biasMoments = new Object[0][][];
+        if (optimizerState != null) {
+            Optimizer optimizer = optimizerState.optimizer;
+            int kept = (optimizer.usesFirstMoment() ? 1 : 0) + (optimizer.usesSecondMoment() ? 1 : 0);
+            moments = new Object[kept][][];
+            biasMoments = new Object[kept][][];
+            int m = 0;
+            if (optimizer.usesFirstMoment()) {
+                moments[m] = optimizerState.firstMoments;
+                biasMoments[m++] = optimizerState.biasFirstMoments;
+            }
+            if (optimizer.usesSecondMoment()) {
+                moments[m] = optimizerState.secondMoments;
+                biasMoments[m] = optimizerState.biasSecondMoments;
+            }
+        }
+        int layerCount = layers.length;
+        int elementSize = elementSize(layers[0][0]);
+        int activationId = activationId(activation);
+        int layerFlags = (biases == null ? 0 : FLAG_BIAS) | (optimizerState == null ? 0 : FLAG_OPTIMIZER);
+        int outputFlags = costId(costFunction) << COST_SHIFT;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + layerCount * LAYER_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(elementSize).putInt(layerCount);
+        long dataOffset = align(header.capacity()) + (optimizerState == null ? 0 : align(OPTIMIZER_BYTES));
+        for (int i = 0; i < layerCount; ++i) {
+            Object[] layer = layers[i];
+            int layerColumns = columns(layer[0]);
+            int flags = layerFlags | (i == layerCount - 1 ? outputFlags : 0);
+            header.putInt(layer.length).putInt(layerColumns).putInt(activationId).putInt(flags).putLong(dataOffset);
+            dataOffset += (1 + moments.length) * blockBytes(layer.length, layerColumns, elementSize, biases != null);
+        }
+        header.flip();
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(out, header, 0);
+            long position = align(header.capacity());
+            if (optimizerState != null) {
+                writeFully(out, optimizerRecord(optimizerState), position);
+                position = align(position + OPTIMIZER_BYTES);
+            }
+            for (int i = 0; i < layerCount; ++i) {
+                Object[] layer = layers[i];
+                int rowBytes = columns(layer[0]) * elementSize;
+                ByteBuffer rowBuffer = ByteBuffer.allocate(rowBytes).order(ByteOrder.LITTLE_ENDIAN);
+                position = writeBlocks(out, rowBuffer, layer, biases == null ? null : biases[i], position);
+                for (int m = 0; m < moments.length; ++m) {
+                    position = writeBlocks(out, rowBuffer, moments[m][i], biasMoments[m] == null ? null : biasMoments[m][i],
+                            position);
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens {@code file} and reads its header; the weights themselves are mapped lazily.
+     */
+    public static ModelFile open(Path file) throws IOException {
+        ArgUtil.checkNull(file, "file");
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            if (header.getInt() != MAGIC) {
+                throw new IOException(file + " is not a model file.");
+            }
+            int version = header.getInt();
+            if (version < 1 || version > FORMAT_VERSION) {
+                throw new IOException(file + " has format version " + version + ", expected at most " + FORMAT_VERSION + ".");
+            }
+            int elementSize = header.getInt();
+            int layerCount = header.getInt();
+            if ((elementSize != Float.BYTES && elementSize != Double.BYTES) || layerCount < 1) {
+                throw new IOException(file + " has a corrupt header.");
+            }
+            ByteBuffer layerHeaders = ByteBuffer.allocate(layerCount * LAYER_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, layerHeaders, HEADER_BYTES);
+            int[] rows = new int[layerCount];
+            int[] columns = new int[layerCount];
+            int[] activationIds = new int[layerCount];
+            long[] dataOffsets = new long[layerCount];
+            long fileSize = channel.size();
+            // Either every layer has a bias or none does, as in a Network, and likewise moments.
+            int layerFlags = layerHeaders.getInt(12) & ~COST_MASK;
+            boolean biases = (layerFlags & FLAG_BIAS) != 0;
+            Optimizer optimizer = null;
+            long optimizerSteps = 0;
+            int moments = 0;
+            if ((layerFlags & FLAG_OPTIMIZER) != 0) {
+                ByteBuffer record = ByteBuffer.allocate(OPTIMIZER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                readFully(channel, record, align(HEADER_BYTES + layerCount * LAYER_HEADER_BYTES));
+                optimizer = readOptimizer(file, record);
+                optimizerSteps = record.getLong();
+                if (optimizerSteps < 0) {
+                    throw new IOException(file + " has a corrupt optimizer step count.");
+                }
+                moments = (optimizer.usesFirstMoment() ? 1 : 0) + (optimizer.usesSecondMoment() ? 1 : 0);
+            }
+            int costId = 0;
+            for (int i = 0; i < layerCount; ++i) {
+                rows[i] = layerHeaders.getInt();
+                columns[i] = layerHeaders.getInt();
+                activationIds[i] = layerHeaders.getInt();
+                int flags = layerHeaders.getInt();
+                dataOffsets[i] = layerHeaders.getLong();
+                if (i == layerCount - 1) {
+                    costId = (flags & COST_MASK) >>> COST_SHIFT;
+                    flags &= ~COST_MASK;
+                }
+                long bytes = (long) rows[i] * columns[i] * elementSize;
+                // The last block of the layer needn't be padded out to the boundary.
+                long end = dataOffsets[i] + moments * blockBytes(rows[i], columns[i], elementSize, biases)
+                        + (biases ? align(bytes) + (long) columns[i] * elementSize : bytes);
+                if (rows[i] < 1 || columns[i] < 1 || bytes > Integer.MAX_VALUE || dataOffsets[i] % ALIGNMENT != 0
+                        || end > fileSize || flags != layerFlags || (flags & ~(FLAG_BIAS | FLAG_OPTIMIZER)) != 0) {
+                    throw new IOException(file + " has a corrupt header for layer " + i + ".");
+                }
+            }
+            if (costId >= COST_FUNCTIONS.length && costId != COST_CUSTOM) {
+                throw new IOException(file + " records unknown cost function " + costId + ".");
+            }
+            return new ModelFile(channel, elementSize, rows, columns, activationIds, dataOffsets, biases, costId, optimizer,
+                    optimizerSteps);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int getLayerCount() {
+        return rows.length;
+    }
+
+    public int getRows(int layer) {
+        return rows[layer];
+    }
+
+    public int getColumns(int layer) {
+        return columns[layer];
+    }
+
+    public boolean hasBiases() {
+        return biases;
+    }
+
+    /**
+     * @return {@link Float#BYTES} or {@link Double#BYTES}
+     */
+    public int getElementSize() {
+        return elementSize;
+    }
+
+    /**
+     * @return the name of the stock activation recorded for {@code layer}, as in
+     * {@link FloatActivations#valueOf}, or null for a custom one
+     */
+    public String getActivationName(int layer) {
+        int id = activationIds[layer];
+        return id > 0 && id < ACTIVATION_NAMES.length ? ACTIVATION_NAMES[id] : null;
+    }
+
+    /**
+     * The stock activation of the first layer, for building a float math pack to match.
+     *
+     * @throws IllegalStateException if the file records a custom activation
+     */
+    public FloatActivations getFloatActivation() {
+        return FloatActivations.valueOf(requireActivationName());
+    }
+
+    public DoubleActivations getDoubleActivation() {
+        return DoubleActivations.valueOf(requireActivationName());
+    }
+
+    /**
+     * The cost function the network was trained with, for {@link Network#setCostFunction} and
+     * the forward-only copies, which need it to compute the same output layer; files written
+     * before it was recorded give {@link CostFunctions#squaredError()}.
+     *
+     * @throws IllegalStateException if the file records a custom cost function
+     */
+    @SuppressWarnings("unchecked")
+    public <T, U> MatrixMathPack.CostFunction<T, U> getCostFunction() {
+        if (costId == COST_CUSTOM) {
+            throw new IllegalStateException("Model file records a custom cost function.");
+        }
+        return (MatrixMathPack.CostFunction<T, U>) COST_FUNCTIONS[costId];
+    }
+
+    /**
+     * @return whether the file is a checkpoint holding the state of its network's {@link Optimizer}
+     */
+    public boolean hasOptimizerState() {
+        return optimizer != null;
+    }
+
+    /**
+     * @return the optimizer the network was training with, or null if the file has no optimizer state
+     */
+    public Optimizer getOptimizer() {
+        return optimizer;
+    }
+
+    /**
+     * @return how many updates the optimizer had made, as {@link Network#getOptimizerSteps()}
+     */
+    public long getOptimizerSteps() {
+        return optimizerSteps;
+    }
+
+    /**
+     * Sets the file's optimizer on {@code network}, built from this file's layers, starting from
+     * the saved moments and step count, so that training resumes where the checkpoint left off.
+     * Call it from the training thread, before the first step.
+     *
+     * @throws IllegalStateException    if the file has no optimizer state
+     * @throws IllegalArgumentException if the network's layers are shaped differently
+     */
+    public <T, U> void restoreOptimizer(Network<T, U> network) throws IOException {
+        ArgUtil.checkNull(network, "network");
+        if (optimizer == null) {
+            throw new IllegalStateException("Model file has no optimizer state.");
+        }
+        // Indexed first moment, second moment; null for one the optimizer doesn't keep.
+        double[][][] moments = new double[2][][];
+        double[][][] biasMoments = new double[2][][];
+        int block = 1;
+        for (int m = 0; m < 2; ++m) {
+            if (!(m == 0 ? optimizer.usesFirstMoment() : optimizer.usesSecondMoment())) {
+                continue;
+            }
+            moments[m] = new double[rows.length][];
+            biasMoments[m] = biases ? new double[rows.length][] : null;
+            for (int i = 0; i < rows.length; ++i) {
+                long offset = dataOffsets[i] + block * blockBytes(rows[i], columns[i], elementSize, biases);
+                moments[m][i] = readVector(offset, rows[i] * columns[i]);
+                if (biases) {
+                    biasMoments[m][i] = readVector(offset + align((long) rows[i] * columns[i] * elementSize), columns[i]);
+                }
+            }
+            ++block;
+        }
+        network.restoreOptimizer(optimizer, optimizerSteps, moments[0], moments[1], biasMoments[0], biasMoments[1]);
+    }
+
+    /**
+     * Maps {@code layer} (once) and returns a read-only little-endian view of its row-major
+     * elements, positioned at the first one.  Nothing is copied.
+     */
+    public synchronized ByteBuffer layerBuffer(int layer) throws IOException {
+        if (mappedLayers[layer] == null) {
+            long bytes = (long) rows[layer] * columns[layer] * elementSize;
+            mappedLayers[layer] = channel.map(FileChannel.MapMode.READ_ONLY, dataOffsets[layer], bytes);
+        }
+        return mappedLayers[layer].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * As {@link #layerBuffer}, for the single row of {@code layer}'s bias.
+     *
+     * @throws IllegalStateException if the file has no biases
+     */
+    public synchronized ByteBuffer biasBuffer(int layer) throws IOException {
+        if (!biases) {
+            throw new IllegalStateException("Model file has no biases.");
+        }
+        if (mappedBiases[layer] == null) {
+            long weightBytes = (long) rows[layer] * columns[layer] * elementSize;
+            mappedBiases[layer] = channel.map(FileChannel.MapMode.READ_ONLY, align(dataOffsets[layer] + weightBytes),
+                    (long) columns[layer] * elementSize);
+        }
+        return mappedBiases[layer].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Copies every layer into jagged matrices for {@link JavaFloatMatrixMathPack} and friends.
+     */
+    public float[][][] readFloatLayers() throws IOException {
+        requireElementSize(Float.BYTES);
+        float[][][] layers = new float[rows.length][][];
+        for (int i = 0; i < rows.length; ++i) {
+            FloatBuffer source = layerBuffer(i).asFloatBuffer();
+            float[][] layer = layers[i] = new float[rows[i]][columns[i]];
+            for (float[] row : layer) {
+                source.get(row);
+            }
+        }
+        return layers;
+    }
+
+    /**
+     * Copies every layer's bias into a row of its own, the form {@link Network} takes them in.
+     *
+     * @return the biases, or null if the file has none
+     */
+    public float[][] readFloatBiases() throws IOException {
+        requireElementSize(Float.BYTES);
+        if (!biases) {
+            return null;
+        }
+        float[][] rows = new float[columns.length][];
+        for (int i = 0; i < columns.length; ++i) {
+            rows[i] = new float[columns[i]];
+            biasBuffer(i).asFloatBuffer().get(rows[i]);
+        }
+        return rows;
+    }
+
+    public double[][][] readDoubleLayers() throws IOException {
+        requireElementSize(Double.BYTES);
+        double[][][] layers = new double[rows.length][][];
+        for (int i = 0; i < rows.length; ++i) {
+            DoubleBuffer source = layerBuffer(i).asDoubleBuffer();
+            double[][] layer = layers[i] = new double[rows[i]][columns[i]];
+            for (double[] row : layer) {
+                source.get(row);
+            }
+        }
+        return layers;
+    }
+
+    public double[][] readDoubleBiases() throws IOException {
+        requireElementSize(Double.BYTES);
+        if (!biases) {
+            return null;
+        }
+        double[][] rows = new double[columns.length][];
+        for (int i = 0; i < columns.length; ++i) {
+            rows[i] = new double[columns[i]];
+            biasBuffer(i).asDoubleBuffer().get(rows[i]);
+        }
+        return rows;
+    }
+
+    /**
+     * Copies every layer into one densely packed array each for {@link FlatFloatMatrixMathPack}.
+     */
+    public FlatFloatMatrix[][] readFlatFloatLayers() throws IOException {
+        requireElementSize(Float.BYTES);
+        FlatFloatMatrix[][] layers = new FlatFloatMatrix[rows.length][];
+        for (int i = 0; i < rows.length; ++i) {
+            float[] data = new float[rows[i] * columns[i]];
+            layerBuffer(i).asFloatBuffer().get(data);
+            layers[i] = FlatFloatMatrix.wrap(data, 0, rows[i], columns[i], columns[i]);
+        }
+        return layers;
+    }
+
+    /**
+     * @return the biases as rows for {@link FlatFloatMatrixMathPack}, or null if the file has none
+     */
+    public FlatFloatMatrix[] readFlatFloatBiases() throws IOException {
+        float[][] rows = readFloatBiases();
+        if (rows == null) {
+            return null;
+        }
+        FlatFloatMatrix[] biasRows = new FlatFloatMatrix[rows.length];
+        for (int i = 0; i < rows.length; ++i) {
+            biasRows[i] = FlatFloatMatrix.wrap(rows[i], 0, 1, rows[i].length, rows[i].length)[0];
+        }
+        return biasRows;
+    }
+
+    /**
+     * Wraps every mapped layer for {@link OffHeapFloatMatrixMathPack} without copying
+     * anything, so pages are read in on first use.  The views are read-only; a
+     * {@link Network} built on them copies its weights into direct memory of their
+     * own before the first update.
+     */
+    public OffHeapFloatMatrix[][] mapOffHeapFloatLayers() throws IOException {
+        requireElementSize(Float.BYTES);
+        OffHeapFloatMatrix[][] layers = new OffHeapFloatMatrix[rows.length][];
+        for (int i = 0; i < rows.length; ++i) {
+            layers[i] = OffHeapFloatMatrix.wrap(layerBuffer(i).asFloatBuffer(), 0, rows[i], columns[i], columns[i]);
+        }
+        return layers;
+    }
+
+    /**
+     * As {@link #mapOffHeapFloatLayers}, for the biases.
+     *
+     * @return the biases, or null if the file has none
+     */
+    public OffHeapFloatMatrix[] mapOffHeapFloatBiases() throws IOException {
+        requireElementSize(Float.BYTES);
+        if (!biases) {
+            return null;
+        }
+        OffHeapFloatMatrix[] biasRows = new OffHeapFloatMatrix[columns.length];
+        for (int i = 0; i < columns.length; ++i) {
+            biasRows[i] = OffHeapFloatMatrix.wrap(biasBuffer(i).asFloatBuffer(), 0, 1, columns[i], columns[i])[0];
+        }
+        return biasRows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Mapped layers stay valid after the channel closes.
+        channel.close();
+    }
+
+    private String requireActivationName() {
+        String name = getActivationName(0);
+        if (name == null) {
+            throw new IllegalStateException("Model file records a custom activation.");
+        }
+        return name;
+    }
+
+    private void requireElementSize(int expected) {
+        if (elementSize != expected) {
+            throw new IllegalStateException("Model file holds " + elementSize + " byte elements, not " + expected + ".");
+        }
+    }
+
+    private static int activationId(Enum<?> activation) {
+        if (activation instanceof FloatActivations || activation instanceof DoubleActivations) {
+            for (int i = 1; i < ACTIVATION_NAMES.length; ++i) {
+                if (ACTIVATION_NAMES[i].equals(activation.name())) {
+                    return i;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Copies {@code count} elements from {@code offset} out of the mapped file.
+     */
+    private double[] readVector(long offset, int count) throws IOException {
+        ByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) count * elementSize)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        double[] vector = new double[count];
+        if (elementSize == Float.BYTES) {
+            FloatBuffer source = block.asFloatBuffer();
+            for (int i = 0; i < count; ++i) {
+                vector[i] = source.get(i);
+            }
+        } else {
+            block.asDoubleBuffer().get(vector);
+        }
+        return vector;
+    }
+
+    private static ByteBuffer optimizerRecord(OptimizerState<?> optimizerState) {
+        Optimizer optimizer = optimizerState.optimizer;
+        int kind = 0;
+        while (OPTIMIZER_KINDS[kind] != optimizer.getKind()) {
+            ++kind;
+        }
+        ByteBuffer record = ByteBuffer.allocate(OPTIMIZER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        record.putInt(kind).putInt(0)
+                .putDouble(optimizer.getLearningRate()).putDouble(optimizer.getMomentum()).putDouble(optimizer.getDecay())
+                .putDouble(optimizer.getEpsilon()).putLong(optimizerState.getSteps());
+        record.flip();
+        return record;
+    }
+
+    private static Optimizer readOptimizer(Path file, ByteBuffer record) throws IOException {
+        int kind = record.getInt();
+        record.getInt();
+        double learningRate = record.getDouble();
+        double momentum = record.getDouble();
+        double decay = record.getDouble();
+        double epsilon = record.getDouble();
+        if (kind < 0 || kind >= OPTIMIZER_KINDS.length) {
+            throw new IOException(file + " records unknown optimizer " + kind + ".");
+        }
+        try {
+            return Optimizer.of(OPTIMIZER_KINDS[kind], learningRate, momentum, decay, epsilon);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(file + " records a corrupt optimizer: " + e.getMessage(), e);
+        }
+    }
+
+    private static int costId(MatrixMathPack.CostFunction<?, ?> costFunction) {
+        for (int i = 0; i < COST_FUNCTIONS.length; ++i) {
+            if (COST_FUNCTIONS[i] == costFunction) {
+                return i;
+            }
+        }
+        return COST_CUSTOM;
+    }
+
+    private static int elementSize(Object row) {
+        if (row instanceof float[] || row instanceof FlatFloatMatrix || row instanceof OffHeapFloatMatrix) {
+            return Float.BYTES;
+        } else if (row instanceof double[]) {
+            return Double.BYTES;
+        }
+        throw new IllegalArgumentException("Can't write rows of type " + row.getClass().getName() + ".");
+    }
+
+    private static int columns(Object row) {
+        if (row instanceof float[]) {
+            return ((float[]) row).length;
+        } else if (row instanceof double[]) {
+            return ((double[]) row).length;
+        } else if (row instanceof FlatFloatMatrix) {
+            return ((FlatFloatMatrix) row).columns;
+        } else if (row instanceof OffHeapFloatMatrix) {
+            return ((OffHeapFloatMatrix) row).columns;
+        }
+        throw new IllegalArgumentException("Can't write rows of type " + row.getClass().getName() + ".");
+    }
+
+    /**
+     * Writes {@code matrix} and, when not null, the single row of {@code bias} after it, each
+     * starting on a boundary.
+     *
+     * @return the boundary after the last block
+     */
+    private static long writeBlocks(FileChannel out, ByteBuffer rowBuffer, Object[] matrix, Object[] bias, long position)
+            throws IOException {
+        for (Object row : matrix) {
+            position = writeRow(out, rowBuffer, row, position);
+        }
+        position = align(position);
+        if (bias != null) {
+            position = align(writeRow(out, rowBuffer, bias[0], position));
+        }
+        return position;
+    }
+
+    /**
+     * @return the room a weight block and the bias block after it take up, padding included
+     */
+    private static long blockBytes(int rows, int columns, int elementSize, boolean bias) {
+        long bytes = align((long) rows * columns * elementSize);
+        return bias ? bytes + align((long) columns * elementSize) : bytes;
+    }
+
+    private static long writeRow(FileChannel out, ByteBuffer rowBuffer, Object row, long position) throws IOException {
+        rowBuffer.clear();
+        putRow(rowBuffer, row);
+        rowBuffer.flip();
+        writeFully(out, rowBuffer, position);
+        return position + rowBuffer.limit();
+    }
+
+    private static void putRow(ByteBuffer buffer, Object row) {
+        if (row instanceof float[]) {
+            buffer.asFloatBuffer().put((float[]) row);
+        } else if (row instanceof double[]) {
+            buffer.asDoubleBuffer().put((double[]) row);
+        } else if (row instanceof FlatFloatMatrix) {
+            FlatFloatMatrix flatRow = (FlatFloatMatrix) row;
+            buffer.asFloatBuffer().put(flatRow.data, flatRow.offset, flatRow.columns);
+        } else {
+            OffHeapFloatMatrix offHeapRow = (OffHeapFloatMatrix) row;
+            FloatBuffer source = offHeapRow.data.duplicate();
+            source.limit(offHeapRow.offset + offHeapRow.columns).position(offHeapRow.offset);
+            buffer.asFloatBuffer().put(source);
+        }
+        buffer.position(buffer.limit());
+    }
+
+    private static long align(long position) {
+        return (position + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of model file.");
+            }
+            position += read;
+        }
+        buffer.flip();
+    }
+
+}
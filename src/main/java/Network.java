@@ -1,20 +1,102 @@
+import java.util.Arrays;
+
 /**
  * @author rgettys
  */
 public class Network<T, U> {
 
-    private final T[][] weights;
+    // The live weights training writes to; replaced by a copy whenever a snapshot shares them.
+    private volatile T[][] weights;
+    // One single-row matrix per layer, added before the activation, or null for none; copied
+    // along with the weights.
+    private volatile T[][] biases;
     private final MatrixMathPack<T, U> mathPack;
     private final U learningRateScaler;
+    private TrainingWorkspace<T> workspace;
+    private volatile WeightSnapshot<T> snapshot;
+    // Whether the live weights and biases are also the matrices of the latest snapshot.
+    private volatile boolean weightsShared;
+    // The region the live weights were last copied into, or null while they are the initial
+    // weights or the math pack has no regions; the latest snapshot holds a reference of its own.
+    private WeightSnapshot.Storage liveStorage;
+    private int publishInterval;
+    // Null for the plain learning-rate update.
+    private volatile OptimizerState<T> optimizerState;
+    private volatile MatrixMathPack.CostFunction<T, U> costFunction = CostFunctions.squaredError();
+    private int updatesSincePublish;
+    // Set while HogwildTrainer workers write the live weights with no coordination, so that a
+    // snapshot sharing them could still change under its readers.
+    private boolean unsynchronizedTraining;
 
+    /**
+     * As {@link #Network(MatrixMathPack, Object, Object[][], Object[])}, without biases.
+     */
     public Network(MatrixMathPack<T, U> mathPack, U learningRateScaler, T[][] initialWeights) {
+        this(mathPack, learningRateScaler, initialWeights, null);
+    }
+
+    /**
+     * Starts from {@code initialWeights} and {@code initialBiases} without copying them: they
+     * become the first snapshot, version 0, which is never written.  The first update therefore
+     * copies them and trains the copy, so the caller's matrices keep the initial values; take
+     * the trained weights from the snapshot {@link #publish()} returns.
+     *
+     * @param initialBiases one row per layer, as wide as the layer's output, added to every row
+     *                      of the layer's weighted input before the activation; null for a
+     *                      network without biases
+     */
+    public Network(MatrixMathPack<T, U> mathPack, U learningRateScaler, T[][] initialWeights, T[] initialBiases) {
         this.mathPack = mathPack;
         this.learningRateScaler = learningRateScaler;
         weights = initialWeights;
+        biases = initialBiases == null ? null : wrapBiases(mathPack, initialWeights, initialBiases);
+        snapshot = new WeightSnapshot<>(0, initialWeights, biases, null);
+        weightsShared = true;
     }
 
     public Network(int inputSize, int[] hiddenLayerSizes, int outputSize, MatrixMathPack<T, U> mathPack, U learningRateScaler) {
-        this(mathPack, learningRateScaler, initRandomWeights(mathPack, inputSize, hiddenLayerSizes, outputSize));
+        this(inputSize, hiddenLayerSizes, outputSize, mathPack, learningRateScaler, false);
+    }
+
+    /**
+     * @param withBiases whether every layer gets a bias, starting at zero
+     */
+    public Network(int inputSize, int[] hiddenLayerSizes, int outputSize, MatrixMathPack<T, U> mathPack, U learningRateScaler,
+                   boolean withBiases) {
+        this(mathPack, learningRateScaler, initRandomWeights(mathPack, inputSize, hiddenLayerSizes, outputSize), withBiases);
+    }
+
+    private Network(MatrixMathPack<T, U> mathPack, U learningRateScaler, T[][] initialWeights, boolean withBiases) {
+        this(mathPack, learningRateScaler, initialWeights, withBiases ? zeroBiases(mathPack, initialWeights) : null);
+    }
+
+    private static <T, U> T[] zeroBiases(MatrixMathPack<T, U> mathPack, T[][] weights) {
+        T[] biases = Arrays.copyOf(weights[0], weights.length);
+        for (int i = 0; i < weights.length; ++i) {
+            biases[i] = mathPack.allocate(mathPack.width(weights[i]), 1)[0];
+        }
+        return biases;
+    }
+
+    /**
+     * Gives each bias row a single-row matrix of its own, the form the math pack's matrix
+     * operations take.
+     */
+    private static <T, U> T[][] wrapBiases(MatrixMathPack<T, U> mathPack, T[][] weights, T[] biases) {
+        if (biases.length != weights.length) {
+            throw new IllegalArgumentException("Got " + biases.length + " bias rows for " + weights.length + " layers.");
+        }
+        T[][] wrapped = mathPack.generateHigherDim(weights.length);
+        for (int i = 0; i < weights.length; ++i) {
+            T[] matrix = Arrays.copyOf(weights[i], 1);
+            matrix[0] = biases[i];
+            if (mathPack.width(matrix) != mathPack.width(weights[i])) {
+                throw new IllegalArgumentException("Layer " + i + " has " + mathPack.width(weights[i]) + " outputs but "
+                        + mathPack.width(matrix) + " biases.");
+            }
+            wrapped[i] = matrix;
+        }
+        return wrapped;
     }
 
     private static <T, U> T[][] initRandomWeights(MatrixMathPack<T, U> mathPack, int inputSize, int[] hiddenLayerSizes, int outputSize) {
@@ -30,48 +112,697 @@ public class Network<T, U> {
     }
 
 
+    public MatrixMathPack<T, U> getMathPack() {
+        return mathPack;
+    }
+
+    /**
+     * @return the number of columns every input row must have
+     */
+    public int getInputWidth() {
+        return weights[0].length;
+    }
+
+    public boolean hasBiases() {
+        return biases != null;
+    }
+
+    /**
+     * @return the number of columns every output row has
+     */
+    public int getOutputWidth() {
+        T[][] weights = this.weights;
+        return mathPack.width(weights[weights.length - 1]);
+    }
+
+    /**
+     * Runs {@code input} through the live weights.  Only safe on the thread that trains;
+     * everyone else should use {@link #forward(Object[], WeightSnapshot)}.  The output is
+     * the caller's to keep; {@link #forwardInto(Object[], Object[])} writes one the caller
+     * already has instead.
+     */
     public T[] forward(T[] input) {
+        T[] output = allocateOutput(input.length);
+        forwardInto(input, output);
+        return output;
+    }
+
+    /**
+     * As {@link #forward(Object[])}, overwriting {@code output}, which needs a row per input row
+     * and {@link #getOutputWidth()} columns, so the pass allocates nothing that outlives it.
+     */
+    public void forwardInto(T[] input, T[] output) {
+        forward(input, weights, biases, output);
+    }
+
+    /**
+     * Runs {@code input} through the weights of {@code snapshot}, which never change, so
+     * this is safe from any thread while the network trains.
+     *
+     * @throws IllegalStateException if the snapshot has been retired, which can only happen
+     *                               with a math pack that hands out {@link MatrixMathPack.Region}s
+     *                               when the snapshot was not taken with {@link #acquireSnapshot()}
+     */
+    public T[] forward(T[] input, WeightSnapshot<T> snapshot) {
+        T[] output = allocateOutput(input.length);
+        forwardInto(input, snapshot, output);
+        return output;
+    }
+
+    /**
+     * As {@link #forward(Object[], WeightSnapshot)}, overwriting {@code output} as
+     * {@link #forwardInto(Object[], Object[])} does.
+     */
+    public void forwardInto(T[] input, WeightSnapshot<T> snapshot, T[] output) {
+        acquire(snapshot);
+        try {
+            forward(input, snapshot.weights, snapshot.biases, output);
+        } finally {
+            snapshot.release();
+        }
+    }
+
+    /**
+     * As {@link #forward(Object[])}, for sparse input; needs a {@link SparseInputMathPack}.
+     */
+    public T[] forward(SparseFloatMatrix input) {
+        T[] output = allocateOutput(input.rows);
+        forwardInto(input, output);
+        return output;
+    }
+
+    /**
+     * As {@link #forwardInto(Object[], Object[])}, for sparse input.
+     */
+    public void forwardInto(SparseFloatMatrix input, T[] output) {
+        forward(input, weights, biases, output);
+    }
+
+    /**
+     * As {@link #forward(Object[], WeightSnapshot)}, for sparse input; needs a
+     * {@link SparseInputMathPack}.
+     */
+    public T[] forward(SparseFloatMatrix input, WeightSnapshot<T> snapshot) {
+        T[] output = allocateOutput(input.rows);
+        forwardInto(input, snapshot, output);
+        return output;
+    }
+
+    /**
+     * As {@link #forwardInto(Object[], WeightSnapshot, Object[])}, for sparse input.
+     */
+    public void forwardInto(SparseFloatMatrix input, WeightSnapshot<T> snapshot, T[] output) {
+        acquire(snapshot);
+        try {
+            forward(input, snapshot.weights, snapshot.biases, output);
+        } finally {
+            snapshot.release();
+        }
+    }
+
+    /**
+     * Detached, as the caller decides how long the output lives.
+     */
+    private T[] allocateOutput(int rows) {
+        return mathPack.allocateDetached(getOutputWidth(), rows);
+    }
+
+    private static <T> void acquire(WeightSnapshot<T> snapshot) {
+        ArgUtil.checkNull(snapshot, "snapshot");
+        if (!snapshot.tryAcquire()) {
+            throw new IllegalStateException("Snapshot " + snapshot.getVersion() + " has been retired; take snapshots to read "
+                    + "from other threads with acquireSnapshot().");
+        }
+    }
+
+    private void checkOutput(T[][] weights, int rows, T[] output) {
+        ArgUtil.checkNull(output, "output");
+        int width = mathPack.width(weights[weights.length - 1]);
+        if (output.length != rows || mathPack.width(output) != width) {
+            throw new IllegalArgumentException("Expected a " + rows + "x" + width + " output, got " + output.length + "x"
+                    + mathPack.width(output) + ".");
+        }
+    }
+
+    private void forward(SparseFloatMatrix input, T[][] weights, T[][] biases, T[] output) {
+        SparseInputMathPack<T, U> sparsePack = sparsePack(input);
+        MatrixMathPack.CostFunction<T, U> costFunction = this.costFunction;
+        checkSparseOutput(weights, costFunction);
+        checkOutput(weights, input.rows, output);
+        mathPack.resetScratch();
+        int last = weights.length - 1;
+        T[] activation = last == 0 ? output : mathPack.allocateScratch(mathPack.width(weights[0]), input.rows);
+        sparsePack.sparseDotProductActivateInto(input, weights[0], bias(biases, 0), activation, null);
+        for (int i = 1; i < last; ++i) {
+            activation = activateLayer(activation, weights, biases, i);
+        }
+        if (last > 0) {
+            costFunction.activateOutput(mathPack, activation, weights[last], bias(biases, last), output, null);
+        }
+    }
+
+    /**
+     * Hidden layers go in the calling thread's scratch memory, which the next forward pass on
+     * the thread reuses; only the output is the caller's.
+     */
+    private void forward(T[] input, T[][] weights, T[][] biases, T[] output) {
+        ArgUtil.checkNull(input, "input");
+        checkOutput(weights, input.length, output);
+        mathPack.resetScratch();
         T[] activation = input;
-        for (T[] layerWeights : weights) {
-            activation = mathPack.dotProduct(activation, layerWeights);
-            mathPack.activateInPlace(activation);
+        int last = weights.length - 1;
+        for (int i = 0; i < last; ++i) {
+            activation = activateLayer(activation, weights, biases, i);
+        }
+        costFunction.activateOutput(mathPack, activation, weights[last], bias(biases, last), output, null);
+    }
+
+    /**
+     * The sparse multiply always applies the math pack's activation, so it can only be the
+     * output layer of a network whose cost function keeps that activation.
+     */
+    private static <T, U> void checkSparseOutput(T[][] weights, MatrixMathPack.CostFunction<T, U> costFunction) {
+        if (weights.length == 1 && !CostFunctions.usesPackActivation(costFunction)) {
+            throw new UnsupportedOperationException("A single-layer network can't take sparse input with " + costFunction + ".");
+        }
+    }
+
+    private T[] activateLayer(T[] input, T[][] weights, T[][] biases, int layer) {
+        T[] output = mathPack.allocateScratch(mathPack.width(weights[layer]), input.length);
+        activateLayerInto(input, weights, biases, layer, output, null);
+        return output;
+    }
+
+    /**
+     * The fused forward step of one layer, through whichever of the math pack's multiplies
+     * fits a network with or without biases.
+     */
+    private void activateLayerInto(T[] input, T[][] weights, T[][] biases, int layer, T[] output, T[] activationDerivatives) {
+        if (biases == null) {
+            mathPack.dotProductActivateInto(input, weights[layer], output, activationDerivatives);
+        } else {
+            mathPack.dotProductAddActivateInto(input, weights[layer], biases[layer][0], output, activationDerivatives);
+        }
+    }
+
+    private static <T> T bias(T[][] biases, int layer) {
+        return biases == null ? null : biases[layer][0];
+    }
+
+    /**
+     * @return the most recently published snapshot; a new network starts with one of its
+     * initial weights
+     */
+    public WeightSnapshot<T> getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * As {@link #getSnapshot()}, holding the snapshot's matrices until its
+     * {@link WeightSnapshot#release()} even if the network publishes and trains on; see
+     * {@link WeightSnapshot}.
+     */
+    public WeightSnapshot<T> acquireSnapshot() {
+        while (true) {
+            // Only fails when a newer snapshot has just replaced this one.
+            WeightSnapshot<T> current = snapshot;
+            if (current.tryAcquire()) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * Publishes the current weights as a new snapshot for readers to pick up.  This costs
+     * nothing up front: the snapshot shares the live matrices and the next training step
+     * copies them before writing.  Call it from the training thread, between steps.
+     *
+     * @throws IllegalStateException while a {@link HogwildTrainer} is training the network,
+     *                               whose workers could still be writing the matrices shared
+     */
+    public synchronized WeightSnapshot<T> publish() {
+        if (unsynchronizedTraining) {
+            throw new IllegalStateException("Can't publish while Hogwild training is writing the weights.");
+        }
+        WeightSnapshot.Storage storage = liveStorage;
+        if (storage != null) {
+            // Can't fail: the live weights hold a reference until the next copy, which takes this lock.
+            storage.retain();
+        }
+        WeightSnapshot<T> retired = snapshot;
+        WeightSnapshot<T> published = new WeightSnapshot<>(retired.getVersion() + 1, weights, biases, storage);
+        weightsShared = true;
+        updatesSincePublish = 0;
+        snapshot = published;
+        // The network's own reference to the snapshot it replaces.
+        retired.release();
+        return published;
+    }
+
+    /**
+     * As {@link #publish()}, returning the snapshot acquired as {@link #acquireSnapshot()}
+     * would, for a caller that goes on reading it on another thread.
+     */
+    synchronized WeightSnapshot<T> publishAndAcquire() {
+        WeightSnapshot<T> published = publish();
+        published.tryAcquire();
+        return published;
+    }
+
+    /**
+     * Makes every {@code updates}-th weight update {@link #publish()} a snapshot of its
+     * result, so readers follow training without the training loop having to; zero, the
+     * default, leaves publishing to the caller.  A {@link HogwildTrainer} needs it at zero.
+     */
+    public synchronized void setPublishInterval(int updates) {
+        if (updates < 0) {
+            throw new IllegalArgumentException("updates argument must not be negative.");
+        }
+        if (updates > 0 && unsynchronizedTraining) {
+            throw new IllegalStateException("Can't publish periodically while Hogwild training is writing the weights.");
+        }
+        publishInterval = updates;
+        updatesSincePublish = 0;
+    }
+
+    /**
+     * Makes every following update go through {@code optimizer}, starting its moments at zero
+     * and its step count at 1, or, when it is null, through the learning-rate scaler the network
+     * was built with.  Call it from the training thread, between steps.  The moments live next to
+     * the weights, in the same math pack layout, and are not part of snapshots, though a
+     * {@link Checkpointer} saves them and {@link ModelFile#restoreOptimizer} loads them back.
+     */
+    public synchronized void setOptimizer(Optimizer optimizer) {
+        optimizerState = optimizer == null ? null : new OptimizerState<>(mathPack, optimizer, weights, biases);
+    }
+
+    /**
+     * As {@link #setOptimizer}, but starting from saved moments and step count rather than zero;
+     * see {@link OptimizerState#restore}.
+     */
+    synchronized void restoreOptimizer(Optimizer optimizer, long steps, double[][] firstMoments, double[][] secondMoments,
+                                       double[][] biasFirstMoments, double[][] biasSecondMoments) {
+        ArgUtil.checkNull(optimizer, "optimizer");
+        OptimizerState<T> state = new OptimizerState<>(mathPack, optimizer, weights, biases);
+        state.restore(mathPack, steps, firstMoments, secondMoments, biasFirstMoments, biasSecondMoments);
+        optimizerState = state;
+    }
+
+    /**
+     * @return a copy of the optimizer's moments and step count, which match the latest snapshot
+     * when taken right after {@link #publish()} on the training thread, or null when no
+     * optimizer is set
+     */
+    synchronized OptimizerState<T> copyOptimizerState() {
+        OptimizerState<T> state = optimizerState;
+        return state == null ? null : state.copy(mathPack);
+    }
+
+    /**
+     * @return the optimizer set with {@link #setOptimizer}, or null for the plain learning-rate update
+     */
+    public Optimizer getOptimizer() {
+        OptimizerState<T> state = optimizerState;
+        return state == null ? null : state.optimizer;
+    }
+
+    /**
+     * @return how many updates the current optimizer has made
+     */
+    public long getOptimizerSteps() {
+        OptimizerState<T> state = optimizerState;
+        return state == null ? 0 : state.getSteps();
+    }
+
+    /**
+     * Makes training minimize {@code costFunction}, and the output layer produce the output it
+     * expects, from now on; the default is {@link CostFunctions#squaredError()}.  Call it from
+     * the training thread, between steps.
+     */
+    public void setCostFunction(MatrixMathPack.CostFunction<T, U> costFunction) {
+        ArgUtil.checkNull(costFunction, "costFunction");
+        this.costFunction = costFunction;
+    }
+
+    public MatrixMathPack.CostFunction<T, U> getCostFunction() {
+        return costFunction;
+    }
+
+    /**
+     * Creates the buffers {@link #train(Object[], Object[], TrainingWorkspace)} needs for batches
+     * of {@code batchSize} examples.
+     */
+    public TrainingWorkspace<T> createWorkspace(int batchSize) {
+        return new TrainingWorkspace<>(mathPack, weights, biases != null, batchSize);
+    }
+
+    /**
+     * Runs one gradient descent step, reusing an internal workspace for as long as the
+     * batch size stays the same.
+     *
+     * @return the cost of the batch before the step
+     */
+    public double train(T[] input, T[] exampleResult) {
+        ArgUtil.checkNull(input, "input");
+        if (workspace == null || workspace.batchSize != input.length) {
+            workspace = createWorkspace(input.length);
         }
-        return activation;
+        return train(input, exampleResult, workspace);
     }
 
-    public void train(T[] input, T[] exampleResult) {
+    /**
+     * Runs one gradient descent step entirely inside {@code workspace}; once the workspace
+     * exists this allocates nothing as long as the math pack's operations don't.
+     *
+     * @return the cost of the batch before the step, which the output delta yields for free
+     */
+    public double train(T[] input, T[] exampleResult, TrainingWorkspace<T> workspace) {
         ArgUtil.checkNull(input, "input");
         ArgUtil.checkNull(exampleResult, "exampleResult");
-        T[][] activationTotals = mathPack.generateHigherDim(weights.length);
-        T[][] postActivations = mathPack.generateHigherDim(weights.length);
+        ArgUtil.checkNull(workspace, "workspace");
+        if (workspace.batchSize != input.length) {
+            throw new IllegalArgumentException("Workspace is sized for batches of " + workspace.batchSize + ", got " + input.length + ".");
+        }
+        computeGradient(input, exampleResult, workspace);
+        applyGradient(workspace);
+        return workspace.cost;
+    }
+
+    /**
+     * As {@link #train(Object[], Object[])}, for sparse input; needs a {@link SparseInputMathPack}.
+     */
+    public double train(SparseFloatMatrix input, T[] exampleResult) {
+        ArgUtil.checkNull(input, "input");
+        if (workspace == null || workspace.batchSize != input.rows) {
+            workspace = createWorkspace(input.rows);
+        }
+        return train(input, exampleResult, workspace);
+    }
+
+    /**
+     * As {@link #train(Object[], Object[], TrainingWorkspace)}, for sparse input.  Without an
+     * {@link Optimizer} the first layer's gradient is never formed densely: only the weight rows
+     * for input columns that hold a non-zero in this batch are computed and updated, and
+     * {@code workspace.djdw[0]} goes unused.  An optimizer's moments move every row, so with one
+     * the first layer's gradient is summed from the non-zero entries into
+     * {@code workspace.djdw[0]} and the update costs as much as a dense one.
+     */
+    public double train(SparseFloatMatrix input, T[] exampleResult, TrainingWorkspace<T> workspace) {
+        ArgUtil.checkNull(input, "input");
+        ArgUtil.checkNull(exampleResult, "exampleResult");
+        ArgUtil.checkNull(workspace, "workspace");
+        SparseInputMathPack<T, U> sparsePack = sparsePack(input);
+        if (workspace.batchSize != input.rows) {
+            throw new IllegalArgumentException("Workspace is sized for batches of " + workspace.batchSize + ", got " + input.rows + ".");
+        }
+        T[][] weights = this.weights;
+        T[][] biases = this.biases;
+        MatrixMathPack.CostFunction<T, U> costFunction = this.costFunction;
+        checkSparseOutput(weights, costFunction);
+        sparsePack.sparseDotProductActivateInto(input, weights[0], bias(biases, 0), workspace.postActivations[0],
+                workspace.activationDerivatives[0]);
+        int last = weights.length - 1;
+        for (int i = 1; i < last; ++i) {
+            activateLayerInto(workspace.postActivations[i - 1], weights, biases, i, workspace.postActivations[i],
+                    workspace.activationDerivatives[i]);
+        }
+        if (last > 0) {
+            costFunction.activateOutput(mathPack, workspace.postActivations[last - 1], weights[last], bias(biases, last),
+                    workspace.postActivations[last], workspace.activationDerivatives[last]);
+        }
+        backpropagate(weights, exampleResult, workspace, costFunction);
+        if (optimizerState != null) {
+            sparsePack.sparseTransposeDotProductInto(input, workspace.deltas[0], workspace.djdw[0]);
+            applyGradient(workspace);
+            return workspace.cost;
+        }
+        T[][] writable = writableWeights();
+        for (int i = 1; i < writable.length; ++i) {
+            mathPack.scaledSubtractInPlace(writable[i], workspace.djdw[i], learningRateScaler);
+        }
+        sparsePack.subtractSparseTransposeDotProduct(input, workspace.deltas[0], learningRateScaler, writable[0],
+                workspace.sparseGradient);
+        applyBiasGradient(workspace);
+        if (publishInterval > 0) {
+            publishIfDue();
+        }
+        return workspace.cost;
+    }
+
+    @SuppressWarnings("unchecked")
+    private SparseInputMathPack<T, U> sparsePack(SparseFloatMatrix input) {
+        if (!(mathPack instanceof SparseInputMathPack)) {
+            throw new UnsupportedOperationException(mathPack.getClass().getName() + " does not support sparse input.");
+        }
+        int inputWidth = getInputWidth();
+        if (input.columns != inputWidth) {
+            throw new IllegalArgumentException("Input has " + input.columns + " columns, the network takes " + inputWidth + ".");
+        }
+        return (SparseInputMathPack<T, U>) mathPack;
+    }
+
+    /**
+     * Runs the forward and backward passes for one batch without touching the weights,
+     * leaving dJ/dw summed over the batch in {@code workspace.djdw} and the batch's cost in
+     * {@code workspace.cost}.  Only reads the weights, so several threads may do this at once
+     * with their own workspaces.
+     */
+    void computeGradient(T[] input, T[] exampleResult, TrainingWorkspace<T> workspace) {
+        T[][] weights = this.weights;
+        T[][] biases = this.biases;
+        MatrixMathPack.CostFunction<T, U> costFunction = this.costFunction;
         T[] lastA = input;
+        int last = weights.length - 1;
+        for (int i = 0; i < last; ++i) {
+            activateLayerInto(lastA, weights, biases, i, workspace.postActivations[i], workspace.activationDerivatives[i]);
+            lastA = workspace.postActivations[i];
+        }
+        costFunction.activateOutput(mathPack, lastA, weights[last], bias(biases, last), workspace.postActivations[last],
+                workspace.activationDerivatives[last]);
+        gradient(weights, input, exampleResult, workspace, costFunction);
+    }
+
+    /**
+     * @return the length of the vector {@link #copyParametersInto} fills: every weight and bias
+     */
+    public int getParameterCount() {
+        T[][] weights = this.weights;
+        T[][] biases = this.biases;
+        int count = 0;
         for (int i = 0; i < weights.length; ++i) {
-            T[] w = weights[i];
-            activationTotals[i] = mathPack.dotProduct(lastA, w);
-            lastA = postActivations[i] = mathPack.activate(activationTotals[i]);
-        }
-        T[] yhat = postActivations[weights.length - 1];
-        T[][] djdw = gradient(input, yhat, exampleResult, activationTotals, postActivations);
-        mathPack.mutate(djdw, learningRateScaler);
-        mathPack.subtractInPlace(weights, djdw);
-    }
-
-    private T[][] gradient(T[] input, T[] output, T[] trainingExamples, T[][] activationTotals, T[][] postActivations) {
-        T[][] djdw = mathPack.generateHigherDim(postActivations.length);
-        T[] yDiff = mathPack.subtract(output, trainingExamples);
-        int i = activationTotals.length - 1;
-        mathPack.activatePrimeInPlace(activationTotals[i]);
-        T[] lastDelta = mathPack.hadamardProduct(yDiff, activationTotals[i]);
-        djdw[i] = mathPack.dotProduct(mathPack.transpose(postActivations[i - 1]), lastDelta);
-        for (i = i - 1; i > 0; --i) {
-            mathPack.activatePrimeInPlace(activationTotals[i]);
-            lastDelta = mathPack.dotProduct(mathPack.dotProduct(lastDelta, mathPack.transpose(weights[i + 1])), activationTotals[i]);
-            djdw[i] = mathPack.dotProduct(mathPack.transpose(postActivations[i - 1]), lastDelta);
-        }
-        mathPack.activatePrimeInPlace(activationTotals[i]);
-        lastDelta = mathPack.hadamardProduct(mathPack.dotProduct(lastDelta, mathPack.transpose(weights[i + 1])), activationTotals[i]);
-        djdw[i] = mathPack.dotProduct(mathPack.transpose(input), lastDelta);
-        return djdw;
+            count += weights[i].length * mathPack.width(weights[i]);
+            if (biases != null) {
+                count += mathPack.width(biases[i]);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Flattens the live weights, layer after layer and row after row, and then the biases into
+     * {@code parameters}, the order {@link #costAndGradient} reads them and writes the gradient.
+     */
+    void copyParametersInto(double[] parameters) {
+        flatten(weights, biases, parameters);
+    }
+
+    /**
+     * Overwrites the live weights (and biases) with {@code parameters}, in the order of
+     * {@link #copyParametersInto}.
+     */
+    void loadParameters(double[] parameters) {
+        T[][] weights = writableWeights();
+        T[][] biases = this.biases;
+        int offset = 0;
+        for (T[] layer : weights) {
+            offset = mathPack.copyFromVector(parameters, offset, layer);
+        }
+        if (biases != null) {
+            for (T[] layer : biases) {
+                offset = mathPack.copyFromVector(parameters, offset, layer);
+            }
+        }
+    }
+
+    /**
+     * Evaluates the network at {@code parameters} over the whole of {@code input}: loads them
+     * into the live weights, runs the forward and backward passes inside {@code workspace} and
+     * flattens dJ/dw and dJ/db into {@code gradient}, in the order of {@link #copyParametersInto}.
+     *
+     * @return the cost J, summed over the batch
+     */
+    double costAndGradient(double[] parameters, T[] input, T[] exampleResult, TrainingWorkspace<T> workspace, double[] gradient) {
+        loadParameters(parameters);
+        computeGradient(input, exampleResult, workspace);
+        flatten(workspace.djdw, workspace.djdb, gradient);
+        return workspace.cost;
+    }
+
+    private void flatten(T[][] layers, T[][] biasLayers, double[] vector) {
+        int offset = 0;
+        for (T[] layer : layers) {
+            offset = mathPack.copyIntoVector(layer, vector, offset);
+        }
+        if (biasLayers != null) {
+            for (T[] layer : biasLayers) {
+                offset = mathPack.copyIntoVector(layer, vector, offset);
+            }
+        }
+    }
+
+    /**
+     * Updates the weights (and biases) from {@code workspace.djdw} (and {@code workspace.djdb})
+     * with the optimizer, if one is set, or else by subtracting the gradient scaled by the
+     * learning rate, each in one pass per layer that leaves the gradient as it was.
+     */
+    void applyGradient(TrainingWorkspace<T> workspace) {
+        OptimizerState<T> state = optimizerState;
+        if (state == null) {
+            T[][] weights = writableWeights();
+            for (int i = 0; i < weights.length; ++i) {
+                mathPack.scaledSubtractInPlace(weights[i], workspace.djdw[i], learningRateScaler);
+            }
+            applyBiasGradient(workspace);
+        } else {
+            Optimizer optimizer = state.optimizer;
+            double stepSize = optimizer.stepSize(state.nextStep());
+            T[][] weights = writableWeights();
+            for (int i = 0; i < weights.length; ++i) {
+                mathPack.optimizerStep(optimizer, stepSize, weights[i], workspace.djdw[i],
+                        OptimizerState.layer(state.firstMoments, i), OptimizerState.layer(state.secondMoments, i));
+            }
+            T[][] biases = writableBiases();
+            if (biases != null) {
+                for (int i = 0; i < biases.length; ++i) {
+                    mathPack.optimizerStep(optimizer, stepSize, biases[i], workspace.djdb[i],
+                            OptimizerState.layer(state.biasFirstMoments, i), OptimizerState.layer(state.biasSecondMoments, i));
+                }
+            }
+        }
+        if (publishInterval > 0) {
+            publishIfDue();
+        }
+    }
+
+    /**
+     * The bias half of a plain learning-rate step.
+     */
+    private void applyBiasGradient(TrainingWorkspace<T> workspace) {
+        if (biases != null) {
+            T[][] writable = writableBiases();
+            for (int i = 0; i < writable.length; ++i) {
+                mathPack.scaledSubtractInPlace(writable[i], workspace.djdb[i], learningRateScaler);
+            }
+        }
+    }
+
+    /**
+     * Blocks {@link #publish()} until {@link #endUnsynchronizedTraining()}, for trainers whose
+     * threads update the weights without going through this object's lock, so that one thread
+     * could still be writing to matrices another has just published.
+     *
+     * @throws IllegalStateException if updates are published periodically or another such
+     *                               trainer is already running
+     */
+    synchronized void beginUnsynchronizedTraining() {
+        if (publishInterval > 0) {
+            throw new IllegalStateException("Hogwild training needs the publish interval at zero, not " + publishInterval + ".");
+        }
+        if (unsynchronizedTraining) {
+            throw new IllegalStateException("Another Hogwild run is already training the network.");
+        }
+        unsynchronizedTraining = true;
+    }
+
+    synchronized void endUnsynchronizedTraining() {
+        unsynchronizedTraining = false;
+    }
+
+    private synchronized void publishIfDue() {
+        if (publishInterval > 0 && ++updatesSincePublish >= publishInterval) {
+            publish();
+        }
+    }
+
+    /**
+     * The live weights, first swapped for a private copy (along with the biases) if a snapshot
+     * still shares them.
+     */
+    private T[][] writableWeights() {
+        if (weightsShared) {
+            synchronized (this) {
+                if (weightsShared) {
+                    MatrixMathPack.Region<T> region = mathPack.openRegion();
+                    weights = copyOf(weights, region);
+                    if (biases != null) {
+                        biases = copyOf(biases, region);
+                    }
+                    WeightSnapshot.Storage previous = liveStorage;
+                    liveStorage = region == null ? null : new WeightSnapshot.Storage(region);
+                    weightsShared = false;
+                    if (previous != null) {
+                        previous.release();
+                    }
+                }
+            }
+        }
+        return weights;
+    }
+
+    private T[][] writableBiases() {
+        writableWeights();
+        return biases;
+    }
+
+    /**
+     * Copies into {@code region}, which lives until the last snapshot of the copy is retired,
+     * or from the pack's own storage when the pack has no regions.
+     */
+    private T[][] copyOf(T[][] shared, MatrixMathPack.Region<T> region) {
+        T[][] copy = mathPack.generateHigherDim(shared.length);
+        for (int i = 0; i < shared.length; ++i) {
+            int width = mathPack.width(shared[i]);
+            copy[i] = region == null ? mathPack.allocate(width, shared[i].length) : region.allocate(width, shared[i].length);
+            mathPack.copyInto(shared[i], copy[i]);
+        }
+        return copy;
+    }
+
+    /**
+     * Backpropagates from the forward pass already stored in {@code workspace}, leaving
+     * dJ/dw for every layer in {@code workspace.djdw} and, for a network with biases, dJ/db
+     * in {@code workspace.djdb}.
+     */
+    private void gradient(T[][] weights, T[] input, T[] trainingExamples, TrainingWorkspace<T> workspace,
+                          MatrixMathPack.CostFunction<T, U> costFunction) {
+        backpropagate(weights, trainingExamples, workspace, costFunction);
+        mathPack.transposeDotProductInto(input, workspace.deltas[0], workspace.djdw[0]);
+    }
+
+    /**
+     * Everything {@link #gradient} does except the first layer's dJ/dw, which depends on
+     * the form of the input: leaves dJ/dz for every layer in {@code workspace.deltas},
+     * dJ/dw for every layer after the first in {@code workspace.djdw}, and dJ/db, the
+     * deltas summed over the batch, in {@code workspace.djdb}.  The output layer's delta and
+     * the cost come from {@code costFunction} in a single pass.
+     */
+    private void backpropagate(T[][] weights, T[] trainingExamples, TrainingWorkspace<T> workspace,
+                               MatrixMathPack.CostFunction<T, U> costFunction) {
+        T[][] activationDerivatives = workspace.activationDerivatives;
+        T[][] postActivations = workspace.postActivations;
+        T[][] deltas = workspace.deltas;
+        int i = weights.length - 1;
+        workspace.cost = costFunction.outputDeltaInto(mathPack, postActivations[i], activationDerivatives[i], trainingExamples, deltas[i]);
+        for (; i > 0; --i) {
+            mathPack.transposeDotProductInto(postActivations[i - 1], deltas[i], workspace.djdw[i]);
+            mathPack.dotProductTransposeInto(deltas[i], weights[i], deltas[i - 1]);
+            mathPack.hadamardProductInto(deltas[i - 1], activationDerivatives[i - 1], deltas[i - 1]);
+        }
+        if (workspace.djdb != null) {
+            for (int layer = 0; layer < deltas.length; ++layer) {
+                mathPack.sumRowsInto(deltas[layer], workspace.djdb[layer][0]);
+            }
+        }
     }
 
 }
@@ -0,0 +1,122 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hands out {@link OffHeapFloatMatrix} storage from large direct buffers
+ * ("slabs") that the garbage collector never has to look inside, so a model of
+ * several gigabytes costs the heap little more than its row views.
+ * <p>
+ * <p>Allocation is a pointer bump within the current slab.  The arena's owner
+ * decides how long its matrices live: {@link #reset()} makes all of them invalid
+ * at once and lets the same slabs be reused, which suits per-step scratch, while
+ * {@link #close()} gives the slabs back for good.  Direct memory is released when
+ * the closed slabs are collected.  Allocation is thread-safe; nothing checks that
+ * a matrix is used only while it is valid.
+ *
+ * @author rgettys
+ */
+public final class OffHeapArena implements AutoCloseable {
+
+    public static final int DEFAULT_SLAB_BYTES = 64 << 20;
+    // Start every matrix on its own cache line.
+    private static final int ALIGNMENT_FLOATS = 64 / Float.BYTES;
+
+    private final int slabFloats;
+    private final List<FloatBuffer> slabs = new ArrayList<>();
+    // Index into slabs of the slab currently being bumped, and the bump pointer within it.
+    private int currentSlab = -1;
+    private int position;
+    private long allocatedBytes;
+    private boolean closed;
+
+    public OffHeapArena() {
+        this(DEFAULT_SLAB_BYTES);
+    }
+
+    /**
+     * @param slabBytes the size of each direct buffer the arena reserves; larger matrices
+     *                  get a slab of their own
+     */
+    public OffHeapArena(int slabBytes) {
+        if (slabBytes < Float.BYTES) {
+            throw new IllegalArgumentException("slabBytes argument must hold at least one float.");
+        }
+        this.slabFloats = slabBytes / Float.BYTES;
+    }
+
+    /**
+     * Allocates a zeroed, densely packed matrix.
+     *
+     * @return the single-row views of the new matrix
+     */
+    public synchronized OffHeapFloatMatrix[] allocate(int rows, int columns) {
+        if (closed) {
+            throw new IllegalStateException("OffHeapArena is closed.");
+        }
+        long size = (long) rows * columns;
+        if (rows < 0 || columns < 0 || size > Integer.MAX_VALUE - ALIGNMENT_FLOATS) {
+            throw new IllegalArgumentException("Can't allocate a " + rows + "x" + columns + " matrix in one buffer.");
+        }
+        int floats = (int) size;
+        FloatBuffer slab = currentSlab < 0 ? null : slabs.get(currentSlab);
+        while (slab == null || position + floats > slab.capacity()) {
+            // Move on to the next slab kept from before a reset, or reserve a new one.
+            ++currentSlab;
+            position = 0;
+            if (currentSlab == slabs.size()) {
+                slabs.add(ByteBuffer.allocateDirect(Math.max(slabFloats, floats) * Float.BYTES)
+                        .order(ByteOrder.nativeOrder()).asFloatBuffer());
+            }
+            slab = slabs.get(currentSlab);
+        }
+        int offset = position;
+        // Reused slabs still hold the previous occupants' values.
+        for (int i = offset, end = offset + floats; i < end; ++i) {
+            slab.put(i, 0.0f);
+        }
+        position = Math.min(slab.capacity(), (offset + floats + ALIGNMENT_FLOATS - 1) / ALIGNMENT_FLOATS * ALIGNMENT_FLOATS);
+        allocatedBytes += (long) floats * Float.BYTES;
+        return OffHeapFloatMatrix.wrap(slab, offset, rows, columns, columns);
+    }
+
+    /**
+     * Invalidates every matrix allocated so far and starts handing the same memory out again.
+     */
+    public synchronized void reset() {
+        currentSlab = -1;
+        position = 0;
+        allocatedBytes = 0;
+    }
+
+    /**
+     * @return the bytes handed out since the arena was created or last reset
+     */
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return the bytes of direct memory the arena holds
+     */
+    public synchronized long getReservedBytes() {
+        long reserved = 0;
+        for (FloatBuffer slab : slabs) {
+            reserved += (long) slab.capacity() * Float.BYTES;
+        }
+        return reserved;
+    }
+
+    /**
+     * Invalidates every matrix allocated from this arena and drops its slabs.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        slabs.clear();
+        currentSlab = -1;
+    }
+
+}
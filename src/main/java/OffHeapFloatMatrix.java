@@ -0,0 +1,139 @@
+import java.nio.FloatBuffer;
+
+/**
+ * The off-heap counterpart of {@link FlatFloatMatrix}: a row-major block of
+ * {@code float}s inside a direct (or memory-mapped) {@link FloatBuffer}, with the
+ * element at ({@code row}, {@code column}) at absolute index
+ * {@code offset + row * stride + column}.
+ * <p>
+ * <p>{@link OffHeapFloatMatrixMathPack} uses this as its row type in the same way
+ * the flat pack does: a matrix is an {@code OffHeapFloatMatrix[]} of single-row
+ * views sharing one buffer.  The buffer belongs to whatever allocated it, usually
+ * an {@link OffHeapArena}, and is only valid for as long as that says it is.
+ *
+ * @author rgettys
+ */
+public final class OffHeapFloatMatrix {
+
+    final FloatBuffer data;
+    final int offset;
+    final int rows;
+    final int columns;
+    final int stride;
+
+    public OffHeapFloatMatrix(FloatBuffer data, int offset, int rows, int columns, int stride) {
+        ArgUtil.checkNull(data, "data");
+        if (rows < 0 || columns < 0 || stride < columns || offset < 0) {
+            throw new IllegalArgumentException("Invalid layout: offset " + offset + ", " + rows + "x" + columns + ", stride " + stride + ".");
+        }
+        if (rows > 0 && offset + (long) (rows - 1) * stride + columns > data.capacity()) {
+            throw new IllegalArgumentException("Layout runs past the end of the backing buffer of capacity " + data.capacity() + ".");
+        }
+        this.data = data;
+        this.offset = offset;
+        this.rows = rows;
+        this.columns = columns;
+        this.stride = stride;
+    }
+
+    /**
+     * Splits the given region of {@code data} into single-row views without copying it.
+     */
+    public static OffHeapFloatMatrix[] wrap(FloatBuffer data, int offset, int rows, int columns, int stride) {
+        return new OffHeapFloatMatrix(data, offset, rows, columns, stride).rowViews();
+    }
+
+    /**
+     * Copies a jagged matrix into a new matrix allocated from {@code arena}.
+     */
+    public static OffHeapFloatMatrix[] copyOf(float[][] input, OffHeapArena arena) {
+        int rows = input.length;
+        int columns = rows == 0 ? 0 : input[0].length;
+        OffHeapFloatMatrix[] result = arena.allocate(rows, columns);
+        for (int i = 0; i < rows; ++i) {
+            OffHeapFloatMatrix row = result[i];
+            for (int j = 0; j < columns; ++j) {
+                row.data.put(row.offset + j, input[i][j]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Copies a matrix of row views out into a jagged matrix, mostly for printing.
+     */
+    public static float[][] toArray(OffHeapFloatMatrix[] matrix) {
+        float[][] result = new float[matrix.length][];
+        for (int i = 0; i < matrix.length; ++i) {
+            OffHeapFloatMatrix row = matrix[i];
+            float[] resultRow = result[i] = new float[row.columns];
+            for (int j = 0; j < resultRow.length; ++j) {
+                resultRow[j] = row.data.get(row.offset + j);
+            }
+        }
+        return result;
+    }
+
+    public OffHeapFloatMatrix[] rowViews() {
+        OffHeapFloatMatrix[] result = new OffHeapFloatMatrix[rows];
+        for (int i = 0; i < rows; ++i) {
+            result[i] = new OffHeapFloatMatrix(data, offset + i * stride, 1, columns, stride);
+        }
+        return result;
+    }
+
+    public float get(int row, int column) {
+        return data.get(offset + row * stride + column);
+    }
+
+    public void set(int row, int column, float value) {
+        data.put(offset + row * stride + column, value);
+    }
+
+    public FloatBuffer getData() {
+        return data;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    @Override
+    public String toString() {
+        if (rows == 1) {
+            return rowToString(0);
+        }
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < rows; ++i) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(rowToString(i));
+        }
+        return builder.append(']').toString();
+    }
+
+    private String rowToString(int row) {
+        StringBuilder builder = new StringBuilder("[");
+        for (int j = 0; j < columns; ++j) {
+            if (j > 0) {
+                builder.append(", ");
+            }
+            builder.append(get(row, j));
+        }
+        return builder.append(']').toString();
+    }
+
+}
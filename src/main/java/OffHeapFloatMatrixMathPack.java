@@ -0,0 +1,797 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A {@link MatrixMathPack} over {@link OffHeapFloatMatrix} row views, so weights
+ * and activations live in direct buffers outside the garbage-collected heap.
+ * What this pack allocates comes from one of four places, by how long it lives:
+ * {@link #allocate} from the {@link OffHeapArena} it was built with, which holds
+ * what a network keeps for good, such as its initial weights, workspaces and
+ * optimizer moments; {@link #allocateScratch} from an arena of the calling
+ * thread's own that {@link #resetScratch()} rewinds, for the hidden layers of a
+ * forward pass; {@link #openRegion()} from a pool of arenas, each handed back
+ * when its region is closed, for the copy-on-write copies of the weights, which
+ * live until their last snapshot is retired; and {@link #allocateDetached} from a
+ * direct buffer of its own, released once nothing refers to it, for results a
+ * caller keeps, such as {@link Network#forward(Object[])}'s output.  Callers that
+ * serve many requests pass outputs of their own to {@link Network#forwardInto}
+ * instead, so once warm neither serving nor publishing snapshots grows the arena
+ * or allocates direct memory.  Matrices from anywhere else, such as the
+ * memory-mapped layers of a {@link ModelFile}, work as operands too.  The results
+ * of the operations that return a new matrix rather than writing one they are
+ * given are detached as well, as only their caller knows how long they live.
+ * <p>
+ * <p>{@link #close()} gives back the scratch arenas of every thread that ran a
+ * forward pass, and the pooled region arenas, once nothing uses the pack; close
+ * the arena it was built with too.  The loops
+ * are those of {@link FlatFloatMatrixMathPack} over absolute buffer indices;
+ * there is no blocked GEMM here because {@link FloatGemm} packs from arrays.
+ *
+ * @author rgettys
+ */
+public class OffHeapFloatMatrixMathPack implements MatrixMathPack<OffHeapFloatMatrix, FloatUnaryOperator>, AutoCloseable {
+
+    private static final int TRANSPOSE_BLOCK_SIZE = 32;
+    private static final int SCRATCH_SLAB_BYTES = 1 << 20;
+    private static final int REGION_SLAB_BYTES = 1 << 20;
+
+    private final FloatUnaryOperator activationFunction, activationFunctionDerivative;
+    // f'(z) as a function of f(z), or null when the activation was given as two bare operators.
+    private final FloatUnaryOperator activationFunctionOutputDerivative;
+    private final OffHeapArena arena;
+    private final ThreadLocal<OffHeapArena> scratch = ThreadLocal.withInitial(this::newScratchArena);
+    // Every thread's scratch arena, so close() can give them all back; guarded by itself.
+    private final List<OffHeapArena> scratchArenas = new ArrayList<>();
+    // Arenas of closed regions, rewound and waiting for the next openRegion; guarded by itself.
+    private final Deque<OffHeapArena> idleRegions = new ArrayDeque<>();
+    private volatile boolean closed;
+
+    public OffHeapFloatMatrixMathPack(OffHeapArena arena) {
+        this(input -> input, input -> input, null, arena);
+    }
+
+    public OffHeapFloatMatrixMathPack(FloatUnaryOperator activationFunction, FloatUnaryOperator activationFunctionDerivative,
+                                      OffHeapArena arena) {
+        this(activationFunction, activationFunctionDerivative, null, arena);
+    }
+
+    public OffHeapFloatMatrixMathPack(FloatActivationFunction activation, OffHeapArena arena) {
+        this(activation, activation::derivative, activation::derivativeFromOutput, arena);
+    }
+
+    protected OffHeapFloatMatrixMathPack(FloatUnaryOperator activationFunction, FloatUnaryOperator activationFunctionDerivative,
+                                         FloatUnaryOperator activationFunctionOutputDerivative, OffHeapArena arena) {
+        ArgUtil.checkNull(arena, "arena");
+        this.activationFunction = activationFunction;
+        this.activationFunctionDerivative = activationFunctionDerivative;
+        this.activationFunctionOutputDerivative = activationFunctionOutputDerivative;
+        this.arena = arena;
+    }
+
+    public OffHeapArena getArena() {
+        return arena;
+    }
+
+    /**
+     * Closes every thread's scratch arena and the idle region arenas, and any region still
+     * open as it closes.  Forward passes and copy-on-write copies throw after this.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (scratchArenas) {
+            for (OffHeapArena scratchArena : scratchArenas) {
+                scratchArena.close();
+            }
+            scratchArenas.clear();
+        }
+        synchronized (idleRegions) {
+            for (OffHeapArena regionArena : idleRegions) {
+                regionArena.close();
+            }
+            idleRegions.clear();
+        }
+    }
+
+    private OffHeapArena newScratchArena() {
+        OffHeapArena scratchArena = new OffHeapArena(SCRATCH_SLAB_BYTES);
+        synchronized (scratchArenas) {
+            if (closed) {
+                scratchArena.close();
+            } else {
+                scratchArenas.add(scratchArena);
+            }
+        }
+        return scratchArena;
+    }
+
+    @Override
+    public OffHeapFloatMatrix autoScaleInPlace(OffHeapFloatMatrix[] input) {
+        OffHeapFloatMatrix first = input[0];
+        FloatBuffer data = first.data;
+        int width = first.columns;
+        OffHeapFloatMatrix maxes = allocateDetached(width, 1)[0];
+        FloatBuffer maxData = maxes.data;
+        for (int i = 0, rowStart = first.offset; i < input.length; ++i, rowStart += first.stride) {
+            for (int j = 0; j < width; ++j) {
+                maxData.put(maxes.offset + j, Math.max(maxData.get(maxes.offset + j), data.get(rowStart + j)));
+            }
+        }
+        for (int i = 0, rowStart = first.offset; i < input.length; ++i, rowStart += first.stride) {
+            for (int j = 0; j < width; ++j) {
+                data.put(rowStart + j, data.get(rowStart + j) / maxData.get(maxes.offset + j));
+            }
+        }
+        return maxes;
+    }
+
+    @Override
+    public void rescaleInPlace(OffHeapFloatMatrix[] input, OffHeapFloatMatrix scaleFactors) {
+        OffHeapFloatMatrix first = input[0];
+        FloatBuffer data = first.data;
+        FloatBuffer scaleData = scaleFactors.data;
+        int width = scaleFactors.columns;
+        for (int i = 0, rowStart = first.offset; i < input.length; ++i, rowStart += first.stride) {
+            for (int j = 0; j < width; ++j) {
+                data.put(rowStart + j, data.get(rowStart + j) * scaleData.get(scaleFactors.offset + j));
+            }
+        }
+    }
+
+    @Override
+    public OffHeapFloatMatrix[] rescale(OffHeapFloatMatrix[] input, OffHeapFloatMatrix scaleFactors) {
+        OffHeapFloatMatrix[] output = clone(input);
+        rescaleInPlace(output, scaleFactors);
+        return output;
+    }
+
+    @Override
+    public OffHeapFloatMatrix[] clone(OffHeapFloatMatrix[] input) {
+        OffHeapFloatMatrix[] result = allocateDetached(input[0].columns, input.length);
+        copyInto(input, result);
+        return result;
+    }
+
+    @Override
+    public void copyInto(OffHeapFloatMatrix[] source, OffHeapFloatMatrix[] destination) {
+        for (int i = 0; i < source.length; ++i) {
+            OffHeapFloatMatrix sourceRow = source[i];
+            OffHeapFloatMatrix destinationRow = destination[i];
+            FloatBuffer sourceData = sourceRow.data;
+            FloatBuffer destinationData = destinationRow.data;
+            for (int j = 0; j < sourceRow.columns; ++j) {
+                destinationData.put(destinationRow.offset + j, sourceData.get(sourceRow.offset + j));
+            }
+        }
+    }
+
+    @Override
+    public int copyIntoVector(OffHeapFloatMatrix[] matrix, double[] vector, int offset) {
+        for (OffHeapFloatMatrix row : matrix) {
+            for (int j = 0; j < row.columns; ++j) {
+                vector[offset++] = row.data.get(row.offset + j);
+            }
+        }
+        return offset;
+    }
+
+    @Override
+    public int copyFromVector(double[] vector, int offset, OffHeapFloatMatrix[] matrix) {
+        for (OffHeapFloatMatrix row : matrix) {
+            for (int j = 0; j < row.columns; ++j) {
+                row.data.put(row.offset + j, (float) vector[offset++]);
+            }
+        }
+        return offset;
+    }
+
+    @Override
+    public OffHeapFloatMatrix[] dotProduct(OffHeapFloatMatrix[] multiplicand, OffHeapFloatMatrix[] multiplier) {
+        OffHeapFloatMatrix[] product = allocateDetached(multiplier[0].columns, multiplicand.length);
+        dotProductInto(multiplicand, multiplier, product);
+        return product;
+    }
+
+    @Override
+    public void dotProductInto(OffHeapFloatMatrix[] multiplicand, OffHeapFloatMatrix[] multiplier, OffHeapFloatMatrix[] product) {
+        OffHeapFloatMatrix left = multiplicand[0];
+        OffHeapFloatMatrix right = multiplier[0];
+        OffHeapFloatMatrix out = product[0];
+        int height = multiplicand.length;
+        int width = right.columns;
+        int dotProductSize = left.columns;
+        FloatBuffer leftData = left.data;
+        FloatBuffer rightData = right.data;
+        FloatBuffer productData = out.data;
+        // i-k-j order, as in the flat pack, so every inner loop is an axpy over two rows.
+        for (int i = 0; i < height; ++i) {
+            int leftRowStart = left.offset + i * left.stride;
+            int productRowStart = out.offset + i * out.stride;
+            for (int k = 0; k < width; ++k) {
+                productData.put(productRowStart + k, 0.0f);
+            }
+            for (int j = 0, rightRowStart = right.offset; j < dotProductSize; ++j, rightRowStart += right.stride) {
+                float scalar = leftData.get(leftRowStart + j);
+                for (int k = 0; k < width; ++k) {
+                    productData.put(productRowStart + k, productData.get(productRowStart + k) + scalar * rightData.get(rightRowStart + k));
+                }
+            }
+        }
+    }
+
+    @Override
+    public OffHeapFloatMatrix[] dotProductActivate(OffHeapFloatMatrix[] multiplicand, OffHeapFloatMatrix[] multiplier) {
+        OffHeapFloatMatrix[] output = allocateDetached(multiplier[0].columns, multiplicand.length);
+        dotProductActivateInto(multiplicand, multiplier, output, null);
+        return output;
+    }
+
+    @Override
+    public void dotProductActivateInto(OffHeapFloatMatrix[] multiplicand, OffHeapFloatMatrix[] multiplier, OffHeapFloatMatrix[] output,
+                                       OffHeapFloatMatrix[] activationDerivatives) {
+        dotProductAddActivateInto(multiplicand, multiplier, null, output, activationDerivatives);
+    }
+
+    @Override
+    public void dotProductAddActivateInto(OffHeapFloatMatrix[] multiplicand, OffHeapFloatMatrix[] multiplier, OffHeapFloatMatrix bias,
+                                          OffHeapFloatMatrix[] output, OffHeapFloatMatrix[] activationDerivatives) {
+        OffHeapFloatMatrix left = multiplicand[0];
+        OffHeapFloatMatrix right = multiplier[0];
+        OffHeapFloatMatrix out = output[0];
+        OffHeapFloatMatrix derivatives = activationDerivatives == null ? null : activationDerivatives[0];
+        int height = multiplicand.length;
+        int width = right.columns;
+        int dotProductSize = left.columns;
+        FloatBuffer leftData = left.data;
+        FloatBuffer rightData = right.data;
+        FloatBuffer outputData = out.data;
+        // As dotProductInto, but each row starts at the bias and is activated while it is still in cache.
+        for (int i = 0; i < height; ++i) {
+            int leftRowStart = left.offset + i * left.stride;
+            int outputRowStart = out.offset + i * out.stride;
+            for (int k = 0; k < width; ++k) {
+                outputData.put(outputRowStart + k, bias == null ? 0.0f : bias.data.get(bias.offset + k));
+            }
+            for (int j = 0, rightRowStart = right.offset; j < dotProductSize; ++j, rightRowStart += right.stride) {
+                float scalar = leftData.get(leftRowStart + j);
+                for (int k = 0; k < width; ++k) {
+                    outputData.put(outputRowStart + k, outputData.get(outputRowStart + k) + scalar * rightData.get(rightRowStart + k));
+                }
+            }
+            int derivativeRowStart = derivatives == null ? 0 : derivatives.offset + i * derivatives.stride;
+            for (int k = 0; k < width; ++k) {
+                float z = outputData.get(outputRowStart + k);
+                float activated = activationFunction.applyAsFloat(z);
+                if (derivatives != null) {
+                    derivatives.data.put(derivativeRowStart + k, activationFunctionOutputDerivative != null
+                            ? activationFunctionOutputDerivative.applyAsFloat(activated)
+                            : activationFunctionDerivative.applyAsFloat(z));
+                }
+                outputData.put(outputRowStart + k, activated);
+            }
+        }
+    }
+
+    @Override
+    public void sumRowsInto(OffHeapFloatMatrix[] input, OffHeapFloatMatrix sums) {
+        OffHeapFloatMatrix in = input[0];
+        int width = sums.columns;
+        FloatBuffer inputData = in.data;
+        FloatBuffer sumData = sums.data;
+        for (int k = 0; k < width; ++k) {
+            float sum = 0.0f;
+            for (int i = 0; i < input.length; ++i) {
+                sum += inputData.get(in.offset + i * in.stride + k);
+            }
+            sumData.put(sums.offset + k, sum);
+        }
+    }
+
+    @Override
+    public OffHeapFloatMatrix[] transposeDotProduct(OffHeapFloatMatrix[] multiplicand, OffHeapFloatMatrix[] multiplier) {
+        OffHeapFloatMatrix[] product = allocateDetached(multiplier[0].columns, multiplicand[0].columns);
+        transposeDotProductInto(multiplicand, multiplier, product);
+        return product;
+    }
+
+    @Override
+    public void transposeDotProductInto(OffHeapFloatMatrix[] multiplicand, OffHeapFloatMatrix[] multiplier, OffHeapFloatMatrix[] product) {
+        OffHeapFloatMatrix left = multiplicand[0];
+        OffHeapFloatMatrix right = multiplier[0];
+        OffHeapFloatMatrix out = product[0];
+        int height = left.columns;
+        int width = right.columns;
+        int dotProductSize = multiplicand.length;
+        FloatBuffer leftData = left.data;
+        FloatBuffer rightData = right.data;
+        FloatBuffer productData = out.data;
+        for (int i = 0; i < height; ++i) {
+            int productRowStart = out.offset + i * out.stride;
+            for (int k = 0; k < width; ++k) {
+                productData.put(productRowStart + k, 0.0f);
+            }
+        }
+        for (int j = 0; j < dotProductSize; ++j) {
+            int leftRowStart = left.offset + j * left.stride;
+            int rightRowStart = right.offset + j * right.stride;
+            for (int i = 0; i < height; ++i) {
+                float scalar = leftData.get(leftRowStart + i);
+                int productRowStart = out.offset + i * out.stride;
+                for (int k = 0; k < width; ++k) {
+                    productData.put(productRowStart + k, productData.get(productRowStart + k) + scalar * rightData.get(rightRowStart + k));
+                }
+            }
+        }
+    }
+
+    @Override
+    public OffHeapFloatMatrix[] dotProductTranspose(OffHeapFloatMatrix[] multiplicand, OffHeapFloatMatrix[] multiplier) {
+        OffHeapFloatMatrix[] product = allocateDetached(multiplier.length, multiplicand.length);
+        dotProductTransposeInto(multiplicand, multiplier, product);
+        return product;
+    }
+
+    @Override
+    public void dotProductTransposeInto(OffHeapFloatMatrix[] multiplicand, OffHeapFloatMatrix[] multiplier, OffHeapFloatMatrix[] product) {
+        OffHeapFloatMatrix left = multiplicand[0];
+        OffHeapFloatMatrix right = multiplier[0];
+        OffHeapFloatMatrix out = product[0];
+        int height = multiplicand.length;
+        int width = multiplier.length;
+        int dotProductSize = left.columns;
+        FloatBuffer leftData = left.data;
+        FloatBuffer rightData = right.data;
+        FloatBuffer productData = out.data;
+        for (int i = 0; i < height; ++i) {
+            int leftRowStart = left.offset + i * left.stride;
+            int productRowStart = out.offset + i * out.stride;
+            for (int k = 0; k < width; ++k) {
+                int rightRowStart = right.offset + k * right.stride;
+                float sum = 0.0f;
+                for (int j = 0; j < dotProductSize; ++j) {
+                    sum += leftData.get(leftRowStart + j) * rightData.get(rightRowStart + j);
+                }
+                productData.put(productRowStart + k, sum);
+            }
+        }
+    }
+
+    @Override
+    public OffHeapFloatMatrix[] hadamardProduct(OffHeapFloatMatrix[] multiplicand, OffHeapFloatMatrix[] multiplier) {
+        OffHeapFloatMatrix[] product = allocateDetached(multiplicand[0].columns, multiplicand.length);
+        hadamardProductInto(multiplicand, multiplier, product);
+        return product;
+    }
+
+    @Override
+    public void hadamardProductInto(OffHeapFloatMatrix[] multiplicand, OffHeapFloatMatrix[] multiplier, OffHeapFloatMatrix[] product) {
+        OffHeapFloatMatrix left = multiplicand[0];
+        OffHeapFloatMatrix right = multiplier[0];
+        OffHeapFloatMatrix out = product[0];
+        int width = left.columns;
+        for (int i = 0; i < multiplicand.length; ++i) {
+            int leftRowStart = left.offset + i * left.stride;
+            int rightRowStart = right.offset + i * right.stride;
+            int productRowStart = out.offset + i * out.stride;
+            for (int j = 0; j < width; ++j) {
+                out.data.put(productRowStart + j, left.data.get(leftRowStart + j) * right.data.get(rightRowStart + j));
+            }
+        }
+    }
+
+    @Override
+    public void optimizerStep(Optimizer optimizer, double stepSize, OffHeapFloatMatrix[] weights, OffHeapFloatMatrix[] gradient, OffHeapFloatMatrix[] firstMoment,
+                              OffHeapFloatMatrix[] secondMoment) {
+        OffHeapFloatMatrix w = weights[0];
+        OffHeapFloatMatrix g = gradient[0];
+        OffHeapFloatMatrix m = firstMoment == null ? null : firstMoment[0];
+        OffHeapFloatMatrix s = secondMoment == null ? null : secondMoment[0];
+        for (int i = 0; i < weights.length; ++i) {
+            OptimizerKernels.update(optimizer, (float) stepSize, w.data, w.offset + i * w.stride, g.data, g.offset + i * g.stride,
+                    m == null ? null : m.data, m == null ? 0 : m.offset + i * m.stride,
+                    s == null ? null : s.data, s == null ? 0 : s.offset + i * s.stride, w.columns);
+        }
+    }
+
+    @Override
+    public void scaledSubtractInPlace(OffHeapFloatMatrix[] weights, OffHeapFloatMatrix[] gradient, FloatUnaryOperator scaler) {
+        OffHeapFloatMatrix w = weights[0];
+        OffHeapFloatMatrix g = gradient[0];
+        FloatBuffer weightData = w.data;
+        FloatBuffer gradientData = g.data;
+        for (int i = 0; i < weights.length; ++i) {
+            int weightRowStart = w.offset + i * w.stride;
+            int gradientRowStart = g.offset + i * g.stride;
+            for (int j = 0; j < w.columns; ++j) {
+                int index = weightRowStart + j;
+                weightData.put(index, weightData.get(index) - scaler.applyAsFloat(gradientData.get(gradientRowStart + j)));
+            }
+        }
+    }
+
+    @Override
+    public void subtractInPlace(OffHeapFloatMatrix[][] left, OffHeapFloatMatrix[][] right) {
+        for (int i = 0; i < left.length; ++i) {
+            subtractInto(left[i], right[i], left[i]);
+        }
+    }
+
+    @Override
+    public void addInPlace(OffHeapFloatMatrix[][] left, OffHeapFloatMatrix[][] right) {
+        for (int i = 0; i < left.length; ++i) {
+            OffHeapFloatMatrix leftFirst = left[i][0];
+            OffHeapFloatMatrix rightFirst = right[i][0];
+            FloatBuffer leftData = leftFirst.data;
+            FloatBuffer rightData = rightFirst.data;
+            int width = leftFirst.columns;
+            for (int j = 0; j < left[i].length; ++j) {
+                int leftRowStart = leftFirst.offset + j * leftFirst.stride;
+                int rightRowStart = rightFirst.offset + j * rightFirst.stride;
+                for (int k = 0; k < width; ++k) {
+                    leftData.put(leftRowStart + k, leftData.get(leftRowStart + k) + rightData.get(rightRowStart + k));
+                }
+            }
+        }
+    }
+
+    @Override
+    public OffHeapFloatMatrix[][] generateHigherDim(int size) {
+        return new OffHeapFloatMatrix[size][];
+    }
+
+    @Override
+    public OffHeapFloatMatrix[] allocate(int width, int height) {
+        return arena.allocate(height, width);
+    }
+
+    @Override
+    public OffHeapFloatMatrix[] allocateScratch(int width, int height) {
+        return scratch.get().allocate(height, width);
+    }
+
+    @Override
+    public void resetScratch() {
+        scratch.get().reset();
+    }
+
+    @Override
+    public Region<OffHeapFloatMatrix> openRegion() {
+        if (closed) {
+            throw new IllegalStateException("OffHeapFloatMatrixMathPack is closed.");
+        }
+        OffHeapArena regionArena;
+        synchronized (idleRegions) {
+            regionArena = idleRegions.poll();
+        }
+        return new PooledRegion(regionArena == null ? new OffHeapArena(REGION_SLAB_BYTES) : regionArena);
+    }
+
+    @Override
+    public OffHeapFloatMatrix[] allocateDetached(int width, int height) {
+        long size = (long) width * height;
+        if (width < 0 || height < 0 || size > Integer.MAX_VALUE / Float.BYTES) {
+            throw new IllegalArgumentException("Can't allocate a " + height + "x" + width + " matrix in one buffer.");
+        }
+        FloatBuffer data = ByteBuffer.allocateDirect((int) size * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        return OffHeapFloatMatrix.wrap(data, 0, height, width, width);
+    }
+
+    @Override
+    public int width(OffHeapFloatMatrix[] matrix) {
+        return matrix[0].columns;
+    }
+
+    @Override
+    public void activateInPlace(OffHeapFloatMatrix[] input) {
+        mutate(input, activationFunction);
+    }
+
+    @Override
+    public OffHeapFloatMatrix[] activate(OffHeapFloatMatrix[] input) {
+        return transform(input, activationFunction);
+    }
+
+    @Override
+    public void activateInto(OffHeapFloatMatrix[] input, OffHeapFloatMatrix[] output) {
+        transformInto(input, activationFunction, output);
+    }
+
+    @Override
+    public void activatePrimeInPlace(OffHeapFloatMatrix[] input) {
+        mutate(input, activationFunctionDerivative);
+    }
+
+    @Override
+    public OffHeapFloatMatrix[] activatePrime(OffHeapFloatMatrix[] input) {
+        return transform(input, activationFunctionDerivative);
+    }
+
+    @Override
+    public OffHeapFloatMatrix[] initRandom(int width, int height) {
+        OffHeapFloatMatrix[] result = allocate(width, height);
+        OffHeapFloatMatrix first = result[0];
+        for (int i = first.offset, end = first.offset + width * height; i < end; ++i) {
+            first.data.put(i, ThreadLocalRandom.current().nextFloat());
+        }
+        return result;
+    }
+
+    @Override
+    public OffHeapFloatMatrix[] subtract(OffHeapFloatMatrix[] minuend, OffHeapFloatMatrix[] subtrahend) {
+        OffHeapFloatMatrix[] result = allocateDetached(minuend[0].columns, minuend.length);
+        subtractInto(minuend, subtrahend, result);
+        return result;
+    }
+
+    @Override
+    public void subtractInto(OffHeapFloatMatrix[] minuend, OffHeapFloatMatrix[] subtrahend, OffHeapFloatMatrix[] result) {
+        OffHeapFloatMatrix left = minuend[0];
+        OffHeapFloatMatrix right = subtrahend[0];
+        OffHeapFloatMatrix out = result[0];
+        int width = left.columns;
+        for (int i = 0; i < minuend.length; ++i) {
+            int leftRowStart = left.offset + i * left.stride;
+            int rightRowStart = right.offset + i * right.stride;
+            int resultRowStart = out.offset + i * out.stride;
+            for (int j = 0; j < width; ++j) {
+                out.data.put(resultRowStart + j, left.data.get(leftRowStart + j) - right.data.get(rightRowStart + j));
+            }
+        }
+    }
+
+    @Override
+    public OffHeapFloatMatrix[] transpose(OffHeapFloatMatrix[] input) {
+        OffHeapFloatMatrix[] result = allocateDetached(input.length, input[0].columns);
+        transposeInto(input, result);
+        return result;
+    }
+
+    @Override
+    public void transposeInto(OffHeapFloatMatrix[] input, OffHeapFloatMatrix[] result) {
+        OffHeapFloatMatrix first = input[0];
+        OffHeapFloatMatrix out = result[0];
+        int width = input.length;
+        int height = first.columns;
+        for (int ii = 0; ii < width; ii += TRANSPOSE_BLOCK_SIZE) {
+            int iEnd = Math.min(ii + TRANSPOSE_BLOCK_SIZE, width);
+            for (int jj = 0; jj < height; jj += TRANSPOSE_BLOCK_SIZE) {
+                int jEnd = Math.min(jj + TRANSPOSE_BLOCK_SIZE, height);
+                for (int i = ii; i < iEnd; ++i) {
+                    int rowStart = first.offset + i * first.stride;
+                    for (int j = jj; j < jEnd; ++j) {
+                        out.data.put(out.offset + j * out.stride + i, first.data.get(rowStart + j));
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public OffHeapFloatMatrix squaredError(OffHeapFloatMatrix[] target, OffHeapFloatMatrix[] output) {
+        OffHeapFloatMatrix result = allocateDetached(target.length, 1)[0];
+        for (int i = 0; i < target.length; ++i) {
+            OffHeapFloatMatrix targetRow = target[i];
+            OffHeapFloatMatrix outputRow = output[i];
+            float sum = 0.0f;
+            for (int j = 0; j < targetRow.columns; ++j) {
+                float diff = targetRow.data.get(targetRow.offset + j) - outputRow.data.get(outputRow.offset + j);
+                sum += 0.5f * diff * diff;
+            }
+            result.data.put(result.offset + i, sum);
+        }
+        return result;
+    }
+
+    @Override
+    public double totalSquaredError(OffHeapFloatMatrix[] target, OffHeapFloatMatrix[] output) {
+        double sum = 0.0;
+        for (int i = 0; i < target.length; ++i) {
+            OffHeapFloatMatrix targetRow = target[i];
+            OffHeapFloatMatrix outputRow = output[i];
+            for (int j = 0; j < targetRow.columns; ++j) {
+                double diff = targetRow.data.get(targetRow.offset + j) - outputRow.data.get(outputRow.offset + j);
+                sum += diff * diff;
+            }
+        }
+        return 0.5 * sum;
+    }
+
+    @Override
+    public double squaredErrorDeltaInto(OffHeapFloatMatrix[] output, OffHeapFloatMatrix[] target, OffHeapFloatMatrix[] activationDerivatives,
+                                        OffHeapFloatMatrix[] delta) {
+        double sum = 0.0;
+        for (int i = 0; i < output.length; ++i) {
+            OffHeapFloatMatrix outputRow = output[i];
+            OffHeapFloatMatrix targetRow = target[i];
+            OffHeapFloatMatrix derivativeRow = activationDerivatives[i];
+            OffHeapFloatMatrix deltaRow = delta[i];
+            for (int j = 0; j < outputRow.columns; ++j) {
+                float diff = outputRow.data.get(outputRow.offset + j) - targetRow.data.get(targetRow.offset + j);
+                deltaRow.data.put(deltaRow.offset + j, diff * derivativeRow.data.get(derivativeRow.offset + j));
+                sum += (double) diff * diff;
+            }
+        }
+        return 0.5 * sum;
+    }
+
+    @Override
+    public double binaryCrossEntropyDeltaInto(OffHeapFloatMatrix[] output, OffHeapFloatMatrix[] target, OffHeapFloatMatrix[] delta) {
+        double sum = 0.0;
+        for (int i = 0; i < output.length; ++i) {
+            OffHeapFloatMatrix outputRow = output[i];
+            OffHeapFloatMatrix targetRow = target[i];
+            OffHeapFloatMatrix deltaRow = delta[i];
+            for (int j = 0; j < outputRow.columns; ++j) {
+                float a = outputRow.data.get(outputRow.offset + j);
+                float y = targetRow.data.get(targetRow.offset + j);
+                deltaRow.data.put(deltaRow.offset + j, a - y);
+                if (y != 0.0f) {
+                    sum -= y * Math.log(Math.max(a, Float.MIN_NORMAL));
+                }
+                if (y != 1.0f) {
+                    sum -= (1.0f - y) * Math.log(Math.max(1.0f - a, Float.MIN_NORMAL));
+                }
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public void softmaxInPlace(OffHeapFloatMatrix[] logits, OffHeapFloatMatrix bias, OffHeapFloatMatrix[] logProbabilities) {
+        for (int i = 0; i < logits.length; ++i) {
+            OffHeapFloatMatrix row = logits[i];
+            OffHeapFloatMatrix logRow = logProbabilities == null ? null : logProbabilities[i];
+            FloatBuffer data = row.data;
+            int start = row.offset;
+            float max = Float.NEGATIVE_INFINITY;
+            for (int j = 0; j < row.columns; ++j) {
+                float z = bias == null ? data.get(start + j) : data.get(start + j) + bias.data.get(bias.offset + j);
+                data.put(start + j, z);
+                max = Math.max(max, z);
+            }
+            float sum = 0.0f;
+            for (int j = 0; j < row.columns; ++j) {
+                float shifted = data.get(start + j) - max;
+                if (logRow != null) {
+                    logRow.data.put(logRow.offset + j, shifted);
+                }
+                float e = (float) Math.exp(shifted);
+                data.put(start + j, e);
+                sum += e;
+            }
+            float scale = 1.0f / sum;
+            float logSum = (float) Math.log(sum);
+            for (int j = 0; j < row.columns; ++j) {
+                data.put(start + j, data.get(start + j) * scale);
+                if (logRow != null) {
+                    logRow.data.put(logRow.offset + j, logRow.data.get(logRow.offset + j) - logSum);
+                }
+            }
+        }
+    }
+
+    @Override
+    public double softmaxCrossEntropyDeltaInto(OffHeapFloatMatrix[] output, OffHeapFloatMatrix[] logProbabilities, OffHeapFloatMatrix[] target,
+                                               OffHeapFloatMatrix[] delta) {
+        double sum = 0.0;
+        for (int i = 0; i < output.length; ++i) {
+            OffHeapFloatMatrix outputRow = output[i];
+            OffHeapFloatMatrix logRow = logProbabilities[i];
+            OffHeapFloatMatrix targetRow = target[i];
+            OffHeapFloatMatrix deltaRow = delta[i];
+            for (int j = 0; j < outputRow.columns; ++j) {
+                float p = outputRow.data.get(outputRow.offset + j);
+                float y = targetRow.data.get(targetRow.offset + j);
+                deltaRow.data.put(deltaRow.offset + j, p - y);
+                if (y != 0.0f) {
+                    sum -= (double) y * logRow.data.get(logRow.offset + j);
+                }
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public OffHeapFloatMatrix transform(OffHeapFloatMatrix input, FloatUnaryOperator f) {
+        OffHeapFloatMatrix output = allocateDetached(input.columns, 1)[0];
+        for (int j = 0; j < input.columns; ++j) {
+            output.data.put(output.offset + j, f.applyAsFloat(input.data.get(input.offset + j)));
+        }
+        return output;
+    }
+
+    @Override
+    public void mutate(OffHeapFloatMatrix input, FloatUnaryOperator f) {
+        FloatBuffer data = input.data;
+        for (int j = input.offset, end = input.offset + input.columns; j < end; ++j) {
+            data.put(j, f.applyAsFloat(data.get(j)));
+        }
+    }
+
+    @Override
+    public OffHeapFloatMatrix[] transform(OffHeapFloatMatrix[] input, FloatUnaryOperator f) {
+        OffHeapFloatMatrix[] output = allocateDetached(input[0].columns, input.length);
+        transformInto(input, f, output);
+        return output;
+    }
+
+    @Override
+    public void transformInto(OffHeapFloatMatrix[] input, FloatUnaryOperator f, OffHeapFloatMatrix[] output) {
+        OffHeapFloatMatrix first = input[0];
+        OffHeapFloatMatrix out = output[0];
+        int width = first.columns;
+        for (int i = 0; i < input.length; ++i) {
+            int rowStart = first.offset + i * first.stride;
+            int outputRowStart = out.offset + i * out.stride;
+            for (int j = 0; j < width; ++j) {
+                out.data.put(outputRowStart + j, f.applyAsFloat(first.data.get(rowStart + j)));
+            }
+        }
+    }
+
+    @Override
+    public void mutate(OffHeapFloatMatrix[] input, FloatUnaryOperator f) {
+        for (OffHeapFloatMatrix row : input) {
+            mutate(row, f);
+        }
+    }
+
+    @Override
+    public OffHeapFloatMatrix[][] transform(OffHeapFloatMatrix[][] input, FloatUnaryOperator f) {
+        int size = input.length;
+        OffHeapFloatMatrix[][] output = new OffHeapFloatMatrix[size][];
+        for (int i = 0; i < size; ++i) {
+            output[i] = transform(input[i], f);
+        }
+        return output;
+    }
+
+    @Override
+    public void mutate(OffHeapFloatMatrix[][] input, FloatUnaryOperator f) {
+        for (OffHeapFloatMatrix[] matrix : input) {
+            mutate(matrix, f);
+        }
+    }
+
+    /**
+     * A region over an arena of its own, which goes back to the pool when the region closes.
+     */
+    private final class PooledRegion implements Region<OffHeapFloatMatrix> {
+
+        private final OffHeapArena regionArena;
+        private boolean closed;
+
+        PooledRegion(OffHeapArena regionArena) {
+            this.regionArena = regionArena;
+        }
+
+        @Override
+        public OffHeapFloatMatrix[] allocate(int width, int height) {
+            return regionArena.allocate(height, width);
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            synchronized (idleRegions) {
+                if (OffHeapFloatMatrixMathPack.this.closed) {
+                    regionArena.close();
+                } else {
+                    regionArena.reset();
+                    idleRegions.push(regionArena);
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,174 @@
+/**
+ * How a {@link Network} turns each gradient into a weight update, set with
+ * {@link Network#setOptimizer}.  Every rule runs as one fused elementwise pass
+ * per layer through {@link MatrixMathPack#optimizerStep}, reading the weights,
+ * the gradient and the optimizer's state once and writing the weights and state
+ * back in place, where the default learning-rate update takes two passes.
+ * <p>
+ * With {@code g} the gradient (summed over the batch, as training computes it),
+ * {@code lr} the learning rate and {@code t} the number of steps taken so far:
+ * <pre>
+ *   SGD       w -= lr g
+ *   MOMENTUM  v = mu v + g;                         w -= lr v
+ *   NESTEROV  v = mu v + g;                         w -= lr (g + mu v)
+ *   RMSPROP   s = rho s + (1 - rho) g^2;            w -= lr g / (sqrt(s) + eps)
+ *   ADAM      m = b1 m + (1 - b1) g;
+ *             s = b2 s + (1 - b2) g^2;              w -= lr_t m / (sqrt(s) + eps)
+ *             with lr_t = lr sqrt(1 - b2^t) / (1 - b1^t)
+ * </pre>
+ * Adam folds its bias correction into the step size, as in Kingma and Ba's
+ * efficient form, so its epsilon is the one added to the uncorrected
+ * {@code sqrt(s)}.
+ *
+ * @author rgettys
+ */
+public final class Optimizer {
+
+    public enum Kind {
+        SGD,
+        MOMENTUM,
+        NESTEROV,
+        RMSPROP,
+        ADAM
+    }
+
+    private final Kind kind;
+    private final double learningRate;
+    // mu for the momentum rules, b1 for Adam.
+    private final double momentum;
+    // rho for RMSProp, b2 for Adam.
+    private final double decay;
+    private final double epsilon;
+
+    private Optimizer(Kind kind, double learningRate, double momentum, double decay, double epsilon) {
+        if (!(learningRate > 0.0)) {
+            throw new IllegalArgumentException("learningRate argument must be positive.");
+        }
+        if (!(momentum >= 0.0 && momentum < 1.0) || !(decay >= 0.0 && decay < 1.0)) {
+            throw new IllegalArgumentException("Decay rates must be in [0, 1).");
+        }
+        if (!(epsilon >= 0.0)) {
+            throw new IllegalArgumentException("epsilon argument must not be negative.");
+        }
+        this.kind = kind;
+        this.learningRate = learningRate;
+        this.momentum = momentum;
+        this.decay = decay;
+        this.epsilon = epsilon;
+    }
+
+    /**
+     * Plain gradient descent, fused into a single pass.
+     */
+    public static Optimizer sgd(double learningRate) {
+        return new Optimizer(Kind.SGD, learningRate, 0.0, 0.0, 0.0);
+    }
+
+    public static Optimizer momentum(double learningRate, double momentum) {
+        return new Optimizer(Kind.MOMENTUM, learningRate, momentum, 0.0, 0.0);
+    }
+
+    public static Optimizer nesterov(double learningRate, double momentum) {
+        return new Optimizer(Kind.NESTEROV, learningRate, momentum, 0.0, 0.0);
+    }
+
+    public static Optimizer rmsProp(double learningRate, double decay, double epsilon) {
+        return new Optimizer(Kind.RMSPROP, learningRate, 0.0, decay, epsilon);
+    }
+
+    /**
+     * RMSProp with the usual decay of 0.9 and epsilon of 1e-8.
+     */
+    public static Optimizer rmsProp(double learningRate) {
+        return rmsProp(learningRate, 0.9, 1e-8);
+    }
+
+    public static Optimizer adam(double learningRate, double beta1, double beta2, double epsilon) {
+        return new Optimizer(Kind.ADAM, learningRate, beta1, beta2, epsilon);
+    }
+
+    /**
+     * Adam with the defaults from the paper: beta1 0.9, beta2 0.999 and epsilon 1e-8.
+     */
+    public static Optimizer adam(double learningRate) {
+        return adam(learningRate, 0.9, 0.999, 1e-8);
+    }
+
+    /**
+     * Rebuilds an optimizer from its getters, as {@link ModelFile} stores it.
+     *
+     * @throws IllegalArgumentException if a parameter is out of range
+     */
+    static Optimizer of(Kind kind, double learningRate, double momentum, double decay, double epsilon) {
+        ArgUtil.checkNull(kind, "kind");
+        return new Optimizer(kind, learningRate, momentum, decay, epsilon);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public double getLearningRate() {
+        return learningRate;
+    }
+
+    /**
+     * @return mu for the momentum rules, beta1 for Adam, otherwise 0
+     */
+    public double getMomentum() {
+        return momentum;
+    }
+
+    /**
+     * @return rho for RMSProp, beta2 for Adam, otherwise 0
+     */
+    public double getDecay() {
+        return decay;
+    }
+
+    public double getEpsilon() {
+        return epsilon;
+    }
+
+    /**
+     * @return whether the rule keeps a running (decayed) sum of the gradient, the velocity
+     * of the momentum rules or Adam's first moment
+     */
+    public boolean usesFirstMoment() {
+        return kind == Kind.MOMENTUM || kind == Kind.NESTEROV || kind == Kind.ADAM;
+    }
+
+    /**
+     * @return whether the rule keeps a running mean of the squared gradient
+     */
+    public boolean usesSecondMoment() {
+        return kind == Kind.RMSPROP || kind == Kind.ADAM;
+    }
+
+    /**
+     * @param step the number of this step, counting from 1
+     * @return the learning rate to pass to {@link MatrixMathPack#optimizerStep} for that step
+     */
+    public double stepSize(long step) {
+        if (kind != Kind.ADAM) {
+            return learningRate;
+        }
+        return learningRate * Math.sqrt(1.0 - Math.pow(decay, step)) / (1.0 - Math.pow(momentum, step));
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case MOMENTUM:
+            case NESTEROV:
+                return String.format("%s(lr %g, momentum %g)", kind, learningRate, momentum);
+            case RMSPROP:
+                return String.format("%s(lr %g, decay %g, epsilon %g)", kind, learningRate, decay, epsilon);
+            case ADAM:
+                return String.format("%s(lr %g, beta1 %g, beta2 %g, epsilon %g)", kind, learningRate, momentum, decay, epsilon);
+            default:
+                return String.format("%s(lr %g)", kind, learningRate);
+        }
+    }
+
+}
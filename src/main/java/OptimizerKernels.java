@@ -0,0 +1,160 @@
+import java.nio.FloatBuffer;
+
+/**
+ * The fused update loops behind {@link MatrixMathPack#optimizerStep}, one per
+ * element type, each running {@code length} elements of one row.  The switch on
+ * the rule sits outside the loop, so every loop is a straight line of loads,
+ * multiply-adds and stores that the JIT can unroll and vectorize.  The moment
+ * arrays may be null when the rule keeps no such state.
+ *
+ * @author rgettys
+ */
+final class OptimizerKernels {
+
+    private OptimizerKernels() {
+    }
+
+    static void update(Optimizer optimizer, float stepSize, float[] weights, int weightOffset, float[] gradient, int gradientOffset,
+                       float[] first, int firstOffset, float[] second, int secondOffset, int length) {
+        float mu = (float) optimizer.getMomentum();
+        float rho = (float) optimizer.getDecay();
+        float eps = (float) optimizer.getEpsilon();
+        switch (optimizer.getKind()) {
+            case SGD:
+                for (int k = 0; k < length; ++k) {
+                    weights[weightOffset + k] -= stepSize * gradient[gradientOffset + k];
+                }
+                break;
+            case MOMENTUM:
+                for (int k = 0; k < length; ++k) {
+                    float velocity = mu * first[firstOffset + k] + gradient[gradientOffset + k];
+                    first[firstOffset + k] = velocity;
+                    weights[weightOffset + k] -= stepSize * velocity;
+                }
+                break;
+            case NESTEROV:
+                for (int k = 0; k < length; ++k) {
+                    float g = gradient[gradientOffset + k];
+                    float velocity = mu * first[firstOffset + k] + g;
+                    first[firstOffset + k] = velocity;
+                    weights[weightOffset + k] -= stepSize * (g + mu * velocity);
+                }
+                break;
+            case RMSPROP:
+                for (int k = 0; k < length; ++k) {
+                    float g = gradient[gradientOffset + k];
+                    float meanSquare = rho * second[secondOffset + k] + (1.0f - rho) * g * g;
+                    second[secondOffset + k] = meanSquare;
+                    weights[weightOffset + k] -= stepSize * (g / ((float) Math.sqrt(meanSquare) + eps));
+                }
+                break;
+            case ADAM:
+                for (int k = 0; k < length; ++k) {
+                    float g = gradient[gradientOffset + k];
+                    float mean = mu * first[firstOffset + k] + (1.0f - mu) * g;
+                    float meanSquare = rho * second[secondOffset + k] + (1.0f - rho) * g * g;
+                    first[firstOffset + k] = mean;
+                    second[secondOffset + k] = meanSquare;
+                    weights[weightOffset + k] -= stepSize * (mean / ((float) Math.sqrt(meanSquare) + eps));
+                }
+                break;
+            default:
+                throw new AssertionError(optimizer.getKind());
+        }
+    }
+
+    static void update(Optimizer optimizer, double stepSize, double[] weights, int weightOffset, double[] gradient, int gradientOffset,
+                       double[] first, int firstOffset, double[] second, int secondOffset, int length) {
+        double mu = optimizer.getMomentum();
+        double rho = optimizer.getDecay();
+        double eps = optimizer.getEpsilon();
+        switch (optimizer.getKind()) {
+            case SGD:
+                for (int k = 0; k < length; ++k) {
+                    weights[weightOffset + k] -= stepSize * gradient[gradientOffset + k];
+                }
+                break;
+            case MOMENTUM:
+                for (int k = 0; k < length; ++k) {
+                    double velocity = mu * first[firstOffset + k] + gradient[gradientOffset + k];
+                    first[firstOffset + k] = velocity;
+                    weights[weightOffset + k] -= stepSize * velocity;
+                }
+                break;
+            case NESTEROV:
+                for (int k = 0; k < length; ++k) {
+                    double g = gradient[gradientOffset + k];
+                    double velocity = mu * first[firstOffset + k] + g;
+                    first[firstOffset + k] = velocity;
+                    weights[weightOffset + k] -= stepSize * (g + mu * velocity);
+                }
+                break;
+            case RMSPROP:
+                for (int k = 0; k < length; ++k) {
+                    double g = gradient[gradientOffset + k];
+                    double meanSquare = rho * second[secondOffset + k] + (1.0 - rho) * g * g;
+                    second[secondOffset + k] = meanSquare;
+                    weights[weightOffset + k] -= stepSize * (g / (Math.sqrt(meanSquare) + eps));
+                }
+                break;
+            case ADAM:
+                for (int k = 0; k < length; ++k) {
+                    double g = gradient[gradientOffset + k];
+                    double mean = mu * first[firstOffset + k] + (1.0 - mu) * g;
+                    double meanSquare = rho * second[secondOffset + k] + (1.0 - rho) * g * g;
+                    first[firstOffset + k] = mean;
+                    second[secondOffset + k] = meanSquare;
+                    weights[weightOffset + k] -= stepSize * (mean / (Math.sqrt(meanSquare) + eps));
+                }
+                break;
+            default:
+                throw new AssertionError(optimizer.getKind());
+        }
+    }
+
+    /**
+     * The off-heap counterpart, with absolute indices into each buffer.  Its buffer accesses
+     * already keep it from vectorizing, so it switches per element instead.
+     */
+    static void update(Optimizer optimizer, float stepSize, FloatBuffer weights, int weightOffset, FloatBuffer gradient, int gradientOffset,
+                       FloatBuffer first, int firstOffset, FloatBuffer second, int secondOffset, int length) {
+        float mu = (float) optimizer.getMomentum();
+        float rho = (float) optimizer.getDecay();
+        float eps = (float) optimizer.getEpsilon();
+        Optimizer.Kind kind = optimizer.getKind();
+        for (int k = 0; k < length; ++k) {
+            float g = gradient.get(gradientOffset + k);
+            float step;
+            switch (kind) {
+                case SGD:
+                    step = g;
+                    break;
+                case MOMENTUM:
+                case NESTEROV: {
+                    float velocity = mu * first.get(firstOffset + k) + g;
+                    first.put(firstOffset + k, velocity);
+                    step = kind == Optimizer.Kind.MOMENTUM ? velocity : g + mu * velocity;
+                    break;
+                }
+                case RMSPROP: {
+                    float meanSquare = rho * second.get(secondOffset + k) + (1.0f - rho) * g * g;
+                    second.put(secondOffset + k, meanSquare);
+                    step = g / ((float) Math.sqrt(meanSquare) + eps);
+                    break;
+                }
+                case ADAM: {
+                    float mean = mu * first.get(firstOffset + k) + (1.0f - mu) * g;
+                    float meanSquare = rho * second.get(secondOffset + k) + (1.0f - rho) * g * g;
+                    first.put(firstOffset + k, mean);
+                    second.put(secondOffset + k, meanSquare);
+                    step = mean / ((float) Math.sqrt(meanSquare) + eps);
+                    break;
+                }
+                default:
+                    throw new AssertionError(kind);
+            }
+            weights.put(weightOffset + k, weights.get(weightOffset + k) - stepSize * step);
+        }
+    }
+
+}
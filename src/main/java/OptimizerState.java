@@ -0,0 +1,135 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What an {@link Optimizer} remembers between the steps of one {@link Network}:
+ * the running moments it uses, one matrix per layer shaped like that layer's
+ * weights (and bias), allocated by the network's math pack so the fused update
+ * streams them in the same layout as the weights, and the number of steps taken.
+ * A checkpoint saves a {@link #copy} and {@link #restore} loads one back.
+ *
+ * @author rgettys
+ */
+final class OptimizerState<T> {
+
+    final Optimizer optimizer;
+    // Each null when the optimizer keeps no such moment, or the network no biases.
+    final T[][] firstMoments;
+    final T[][] secondMoments;
+    final T[][] biasFirstMoments;
+    final T[][] biasSecondMoments;
+    private final AtomicLong steps = new AtomicLong();
+    // Where a copy's moments live, or null for the network's own state or a pack without regions.
+    private final MatrixMathPack.Region<T> region;
+
+    <U> OptimizerState(MatrixMathPack<T, U> mathPack, Optimizer optimizer, T[][] weights, T[][] biases) {
+        this.optimizer = optimizer;
+        region = null;
+        firstMoments = optimizer.usesFirstMoment() ? zerosLike(mathPack, weights) : null;
+        secondMoments = optimizer.usesSecondMoment() ? zerosLike(mathPack, weights) : null;
+        biasFirstMoments = optimizer.usesFirstMoment() ? zerosLike(mathPack, biases) : null;
+        biasSecondMoments = optimizer.usesSecondMoment() ? zerosLike(mathPack, biases) : null;
+    }
+
+    private <U> OptimizerState(MatrixMathPack<T, U> mathPack, OptimizerState<T> source, MatrixMathPack.Region<T> region) {
+        this.optimizer = source.optimizer;
+        this.region = region;
+        firstMoments = copyOf(mathPack, region, source.firstMoments);
+        secondMoments = copyOf(mathPack, region, source.secondMoments);
+        biasFirstMoments = copyOf(mathPack, region, source.biasFirstMoments);
+        biasSecondMoments = copyOf(mathPack, region, source.biasSecondMoments);
+        steps.set(source.getSteps());
+    }
+
+    /**
+     * @return a deep copy, which later steps leave alone, to {@link #release()} once read
+     */
+    <U> OptimizerState<T> copy(MatrixMathPack<T, U> mathPack) {
+        return new OptimizerState<>(mathPack, this, mathPack.openRegion());
+    }
+
+    /**
+     * Gives a {@link #copy}'s moments back to the math pack; nothing may read them after.
+     */
+    void release() {
+        if (region != null) {
+            region.close();
+        }
+    }
+
+    /**
+     * Overwrites the moments with {@code firstMoments} and the rest, each null or one vector per
+     * layer in {@link MatrixMathPack#copyIntoVector} order, and the step count with {@code steps}.
+     *
+     * @throws IllegalArgumentException if a moment this state keeps is missing, or a vector is the
+     *                                  wrong size for its layer
+     */
+    <U> void restore(MatrixMathPack<T, U> mathPack, long steps, double[][] firstMoments, double[][] secondMoments,
+                     double[][] biasFirstMoments, double[][] biasSecondMoments) {
+        if (steps < 0) {
+            throw new IllegalArgumentException("steps argument must not be negative.");
+        }
+        restore(mathPack, this.firstMoments, firstMoments, "first moments");
+        restore(mathPack, this.secondMoments, secondMoments, "second moments");
+        restore(mathPack, this.biasFirstMoments, biasFirstMoments, "bias first moments");
+        restore(mathPack, this.biasSecondMoments, biasSecondMoments, "bias second moments");
+        this.steps.set(steps);
+    }
+
+    private static <T, U> void restore(MatrixMathPack<T, U> mathPack, T[][] moments, double[][] vectors, String name) {
+        if (moments == null) {
+            return;
+        }
+        if (vectors == null || vectors.length != moments.length) {
+            throw new IllegalArgumentException("Got " + (vectors == null ? 0 : vectors.length) + " layers of " + name
+                    + " for " + moments.length + " layers.");
+        }
+        for (int i = 0; i < moments.length; ++i) {
+            long elements = (long) moments[i].length * mathPack.width(moments[i]);
+            if (vectors[i].length != elements) {
+                throw new IllegalArgumentException("Layer " + i + " has " + elements + " " + name + " but got "
+                        + vectors[i].length + ".");
+            }
+            mathPack.copyFromVector(vectors[i], 0, moments[i]);
+        }
+    }
+
+    private static <T, U> T[][] copyOf(MatrixMathPack<T, U> mathPack, MatrixMathPack.Region<T> region, T[][] moments) {
+        if (moments == null) {
+            return null;
+        }
+        T[][] copy = mathPack.generateHigherDim(moments.length);
+        for (int i = 0; i < moments.length; ++i) {
+            int width = mathPack.width(moments[i]);
+            copy[i] = region == null ? mathPack.allocate(width, moments[i].length) : region.allocate(width, moments[i].length);
+            mathPack.copyInto(moments[i], copy[i]);
+        }
+        return copy;
+    }
+
+    private static <T, U> T[][] zerosLike(MatrixMathPack<T, U> mathPack, T[][] matrices) {
+        if (matrices == null) {
+            return null;
+        }
+        T[][] zeros = mathPack.generateHigherDim(matrices.length);
+        for (int i = 0; i < matrices.length; ++i) {
+            zeros[i] = mathPack.allocate(mathPack.width(matrices[i]), matrices[i].length);
+        }
+        return zeros;
+    }
+
+    /**
+     * Counts a step and returns its number, from 1.
+     */
+    long nextStep() {
+        return steps.incrementAndGet();
+    }
+
+    long getSteps() {
+        return steps.get();
+    }
+
+    static <T> T[] layer(T[][] moments, int layer) {
+        return moments == null ? null : moments[layer];
+    }
+
+}
@@ -0,0 +1,134 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * A {@link JavaDoubleMatrixMathPack} that spreads its row-parallel operations
+ * over a {@link ForkJoinPool}.  Each operation is cut into blocks of whole rows,
+ * so workers never write to the same row, and anything smaller than the
+ * threshold simply runs on the calling thread.
+ *
+ * @author rgettys
+ */
+public class ParallelDoubleMatrixMathPack extends JavaDoubleMatrixMathPack {
+
+    /**
+     * Roughly how many multiply-adds (or elementwise ops) a task needs before it
+     * is worth handing to another thread.
+     */
+    public static final long DEFAULT_PARALLEL_THRESHOLD = 1 << 15;
+
+    private final ForkJoinPool pool;
+    private final long parallelThreshold;
+
+    public ParallelDoubleMatrixMathPack(DoubleUnaryOperator activationFunction, DoubleUnaryOperator activationFunctionDerivative) {
+        this(activationFunction, activationFunctionDerivative, true, ForkJoinPool.commonPool(), DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    public ParallelDoubleMatrixMathPack(DoubleActivationFunction activation) {
+        this(activation, true, ForkJoinPool.commonPool(), DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    public ParallelDoubleMatrixMathPack(DoubleActivationFunction activation, boolean useBlockedGemm, ForkJoinPool pool, long parallelThreshold) {
+        super(activation, activation::derivative, activation::derivativeFromOutput, useBlockedGemm);
+        ArgUtil.checkNull(pool, "pool");
+        this.pool = pool;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    public ParallelDoubleMatrixMathPack(DoubleUnaryOperator activationFunction, DoubleUnaryOperator activationFunctionDerivative,
+                                       boolean useBlockedGemm, ForkJoinPool pool, long parallelThreshold) {
+        super(activationFunction, activationFunctionDerivative, useBlockedGemm);
+        ArgUtil.checkNull(pool, "pool");
+        this.pool = pool;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    @Override
+    public void dotProductInto(double[][] multiplicand, double[][] multiplier, double[][] product) {
+        RowRangeTask.forEach(pool, product.length, (long) multiplier[0].length * multiplicand[0].length, parallelThreshold,
+                (rowFrom, rowTo) -> dotProductRows(multiplicand, multiplier, product, rowFrom, rowTo));
+    }
+
+    @Override
+    public void dotProductActivateInto(double[][] multiplicand, double[][] multiplier, double[][] output, double[][] activationDerivatives) {
+        RowRangeTask.forEach(pool, output.length, (long) multiplier[0].length * multiplicand[0].length, parallelThreshold,
+                (rowFrom, rowTo) -> dotProductActivateRows(multiplicand, multiplier, null, output, activationDerivatives, rowFrom, rowTo));
+    }
+
+    @Override
+    public void dotProductAddActivateInto(double[][] multiplicand, double[][] multiplier, double[] bias, double[][] output,
+                                          double[][] activationDerivatives) {
+        RowRangeTask.forEach(pool, output.length, (long) multiplier[0].length * multiplicand[0].length, parallelThreshold,
+                (rowFrom, rowTo) -> dotProductActivateRows(multiplicand, multiplier, bias, output, activationDerivatives, rowFrom, rowTo));
+    }
+
+    @Override
+    public void transposeDotProductInto(double[][] multiplicand, double[][] multiplier, double[][] product) {
+        RowRangeTask.forEach(pool, product.length, (long) multiplier[0].length * multiplicand.length, parallelThreshold,
+                (rowFrom, rowTo) -> transposeDotProductRows(multiplicand, multiplier, product, rowFrom, rowTo));
+    }
+
+    @Override
+    public void dotProductTransposeInto(double[][] multiplicand, double[][] multiplier, double[][] product) {
+        RowRangeTask.forEach(pool, product.length, (long) multiplier.length * multiplicand[0].length, parallelThreshold,
+                (rowFrom, rowTo) -> dotProductTransposeRows(multiplicand, multiplier, product, rowFrom, rowTo));
+    }
+
+    @Override
+    public void hadamardProductInto(double[][] multiplicand, double[][] multiplier, double[][] product) {
+        RowRangeTask.forEach(pool, product.length, product[0].length, parallelThreshold,
+                (rowFrom, rowTo) -> hadamardProductRows(multiplicand, multiplier, product, rowFrom, rowTo));
+    }
+
+    @Override
+    public void subtractInto(double[][] minuend, double[][] subtrahend, double[][] result) {
+        RowRangeTask.forEach(pool, result.length, result[0].length, parallelThreshold,
+                (rowFrom, rowTo) -> subtractRows(minuend, subtrahend, result, rowFrom, rowTo));
+    }
+
+    @Override
+    public void optimizerStep(Optimizer optimizer, double stepSize, double[][] weights, double[][] gradient, double[][] firstMoment,
+                              double[][] secondMoment) {
+        RowRangeTask.forEach(pool, weights.length, weights[0].length, parallelThreshold,
+                (rowFrom, rowTo) -> optimizerStepRows(optimizer, stepSize, weights, gradient, firstMoment, secondMoment, rowFrom, rowTo));
+    }
+
+    @Override
+    public void scaledSubtractInPlace(double[][] weights, double[][] gradient, DoubleUnaryOperator scaler) {
+        RowRangeTask.forEach(pool, weights.length, weights[0].length, parallelThreshold,
+                (rowFrom, rowTo) -> scaledSubtractInPlaceRows(weights, gradient, scaler, rowFrom, rowTo));
+    }
+
+    @Override
+    public void subtractInPlace(double[][][] left, double[][][] right) {
+        for (int i = 0; i < left.length; ++i) {
+            double[][] leftMatrix = left[i];
+            double[][] rightMatrix = right[i];
+            RowRangeTask.forEach(pool, leftMatrix.length, leftMatrix[0].length, parallelThreshold,
+                    (rowFrom, rowTo) -> subtractInPlaceRows(leftMatrix, rightMatrix, rowFrom, rowTo));
+        }
+    }
+
+    @Override
+    public void addInPlace(double[][][] left, double[][][] right) {
+        for (int i = 0; i < left.length; ++i) {
+            double[][] leftMatrix = left[i];
+            double[][] rightMatrix = right[i];
+            RowRangeTask.forEach(pool, leftMatrix.length, leftMatrix[0].length, parallelThreshold,
+                    (rowFrom, rowTo) -> addInPlaceRows(leftMatrix, rightMatrix, rowFrom, rowTo));
+        }
+    }
+
+    @Override
+    public void mutate(double[][] input, DoubleUnaryOperator f) {
+        RowRangeTask.forEach(pool, input.length, input[0].length, parallelThreshold,
+                (rowFrom, rowTo) -> mutateRows(input, f, rowFrom, rowTo));
+    }
+
+    @Override
+    public void transformInto(double[][] input, DoubleUnaryOperator f, double[][] output) {
+        RowRangeTask.forEach(pool, input.length, input[0].length, parallelThreshold,
+                (rowFrom, rowTo) -> transformRows(input, output, f, rowFrom, rowTo));
+    }
+
+}
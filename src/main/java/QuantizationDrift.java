@@ -0,0 +1,50 @@
+/**
+ * How far the outputs of a {@link QuantizedNetwork} stray from those of the
+ * {@code float} network it was made from, over some set of inputs.
+ *
+ * @author rgettys
+ */
+public final class QuantizationDrift {
+
+    private final int examples;
+    private final double maxAbsoluteError;
+    private final double meanAbsoluteError;
+    private final double argmaxAgreement;
+
+    QuantizationDrift(int examples, double maxAbsoluteError, double meanAbsoluteError, double argmaxAgreement) {
+        this.examples = examples;
+        this.maxAbsoluteError = maxAbsoluteError;
+        this.meanAbsoluteError = meanAbsoluteError;
+        this.argmaxAgreement = argmaxAgreement;
+    }
+
+    public int getExamples() {
+        return examples;
+    }
+
+    /**
+     * @return the largest difference between any quantized output and its float counterpart
+     */
+    public double getMaxAbsoluteError() {
+        return maxAbsoluteError;
+    }
+
+    public double getMeanAbsoluteError() {
+        return meanAbsoluteError;
+    }
+
+    /**
+     * @return the fraction of examples whose largest output is in the same column for both
+     * networks, which is the accuracy drift for a classifier
+     */
+    public double getArgmaxAgreement() {
+        return argmaxAgreement;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d examples, abs error mean %.6g max %.6g, argmax agreement %.4f",
+                examples, meanAbsoluteError, maxAbsoluteError, argmaxAgreement);
+    }
+
+}
@@ -0,0 +1,19 @@
+/**
+ * How finely {@link QuantizedNetwork} chooses the scales of its int8 weights.
+ *
+ * @author rgettys
+ */
+public enum QuantizationGranularity {
+
+    /**
+     * One scale for the whole layer, set by its largest weight.
+     */
+    PER_LAYER,
+
+    /**
+     * One scale per output column, so a column of small weights keeps its precision
+     * even when another column of the same layer has large ones.
+     */
+    PER_CHANNEL
+
+}
@@ -0,0 +1,314 @@
+/**
+ * A forward-only copy of a {@code float} network with int8 weights and int8
+ * activations, made by post-training quantization: {@link #quantize} runs a
+ * sample of inputs through the float network to find the range of each
+ * layer's input and derives the scales from that and from the weights.
+ * <p>
+ * <p>Weights are quantized symmetrically, {@code w = scale * q}, with one scale
+ * per layer or per output column.  Layer inputs are quantized asymmetrically,
+ * {@code x = scale * (q - zeroPoint)}, over their calibrated range widened to
+ * take in zero, and values outside that range clamp to its ends.  The multiply
+ * sums {@code q_x * q_w} in 32-bit integers, subtracts the zero point times the
+ * column sum of {@code q_w}, and scales the result back to {@code float}, where
+ * the layer's bias, kept in {@code float}, is added before the activation, whose
+ * outputs are quantized again for the next layer; a softmax output layer, for a
+ * network trained with {@link CostFunctions#softmaxCrossEntropy()}, takes the
+ * place of the last activation.  As in
+ * {@link HalfFloatNetwork}, each weight row is read and widened once per batch.
+ * Instances never change and are safe to share between threads.
+ *
+ * @author rgettys
+ */
+public final class QuantizedNetwork {
+
+    private static final int Q_MIN = Byte.MIN_VALUE;
+    private static final int Q_MAX = Byte.MAX_VALUE;
+
+    private final FloatUnaryOperator activationFunction;
+    // Whether the output layer is a softmax rather than the activation.
+    private final boolean softmaxOutput;
+    private final QuantizationGranularity granularity;
+    private final byte[][] weights;
+    // Per output column, repeated across the row for PER_LAYER so the kernels don't care.
+    private final float[][] weightScales;
+    private final int[][] columnSums;
+    // Null for a network without biases.
+    private final float[][] biases;
+    private final float[] inputScales;
+    private final int[] inputZeroPoints;
+    private final int[] rows;
+    private final int[] columns;
+    private final int maxColumns;
+
+    private QuantizedNetwork(FloatUnaryOperator activationFunction, boolean softmaxOutput, QuantizationGranularity granularity,
+                             float[][][] layers, float[][] biases) {
+        int layerCount = layers.length;
+        int widest = 0;
+        for (float[][] layer : layers) {
+            widest = Math.max(widest, layer[0].length);
+        }
+        maxColumns = widest;
+        this.activationFunction = activationFunction;
+        this.softmaxOutput = softmaxOutput;
+        this.granularity = granularity;
+        weights = new byte[layerCount][];
+        weightScales = new float[layerCount][];
+        columnSums = new int[layerCount][];
+        this.biases = HalfFloatNetwork.copyBiases(biases);
+        inputScales = new float[layerCount];
+        inputZeroPoints = new int[layerCount];
+        rows = new int[layerCount];
+        columns = new int[layerCount];
+    }
+
+    /**
+     * Quantizes the weights of {@code snapshot}, which must come from a network on a
+     * jagged {@code float[]} pack such as {@link JavaFloatMatrixMathPack}.
+     *
+     * @param activationFunction the activation the network was trained with
+     * @param calibrationInputs  inputs representative of what the network will serve
+     */
+    public static QuantizedNetwork quantize(WeightSnapshot<float[]> snapshot, FloatUnaryOperator activationFunction,
+                                            float[][] calibrationInputs, QuantizationGranularity granularity) {
+        return quantize(snapshot, activationFunction, CostFunctions.squaredError(), calibrationInputs, granularity);
+    }
+
+    /**
+     * @param costFunction the cost function the network was trained with, which decides its
+     *                     output layer
+     */
+    public static QuantizedNetwork quantize(WeightSnapshot<float[]> snapshot, FloatUnaryOperator activationFunction,
+                                            MatrixMathPack.CostFunction<?, ?> costFunction, float[][] calibrationInputs,
+                                            QuantizationGranularity granularity) {
+        ArgUtil.checkNull(snapshot, "snapshot");
+        return quantize(snapshot.weights, snapshot.biasRows(), activationFunction, costFunction, calibrationInputs, granularity);
+    }
+
+    /**
+     * @param layers the weights of each layer, rows of inputs by columns of outputs, as
+     *               {@link ModelFile#readFloatLayers()} returns them
+     */
+    public static QuantizedNetwork quantize(float[][][] layers, FloatUnaryOperator activationFunction,
+                                            float[][] calibrationInputs, QuantizationGranularity granularity) {
+        return quantize(layers, null, activationFunction, calibrationInputs, granularity);
+    }
+
+    /**
+     * @param biases each layer's bias row, as {@link ModelFile#readFloatBiases()} returns them,
+     *               or null for none
+     */
+    public static QuantizedNetwork quantize(float[][][] layers, float[][] biases, FloatUnaryOperator activationFunction,
+                                            float[][] calibrationInputs, QuantizationGranularity granularity) {
+        return quantize(layers, biases, activationFunction, CostFunctions.squaredError(), calibrationInputs, granularity);
+    }
+
+    /**
+     * @param costFunction the cost function the network was trained with, as
+     *                     {@link ModelFile#getCostFunction()} returns it
+     */
+    public static QuantizedNetwork quantize(float[][][] layers, float[][] biases, FloatUnaryOperator activationFunction,
+                                            MatrixMathPack.CostFunction<?, ?> costFunction, float[][] calibrationInputs,
+                                            QuantizationGranularity granularity) {
+        ArgUtil.checkNull(layers, "layers");
+        ArgUtil.checkNull(activationFunction, "activationFunction");
+        ArgUtil.checkNull(calibrationInputs, "calibrationInputs");
+        ArgUtil.checkNull(granularity, "granularity");
+        if (calibrationInputs.length == 0) {
+            throw new IllegalArgumentException("calibrationInputs argument must hold at least one example.");
+        }
+        HalfFloatNetwork.checkBiases(layers, biases);
+        QuantizedNetwork network = new QuantizedNetwork(activationFunction, HalfFloatNetwork.isSoftmaxOutput(costFunction),
+                granularity, layers, biases);
+        JavaFloatMatrixMathPack floatPack = new JavaFloatMatrixMathPack(activationFunction, activationFunction);
+        float[][] activation = calibrationInputs;
+        for (int l = 0; l < layers.length; ++l) {
+            network.quantizeLayer(l, layers[l], activation);
+            float[][] output = new float[activation.length][layers[l][0].length];
+            floatPack.dotProductAddActivateInto(activation, layers[l], biases == null ? null : biases[l], output, null);
+            activation = output;
+        }
+        return network;
+    }
+
+    private void quantizeLayer(int l, float[][] layer, float[][] calibrationInput) {
+        int layerRows = rows[l] = layer.length;
+        int layerColumns = columns[l] = layer[0].length;
+        float min = 0.0f;
+        float max = 0.0f;
+        for (float[] row : calibrationInput) {
+            for (float value : row) {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+        }
+        float inputScale = max > min ? (max - min) / (Q_MAX - Q_MIN) : 1.0f;
+        inputScales[l] = inputScale;
+        inputZeroPoints[l] = clamp(Math.round(Q_MIN - min / inputScale));
+
+        float[] scales = weightScales[l] = new float[layerColumns];
+        float layerMax = 0.0f;
+        for (int k = 0; k < layerColumns; ++k) {
+            float columnMax = 0.0f;
+            for (float[] row : layer) {
+                columnMax = Math.max(columnMax, Math.abs(row[k]));
+            }
+            scales[k] = columnMax;
+            layerMax = Math.max(layerMax, columnMax);
+        }
+        for (int k = 0; k < layerColumns; ++k) {
+            float range = granularity == QuantizationGranularity.PER_LAYER ? layerMax : scales[k];
+            scales[k] = range > 0.0f ? range / Q_MAX : 1.0f;
+        }
+
+        byte[] quantized = weights[l] = new byte[layerRows * layerColumns];
+        int[] sums = columnSums[l] = new int[layerColumns];
+        for (int j = 0; j < layerRows; ++j) {
+            for (int k = 0; k < layerColumns; ++k) {
+                int q = clamp(Math.round(layer[j][k] / scales[k]));
+                quantized[j * layerColumns + k] = (byte) q;
+                sums[k] += q;
+            }
+        }
+    }
+
+    /**
+     * Runs a batch of input rows through the network.
+     *
+     * @return a new matrix holding one output row per input row
+     */
+    public float[][] forward(float[][] input) {
+        ArgUtil.checkNull(input, "input");
+        for (float[] row : input) {
+            if (row.length != rows[0]) {
+                throw new IllegalArgumentException("Input rows must have " + rows[0] + " columns, not " + row.length + ".");
+            }
+        }
+        // The weight row being applied, widened so the inner loop is a plain int multiply-add.
+        int[] weightRow = new int[maxColumns];
+        float[][] activation = input;
+        for (int l = 0; l < weights.length; ++l) {
+            int layerColumns = columns[l];
+            byte[][] quantizedInput = quantizeActivations(activation, inputScales[l], inputZeroPoints[l]);
+            int[][] sums = new int[activation.length][layerColumns];
+            byte[] layer = weights[l];
+            for (int j = 0; j < rows[l]; ++j) {
+                int rowStart = j * layerColumns;
+                for (int k = 0; k < layerColumns; ++k) {
+                    weightRow[k] = layer[rowStart + k];
+                }
+                for (int i = 0; i < sums.length; ++i) {
+                    int scalar = quantizedInput[i][j];
+                    int[] sumRow = sums[i];
+                    for (int k = 0; k < layerColumns; ++k) {
+                        sumRow[k] += scalar * weightRow[k];
+                    }
+                }
+            }
+            float[][] output = new float[activation.length][layerColumns];
+            float inputScale = inputScales[l];
+            int zeroPoint = inputZeroPoints[l];
+            float[] scales = weightScales[l];
+            int[] layerColumnSums = columnSums[l];
+            float[] bias = biases == null ? null : biases[l];
+            boolean softmax = softmaxOutput && l == weights.length - 1;
+            for (int i = 0; i < output.length; ++i) {
+                int[] sumRow = sums[i];
+                float[] outputRow = output[i];
+                for (int k = 0; k < layerColumns; ++k) {
+                    float z = inputScale * scales[k] * (sumRow[k] - zeroPoint * layerColumnSums[k]);
+                    if (bias != null) {
+                        z += bias[k];
+                    }
+                    outputRow[k] = softmax ? z : activationFunction.applyAsFloat(z);
+                }
+                if (softmax) {
+                    JavaFloatMatrixMathPack.softmaxRowInPlace(outputRow, null, null);
+                }
+            }
+            activation = output;
+        }
+        return activation;
+    }
+
+    /**
+     * Measures how far this network's outputs for {@code input} are from
+     * {@code expected}, normally what the float network it was made from returns.
+     */
+    public QuantizationDrift compare(float[][] input, float[][] expected) {
+        ArgUtil.checkNull(expected, "expected");
+        float[][] actual = forward(input);
+        if (expected.length != actual.length) {
+            throw new IllegalArgumentException("expected argument must have one row per input row.");
+        }
+        double maxError = 0.0;
+        double totalError = 0.0;
+        long values = 0;
+        int agreements = 0;
+        for (int i = 0; i < actual.length; ++i) {
+            float[] actualRow = actual[i];
+            float[] expectedRow = expected[i];
+            for (int k = 0; k < actualRow.length; ++k) {
+                double error = Math.abs(actualRow[k] - expectedRow[k]);
+                maxError = Math.max(maxError, error);
+                totalError += error;
+            }
+            values += actualRow.length;
+            if (argmax(actualRow) == argmax(expectedRow)) {
+                ++agreements;
+            }
+        }
+        return new QuantizationDrift(actual.length, maxError, values == 0 ? 0.0 : totalError / values,
+                actual.length == 0 ? 1.0 : (double) agreements / actual.length);
+    }
+
+    public QuantizationGranularity getGranularity() {
+        return granularity;
+    }
+
+    public int getInputWidth() {
+        return rows[0];
+    }
+
+    public int getLayerCount() {
+        return weights.length;
+    }
+
+    /**
+     * @return the memory the stored weights take up, not counting their scales
+     */
+    public long getWeightBytes() {
+        long bytes = 0;
+        for (byte[] layer : weights) {
+            bytes += layer.length;
+        }
+        return bytes;
+    }
+
+    private static byte[][] quantizeActivations(float[][] activation, float scale, int zeroPoint) {
+        float inverseScale = 1.0f / scale;
+        byte[][] result = new byte[activation.length][];
+        for (int i = 0; i < activation.length; ++i) {
+            float[] row = activation[i];
+            byte[] resultRow = result[i] = new byte[row.length];
+            for (int j = 0; j < row.length; ++j) {
+                resultRow[j] = (byte) clamp(Math.round(row[j] * inverseScale) + zeroPoint);
+            }
+        }
+        return result;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(Q_MIN, Math.min(Q_MAX, value));
+    }
+
+    private static int argmax(float[] row) {
+        int best = 0;
+        for (int k = 1; k < row.length; ++k) {
+            if (row[k] > row[best]) {
+                best = k;
+            }
+        }
+        return best;
+    }
+
+}
@@ -0,0 +1,53 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits a range of matrix rows in half until each piece is at most a grain
+ * in size, then hands each piece to a {@link IntBiConsumer} as
+ * {@code (rowFrom, rowTo)}.
+ *
+ * @author rgettys
+ */
+final class RowRangeTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    // Over-decompose a little so uneven workers can steal the tail.
+    private static final int TASKS_PER_THREAD = 4;
+
+    private final IntBiConsumer body;
+    private final int rowFrom, rowTo, grain;
+
+    private RowRangeTask(IntBiConsumer body, int rowFrom, int rowTo, int grain) {
+        this.body = body;
+        this.rowFrom = rowFrom;
+        this.rowTo = rowTo;
+        this.grain = grain;
+    }
+
+    /**
+     * Runs {@code body} over rows {@code [0, rows)}, in parallel on {@code pool} when the
+     * total work ({@code rows * workPerRow}) reaches {@code threshold} and serially otherwise.
+     */
+    static void forEach(ForkJoinPool pool, int rows, long workPerRow, long threshold, IntBiConsumer body) {
+        int parallelism = pool.getParallelism();
+        if (parallelism < 2 || rows < 2 || rows * workPerRow < threshold) {
+            body.accept(0, rows);
+            return;
+        }
+        int minimumRows = (int) Math.min(rows, (threshold + workPerRow - 1) / Math.max(1, workPerRow));
+        int grain = Math.max(minimumRows, (rows + parallelism * TASKS_PER_THREAD - 1) / (parallelism * TASKS_PER_THREAD));
+        pool.invoke(new RowRangeTask(body, 0, rows, Math.max(1, grain)));
+    }
+
+    @Override
+    protected void compute() {
+        if (rowTo - rowFrom <= grain) {
+            body.accept(rowFrom, rowTo);
+            return;
+        }
+        int middle = (rowFrom + rowTo) >>> 1;
+        invokeAll(new RowRangeTask(body, rowFrom, middle, grain), new RowRangeTask(body, middle, rowTo, grain));
+    }
+
+}
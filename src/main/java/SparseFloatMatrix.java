@@ -0,0 +1,145 @@
+import java.util.Arrays;
+
+/**
+ * An immutable sparse matrix of {@code float}s in compressed sparse row (CSR)
+ * form, for network inputs that are mostly zeros, such as one-hot or
+ * bag-of-words features.  Row {@code i} holds the values
+ * {@code values[rowStarts[i] .. rowStarts[i + 1])} in the columns given by the
+ * same range of {@code columnIndices}; every other entry is zero.  A column may
+ * appear more than once in a row, in which case its values add up.
+ * <p>
+ * <p>{@link Network#forward(SparseFloatMatrix)} and
+ * {@link Network#train(SparseFloatMatrix, Object[])} take these as input when the
+ * network's math pack is a {@link SparseInputMathPack}.
+ *
+ * @author rgettys
+ */
+public final class SparseFloatMatrix {
+
+    final int rows;
+    final int columns;
+    final int[] rowStarts;
+    final int[] columnIndices;
+    final float[] values;
+
+    /**
+     * Wraps the given CSR arrays without copying them; they must not change afterwards.
+     *
+     * @param rowStarts one more entry than there are rows: where each row's entries start,
+     *                  then where the last one ends
+     */
+    public SparseFloatMatrix(int columns, int[] rowStarts, int[] columnIndices, float[] values) {
+        ArgUtil.checkNull(rowStarts, "rowStarts");
+        ArgUtil.checkNull(columnIndices, "columnIndices");
+        ArgUtil.checkNull(values, "values");
+        if (columns < 0 || rowStarts.length == 0 || rowStarts[0] != 0 || columnIndices.length != values.length
+                || rowStarts[rowStarts.length - 1] != values.length) {
+            throw new IllegalArgumentException("Inconsistent CSR arrays.");
+        }
+        for (int i = 1; i < rowStarts.length; ++i) {
+            if (rowStarts[i] < rowStarts[i - 1]) {
+                throw new IllegalArgumentException("rowStarts must not decrease, but entry " + i + " does.");
+            }
+        }
+        for (int column : columnIndices) {
+            if (column < 0 || column >= columns) {
+                throw new IllegalArgumentException("Column index " + column + " is outside [0, " + columns + ").");
+            }
+        }
+        this.rows = rowStarts.length - 1;
+        this.columns = columns;
+        this.rowStarts = rowStarts;
+        this.columnIndices = columnIndices;
+        this.values = values;
+    }
+
+    /**
+     * Keeps the non-zero entries of a jagged matrix.
+     */
+    public static SparseFloatMatrix fromDense(float[][] dense) {
+        ArgUtil.checkNull(dense, "dense");
+        int columns = dense.length == 0 ? 0 : dense[0].length;
+        int[] rowStarts = new int[dense.length + 1];
+        for (int i = 0; i < dense.length; ++i) {
+            int nonZero = 0;
+            for (float value : dense[i]) {
+                if (value != 0.0f) {
+                    ++nonZero;
+                }
+            }
+            rowStarts[i + 1] = rowStarts[i] + nonZero;
+        }
+        int[] columnIndices = new int[rowStarts[dense.length]];
+        float[] values = new float[columnIndices.length];
+        for (int i = 0, entry = 0; i < dense.length; ++i) {
+            float[] row = dense[i];
+            for (int j = 0; j < row.length; ++j) {
+                if (row[j] != 0.0f) {
+                    columnIndices[entry] = j;
+                    values[entry++] = row[j];
+                }
+            }
+        }
+        return new SparseFloatMatrix(columns, rowStarts, columnIndices, values);
+    }
+
+    /**
+     * @param hotColumns for each row, the one column holding a 1
+     */
+    public static SparseFloatMatrix oneHot(int columns, int[] hotColumns) {
+        ArgUtil.checkNull(hotColumns, "hotColumns");
+        int[] rowStarts = new int[hotColumns.length + 1];
+        for (int i = 0; i < hotColumns.length; ++i) {
+            rowStarts[i + 1] = i + 1;
+        }
+        float[] values = new float[hotColumns.length];
+        Arrays.fill(values, 1.0f);
+        return new SparseFloatMatrix(columns, rowStarts, hotColumns.clone(), values);
+    }
+
+    public float[][] toDense() {
+        float[][] dense = new float[rows][columns];
+        for (int i = 0; i < rows; ++i) {
+            for (int entry = rowStarts[i]; entry < rowStarts[i + 1]; ++entry) {
+                dense[i][columnIndices[entry]] += values[entry];
+            }
+        }
+        return dense;
+    }
+
+    /**
+     * Overwrites the first {@link #getNonZeroCount()} elements of {@code entries} with the
+     * entries grouped by column: the low 32 bits of each element are an entry's index into
+     * {@code values}, the high 32 bits its column, sorted ascending.  Finding the entries of
+     * each column this way costs O(nnz log nnz) rather than O(columns).
+     */
+    void entriesByColumnInto(long[] entries) {
+        for (int entry = 0; entry < values.length; ++entry) {
+            entries[entry] = (long) columnIndices[entry] << 32 | entry;
+        }
+        Arrays.sort(entries, 0, values.length);
+    }
+
+    /**
+     * Overwrites the first {@link #getNonZeroCount()} elements of {@code entryRows} with the
+     * row each entry belongs to, indexed like {@code values}.
+     */
+    void entryRowsInto(int[] entryRows) {
+        for (int i = 0; i < rows; ++i) {
+            Arrays.fill(entryRows, rowStarts[i], rowStarts[i + 1], i);
+        }
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getNonZeroCount() {
+        return values.length;
+    }
+
+}
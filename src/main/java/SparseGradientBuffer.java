@@ -0,0 +1,35 @@
+/**
+ * The scratch a {@link SparseInputMathPack} needs for a sparse first layer's update:
+ * the batch's entries grouped by column, the row each came from and one gradient row.
+ * A {@link TrainingWorkspace} keeps one so that repeated steps reuse the arrays, which
+ * only grow when a batch has more non-zero entries, or a layer more outputs, than any
+ * before.  Like its workspace it must only be used by one thread at a time.
+ *
+ * @author rgettys
+ */
+public final class SparseGradientBuffer {
+
+    // See SparseFloatMatrix.entriesByColumnInto; only the first entryCount are this batch's.
+    long[] entriesByColumn = new long[0];
+    int[] entryRows = new int[0];
+    float[] gradientRow = new float[0];
+    int entryCount;
+
+    /**
+     * Lists {@code multiplicand}'s entries for a layer {@code width} outputs wide, growing
+     * the arrays if they're too small.
+     */
+    void load(SparseFloatMatrix multiplicand, int width) {
+        entryCount = multiplicand.getNonZeroCount();
+        if (entriesByColumn.length < entryCount) {
+            entriesByColumn = new long[entryCount];
+            entryRows = new int[entryCount];
+        }
+        if (gradientRow.length < width) {
+            gradientRow = new float[width];
+        }
+        multiplicand.entriesByColumnInto(entriesByColumn);
+        multiplicand.entryRowsInto(entryRows);
+    }
+
+}
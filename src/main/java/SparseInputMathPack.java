@@ -0,0 +1,38 @@
+/**
+ * A {@link MatrixMathPack} that can also take a {@link SparseFloatMatrix} as the
+ * input to a network's first layer.  Both operations cost in proportion to the
+ * number of non-zero inputs rather than the width of the input, so a
+ * vocabulary-sized first layer costs {@code O(nnz * hidden)} per step instead of
+ * {@code O(vocabulary * hidden)}.
+ *
+ * @author rgettys
+ */
+public interface SparseInputMathPack<T, U> extends MatrixMathPack<T, U> {
+
+    /**
+     * As {@link #dotProductAddActivateInto}, with a sparse multiplicand: each output row sums
+     * only the rows of {@code multiplier} its input row has non-zero entries for.
+     * {@code bias} may be null.
+     */
+    void sparseDotProductActivateInto(SparseFloatMatrix multiplicand, T[] multiplier, T bias, T[] output, T[] activationDerivatives);
+
+    /**
+     * Subtracts {@code learningRateScaler(multiplicand^T . deltas)} from {@code weights},
+     * the first layer's gradient step, computing and touching only the rows of
+     * {@code weights} for columns where {@code multiplicand} has an entry.  The other rows'
+     * gradient is zero, so this matches the dense step whenever the scaler maps zero to
+     * zero, as any learning rate does.
+     *
+     * @param buffer scratch for the step, reused from call to call
+     */
+    void subtractSparseTransposeDotProduct(SparseFloatMatrix multiplicand, T[] deltas, U learningRateScaler, T[] weights,
+                                           SparseGradientBuffer buffer);
+
+    /**
+     * Overwrites {@code product} with the dense {@code multiplicand^T . deltas}, the first
+     * layer's whole gradient, for an update such as an {@link Optimizer}'s that moves every row.
+     * Clears {@code product} and then adds in only each entry's row of it.
+     */
+    void sparseTransposeDotProductInto(SparseFloatMatrix multiplicand, T[] deltas, T[] product);
+
+}
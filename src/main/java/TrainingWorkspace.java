@@ -0,0 +1,64 @@
+/**
+ * Every intermediate matrix one {@link Network} training step needs, sized once
+ * for a fixed batch size so that repeated steps reuse the same buffers through
+ * the {@code *Into} operations of the {@link MatrixMathPack} instead of
+ * allocating.  A workspace belongs to one network and must only be used by one
+ * thread at a time.
+ *
+ * @author rgettys
+ */
+public final class TrainingWorkspace<T> {
+
+    final int batchSize;
+    // f'(z) for each layer, recorded by the fused forward pass.
+    final T[][] activationDerivatives;
+    // a = f(z) for each layer.
+    final T[][] postActivations;
+    // dJ/dz for each layer.
+    final T[][] deltas;
+    // dJ/dw for each layer, the same shape as the weights.
+    final T[][] djdw;
+    // dJ/db for each layer, a single row, or null when the network has no biases.
+    final T[][] djdb;
+    // Scratch for the first layer's update when the input is sparse.
+    final SparseGradientBuffer sparseGradient = new SparseGradientBuffer();
+    // The cost of the last batch, as the network's cost function computed it with the output delta.
+    double cost = Double.NaN;
+
+    <U> TrainingWorkspace(MatrixMathPack<T, U> mathPack, T[][] weights, boolean biases, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize argument must be positive.");
+        }
+        int layers = weights.length;
+        this.batchSize = batchSize;
+        activationDerivatives = mathPack.generateHigherDim(layers);
+        postActivations = mathPack.generateHigherDim(layers);
+        deltas = mathPack.generateHigherDim(layers);
+        djdw = mathPack.generateHigherDim(layers);
+        djdb = biases ? mathPack.generateHigherDim(layers) : null;
+        for (int i = 0; i < layers; ++i) {
+            int inputSize = weights[i].length;
+            int outputSize = mathPack.width(weights[i]);
+            activationDerivatives[i] = mathPack.allocate(outputSize, batchSize);
+            postActivations[i] = mathPack.allocate(outputSize, batchSize);
+            deltas[i] = mathPack.allocate(outputSize, batchSize);
+            djdw[i] = mathPack.allocate(outputSize, inputSize);
+            if (djdb != null) {
+                djdb[i] = mathPack.allocate(outputSize, 1);
+            }
+        }
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return the cost of the last batch run through this workspace, before its update, or
+     * {@code NaN} before the first
+     */
+    public double getCost() {
+        return cost;
+    }
+
+}
@@ -0,0 +1,377 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * A {@link ParallelDoubleMatrixMathPack} whose row kernels are written against the
+ * incubating Vector API, so the multiplies, the elementwise ops and the stock
+ * activations run on explicit {@link DoubleVector}s of the widest shape the CPU
+ * offers rather than on whatever C2 manages to auto-vectorize.
+ * <p>
+ * <p>This class only compiles and loads on a JDK with {@code jdk.incubator.vector}
+ * resolved ({@code --add-modules jdk.incubator.vector}); go through
+ * {@link MathPacks#doublePack} to get it where it is available and the scalar pack
+ * everywhere else.  Activations other than the {@link DoubleActivations} constants
+ * still work, they just run through the scalar operator.
+ *
+ * @author rgettys
+ */
+public class VectorDoubleMatrixMathPack extends ParallelDoubleMatrixMathPack {
+
+    private static final VectorSpecies<Double> SPECIES = VectorMath.DOUBLE_SPECIES;
+    private static final int LANES = SPECIES.length();
+    // Rows of the product per register tile; with two vectors per row that is eight accumulators.
+    private static final int TILE_ROWS = 4;
+    // Keeps the two-vector-wide strip of the multiplier that a tile walks down in cache.
+    private static final int K_BLOCK = 256;
+
+    private final DoubleActivationFunction activation;
+
+    public VectorDoubleMatrixMathPack(DoubleActivationFunction activation) {
+        this(activation, ForkJoinPool.commonPool(), DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    public VectorDoubleMatrixMathPack(DoubleActivationFunction activation, ForkJoinPool pool, long parallelThreshold) {
+        super(activation, false, pool, parallelThreshold);
+        this.activation = activation;
+    }
+
+    @Override
+    protected void dotProductRows(double[][] multiplicand, double[][] multiplier, double[][] product, int rowFrom, int rowTo) {
+        int width = multiplier[0].length;
+        int dotProductSize = multiplicand[0].length;
+        for (int i = rowFrom; i < rowTo; ++i) {
+            Arrays.fill(product[i], 0, width, 0);
+        }
+        for (int blockFrom = 0; blockFrom < dotProductSize; blockFrom += K_BLOCK) {
+            int blockTo = Math.min(blockFrom + K_BLOCK, dotProductSize);
+            int i = rowFrom;
+            for (; i + TILE_ROWS <= rowTo; i += TILE_ROWS) {
+                multiplyTile(multiplicand, multiplier, product, i, blockFrom, blockTo, width);
+            }
+            for (; i < rowTo; ++i) {
+                multiplyRow(multiplicand[i], multiplier, product[i], blockFrom, blockTo, width);
+            }
+        }
+    }
+
+    /**
+     * Adds {@code multiplicand[i..i+3][blockFrom..blockTo) . multiplier[blockFrom..blockTo)} into
+     * four rows of {@code product}, holding a 4 x 2-vector block of the product in registers
+     * across the whole slab.
+     */
+    private static void multiplyTile(double[][] multiplicand, double[][] multiplier, double[][] product,
+                                     int i, int blockFrom, int blockTo, int width) {
+        double[] a0 = multiplicand[i], a1 = multiplicand[i + 1], a2 = multiplicand[i + 2], a3 = multiplicand[i + 3];
+        double[] c0 = product[i], c1 = product[i + 1], c2 = product[i + 2], c3 = product[i + 3];
+        int k = 0;
+        for (; k + 2 * LANES <= width; k += 2 * LANES) {
+            int k1 = k + LANES;
+            DoubleVector c00 = DoubleVector.fromArray(SPECIES, c0, k), c01 = DoubleVector.fromArray(SPECIES, c0, k1);
+            DoubleVector c10 = DoubleVector.fromArray(SPECIES, c1, k), c11 = DoubleVector.fromArray(SPECIES, c1, k1);
+            DoubleVector c20 = DoubleVector.fromArray(SPECIES, c2, k), c21 = DoubleVector.fromArray(SPECIES, c2, k1);
+            DoubleVector c30 = DoubleVector.fromArray(SPECIES, c3, k), c31 = DoubleVector.fromArray(SPECIES, c3, k1);
+            for (int j = blockFrom; j < blockTo; ++j) {
+                double[] multiplierRow = multiplier[j];
+                DoubleVector b0 = DoubleVector.fromArray(SPECIES, multiplierRow, k);
+                DoubleVector b1 = DoubleVector.fromArray(SPECIES, multiplierRow, k1);
+                DoubleVector a = DoubleVector.broadcast(SPECIES, a0[j]);
+                c00 = a.fma(b0, c00);
+                c01 = a.fma(b1, c01);
+                a = DoubleVector.broadcast(SPECIES, a1[j]);
+                c10 = a.fma(b0, c10);
+                c11 = a.fma(b1, c11);
+                a = DoubleVector.broadcast(SPECIES, a2[j]);
+                c20 = a.fma(b0, c20);
+                c21 = a.fma(b1, c21);
+                a = DoubleVector.broadcast(SPECIES, a3[j]);
+                c30 = a.fma(b0, c30);
+                c31 = a.fma(b1, c31);
+            }
+            c00.intoArray(c0, k);
+            c01.intoArray(c0, k1);
+            c10.intoArray(c1, k);
+            c11.intoArray(c1, k1);
+            c20.intoArray(c2, k);
+            c21.intoArray(c2, k1);
+            c30.intoArray(c3, k);
+            c31.intoArray(c3, k1);
+        }
+        for (; k + LANES <= width; k += LANES) {
+            DoubleVector c00 = DoubleVector.fromArray(SPECIES, c0, k);
+            DoubleVector c10 = DoubleVector.fromArray(SPECIES, c1, k);
+            DoubleVector c20 = DoubleVector.fromArray(SPECIES, c2, k);
+            DoubleVector c30 = DoubleVector.fromArray(SPECIES, c3, k);
+            for (int j = blockFrom; j < blockTo; ++j) {
+                DoubleVector b0 = DoubleVector.fromArray(SPECIES, multiplier[j], k);
+                c00 = DoubleVector.broadcast(SPECIES, a0[j]).fma(b0, c00);
+                c10 = DoubleVector.broadcast(SPECIES, a1[j]).fma(b0, c10);
+                c20 = DoubleVector.broadcast(SPECIES, a2[j]).fma(b0, c20);
+                c30 = DoubleVector.broadcast(SPECIES, a3[j]).fma(b0, c30);
+            }
+            c00.intoArray(c0, k);
+            c10.intoArray(c1, k);
+            c20.intoArray(c2, k);
+            c30.intoArray(c3, k);
+        }
+        for (; k < width; ++k) {
+            double s0 = c0[k], s1 = c1[k], s2 = c2[k], s3 = c3[k];
+            for (int j = blockFrom; j < blockTo; ++j) {
+                double b = multiplier[j][k];
+                s0 += a0[j] * b;
+                s1 += a1[j] * b;
+                s2 += a2[j] * b;
+                s3 += a3[j] * b;
+            }
+            c0[k] = s0;
+            c1[k] = s1;
+            c2[k] = s2;
+            c3[k] = s3;
+        }
+    }
+
+    private static void multiplyRow(double[] multiplicandRow, double[][] multiplier, double[] productRow,
+                                    int blockFrom, int blockTo, int width) {
+        int k = 0;
+        for (; k + 2 * LANES <= width; k += 2 * LANES) {
+            int k1 = k + LANES;
+            DoubleVector c0 = DoubleVector.fromArray(SPECIES, productRow, k);
+            DoubleVector c1 = DoubleVector.fromArray(SPECIES, productRow, k1);
+            for (int j = blockFrom; j < blockTo; ++j) {
+                DoubleVector a = DoubleVector.broadcast(SPECIES, multiplicandRow[j]);
+                c0 = a.fma(DoubleVector.fromArray(SPECIES, multiplier[j], k), c0);
+                c1 = a.fma(DoubleVector.fromArray(SPECIES, multiplier[j], k1), c1);
+            }
+            c0.intoArray(productRow, k);
+            c1.intoArray(productRow, k1);
+        }
+        for (; k + LANES <= width; k += LANES) {
+            DoubleVector c0 = DoubleVector.fromArray(SPECIES, productRow, k);
+            for (int j = blockFrom; j < blockTo; ++j) {
+                c0 = DoubleVector.broadcast(SPECIES, multiplicandRow[j]).fma(DoubleVector.fromArray(SPECIES, multiplier[j], k), c0);
+            }
+            c0.intoArray(productRow, k);
+        }
+        for (; k < width; ++k) {
+            double sum = productRow[k];
+            for (int j = blockFrom; j < blockTo; ++j) {
+                sum += multiplicandRow[j] * multiplier[j][k];
+            }
+            productRow[k] = sum;
+        }
+    }
+
+    @Override
+    protected void dotProductActivateRows(double[][] multiplicand, double[][] multiplier, double[] bias, double[][] output,
+                                          double[][] activationDerivatives, int rowFrom, int rowTo) {
+        dotProductRows(multiplicand, multiplier, output, rowFrom, rowTo);
+        for (int i = rowFrom; i < rowTo; ++i) {
+            if (bias != null) {
+                addBias(output[i], bias);
+            }
+            activateRow(output[i], output[i], activationDerivatives == null ? null : activationDerivatives[i]);
+        }
+    }
+
+    private static void addBias(double[] row, double[] bias) {
+        int upperBound = SPECIES.loopBound(row.length);
+        int j = 0;
+        for (; j < upperBound; j += LANES) {
+            DoubleVector.fromArray(SPECIES, row, j).add(DoubleVector.fromArray(SPECIES, bias, j)).intoArray(row, j);
+        }
+        for (; j < row.length; ++j) {
+            row[j] += bias[j];
+        }
+    }
+
+    @Override
+    protected void transposeDotProductRows(double[][] multiplicand, double[][] multiplier, double[][] product, int rowFrom, int rowTo) {
+        int width = multiplier[0].length;
+        int dotProductSize = multiplicand.length;
+        int upperBound = SPECIES.loopBound(width);
+        for (int i = rowFrom; i < rowTo; ++i) {
+            Arrays.fill(product[i], 0, width, 0);
+        }
+        for (int j = 0; j < dotProductSize; ++j) {
+            double[] multiplicandRow = multiplicand[j];
+            double[] multiplierRow = multiplier[j];
+            for (int i = rowFrom; i < rowTo; ++i) {
+                double scalar = multiplicandRow[i];
+                double[] productRow = product[i];
+                DoubleVector broadcast = DoubleVector.broadcast(SPECIES, scalar);
+                int k = 0;
+                for (; k < upperBound; k += LANES) {
+                    broadcast.fma(DoubleVector.fromArray(SPECIES, multiplierRow, k), DoubleVector.fromArray(SPECIES, productRow, k))
+                            .intoArray(productRow, k);
+                }
+                for (; k < width; ++k) {
+                    productRow[k] += scalar * multiplierRow[k];
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void dotProductTransposeRows(double[][] multiplicand, double[][] multiplier, double[][] product, int rowFrom, int rowTo) {
+        int width = multiplier.length;
+        int dotProductSize = multiplicand[0].length;
+        int upperBound = SPECIES.loopBound(dotProductSize);
+        for (int i = rowFrom; i < rowTo; ++i) {
+            double[] multiplicandRow = multiplicand[i];
+            double[] productRow = product[i];
+            for (int k = 0; k < width; ++k) {
+                double[] multiplierRow = multiplier[k];
+                DoubleVector sum = DoubleVector.zero(SPECIES);
+                int j = 0;
+                for (; j < upperBound; j += LANES) {
+                    sum = DoubleVector.fromArray(SPECIES, multiplicandRow, j).fma(DoubleVector.fromArray(SPECIES, multiplierRow, j), sum);
+                }
+                double total = sum.reduceLanes(VectorOperators.ADD);
+                for (; j < dotProductSize; ++j) {
+                    total += multiplicandRow[j] * multiplierRow[j];
+                }
+                productRow[k] = total;
+            }
+        }
+    }
+
+    @Override
+    protected void hadamardProductRows(double[][] multiplicand, double[][] multiplier, double[][] product, int rowFrom, int rowTo) {
+        for (int i = rowFrom; i < rowTo; ++i) {
+            double[] productRow = product[i];
+            double[] multiplicandRow = multiplicand[i];
+            double[] multiplierRow = multiplier[i];
+            int upperBound = SPECIES.loopBound(productRow.length);
+            int j = 0;
+            for (; j < upperBound; j += LANES) {
+                DoubleVector.fromArray(SPECIES, multiplicandRow, j).mul(DoubleVector.fromArray(SPECIES, multiplierRow, j))
+                        .intoArray(productRow, j);
+            }
+            for (; j < productRow.length; ++j) {
+                productRow[j] = multiplicandRow[j] * multiplierRow[j];
+            }
+        }
+    }
+
+    @Override
+    protected void subtractRows(double[][] minuend, double[][] subtrahend, double[][] result, int rowFrom, int rowTo) {
+        for (int i = rowFrom; i < rowTo; ++i) {
+            double[] resultRow = result[i];
+            double[] minuendRow = minuend[i];
+            double[] subtrahendRow = subtrahend[i];
+            int upperBound = SPECIES.loopBound(resultRow.length);
+            int j = 0;
+            for (; j < upperBound; j += LANES) {
+                DoubleVector.fromArray(SPECIES, minuendRow, j).sub(DoubleVector.fromArray(SPECIES, subtrahendRow, j))
+                        .intoArray(resultRow, j);
+            }
+            for (; j < resultRow.length; ++j) {
+                resultRow[j] = minuendRow[j] - subtrahendRow[j];
+            }
+        }
+    }
+
+    protected void addRows(double[][] augend, double[][] addend, double[][] result, int rowFrom, int rowTo) {
+        for (int i = rowFrom; i < rowTo; ++i) {
+            double[] resultRow = result[i];
+            double[] augendRow = augend[i];
+            double[] addendRow = addend[i];
+            int upperBound = SPECIES.loopBound(resultRow.length);
+            int j = 0;
+            for (; j < upperBound; j += LANES) {
+                DoubleVector.fromArray(SPECIES, augendRow, j).add(DoubleVector.fromArray(SPECIES, addendRow, j))
+                        .intoArray(resultRow, j);
+            }
+            for (; j < resultRow.length; ++j) {
+                resultRow[j] = augendRow[j] + addendRow[j];
+            }
+        }
+    }
+
+    @Override
+    protected void subtractInPlaceRows(double[][] left, double[][] right, int rowFrom, int rowTo) {
+        subtractRows(left, right, left, rowFrom, rowTo);
+    }
+
+    @Override
+    protected void addInPlaceRows(double[][] left, double[][] right, int rowFrom, int rowTo) {
+        addRows(left, right, left, rowFrom, rowTo);
+    }
+
+    @Override
+    protected void mutateRows(double[][] input, DoubleUnaryOperator f, int rowFrom, int rowTo) {
+        transformRows(input, input, f, rowFrom, rowTo);
+    }
+
+    @Override
+    protected void transformRows(double[][] input, double[][] output, DoubleUnaryOperator f, int rowFrom, int rowTo) {
+        if (f != activation || !(activation instanceof DoubleActivations)) {
+            super.transformRows(input, output, f, rowFrom, rowTo);
+            return;
+        }
+        for (int i = rowFrom; i < rowTo; ++i) {
+            activateRow(input[i], output[i], null);
+        }
+    }
+
+    /**
+     * Writes {@code activation(input)} to {@code output}, which may be the same row, and
+     * {@code activation'} of it to {@code derivative} unless that is null.
+     */
+    private void activateRow(double[] input, double[] output, double[] derivative) {
+        if (!(activation instanceof DoubleActivations)) {
+            for (int j = 0; j < input.length; ++j) {
+                double activated = activation.applyAsDouble(input[j]);
+                if (derivative != null) {
+                    derivative[j] = activation.derivativeFromOutput(activated);
+                }
+                output[j] = activated;
+            }
+            return;
+        }
+        DoubleActivations stock = (DoubleActivations) activation;
+        int upperBound = SPECIES.loopBound(input.length);
+        int j = 0;
+        for (; j < upperBound; j += LANES) {
+            DoubleVector z = DoubleVector.fromArray(SPECIES, input, j);
+            DoubleVector activated;
+            DoubleVector prime;
+            switch (stock) {
+                case SIGMOID:
+                    activated = VectorMath.sigmoid(z);
+                    prime = activated.mul(activated.neg().add(1.0));
+                    break;
+                case TANH:
+                    activated = VectorMath.tanh(z);
+                    prime = activated.mul(activated).neg().add(1.0);
+                    break;
+                case RELU:
+                    activated = z.max(0.0);
+                    VectorMask<Double> positive = z.compare(VectorOperators.GT, 0.0);
+                    prime = DoubleVector.zero(SPECIES).blend(1.0, positive);
+                    break;
+                default:
+                    activated = z;
+                    prime = DoubleVector.broadcast(SPECIES, 1.0);
+                    break;
+            }
+            activated.intoArray(output, j);
+            if (derivative != null) {
+                prime.intoArray(derivative, j);
+            }
+        }
+        for (; j < input.length; ++j) {
+            double activated = stock.applyAsDouble(input[j]);
+            if (derivative != null) {
+                derivative[j] = stock.derivativeFromOutput(activated);
+            }
+            output[j] = activated;
+        }
+    }
+
+}
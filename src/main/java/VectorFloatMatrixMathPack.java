@@ -0,0 +1,388 @@
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A {@link ParallelFloatMatrixMathPack} whose row kernels are written against the
+ * incubating Vector API, so the multiplies, the elementwise ops and the stock
+ * activations run on explicit {@link FloatVector}s of the widest shape the CPU
+ * offers rather than on whatever C2 manages to auto-vectorize.
+ * <p>
+ * <p>This class only compiles and loads on a JDK with {@code jdk.incubator.vector}
+ * resolved ({@code --add-modules jdk.incubator.vector}); go through
+ * {@link MathPacks#floatPack} to get it where it is available and the scalar pack
+ * everywhere else.  Activations other than the {@link FloatActivations} constants
+ * still work, they just run through the scalar operator.
+ *
+ * @author rgettys
+ */
+public class VectorFloatMatrixMathPack extends ParallelFloatMatrixMathPack {
+
+    private static final VectorSpecies<Float> SPECIES = VectorMath.FLOAT_SPECIES;
+    private static final int LANES = SPECIES.length();
+    // Rows of the product per register tile; with two vectors per row that is eight accumulators.
+    private static final int TILE_ROWS = 4;
+    // Keeps the two-vector-wide strip of the multiplier that a tile walks down in cache.
+    private static final int K_BLOCK = 256;
+
+    private final FloatActivationFunction activation;
+
+    public VectorFloatMatrixMathPack(FloatActivationFunction activation) {
+        this(activation, ForkJoinPool.commonPool(), DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    public VectorFloatMatrixMathPack(FloatActivationFunction activation, ForkJoinPool pool, long parallelThreshold) {
+        super(activation, false, pool, parallelThreshold);
+        this.activation = activation;
+    }
+
+    @Override
+    protected void dotProductRows(float[][] multiplicand, float[][] multiplier, float[][] product, int rowFrom, int rowTo) {
+        int width = multiplier[0].length;
+        int dotProductSize = multiplicand[0].length;
+        for (int i = rowFrom; i < rowTo; ++i) {
+            Arrays.fill(product[i], 0, width, 0);
+        }
+        for (int blockFrom = 0; blockFrom < dotProductSize; blockFrom += K_BLOCK) {
+            int blockTo = Math.min(blockFrom + K_BLOCK, dotProductSize);
+            int i = rowFrom;
+            for (; i + TILE_ROWS <= rowTo; i += TILE_ROWS) {
+                multiplyTile(multiplicand, multiplier, product, i, blockFrom, blockTo, width);
+            }
+            for (; i < rowTo; ++i) {
+                multiplyRow(multiplicand[i], multiplier, product[i], blockFrom, blockTo, width);
+            }
+        }
+    }
+
+    /**
+     * Adds {@code multiplicand[i..i+3][blockFrom..blockTo) . multiplier[blockFrom..blockTo)} into
+     * four rows of {@code product}, holding a 4 x 2-vector block of the product in registers
+     * across the whole slab.
+     */
+    private static void multiplyTile(float[][] multiplicand, float[][] multiplier, float[][] product,
+                                     int i, int blockFrom, int blockTo, int width) {
+        float[] a0 = multiplicand[i], a1 = multiplicand[i + 1], a2 = multiplicand[i + 2], a3 = multiplicand[i + 3];
+        float[] c0 = product[i], c1 = product[i + 1], c2 = product[i + 2], c3 = product[i + 3];
+        int k = 0;
+        for (; k + 2 * LANES <= width; k += 2 * LANES) {
+            int k1 = k + LANES;
+            FloatVector c00 = FloatVector.fromArray(SPECIES, c0, k), c01 = FloatVector.fromArray(SPECIES, c0, k1);
+            FloatVector c10 = FloatVector.fromArray(SPECIES, c1, k), c11 = FloatVector.fromArray(SPECIES, c1, k1);
+            FloatVector c20 = FloatVector.fromArray(SPECIES, c2, k), c21 = FloatVector.fromArray(SPECIES, c2, k1);
+            FloatVector c30 = FloatVector.fromArray(SPECIES, c3, k), c31 = FloatVector.fromArray(SPECIES, c3, k1);
+            for (int j = blockFrom; j < blockTo; ++j) {
+                float[] multiplierRow = multiplier[j];
+                FloatVector b0 = FloatVector.fromArray(SPECIES, multiplierRow, k);
+                FloatVector b1 = FloatVector.fromArray(SPECIES, multiplierRow, k1);
+                FloatVector a = FloatVector.broadcast(SPECIES, a0[j]);
+                c00 = a.fma(b0, c00);
+                c01 = a.fma(b1, c01);
+                a = FloatVector.broadcast(SPECIES, a1[j]);
+                c10 = a.fma(b0, c10);
+                c11 = a.fma(b1, c11);
+                a = FloatVector.broadcast(SPECIES, a2[j]);
+                c20 = a.fma(b0, c20);
+                c21 = a.fma(b1, c21);
+                a = FloatVector.broadcast(SPECIES, a3[j]);
+                c30 = a.fma(b0, c30);
+                c31 = a.fma(b1, c31);
+            }
+            c00.intoArray(c0, k);
+            c01.intoArray(c0, k1);
+            c10.intoArray(c1, k);
+            c11.intoArray(c1, k1);
+            c20.intoArray(c2, k);
+            c21.intoArray(c2, k1);
+            c30.intoArray(c3, k);
+            c31.intoArray(c3, k1);
+        }
+        for (; k + LANES <= width; k += LANES) {
+            FloatVector c00 = FloatVector.fromArray(SPECIES, c0, k);
+            FloatVector c10 = FloatVector.fromArray(SPECIES, c1, k);
+            FloatVector c20 = FloatVector.fromArray(SPECIES, c2, k);
+            FloatVector c30 = FloatVector.fromArray(SPECIES, c3, k);
+            for (int j = blockFrom; j < blockTo; ++j) {
+                FloatVector b0 = FloatVector.fromArray(SPECIES, multiplier[j], k);
+                c00 = FloatVector.broadcast(SPECIES, a0[j]).fma(b0, c00);
+                c10 = FloatVector.broadcast(SPECIES, a1[j]).fma(b0, c10);
+                c20 = FloatVector.broadcast(SPECIES, a2[j]).fma(b0, c20);
+                c30 = FloatVector.broadcast(SPECIES, a3[j]).fma(b0, c30);
+            }
+            c00.intoArray(c0, k);
+            c10.intoArray(c1, k);
+            c20.intoArray(c2, k);
+            c30.intoArray(c3, k);
+        }
+        for (; k < width; ++k) {
+            float s0 = c0[k], s1 = c1[k], s2 = c2[k], s3 = c3[k];
+            for (int j = blockFrom; j < blockTo; ++j) {
+                float b = multiplier[j][k];
+                s0 += a0[j] * b;
+                s1 += a1[j] * b;
+                s2 += a2[j] * b;
+                s3 += a3[j] * b;
+            }
+            c0[k] = s0;
+            c1[k] = s1;
+            c2[k] = s2;
+            c3[k] = s3;
+        }
+    }
+
+    private static void multiplyRow(float[] multiplicandRow, float[][] multiplier, float[] productRow,
+                                    int blockFrom, int blockTo, int width) {
+        int k = 0;
+        for (; k + 2 * LANES <= width; k += 2 * LANES) {
+            int k1 = k + LANES;
+            FloatVector c0 = FloatVector.fromArray(SPECIES, productRow, k);
+            FloatVector c1 = FloatVector.fromArray(SPECIES, productRow, k1);
+            for (int j = blockFrom; j < blockTo; ++j) {
+                FloatVector a = FloatVector.broadcast(SPECIES, multiplicandRow[j]);
+                c0 = a.fma(FloatVector.fromArray(SPECIES, multiplier[j], k), c0);
+                c1 = a.fma(FloatVector.fromArray(SPECIES, multiplier[j], k1), c1);
+            }
+            c0.intoArray(productRow, k);
+            c1.intoArray(productRow, k1);
+        }
+        for (; k + LANES <= width; k += LANES) {
+            FloatVector c0 = FloatVector.fromArray(SPECIES, productRow, k);
+            for (int j = blockFrom; j < blockTo; ++j) {
+                c0 = FloatVector.broadcast(SPECIES, multiplicandRow[j]).fma(FloatVector.fromArray(SPECIES, multiplier[j], k), c0);
+            }
+            c0.intoArray(productRow, k);
+        }
+        for (; k < width; ++k) {
+            float sum = productRow[k];
+            for (int j = blockFrom; j < blockTo; ++j) {
+                sum += multiplicandRow[j] * multiplier[j][k];
+            }
+            productRow[k] = sum;
+        }
+    }
+
+    @Override
+    protected void dotProductActivateRows(float[][] multiplicand, float[][] multiplier, float[] bias, float[][] output,
+                                          float[][] activationDerivatives, int rowFrom, int rowTo) {
+        dotProductRows(multiplicand, multiplier, output, rowFrom, rowTo);
+        for (int i = rowFrom; i < rowTo; ++i) {
+            if (bias != null) {
+                addBias(output[i], bias);
+            }
+            activateRow(output[i], output[i], activationDerivatives == null ? null : activationDerivatives[i]);
+        }
+    }
+
+    private static void addBias(float[] row, float[] bias) {
+        int upperBound = SPECIES.loopBound(row.length);
+        int j = 0;
+        for (; j < upperBound; j += LANES) {
+            FloatVector.fromArray(SPECIES, row, j).add(FloatVector.fromArray(SPECIES, bias, j)).intoArray(row, j);
+        }
+        for (; j < row.length; ++j) {
+            row[j] += bias[j];
+        }
+    }
+
+    @Override
+    protected void transposeDotProductRows(float[][] multiplicand, float[][] multiplier, float[][] product, int rowFrom, int rowTo) {
+        int width = multiplier[0].length;
+        int dotProductSize = multiplicand.length;
+        int upperBound = SPECIES.loopBound(width);
+        for (int i = rowFrom; i < rowTo; ++i) {
+            Arrays.fill(product[i], 0, width, 0);
+        }
+        for (int j = 0; j < dotProductSize; ++j) {
+            float[] multiplicandRow = multiplicand[j];
+            float[] multiplierRow = multiplier[j];
+            for (int i = rowFrom; i < rowTo; ++i) {
+                float scalar = multiplicandRow[i];
+                float[] productRow = product[i];
+                FloatVector broadcast = FloatVector.broadcast(SPECIES, scalar);
+                int k = 0;
+                for (; k < upperBound; k += LANES) {
+                    broadcast.fma(FloatVector.fromArray(SPECIES, multiplierRow, k), FloatVector.fromArray(SPECIES, productRow, k))
+                            .intoArray(productRow, k);
+                }
+                for (; k < width; ++k) {
+                    productRow[k] += scalar * multiplierRow[k];
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void dotProductTransposeRows(float[][] multiplicand, float[][] multiplier, float[][] product, int rowFrom, int rowTo) {
+        int width = multiplier.length;
+        int dotProductSize = multiplicand[0].length;
+        int upperBound = SPECIES.loopBound(dotProductSize);
+        for (int i = rowFrom; i < rowTo; ++i) {
+            float[] multiplicandRow = multiplicand[i];
+            float[] productRow = product[i];
+            for (int k = 0; k < width; ++k) {
+                float[] multiplierRow = multiplier[k];
+                FloatVector sum = FloatVector.zero(SPECIES);
+                int j = 0;
+                for (; j < upperBound; j += LANES) {
+                    sum = FloatVector.fromArray(SPECIES, multiplicandRow, j).fma(FloatVector.fromArray(SPECIES, multiplierRow, j), sum);
+                }
+                float total = sum.reduceLanes(VectorOperators.ADD);
+                for (; j < dotProductSize; ++j) {
+                    total += multiplicandRow[j] * multiplierRow[j];
+                }
+                productRow[k] = total;
+            }
+        }
+    }
+
+    @Override
+    protected void hadamardProductRows(float[][] multiplicand, float[][] multiplier, float[][] product, int rowFrom, int rowTo) {
+        for (int i = rowFrom; i < rowTo; ++i) {
+            float[] productRow = product[i];
+            float[] multiplicandRow = multiplicand[i];
+            float[] multiplierRow = multiplier[i];
+            int upperBound = SPECIES.loopBound(productRow.length);
+            int j = 0;
+            for (; j < upperBound; j += LANES) {
+                FloatVector.fromArray(SPECIES, multiplicandRow, j).mul(FloatVector.fromArray(SPECIES, multiplierRow, j))
+                        .intoArray(productRow, j);
+            }
+            for (; j < productRow.length; ++j) {
+                productRow[j] = multiplicandRow[j] * multiplierRow[j];
+            }
+        }
+    }
+
+    @Override
+    protected void subtractRows(float[][] minuend, float[][] subtrahend, float[][] result, int rowFrom, int rowTo) {
+        for (int i = rowFrom; i < rowTo; ++i) {
+            float[] resultRow = result[i];
+            float[] minuendRow = minuend[i];
+            float[] subtrahendRow = subtrahend[i];
+            int upperBound = SPECIES.loopBound(resultRow.length);
+            int j = 0;
+            for (; j < upperBound; j += LANES) {
+                FloatVector.fromArray(SPECIES, minuendRow, j).sub(FloatVector.fromArray(SPECIES, subtrahendRow, j))
+                        .intoArray(resultRow, j);
+            }
+            for (; j < resultRow.length; ++j) {
+                resultRow[j] = minuendRow[j] - subtrahendRow[j];
+            }
+        }
+    }
+
+    protected void addRows(float[][] augend, float[][] addend, float[][] result, int rowFrom, int rowTo) {
+        for (int i = rowFrom; i < rowTo; ++i) {
+            float[] resultRow = result[i];
+            float[] augendRow = augend[i];
+            float[] addendRow = addend[i];
+            int upperBound = SPECIES.loopBound(resultRow.length);
+            int j = 0;
+            for (; j < upperBound; j += LANES) {
+                FloatVector.fromArray(SPECIES, augendRow, j).add(FloatVector.fromArray(SPECIES, addendRow, j))
+                        .intoArray(resultRow, j);
+            }
+            for (; j < resultRow.length; ++j) {
+                resultRow[j] = augendRow[j] + addendRow[j];
+            }
+        }
+    }
+
+    @Override
+    protected void subtractInPlaceRows(float[][] left, float[][] right, int rowFrom, int rowTo) {
+        subtractRows(left, right, left, rowFrom, rowTo);
+    }
+
+    @Override
+    protected void addInPlaceRows(float[][] left, float[][] right, int rowFrom, int rowTo) {
+        addRows(left, right, left, rowFrom, rowTo);
+    }
+
+    @Override
+    protected void mutateRows(float[][] input, FloatUnaryOperator f, int rowFrom, int rowTo) {
+        transformRows(input, input, f, rowFrom, rowTo);
+    }
+
+    @Override
+    protected void transformRows(float[][] input, float[][] output, FloatUnaryOperator f, int rowFrom, int rowTo) {
+        if (f != activation || !(activation instanceof FloatActivations)) {
+            super.transformRows(input, output, f, rowFrom, rowTo);
+            return;
+        }
+        for (int i = rowFrom; i < rowTo; ++i) {
+            activateRow(input[i], output[i], null);
+        }
+    }
+
+    /**
+     * Writes {@code activation(input)} to {@code output}, which may be the same row, and
+     * {@code activation'} of it to {@code derivative} unless that is null.
+     */
+    private void activateRow(float[] input, float[] output, float[] derivative) {
+        if (activation instanceof BulkFloatActivationFunction) {
+            BulkFloatActivationFunction bulk = (BulkFloatActivationFunction) activation;
+            if (derivative == null) {
+                bulk.apply(input, 0, output, 0, input.length);
+            } else {
+                if (input != output) {
+                    System.arraycopy(input, 0, output, 0, input.length);
+                }
+                bulk.applyWithDerivative(output, 0, derivative, 0, input.length);
+            }
+            return;
+        }
+        if (!(activation instanceof FloatActivations)) {
+            for (int j = 0; j < input.length; ++j) {
+                float activated = activation.applyAsFloat(input[j]);
+                if (derivative != null) {
+                    derivative[j] = activation.derivativeFromOutput(activated);
+                }
+                output[j] = activated;
+            }
+            return;
+        }
+        FloatActivations stock = (FloatActivations) activation;
+        int upperBound = SPECIES.loopBound(input.length);
+        int j = 0;
+        for (; j < upperBound; j += LANES) {
+            FloatVector z = FloatVector.fromArray(SPECIES, input, j);
+            FloatVector activated;
+            FloatVector prime;
+            switch (stock) {
+                case SIGMOID:
+                    activated = VectorMath.sigmoid(z);
+                    prime = activated.mul(activated.neg().add(1.0f));
+                    break;
+                case TANH:
+                    activated = VectorMath.tanh(z);
+                    prime = activated.mul(activated).neg().add(1.0f);
+                    break;
+                case RELU:
+                    activated = z.max(0.0f);
+                    VectorMask<Float> positive = z.compare(VectorOperators.GT, 0.0f);
+                    prime = FloatVector.zero(SPECIES).blend(1.0f, positive);
+                    break;
+                default:
+                    activated = z;
+                    prime = FloatVector.broadcast(SPECIES, 1.0f);
+                    break;
+            }
+            activated.intoArray(output, j);
+            if (derivative != null) {
+                prime.intoArray(derivative, j);
+            }
+        }
+        for (; j < input.length; ++j) {
+            float activated = stock.applyAsFloat(input[j]);
+            if (derivative != null) {
+                derivative[j] = stock.derivativeFromOutput(activated);
+            }
+            output[j] = activated;
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Lane-wise {@code exp}, sigmoid and tanh for the Vector API packs.  {@code exp}
+ * is the usual range reduction x = n ln2 + r, |r| <= ln2 / 2, a polynomial for
+ * e^r (Cephes' coefficients for float, the Taylor series to r^11 for double)
+ * and 2^n built straight into the exponent bits.  Inputs are clamped to the
+ * range where the result is a normal number, which is all an activation needs.
+ *
+ * @author rgettys
+ */
+final class VectorMath {
+
+    static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+    static final VectorSpecies<Double> DOUBLE_SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private static final float FLOAT_EXP_MIN = -87.0f;
+    private static final float FLOAT_EXP_MAX = 88.0f;
+    private static final float FLOAT_LOG2E = 1.44269504088896341f;
+    private static final float FLOAT_LN2_HI = 0.693359375f;
+    private static final float FLOAT_LN2_LO = -2.12194440e-4f;
+    // Adding and subtracting 1.5 * 2^23 rounds to the nearest integer.
+    private static final float FLOAT_ROUNDING_MAGIC = 12582912.0f;
+
+    private static final double DOUBLE_EXP_MIN = -708.0;
+    private static final double DOUBLE_EXP_MAX = 708.0;
+    private static final double DOUBLE_LOG2E = 1.4426950408889634;
+    private static final double DOUBLE_LN2_HI = 6.93145751953125E-1;
+    private static final double DOUBLE_LN2_LO = 1.42860682030941723212E-6;
+    private static final double DOUBLE_ROUNDING_MAGIC = 6755399441055744.0;
+
+    private VectorMath() {
+    }
+
+    static FloatVector exp(FloatVector x) {
+        x = x.max(FLOAT_EXP_MIN).min(FLOAT_EXP_MAX);
+        FloatVector n = x.mul(FLOAT_LOG2E).add(FLOAT_ROUNDING_MAGIC).sub(FLOAT_ROUNDING_MAGIC);
+        FloatVector r = x.sub(n.mul(FLOAT_LN2_HI)).sub(n.mul(FLOAT_LN2_LO));
+        FloatVector p = r.mul(1.9875691500E-4f).add(1.3981999507E-3f);
+        p = p.mul(r).add(8.3334519073E-3f);
+        p = p.mul(r).add(4.1665795894E-2f);
+        p = p.mul(r).add(1.6666665459E-1f);
+        p = p.mul(r).add(5.0000001201E-1f);
+        p = p.mul(r.mul(r)).add(r).add(1.0f);
+        IntVector exponent = (IntVector) n.convert(VectorOperators.F2I, 0);
+        FloatVector scale = exponent.add(127).lanewise(VectorOperators.LSHL, 23).reinterpretAsFloats();
+        return p.mul(scale);
+    }
+
+    static FloatVector sigmoid(FloatVector x) {
+        FloatVector one = FloatVector.broadcast(x.species(), 1.0f);
+        return one.div(exp(x.neg()).add(1.0f));
+    }
+
+    static FloatVector tanh(FloatVector x) {
+        // 1 - 2 / (e^2x + 1); the clamp inside exp saturates this cleanly to +-1.
+        FloatVector two = FloatVector.broadcast(x.species(), 2.0f);
+        return two.div(exp(x.mul(2.0f)).add(1.0f)).neg().add(1.0f);
+    }
+
+    static DoubleVector exp(DoubleVector x) {
+        x = x.max(DOUBLE_EXP_MIN).min(DOUBLE_EXP_MAX);
+        DoubleVector n = x.mul(DOUBLE_LOG2E).add(DOUBLE_ROUNDING_MAGIC).sub(DOUBLE_ROUNDING_MAGIC);
+        DoubleVector r = x.sub(n.mul(DOUBLE_LN2_HI)).sub(n.mul(DOUBLE_LN2_LO));
+        DoubleVector p = r.mul(1.0 / 39916800.0).add(1.0 / 3628800.0);
+        p = p.mul(r).add(1.0 / 362880.0);
+        p = p.mul(r).add(1.0 / 40320.0);
+        p = p.mul(r).add(1.0 / 5040.0);
+        p = p.mul(r).add(1.0 / 720.0);
+        p = p.mul(r).add(1.0 / 120.0);
+        p = p.mul(r).add(1.0 / 24.0);
+        p = p.mul(r).add(1.0 / 6.0);
+        p = p.mul(r).add(0.5);
+        p = p.mul(r).add(1.0);
+        p = p.mul(r).add(1.0);
+        LongVector exponent = (LongVector) n.convert(VectorOperators.D2L, 0);
+        DoubleVector scale = exponent.add(1023L).lanewise(VectorOperators.LSHL, 52).reinterpretAsDoubles();
+        return p.mul(scale);
+    }
+
+    static DoubleVector sigmoid(DoubleVector x) {
+        DoubleVector one = DoubleVector.broadcast(x.species(), 1.0);
+        return one.div(exp(x.neg()).add(1.0));
+    }
+
+    static DoubleVector tanh(DoubleVector x) {
+        DoubleVector two = DoubleVector.broadcast(x.species(), 2.0);
+        return two.div(exp(x.mul(2.0)).add(1.0)).neg().add(1.0);
+    }
+
+}
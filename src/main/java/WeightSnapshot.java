@@ -0,0 +1,127 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An immutable version of a {@link Network}'s weights and biases, published by
+ * {@link Network#publish()}.  Once published the matrices are never written
+ * again (training copies them first), so any number of threads can run
+ * {@link Network#forward(Object[], WeightSnapshot)} against a snapshot while
+ * training carries on.
+ * <p>
+ * <p>With a math pack that hands out {@link MatrixMathPack.Region}s, such as
+ * {@link OffHeapFloatMatrixMathPack}, the copies training makes live in a region
+ * that goes back to the pack once the snapshot sharing them is retired: the
+ * network has published a newer one and every reader that took this one with
+ * {@link Network#acquireSnapshot()} has {@link #release() released} it.  A thread
+ * other than the trainer's that reads a snapshot's matrices itself, as
+ * {@link ModelFile#write} does, should hold it that way.
+ *
+ * @author rgettys
+ */
+public final class WeightSnapshot<T> {
+
+    private final long version;
+    final T[][] weights;
+    // Single-row matrices, one per layer, or null for a network without biases.
+    final T[][] biases;
+    // Where the matrices live, or null when nothing needs to know when they're retired.
+    private final Storage storage;
+
+    WeightSnapshot(long version, T[][] weights, T[][] biases, Storage storage) {
+        this.version = version;
+        this.weights = weights;
+        this.biases = biases;
+        this.storage = storage;
+    }
+
+    /**
+     * @return how many snapshots the network had published before this one
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int getLayerCount() {
+        return weights.length;
+    }
+
+    public boolean hasBiases() {
+        return biases != null;
+    }
+
+    /**
+     * Lets go of a snapshot taken with {@link Network#acquireSnapshot()}; call it once for
+     * each of those, and not for snapshots got any other way.
+     */
+    public void release() {
+        if (storage != null) {
+            storage.release();
+        }
+    }
+
+    /**
+     * Holds the snapshot's matrices until the matching {@link #release()}.
+     *
+     * @return false if the snapshot has already been retired and its matrices reused
+     */
+    boolean tryAcquire() {
+        return storage == null || storage.retain();
+    }
+
+    /**
+     * @return each layer's bias row, or null for a network without biases
+     */
+    T[] biasRows() {
+        if (biases == null) {
+            return null;
+        }
+        T[] rows = Arrays.copyOf(weights[0], biases.length);
+        for (int i = 0; i < biases.length; ++i) {
+            rows[i] = biases[i][0];
+        }
+        return rows;
+    }
+
+    /**
+     * A reference count on the {@link MatrixMathPack.Region} that one set of live weights
+     * was copied into, shared by the network while it trains them and by every snapshot
+     * of them, which closes the region when the last of those lets go.
+     */
+    static final class Storage {
+
+        private final MatrixMathPack.Region<?> region;
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        Storage(MatrixMathPack.Region<?> region) {
+            this.region = region;
+        }
+
+        /**
+         * @return false, taking no reference, if the region has already been closed
+         */
+        boolean retain() {
+            for (int count = references.get(); count > 0; count = references.get()) {
+                if (references.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void release() {
+            for (int count = references.get(); ; count = references.get()) {
+                if (count == 0) {
+                    throw new IllegalStateException("Snapshot released more often than it was acquired.");
+                }
+                if (references.compareAndSet(count, count - 1)) {
+                    if (count == 1) {
+                        region.close();
+                    }
+                    return;
+                }
+            }
+        }
+
+    }
+
+}